@@ -18,6 +18,7 @@ public class EnrichedSpanConstants {
   public static final String GRPC_REQUEST_URL = "grpc.request.url";
   public static final String GRPC_REQUEST_ENDPOINT = "grpc.request.endpoint";
   public static final String API_INTERNAL_DURATION = "enriched.internal.duration.millis";
+  public static final String API_TRACE_GRAPH_TOPOLOGY = "api.trace.graph.topology";
 
   /**
    * Returns the constant value for the given Enum.
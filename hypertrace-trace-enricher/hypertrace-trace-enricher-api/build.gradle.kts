@@ -1,12 +1,22 @@
 plugins {
   `java-library`
   id("org.hypertrace.publish-plugin")
+  id("me.champeau.jmh") version "0.6.6"
 }
 
 tasks.test {
   useJUnitPlatform()
 }
 
+jmh {
+  // ./gradlew :hypertrace-trace-enricher:hypertrace-trace-enricher-api:jmh
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+  // reports the bytes allocated per build as gc.alloc.rate.norm
+  profilers.set(listOf("gc"))
+}
+
 dependencies {
   implementation(project(":hypertrace-trace-enricher:enriched-span-constants"))
   implementation("org.hypertrace.core.datamodel:data-model:0.1.20")
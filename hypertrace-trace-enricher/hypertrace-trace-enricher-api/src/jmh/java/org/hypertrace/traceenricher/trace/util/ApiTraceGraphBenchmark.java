@@ -0,0 +1,141 @@
+package org.hypertrace.traceenricher.trace.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.Edge;
+import org.hypertrace.core.datamodel.EdgeType;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.StructuredTraceGraph;
+import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
+import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
+import org.hypertrace.traceenricher.enrichedspan.constants.v1.Api;
+import org.hypertrace.traceenricher.enrichedspan.constants.v1.BoundaryTypeValue;
+import org.hypertrace.traceenricher.enrichedspan.constants.v1.CommonAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Builds the api trace graph of synthetic traces. The structured trace graph, which the api trace
+ * graph used to be built on, is built as a reference. Run with the gc profiler, as configured in
+ * the build, to compare the bytes allocated per build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ApiTraceGraphBenchmark {
+
+  private static final String SPAN_TYPE_ATTR =
+      EnrichedSpanConstants.getValue(CommonAttribute.COMMON_ATTRIBUTE_SPAN_TYPE);
+  private static final String API_BOUNDARY_TYPE_ATTR =
+      EnrichedSpanConstants.getValue(Api.API_BOUNDARY_TYPE);
+  private static final String ENTRY =
+      EnrichedSpanConstants.getValue(BoundaryTypeValue.BOUNDARY_TYPE_VALUE_ENTRY);
+  private static final String EXIT =
+      EnrichedSpanConstants.getValue(BoundaryTypeValue.BOUNDARY_TYPE_VALUE_EXIT);
+
+  @Param({"100", "1000", "10000"})
+  private int spanCount;
+
+  private StructuredTrace trace;
+
+  @Setup(Level.Trial)
+  public void setUpTrace() {
+    trace = createTrace(spanCount);
+  }
+
+  @Benchmark
+  public ApiTraceGraph buildApiTraceGraph() {
+    return new ApiTraceGraph(trace);
+  }
+
+  @Benchmark
+  public StructuredTraceGraph buildStructuredTraceGraph() {
+    return new StructuredTraceGraph(trace);
+  }
+
+  /**
+   * A trace of services calling two others each: the entry span of a service has an internal span
+   * child, which has the exit spans calling the next services as children.
+   */
+  private static StructuredTrace createTrace(int spanCount) {
+    long startTime = System.currentTimeMillis();
+    List<Event> events = new ArrayList<>(spanCount);
+    List<Edge> edges = new ArrayList<>(spanCount);
+    // the index of the exit span calling each service
+    List<Integer> callerIndices = new ArrayList<>();
+    callerIndices.add(-1);
+
+    for (int service = 0; events.size() < spanCount; service++) {
+      int entryIndex = addEvent(events, service, ENTRY, startTime);
+      if (callerIndices.get(service) >= 0) {
+        edges.add(createEdge(callerIndices.get(service), entryIndex));
+      }
+      int internalIndex = addEvent(events, service, null, startTime);
+      edges.add(createEdge(entryIndex, internalIndex));
+      for (int call = 0; call < 2; call++) {
+        int exitIndex = addEvent(events, service, EXIT, startTime);
+        edges.add(createEdge(internalIndex, exitIndex));
+        callerIndices.add(exitIndex);
+      }
+    }
+
+    return StructuredTrace.newBuilder()
+        .setCustomerId("benchmark")
+        .setTraceId(ByteBuffer.wrap(UUID.randomUUID().toString().getBytes()))
+        .setStartTimeMillis(startTime)
+        .setEndTimeMillis(startTime + spanCount)
+        .setAttributes(Attributes.newBuilder().setAttributeMap(new HashMap<>()).build())
+        .setEntityList(new ArrayList<>())
+        .setEntityEdgeList(new ArrayList<>())
+        .setEventEdgeList(edges)
+        .setEntityEventEdgeList(new ArrayList<>())
+        .setEventList(events)
+        .build();
+  }
+
+  private static int addEvent(List<Event> events, int service, String boundaryType, long time) {
+    Map<String, AttributeValue> enrichedAttributes = new HashMap<>();
+    if (boundaryType != null) {
+      enrichedAttributes.put(SPAN_TYPE_ATTR, AttributeValueCreator.create(boundaryType));
+      enrichedAttributes.put(API_BOUNDARY_TYPE_ATTR, AttributeValueCreator.create(boundaryType));
+    }
+    int index = events.size();
+    events.add(
+        Event.newBuilder()
+            .setCustomerId("benchmark")
+            // span ids are 8 bytes
+            .setEventId(ByteBuffer.allocate(Long.BYTES).putLong(0, index + 1))
+            .setEventName("event-" + index)
+            .setServiceName("service-" + service)
+            .setStartTimeMillis(time + index)
+            .setEndTimeMillis(time + index + 1)
+            .setAttributesBuilder(Attributes.newBuilder().setAttributeMap(new HashMap<>()))
+            .setEnrichedAttributesBuilder(
+                Attributes.newBuilder().setAttributeMap(enrichedAttributes))
+            .build());
+    return index;
+  }
+
+  private static Edge createEdge(int srcIndex, int tgtIndex) {
+    return Edge.newBuilder()
+        .setSrcIndex(srcIndex)
+        .setTgtIndex(tgtIndex)
+        .setEdgeType(EdgeType.EVENT_EVENT)
+        .build();
+  }
+}
@@ -2,22 +2,14 @@ package org.hypertrace.traceenricher.trace.util;
 
 import static org.hypertrace.core.datamodel.shared.AvroBuilderCache.fastNewBuilder;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
-import com.google.common.collect.Table;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Queue;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.apache.commons.lang3.StringUtils;
 import org.hypertrace.core.datamodel.ApiNodeEventEdge;
 import org.hypertrace.core.datamodel.Edge;
@@ -25,13 +17,18 @@ import org.hypertrace.core.datamodel.Event;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.datamodel.shared.ApiNode;
 import org.hypertrace.core.datamodel.shared.HexUtils;
-import org.hypertrace.core.datamodel.shared.StructuredTraceGraph;
 import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.AttributeValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The api nodes of a trace and the edges between them. The events are referred to by their index
+ * in the event list of the trace: the children of the events are kept as int arrays and the sets
+ * of api boundary events as bit sets, so building the graph neither boxes the indices nor hashes
+ * the event ids more than once per event.
+ */
 public class ApiTraceGraph {
   private static final Logger LOGGER = LoggerFactory.getLogger(ApiTraceGraph.class);
 
@@ -39,51 +36,148 @@ public class ApiTraceGraph {
       EnrichedSpanConstants.getValue(AttributeValue.ATTRIBUTE_VALUE_UNKNOWN);
 
   private final StructuredTrace trace;
+  private final List<Event> events;
   private final List<ApiNode<Event>> apiNodeList;
   private final List<ApiNodeEventEdge> apiNodeEventEdgeList;
-  // set of outbound edges for apiNode
-  private final Map<Integer, Set<Integer>> apiNodeIdxToEdges;
   // eventId -> index mapping
-  private final Map<ByteBuffer, Integer> eventIdToIndexInTrace;
+  private final EventIdIndex eventIdIndex;
+
+  // the event graph, only set when the api trace graph is built from the trace rather than from
+  // its topology. the children of the event at index i are at childEventIndices[childOffsets[i]]
+  // up to childEventIndices[childOffsets[i + 1] - 1], and the edges to them at the same positions
+  // of childEdgeIndices
+  private final int[] childOffsets;
+  private final int[] childEventIndices;
+  private final int[] childEdgeIndices;
+  private final BitSet eventsWithParent;
+
+  private final BitSet entryApiBoundaryEventIdx;
+  private final BitSet exitApiBoundaryEventIdx;
+
+  // index in api node list of the api node with the event at index i as head, or -1
+  private final int[] apiNodeIndexByHeadEvent;
+  // index in the event list of the head event of each api node
+  private final int[] headEventIndexByApiNode;
+  // indices of the events and of the exit boundary events of each api node, in the order of the
+  // api node
+  private final List<int[]> eventIndicesByApiNode;
+  private final List<int[]> exitBoundaryEventIndicesByApiNode;
+  // index in the event edge list of the trace of the edge behind each api node edge
+  private final int[] traceEdgeIndexByApiNodeEdge;
+
+  // the outbound edges of an api node are the ones of apiNodeEventEdgeList from
+  // outboundEdgesStart up to outboundEdgesEnd - 1 at the index of the api node
+  private final int[] outboundEdgesStart;
+  private final int[] outboundEdgesEnd;
 
-  // map of head event id of api node to index in api node list, helps in building edges between api
-  // nodes
-  private final Map<ByteBuffer, Integer> apiNodeHeadEventIdToIndex;
-
-  // map of event id of entry api boundary event to api node. each api node has at most one entry
-  // boundary event
-  private final Map<ByteBuffer, ApiNode<Event>> entryApiBoundaryEventIdToApiNode;
-
-  private final Table<Integer, Integer, Edge> traceEdgeTable;
   // set of exit boundary events of apiNode, with no outgoing edge to any apiNode
-  private final Set<Integer> apiExitBoundaryEventIdxWithNoOutgoingEdge;
+  private final BitSet apiExitBoundaryEventIdxWithNoOutgoingEdge;
   // set of exit boundary events of apiNode, with outgoing edge to some apiNode
-  private final Set<Integer> apiExitBoundaryEventIdxWithOutgoingEdge;
+  private final BitSet apiExitBoundaryEventIdxWithOutgoingEdge;
   // set of entry boundary events of apiNode, with no incoming edge from other apiNode(they are root
   // events)
-  private final Set<Integer> apiEntryBoundaryEventIdxWithNoIncomingEdge;
+  private final BitSet apiEntryBoundaryEventIdxWithNoIncomingEdge;
   // set of entry boundary events of apiNode, with incoming edge from other apiNode
-  private final Set<Integer> apiEntryBoundaryEventIdxWithIncomingEdge;
+  private final BitSet apiEntryBoundaryEventIdxWithIncomingEdge;
 
   public ApiTraceGraph(StructuredTrace trace) {
     this.trace = trace;
-    apiNodeList = Lists.newArrayList();
-    apiNodeEventEdgeList = Lists.newArrayList();
-    apiNodeIdxToEdges = Maps.newHashMap();
-    eventIdToIndexInTrace = Maps.newHashMap();
-
-    apiNodeHeadEventIdToIndex = Maps.newHashMap();
-    entryApiBoundaryEventIdToApiNode = Maps.newHashMap();
-    traceEdgeTable = HashBasedTable.create();
-
-    apiExitBoundaryEventIdxWithNoOutgoingEdge = Sets.newHashSet();
-    apiExitBoundaryEventIdxWithOutgoingEdge = Sets.newHashSet();
-    apiEntryBoundaryEventIdxWithNoIncomingEdge = Sets.newHashSet();
-    apiEntryBoundaryEventIdxWithIncomingEdge = Sets.newHashSet();
-
-    buildEventIdToIndexInTrace();
-    buildTraceEdgeTable();
-    buildApiTraceGraph();
+    events = trace.getEventList();
+    int eventCount = events.size();
+    apiNodeList = new ArrayList<>();
+    apiNodeEventEdgeList = new ArrayList<>();
+    eventIdIndex = new EventIdIndex(events);
+
+    childOffsets = new int[eventCount + 1];
+    childEventIndices = new int[countValidEdges()];
+    childEdgeIndices = new int[childEventIndices.length];
+    eventsWithParent = new BitSet(eventCount);
+
+    entryApiBoundaryEventIdx = new BitSet(eventCount);
+    exitApiBoundaryEventIdx = new BitSet(eventCount);
+
+    // there is at most one api node per event
+    apiNodeIndexByHeadEvent = new int[eventCount];
+    Arrays.fill(apiNodeIndexByHeadEvent, -1);
+    headEventIndexByApiNode = new int[eventCount];
+    eventIndicesByApiNode = new ArrayList<>();
+    exitBoundaryEventIndicesByApiNode = new ArrayList<>();
+    // an api node edge is a trace edge from an exit boundary event
+    traceEdgeIndexByApiNodeEdge = new int[childEdgeIndices.length];
+
+    apiExitBoundaryEventIdxWithNoOutgoingEdge = new BitSet(eventCount);
+    apiExitBoundaryEventIdxWithOutgoingEdge = new BitSet(eventCount);
+    apiEntryBoundaryEventIdxWithNoIncomingEdge = new BitSet(eventCount);
+    apiEntryBoundaryEventIdxWithIncomingEdge = new BitSet(eventCount);
+
+    buildChildren();
+    buildApiBoundaryEvents();
+    buildApiNodes();
+    outboundEdgesStart = new int[apiNodeList.size()];
+    outboundEdgesEnd = new int[apiNodeList.size()];
+    buildApiNodeEdges();
+    buildApiEntryBoundaryEventWithNoIncomingEdge();
+    buildApiExitBoundaryEventWithNoOutgoingEdge();
+  }
+
+  /**
+   * Restores the api trace graph of a trace from its topology, without traversing the events. The
+   * topology must have been taken from the same trace, see {@link ApiTraceGraphTopology#of}.
+   */
+  public ApiTraceGraph(StructuredTrace trace, ApiTraceGraphTopology topology) {
+    this.trace = trace;
+    events = trace.getEventList();
+    int eventCount = events.size();
+    int apiNodeCount = topology.getApiNodeCount();
+    apiNodeList = new ArrayList<>(apiNodeCount);
+    apiNodeEventEdgeList = new ArrayList<>(topology.getApiNodeEdgeCount());
+    eventIdIndex = new EventIdIndex(events);
+
+    childOffsets = null;
+    childEventIndices = null;
+    childEdgeIndices = null;
+    eventsWithParent = null;
+    entryApiBoundaryEventIdx = null;
+    exitApiBoundaryEventIdx = null;
+
+    apiNodeIndexByHeadEvent = new int[eventCount];
+    Arrays.fill(apiNodeIndexByHeadEvent, -1);
+    headEventIndexByApiNode = new int[apiNodeCount];
+    eventIndicesByApiNode = new ArrayList<>(apiNodeCount);
+    exitBoundaryEventIndicesByApiNode = new ArrayList<>(apiNodeCount);
+    traceEdgeIndexByApiNodeEdge = new int[topology.getApiNodeEdgeCount()];
+
+    apiExitBoundaryEventIdxWithNoOutgoingEdge = new BitSet(eventCount);
+    apiExitBoundaryEventIdxWithOutgoingEdge = new BitSet(eventCount);
+    apiEntryBoundaryEventIdxWithNoIncomingEdge = new BitSet(eventCount);
+    apiEntryBoundaryEventIdxWithIncomingEdge = new BitSet(eventCount);
+
+    for (int apiNodeIdx = 0; apiNodeIdx < apiNodeCount; apiNodeIdx++) {
+      addApiNode(
+          topology.getApiNodeEventIndices(apiNodeIdx),
+          topology.getApiNodeExitBoundaryEventIndices(apiNodeIdx),
+          topology.hasApiNodeEntryBoundaryEvent(apiNodeIdx));
+    }
+
+    outboundEdgesStart = new int[apiNodeCount];
+    outboundEdgesEnd = new int[apiNodeCount];
+    // the edges are ordered by their source api node
+    int edgeIdx = 0;
+    for (int apiNodeIdx = 0; apiNodeIdx < apiNodeCount; apiNodeIdx++) {
+      outboundEdgesStart[apiNodeIdx] = edgeIdx;
+      while (edgeIdx < topology.getApiNodeEdgeCount()
+          && topology.getApiNodeEdgeSrcApiNodeIndex(edgeIdx) == apiNodeIdx) {
+        addApiNodeEdge(
+            apiNodeIdx,
+            topology.getApiNodeEdgeTgtApiNodeIndex(edgeIdx),
+            topology.getApiNodeEdgeSrcEventIndex(edgeIdx),
+            topology.getApiNodeEdgeTgtEventIndex(edgeIdx),
+            topology.getApiNodeEdgeTraceEdgeIndex(edgeIdx));
+        edgeIdx++;
+      }
+      outboundEdgesEnd[apiNodeIdx] = edgeIdx;
+    }
+
     buildApiEntryBoundaryEventWithNoIncomingEdge();
     buildApiExitBoundaryEventWithNoOutgoingEdge();
   }
@@ -117,35 +211,97 @@ public class ApiTraceGraph {
   }
 
   public List<ApiNodeEventEdge> getOutboundEdgesForApiNode(ApiNode<Event> apiNode) {
-    int idx = apiNodeHeadEventIdToIndex.get(apiNode.getHeadEvent().getEventId());
-    if (!apiNodeIdxToEdges.containsKey(idx)) {
+    int idx = getApiNodeIndex(apiNode);
+    if (idx < 0) {
       return Collections.emptyList();
     }
-    return apiNodeIdxToEdges
-        .get(apiNodeHeadEventIdToIndex.get(apiNode.getHeadEvent().getEventId()))
-        .stream()
-        .map(apiNodeEventEdgeList::get)
-        .collect(Collectors.toList());
+    return new ArrayList<>(
+        apiNodeEventEdgeList.subList(outboundEdgesStart[idx], outboundEdgesEnd[idx]));
   }
 
   public List<Event> getExitBoundaryEventsWithNoOutboundEdgeForApiNode(ApiNode<Event> apiNode) {
-    return apiNode.getExitApiBoundaryEvents().stream()
-        .filter(
-            v ->
-                apiExitBoundaryEventIdxWithNoOutgoingEdge.contains(
-                    eventIdToIndexInTrace.get(v.getEventId())))
-        .collect(Collectors.toList());
+    int idx = getApiNodeIndex(apiNode);
+    if (idx < 0) {
+      return Collections.emptyList();
+    }
+    List<Event> exitBoundaryEvents = new ArrayList<>();
+    for (int eventIdx : exitBoundaryEventIndicesByApiNode.get(idx)) {
+      if (apiExitBoundaryEventIdxWithNoOutgoingEdge.get(eventIdx)) {
+        exitBoundaryEvents.add(events.get(eventIdx));
+      }
+    }
+    return exitBoundaryEvents;
   }
 
-  private void buildApiTraceGraph() {
-    StructuredTraceGraph graph = StructuredTraceGraphBuilder.buildGraph(trace);
+  EventIdIndex getEventIdIndex() {
+    return eventIdIndex;
+  }
+
+  int[] getApiNodeEventIndices(int apiNodeIdx) {
+    return eventIndicesByApiNode.get(apiNodeIdx);
+  }
+
+  int[] getApiNodeExitBoundaryEventIndices(int apiNodeIdx) {
+    return exitBoundaryEventIndicesByApiNode.get(apiNodeIdx);
+  }
+
+  int getApiNodeEdgeTraceEdgeIndex(int apiNodeEdgeIdx) {
+    return traceEdgeIndexByApiNodeEdge[apiNodeEdgeIdx];
+  }
+
+  private int getApiNodeIndex(ApiNode<Event> apiNode) {
+    int headEventIdx = eventIdIndex.indexOf(apiNode.getHeadEvent().getEventId());
+    return headEventIdx < 0 ? -1 : apiNodeIndexByHeadEvent[headEventIdx];
+  }
 
-    buildApiNodes(graph);
+  // edges with an index outside of the event list are not part of the graph
+  private boolean isValidEdge(Edge edge) {
+    return edge.getSrcIndex() >= 0
+        && edge.getSrcIndex() < events.size()
+        && edge.getTgtIndex() >= 0
+        && edge.getTgtIndex() < events.size();
+  }
+
+  // also counts the children of each event into childOffsets, as the size of the previous event
+  private int countValidEdges() {
+    int count = 0;
+    for (Edge edge : trace.getEventEdgeList()) {
+      if (isValidEdge(edge)) {
+        childOffsets[edge.getSrcIndex() + 1]++;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Lays out the children of each event in the order of the edges, from the counts. */
+  private void buildChildren() {
+    for (int i = 0; i < events.size(); i++) {
+      childOffsets[i + 1] += childOffsets[i];
+    }
 
-    // optimization
-    buildApiNodeToIndexMap();
+    int[] nextChildPosition = Arrays.copyOf(childOffsets, events.size());
+    List<Edge> edges = trace.getEventEdgeList();
+    for (int i = 0; i < edges.size(); i++) {
+      Edge edge = edges.get(i);
+      if (isValidEdge(edge)) {
+        int position = nextChildPosition[edge.getSrcIndex()]++;
+        childEventIndices[position] = edge.getTgtIndex();
+        childEdgeIndices[position] = i;
+        eventsWithParent.set(edge.getTgtIndex());
+      }
+    }
+  }
 
-    buildApiNodeEdges(graph);
+  private void buildApiBoundaryEvents() {
+    for (int i = 0; i < events.size(); i++) {
+      Event event = events.get(i);
+      if (EnrichedSpanUtils.isEntryApiBoundary(event)) {
+        entryApiBoundaryEventIdx.set(i);
+      } else if (EnrichedSpanUtils.isExitApiBoundary(event)) {
+        exitApiBoundaryEventIdx.set(i);
+      }
+    }
   }
 
   /**
@@ -153,53 +309,52 @@ public class ApiTraceGraph {
    * for the API Trace, a list of events that fall within the API boundary, the Entry event or null
    * if the head span is not an entry span and a list of exit events from the API.
    */
-  private void buildApiNodes(StructuredTraceGraph graph) {
-    Set<ByteBuffer> remainingEventIds = new HashSet<>(graph.getEventMap().keySet());
-
-    for (Event event : trace.getEventList()) {
-      if (EnrichedSpanUtils.isEntryApiBoundary(event)) {
-        // create new ApiNode from the events in the api boundary
-        ApiNode<Event> apiNode = buildApiNode(graph, event);
-
-        apiNodeList.add(apiNode);
-
-        // Remove the events in ApiNode from remainingEventIds
-        apiNode
-            .getEvents()
-            .forEach(
-                e -> {
-                  remainingEventIds.remove(e.getEventId());
-                });
+  private void buildApiNodes() {
+    BitSet remainingEvents = new BitSet(events.size());
+    remainingEvents.set(0, events.size());
+
+    for (int i = entryApiBoundaryEventIdx.nextSetBit(0);
+        i >= 0;
+        i = entryApiBoundaryEventIdx.nextSetBit(i + 1)) {
+      // create new ApiNode from the events in the api boundary
+      int[] apiNodeEventIndices = buildApiNode(i);
+
+      // Remove the events in ApiNode from remainingEvents
+      for (int eventIdx : apiNodeEventIndices) {
+        remainingEvents.clear(eventIdx);
       }
     }
 
-    if (!remainingEventIds.isEmpty()) {
+    if (!remainingEvents.isEmpty()) {
       // Process all the roots which aren't processed yet.
-      for (Event event : graph.getRootEvents()) {
-        if (!remainingEventIds.contains(event.getEventId())) {
+      for (int i = 0; i < events.size(); i++) {
+        if (eventsWithParent.get(i) || !remainingEvents.get(i)) {
           continue;
         }
 
+        Event event = events.get(i);
         // If the span is an exit span, then this is a separate root and could happen when
         // some intermediate spans were missing (broken trace) or this could the case where
         // the caller only did exit call without an incoming entry (client only).
         // TODO: What if the root is an internal span?
         if (EnrichedSpanUtils.isExitSpan(event)) {
           // Get all the spans that should be included in this ApiNode and create new node.
-          ApiNode<Event> apiNode = buildApiNode(graph, event);
+          int[] apiNodeEventIndices = buildApiNode(i);
 
           // We expect all events to be present in the remaining events here.
-          Set<ByteBuffer> newEventIds =
-              apiNode.getEvents().stream().map(Event::getEventId).collect(Collectors.toSet());
-          Set<ByteBuffer> additionalEvents = Sets.difference(newEventIds, remainingEventIds);
+          Set<String> additionalEvents =
+              Arrays.stream(apiNodeEventIndices)
+                  .filter(eventIdx -> !remainingEvents.get(eventIdx))
+                  .mapToObj(eventIdx -> HexUtils.getHex(events.get(eventIdx).getEventId()))
+                  .collect(Collectors.toSet());
           if (!additionalEvents.isEmpty()) {
             LOGGER.warn(
-                "Unexpected spans are included in ApiNode; additionalSpans: {}",
-                additionalEvents.stream().map(HexUtils::getHex).collect(Collectors.toSet()));
+                "Unexpected spans are included in ApiNode; additionalSpans: {}", additionalEvents);
           }
 
-          apiNodeList.add(apiNode);
-          apiNode.getEvents().forEach(e -> remainingEventIds.remove(e.getEventId()));
+          for (int eventIdx : apiNodeEventIndices) {
+            remainingEvents.clear(eventIdx);
+          }
         } else if (!StringUtils.equals(
             EnrichedSpanUtils.getSpanType(event), UNKNOWN_SPAN_KIND_VALUE)) {
           if (LOGGER.isDebugEnabled()) {
@@ -214,32 +369,37 @@ public class ApiTraceGraph {
       }
     }
 
-    if (!remainingEventIds.isEmpty() && LOGGER.isDebugEnabled()) {
+    if (!remainingEvents.isEmpty() && LOGGER.isDebugEnabled()) {
       LOGGER.debug(
           "Not all spans from trace are included in ApiNodes; traceId: {}, spanIds: {}",
           HexUtils.getHex(trace.getTraceId()),
-          remainingEventIds.stream().map(HexUtils::getHex).collect(Collectors.toSet()));
+          remainingEvents.stream()
+              .mapToObj(i -> HexUtils.getHex(events.get(i).getEventId()))
+              .collect(Collectors.toSet()));
     }
   }
 
   /**
-   * Traverse events starting from the {@code rootEvent} and find out all the api boundary events it
-   * leads to
+   * Traverse events starting from the event at {@code rootIdx} and find out all the api boundary
+   * events it leads to, then adds the api node of these events. Returns the indices of the events
+   * of the api node.
    */
-  private ApiNode<Event> buildApiNode(StructuredTraceGraph graph, Event rootEvent) {
-    List<Event> events = new ArrayList<>();
-    events.add(rootEvent);
+  private int[] buildApiNode(int rootIdx) {
+    IntStream.Builder apiNodeEventIndices = IntStream.builder();
+    apiNodeEventIndices.add(rootIdx);
 
-    List<Event> exitApiBoundaryEvents = new ArrayList<>();
-    if (EnrichedSpanUtils.isExitApiBoundary(rootEvent)) {
-      exitApiBoundaryEvents.add(rootEvent);
+    IntStream.Builder exitApiBoundaryEventIndices = IntStream.builder();
+    if (exitApiBoundaryEventIdx.get(rootIdx)) {
+      exitApiBoundaryEventIndices.add(rootIdx);
     }
 
-    Queue<Event> q = new LinkedList<>();
-    q.add(rootEvent);
+    int[] queue = new int[16];
+    int queueHead = 0;
+    int queueTail = 0;
+    queue[queueTail++] = rootIdx;
 
-    while (!q.isEmpty()) {
-      Event e = q.remove();
+    while (queueHead < queueTail) {
+      int eventIdx = queue[queueHead++];
       // This is the main logic of filtering out events which lies in an API boundary.
       // Rest of the code is just filtering out entities and edges based on the events in API
       // boundary
@@ -249,214 +409,160 @@ public class ApiTraceGraph {
       // We should not process the children of exit boundary span
       // 2. if the child is an entry boundary, we have a new boundary. Ignore this child
       // 3. if the children of `e` is null, add `e` to the api boundary
-      List<Event> children = graph.getChildrenEvents(e);
-      if (children != null) {
-        for (Event child : children) {
-          if (EnrichedSpanUtils.isExitApiBoundary(child)) {
-            events.add(child);
-            exitApiBoundaryEvents.add(child);
-          } else if (EnrichedSpanUtils.isEntryApiBoundary(child)) {
-            // a new api boundary. don't do anything
-          } else {
-            q.add(child);
-            // an intermediate event. intermediate events are inside API boundary
-            events.add(child);
+      for (int c = childOffsets[eventIdx]; c < childOffsets[eventIdx + 1]; c++) {
+        int childIdx = childEventIndices[c];
+        if (exitApiBoundaryEventIdx.get(childIdx)) {
+          apiNodeEventIndices.add(childIdx);
+          exitApiBoundaryEventIndices.add(childIdx);
+        } else if (entryApiBoundaryEventIdx.get(childIdx)) {
+          // a new api boundary. don't do anything
+        } else {
+          if (queueTail == queue.length) {
+            queue = Arrays.copyOf(queue, queue.length * 2);
           }
+          queue[queueTail++] = childIdx;
+          // an intermediate event. intermediate events are inside API boundary
+          apiNodeEventIndices.add(childIdx);
         }
       }
     }
 
-    return new ApiNode<>(
-        rootEvent,
-        events,
-        (EnrichedSpanUtils.isEntryApiBoundary(rootEvent) ? rootEvent : null),
-        exitApiBoundaryEvents);
+    int[] eventIndices = apiNodeEventIndices.build().toArray();
+    addApiNode(
+        eventIndices,
+        exitApiBoundaryEventIndices.build().toArray(),
+        entryApiBoundaryEventIdx.get(rootIdx));
+    return eventIndices;
   }
 
-  private void buildApiNodeEdges(StructuredTraceGraph graph) {
+  /** Adds the api node of the given events, the first one being its head event. */
+  private void addApiNode(
+      int[] eventIndices, int[] exitApiBoundaryEventIndices, boolean hasEntryApiBoundaryEvent) {
+    List<Event> apiNodeEvents = new ArrayList<>(eventIndices.length);
+    for (int eventIdx : eventIndices) {
+      apiNodeEvents.add(events.get(eventIdx));
+    }
+    List<Event> exitApiBoundaryEvents = new ArrayList<>(exitApiBoundaryEventIndices.length);
+    for (int eventIdx : exitApiBoundaryEventIndices) {
+      exitApiBoundaryEvents.add(events.get(eventIdx));
+    }
+
+    int headEventIdx = eventIndices[0];
+    Event headEvent = events.get(headEventIdx);
+    ApiNode<Event> apiNode =
+        new ApiNode<>(
+            headEvent,
+            apiNodeEvents,
+            (hasEntryApiBoundaryEvent ? headEvent : null),
+            exitApiBoundaryEvents);
+
+    apiNodeIndexByHeadEvent[headEventIdx] = apiNodeList.size();
+    headEventIndexByApiNode[apiNodeList.size()] = headEventIdx;
+    eventIndicesByApiNode.add(eventIndices);
+    exitBoundaryEventIndicesByApiNode.add(exitApiBoundaryEventIndices);
+    apiNodeList.add(apiNode);
+  }
+
+  private void buildApiNodeEdges() {
     // 1. get all the exit boundary events from an api node
     // 2. find all the children of exit boundary events, which will be entry boundary nodes of
     // different api nodes
-    // 3. find all the api nodes based on children of exit boundary events from
-    // `entryBoundaryToApiNode`
+    // 3. find all the api nodes based on children of exit boundary events, from the api node index
+    // of their head event
     // 4. connect the exit boundary and entry boundary of different api node with an edge
-    for (ApiNode<Event> apiNode : apiNodeList) {
+    for (int apiNodeIdx = 0; apiNodeIdx < apiNodeList.size(); apiNodeIdx++) {
+      outboundEdgesStart[apiNodeIdx] = apiNodeEventEdgeList.size();
       // exit boundary events of api node
-      List<Event> exitBoundaryEvents = apiNode.getExitApiBoundaryEvents();
-      for (Event exitBoundaryEvent : exitBoundaryEvents) {
-        List<Event> exitBoundaryEventChildren = graph.getChildrenEvents(exitBoundaryEvent);
-        if (exitBoundaryEventChildren != null) {
-          for (Event exitBoundaryEventChild : exitBoundaryEventChildren) {
-            // if the child of an exit boundary event is entry api boundary type, which should be
-            // always!
-            if (EnrichedSpanUtils.isEntryApiBoundary(exitBoundaryEventChild)) {
-              // get the api node exit boundary event is connecting to
-              ApiNode<Event> destinationApiNode =
-                  entryApiBoundaryEventIdToApiNode.get(exitBoundaryEventChild.getEventId());
-
-              Optional<ApiNodeEventEdge> edgeBetweenApiNodes =
-                  createEdgeBetweenApiNodes(
-                      apiNode, destinationApiNode, exitBoundaryEvent, exitBoundaryEventChild);
-              edgeBetweenApiNodes.ifPresent(
-                  edge -> {
-                    apiNodeEventEdgeList.add(edge);
-                    apiExitBoundaryEventIdxWithOutgoingEdge.add(edge.getSrcEventIndex());
-                    apiEntryBoundaryEventIdxWithIncomingEdge.add(edge.getTgtEventIndex());
-                    apiNodeIdxToEdges
-                        .computeIfAbsent(
-                            apiNodeHeadEventIdToIndex.get(apiNode.getHeadEvent().getEventId()),
-                            v -> Sets.newHashSet())
-                        .add(apiNodeEventEdgeList.size() - 1);
-                  });
-            } else {
-              if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug(
-                    "Exit boundary event with eventId: {}, eventName: {}, serviceName: {},"
-                        + " can only have entry boundary event as child. Non-entry child:"
-                        + " childEventId: {}, childEventName: {}, childServiceName: {}."
-                        + " traceId for events: {}",
-                    HexUtils.getHex(exitBoundaryEvent.getEventId()),
-                    exitBoundaryEvent.getEventName(),
-                    exitBoundaryEvent.getServiceName(),
-                    HexUtils.getHex(exitBoundaryEventChild.getEventId()),
-                    exitBoundaryEventChild.getEventName(),
-                    exitBoundaryEventChild.getServiceName(),
-                    HexUtils.getHex(trace.getTraceId()));
-              }
-            }
-          }
-        }
-      }
-      // Sometimes an exit span might be missing for services like Istio, Kong.
-      // Only Entry spans will be populated for these services,
-      // an edge must be created between these services as well.
-      // 1. get entry boundary event from an api node.
-      // 2. find all the children of entry boundary event, which will be entry boundary nodes of
-      //  different api nodes
-      // 3. Check both parent span and child belong to different service as well.
-      // 4. connect the entry boundary of different api nodes with an edge.
-      Optional<Event> entryBoundaryEvent = apiNode.getEntryApiBoundaryEvent();
-      if (entryBoundaryEvent.isPresent()) {
-        List<Event> children = graph.getChildrenEvents(entryBoundaryEvent.get());
-        if (children != null) {
-          for (Event child : children) {
-            // if the child of an entry boundary event is an entry api boundary type,
-            // which can happen if exit span missing and both belongs to different services.
-            if (EnrichedSpanUtils.isEntryApiBoundary(child)
-                && EnrichedSpanUtils.areBothSpansFromDifferentService(
-                    child, entryBoundaryEvent.get())) {
-              ApiNode<Event> destinationApiNode = entryApiBoundaryEventIdToApiNode.get(child);
-              if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug(
-                    "Edge between entry boundaries servicename: {} span: {}  to servicename: {} span: {} of trace {}",
-                    entryBoundaryEvent.get().getServiceName(),
-                    HexUtils.getHex(entryBoundaryEvent.get().getEventId()),
-                    child.getServiceName(),
-                    HexUtils.getHex(child.getEventId()),
-                    HexUtils.getHex(trace.getTraceId()));
-              }
-              Optional<ApiNodeEventEdge> edgeBetweenApiNodes =
-                  createEdgeBetweenApiNodes(
-                      apiNode, destinationApiNode, entryBoundaryEvent.get(), child);
-              edgeBetweenApiNodes.ifPresent(apiNodeEventEdgeList::add);
+      for (int exitBoundaryEventIdx : exitBoundaryEventIndicesByApiNode.get(apiNodeIdx)) {
+        for (int c = childOffsets[exitBoundaryEventIdx];
+            c < childOffsets[exitBoundaryEventIdx + 1];
+            c++) {
+          int childIdx = childEventIndices[c];
+          // if the child of an exit boundary event is entry api boundary type, which should be
+          // always!
+          if (entryApiBoundaryEventIdx.get(childIdx)) {
+            // get the api node exit boundary event is connecting to, every entry boundary event
+            // is the head of an api node
+            addApiNodeEdge(
+                apiNodeIdx,
+                apiNodeIndexByHeadEvent[childIdx],
+                exitBoundaryEventIdx,
+                childIdx,
+                childEdgeIndices[c]);
+          } else {
+            if (LOGGER.isDebugEnabled()) {
+              Event exitBoundaryEvent = events.get(exitBoundaryEventIdx);
+              Event exitBoundaryEventChild = events.get(childIdx);
+              LOGGER.debug(
+                  "Exit boundary event with eventId: {}, eventName: {}, serviceName: {},"
+                      + " can only have entry boundary event as child. Non-entry child:"
+                      + " childEventId: {}, childEventName: {}, childServiceName: {}."
+                      + " traceId for events: {}",
+                  HexUtils.getHex(exitBoundaryEvent.getEventId()),
+                  exitBoundaryEvent.getEventName(),
+                  exitBoundaryEvent.getServiceName(),
+                  HexUtils.getHex(exitBoundaryEventChild.getEventId()),
+                  exitBoundaryEventChild.getEventName(),
+                  exitBoundaryEventChild.getServiceName(),
+                  HexUtils.getHex(trace.getTraceId()));
             }
           }
         }
       }
-    }
-  }
+      outboundEdgesEnd[apiNodeIdx] = apiNodeEventEdgeList.size();
 
-  private Optional<ApiNodeEventEdge> createEdgeBetweenApiNodes(
-      ApiNode<Event> srcApiNode,
-      ApiNode<Event> destinationApiNode,
-      Event exitBoundaryEventFromSrcApiNode,
-      Event entryBoundaryEventOfDestinationApiNode) {
-    if (destinationApiNode != null) {
-      // get the indexes in apiNodes list to create an edge
-      Integer srcIndex = apiNodeHeadEventIdToIndex.get(srcApiNode.getHeadEvent().getEventId());
-      Integer targetIndex =
-          apiNodeHeadEventIdToIndex.get(destinationApiNode.getHeadEvent().getEventId());
-
-      // Get the actual edge from trace connecting exitBoundaryEvent and child
-      Integer srcIndexInTrace =
-          eventIdToIndexInTrace.get(exitBoundaryEventFromSrcApiNode.getEventId());
-      Integer targetIndexInTrace =
-          eventIdToIndexInTrace.get(entryBoundaryEventOfDestinationApiNode.getEventId());
-
-      Edge edgeInTrace = traceEdgeTable.get(srcIndexInTrace, targetIndexInTrace);
-
-      if (null == edgeInTrace) {
-        LOGGER.warn(
-            "There should be an edge between src event {} and target event {}",
-            exitBoundaryEventFromSrcApiNode,
-            entryBoundaryEventOfDestinationApiNode);
-      } else {
-        ApiNodeEventEdge apiNodeEventEdge =
-            fastNewBuilder(ApiNodeEventEdge.Builder.class)
-                .setSrcApiNodeIndex(srcIndex)
-                .setTgtApiNodeIndex(targetIndex)
-                .setSrcEventIndex(srcIndexInTrace)
-                .setTgtEventIndex(targetIndexInTrace)
-                .setAttributes(edgeInTrace.getAttributes())
-                .setMetrics(edgeInTrace.getMetrics())
-                .setStartTimeMillis(edgeInTrace.getStartTimeMillis())
-                .setEndTimeMillis(edgeInTrace.getEndTimeMillis())
-                .build();
-
-        return Optional.of(apiNodeEventEdge);
-      }
-    } else {
-      if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug(
-            "Strange! Entry boundary event {} should already have been discovered as an api node",
-            entryBoundaryEventOfDestinationApiNode);
-      }
+      // Sometimes an exit span might be missing for services like Istio, Kong, and an entry
+      // boundary event has entry boundary events of other services as children. Those api nodes
+      // are not connected by an edge.
     }
-    return Optional.empty();
-  }
-
-  private void buildApiEntryBoundaryEventWithNoIncomingEdge() {
-    apiNodeList.stream()
-        .map(ApiNode::getEntryApiBoundaryEvent)
-        .filter(Optional::isPresent)
-        .map(e -> eventIdToIndexInTrace.get(e.get().getEventId()))
-        .filter(eventIdx -> !apiEntryBoundaryEventIdxWithIncomingEdge.contains(eventIdx))
-        .forEach(apiEntryBoundaryEventIdxWithNoIncomingEdge::add);
   }
 
-  private void buildApiExitBoundaryEventWithNoOutgoingEdge() {
-    apiNodeList.stream()
-        .flatMap(apiNode -> apiNode.getExitApiBoundaryEvents().stream())
-        .map(e -> eventIdToIndexInTrace.get(e.getEventId()))
-        .filter(eventIdx -> !apiExitBoundaryEventIdxWithOutgoingEdge.contains(eventIdx))
-        .forEach(apiExitBoundaryEventIdxWithNoOutgoingEdge::add);
+  private void addApiNodeEdge(
+      int srcApiNodeIdx,
+      int destinationApiNodeIdx,
+      int exitBoundaryEventIdxFromSrcApiNode,
+      int entryBoundaryEventIdxOfDestinationApiNode,
+      int traceEdgeIdx) {
+    Edge edgeInTrace = trace.getEventEdgeList().get(traceEdgeIdx);
+    traceEdgeIndexByApiNodeEdge[apiNodeEventEdgeList.size()] = traceEdgeIdx;
+    apiNodeEventEdgeList.add(
+        fastNewBuilder(ApiNodeEventEdge.Builder.class)
+            .setSrcApiNodeIndex(srcApiNodeIdx)
+            .setTgtApiNodeIndex(destinationApiNodeIdx)
+            .setSrcEventIndex(exitBoundaryEventIdxFromSrcApiNode)
+            .setTgtEventIndex(entryBoundaryEventIdxOfDestinationApiNode)
+            .setAttributes(edgeInTrace.getAttributes())
+            .setMetrics(edgeInTrace.getMetrics())
+            .setStartTimeMillis(edgeInTrace.getStartTimeMillis())
+            .setEndTimeMillis(edgeInTrace.getEndTimeMillis())
+            .build());
+    apiExitBoundaryEventIdxWithOutgoingEdge.set(exitBoundaryEventIdxFromSrcApiNode);
+    apiEntryBoundaryEventIdxWithIncomingEdge.set(entryBoundaryEventIdxOfDestinationApiNode);
   }
 
-  private void buildApiNodeToIndexMap() {
-    for (int i = 0; i < apiNodeList.size(); i++) {
-      ApiNode<Event> apiNode = apiNodeList.get(i);
-      apiNode
-          .getEntryApiBoundaryEvent()
-          .ifPresent(e -> entryApiBoundaryEventIdToApiNode.put(e.getEventId(), apiNode));
-      apiNodeHeadEventIdToIndex.put(apiNode.getHeadEvent().getEventId(), i);
+  private void buildApiEntryBoundaryEventWithNoIncomingEdge() {
+    for (int apiNodeIdx = 0; apiNodeIdx < apiNodeList.size(); apiNodeIdx++) {
+      if (apiNodeList.get(apiNodeIdx).getEntryApiBoundaryEvent().isPresent()) {
+        apiEntryBoundaryEventIdxWithNoIncomingEdge.set(headEventIndexByApiNode[apiNodeIdx]);
+      }
     }
+    apiEntryBoundaryEventIdxWithNoIncomingEdge.andNot(apiEntryBoundaryEventIdxWithIncomingEdge);
   }
 
-  private void buildTraceEdgeTable() {
-    for (Edge edge : trace.getEventEdgeList()) {
-      traceEdgeTable.put(edge.getSrcIndex(), edge.getTgtIndex(), edge);
+  private void buildApiExitBoundaryEventWithNoOutgoingEdge() {
+    for (int[] exitBoundaryEventIndices : exitBoundaryEventIndicesByApiNode) {
+      for (int exitBoundaryEventIdx : exitBoundaryEventIndices) {
+        apiExitBoundaryEventIdxWithNoOutgoingEdge.set(exitBoundaryEventIdx);
+      }
     }
+    apiExitBoundaryEventIdxWithNoOutgoingEdge.andNot(apiExitBoundaryEventIdxWithOutgoingEdge);
   }
 
-  // for each event, assigns a unique integer to it
-  private void buildEventIdToIndexInTrace() {
-    int count = 0;
-    for (Event event : trace.getEventList()) {
-      eventIdToIndexInTrace.put(event.getEventId(), count++);
+  private List<Event> getEventsForIndices(BitSet set) {
+    List<Event> eventsForIndices = new ArrayList<>(set.cardinality());
+    for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+      eventsForIndices.add(events.get(i));
     }
-  }
-
-  private List<Event> getEventsForIndices(Set<Integer> set) {
-    return set.stream().map(v -> trace.getEventList().get(v)).collect(Collectors.toList());
+    return eventsForIndices;
   }
 }
@@ -0,0 +1,373 @@
+package org.hypertrace.traceenricher.trace.util;
+
+import static org.hypertrace.core.datamodel.shared.AvroBuilderCache.fastNewBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import org.hypertrace.core.datamodel.ApiNodeEventEdge;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.EventRef;
+import org.hypertrace.core.datamodel.EventRefType;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.HexUtils;
+import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The topology of the api trace graph of a trace, which the trace enricher adds to the enriched
+ * trace so that the consumers of the trace restore the graph with {@link
+ * ApiTraceGraph#ApiTraceGraph(StructuredTrace, ApiTraceGraphTopology)} instead of building it
+ * again. By index in the event list of the trace, it holds:
+ *
+ * <ul>
+ *   <li>the events of each api node, head event first, its exit boundary events, and whether its
+ *       head event is its entry boundary event
+ *   <li>the edges between the api nodes, with the index of the event edge of the trace behind each
+ *   <li>the parent of each event, see {@link #getParentEventId(Event)}
+ * </ul>
+ *
+ * <p>It is kept as varints in the binary trace attribute {@link
+ * EnrichedSpanConstants#API_TRACE_GRAPH_TOPOLOGY}, along with the number of events and event edges
+ * of the trace it was taken from. It is ignored if these no longer match the trace.
+ */
+public class ApiTraceGraphTopology {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ApiTraceGraphTopology.class);
+
+  public static final int NO_PARENT = -1;
+  public static final int PARENT_NOT_IN_TRACE = -2;
+
+  private static final int VERSION = 1;
+  private static final int ENTRY_BOUNDARY_EVENT_FLAG = 1;
+  private static final int EDGE_FIELDS = 5;
+
+  private final int eventCount;
+  private final int eventEdgeCount;
+  private final int[][] apiNodeEventIndices;
+  private final int[][] apiNodeExitBoundaryEventIndices;
+  private final boolean[] apiNodeHasEntryBoundaryEvent;
+  // for each api node edge in order: its source and target api node, its source and target event
+  // and the trace edge behind it
+  private final int[] apiNodeEdges;
+  private final int[] parentEventIndices;
+
+  private ApiTraceGraphTopology(
+      int eventCount,
+      int eventEdgeCount,
+      int[][] apiNodeEventIndices,
+      int[][] apiNodeExitBoundaryEventIndices,
+      boolean[] apiNodeHasEntryBoundaryEvent,
+      int[] apiNodeEdges,
+      int[] parentEventIndices) {
+    this.eventCount = eventCount;
+    this.eventEdgeCount = eventEdgeCount;
+    this.apiNodeEventIndices = apiNodeEventIndices;
+    this.apiNodeExitBoundaryEventIndices = apiNodeExitBoundaryEventIndices;
+    this.apiNodeHasEntryBoundaryEvent = apiNodeHasEntryBoundaryEvent;
+    this.apiNodeEdges = apiNodeEdges;
+    this.parentEventIndices = parentEventIndices;
+  }
+
+  /** Takes the topology of the api trace graph, and the parents of the events of its trace. */
+  public static ApiTraceGraphTopology of(ApiTraceGraph graph) {
+    StructuredTrace trace = graph.getTrace();
+    int apiNodeCount = graph.getApiNodeList().size();
+    int[][] apiNodeEventIndices = new int[apiNodeCount][];
+    int[][] apiNodeExitBoundaryEventIndices = new int[apiNodeCount][];
+    boolean[] apiNodeHasEntryBoundaryEvent = new boolean[apiNodeCount];
+    for (int i = 0; i < apiNodeCount; i++) {
+      apiNodeEventIndices[i] = graph.getApiNodeEventIndices(i);
+      apiNodeExitBoundaryEventIndices[i] = graph.getApiNodeExitBoundaryEventIndices(i);
+      apiNodeHasEntryBoundaryEvent[i] =
+          graph.getApiNodeList().get(i).getEntryApiBoundaryEvent().isPresent();
+    }
+
+    List<ApiNodeEventEdge> edges = graph.getApiNodeEventEdgeList();
+    int[] apiNodeEdges = new int[edges.size() * EDGE_FIELDS];
+    for (int i = 0; i < edges.size(); i++) {
+      ApiNodeEventEdge edge = edges.get(i);
+      apiNodeEdges[i * EDGE_FIELDS] = edge.getSrcApiNodeIndex();
+      apiNodeEdges[i * EDGE_FIELDS + 1] = edge.getTgtApiNodeIndex();
+      apiNodeEdges[i * EDGE_FIELDS + 2] = edge.getSrcEventIndex();
+      apiNodeEdges[i * EDGE_FIELDS + 3] = edge.getTgtEventIndex();
+      apiNodeEdges[i * EDGE_FIELDS + 4] = graph.getApiNodeEdgeTraceEdgeIndex(i);
+    }
+
+    List<Event> events = trace.getEventList();
+    int[] parentEventIndices = new int[events.size()];
+    for (int i = 0; i < events.size(); i++) {
+      ByteBuffer parentEventId = getParentEventId(events.get(i));
+      if (parentEventId == null) {
+        parentEventIndices[i] = NO_PARENT;
+      } else {
+        int parentEventIdx = graph.getEventIdIndex().indexOf(parentEventId);
+        parentEventIndices[i] = parentEventIdx < 0 ? PARENT_NOT_IN_TRACE : parentEventIdx;
+      }
+    }
+
+    return new ApiTraceGraphTopology(
+        events.size(),
+        trace.getEventEdgeList().size(),
+        apiNodeEventIndices,
+        apiNodeExitBoundaryEventIndices,
+        apiNodeHasEntryBoundaryEvent,
+        apiNodeEdges,
+        parentEventIndices);
+  }
+
+  /**
+   * Reads the topology added to the trace, if there is one and it was taken from the trace as it
+   * is now.
+   */
+  public static Optional<ApiTraceGraphTopology> fromTrace(StructuredTrace trace) {
+    if (trace.getAttributes() == null || trace.getAttributes().getAttributeMap() == null) {
+      return Optional.empty();
+    }
+    AttributeValue value =
+        trace
+            .getAttributes()
+            .getAttributeMap()
+            .get(EnrichedSpanConstants.API_TRACE_GRAPH_TOPOLOGY);
+    if (value == null || value.getBinaryValue() == null) {
+      return Optional.empty();
+    }
+
+    ApiTraceGraphTopology topology;
+    try {
+      topology = decode(value.getBinaryValue());
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      LOGGER.warn(
+          "Invalid api trace graph topology for traceId: {}",
+          HexUtils.getHex(trace.getTraceId()),
+          e);
+      return Optional.empty();
+    }
+    if (topology.eventCount != trace.getEventList().size()
+        || topology.eventEdgeCount != trace.getEventEdgeList().size()) {
+      return Optional.empty();
+    }
+    return Optional.of(topology);
+  }
+
+  /** Adds the topology to the trace it was taken from. */
+  public void addToTrace(StructuredTrace trace) {
+    trace
+        .getAttributes()
+        .getAttributeMap()
+        .put(
+            EnrichedSpanConstants.API_TRACE_GRAPH_TOPOLOGY,
+            fastNewBuilder(AttributeValue.Builder.class).setBinaryValue(encode()).build());
+  }
+
+  /**
+   * Returns the index of the parent of the event at the given index, {@link #NO_PARENT} if it has
+   * none, or {@link #PARENT_NOT_IN_TRACE} if its parent is not one of the events of the trace.
+   */
+  public int getParentEventIndex(int eventIdx) {
+    return parentEventIndices[eventIdx];
+  }
+
+  /**
+   * Note: As of now, open tracing specification represents two construct for providing support for
+   * relation between spans: child_of and follow_from. Ref : https://opentracing.io/specification/
+   *
+   * <p>On the other hand, as of now, open telemetry supports only concept of parent Ref :
+   * https://github.com/open-telemetry/opentelemetry-proto/blob/main/opentelemetry/proto/trace/v1/trace.proto#L85
+   *
+   * <p>However, there are open discussion for similar construct on otel community. Ref:
+   * https://github.com/open-telemetry/opentelemetry-specification/issues/65
+   *
+   * <p>As, both the construct `child_of` and `follow_from` represent parent-child relation in
+   * common where in one case parent is interested in child span's result while in other case not.
+   *
+   * <p>So, to support common behaviour, we will be establish link for `follow_from` as well.
+   *
+   * <p>Also expecting only 1 child-parent relation, returns null if there is none
+   */
+  public static ByteBuffer getParentEventId(Event event) {
+    if (event.getEventRefList() == null) {
+      return null;
+    }
+    ByteBuffer followFromEventId = null;
+    for (EventRef eventRef : event.getEventRefList()) {
+      if (eventRef.getRefType() == EventRefType.CHILD_OF) {
+        return eventRef.getEventId();
+      } else if (followFromEventId == null) {
+        followFromEventId = eventRef.getEventId();
+      }
+    }
+    return followFromEventId;
+  }
+
+  int getApiNodeCount() {
+    return apiNodeEventIndices.length;
+  }
+
+  int[] getApiNodeEventIndices(int apiNodeIdx) {
+    return apiNodeEventIndices[apiNodeIdx];
+  }
+
+  int[] getApiNodeExitBoundaryEventIndices(int apiNodeIdx) {
+    return apiNodeExitBoundaryEventIndices[apiNodeIdx];
+  }
+
+  boolean hasApiNodeEntryBoundaryEvent(int apiNodeIdx) {
+    return apiNodeHasEntryBoundaryEvent[apiNodeIdx];
+  }
+
+  int getApiNodeEdgeCount() {
+    return apiNodeEdges.length / EDGE_FIELDS;
+  }
+
+  int getApiNodeEdgeSrcApiNodeIndex(int apiNodeEdgeIdx) {
+    return apiNodeEdges[apiNodeEdgeIdx * EDGE_FIELDS];
+  }
+
+  int getApiNodeEdgeTgtApiNodeIndex(int apiNodeEdgeIdx) {
+    return apiNodeEdges[apiNodeEdgeIdx * EDGE_FIELDS + 1];
+  }
+
+  int getApiNodeEdgeSrcEventIndex(int apiNodeEdgeIdx) {
+    return apiNodeEdges[apiNodeEdgeIdx * EDGE_FIELDS + 2];
+  }
+
+  int getApiNodeEdgeTgtEventIndex(int apiNodeEdgeIdx) {
+    return apiNodeEdges[apiNodeEdgeIdx * EDGE_FIELDS + 3];
+  }
+
+  int getApiNodeEdgeTraceEdgeIndex(int apiNodeEdgeIdx) {
+    return apiNodeEdges[apiNodeEdgeIdx * EDGE_FIELDS + 4];
+  }
+
+  ByteBuffer encode() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeVarint(out, VERSION);
+    writeVarint(out, eventCount);
+    writeVarint(out, eventEdgeCount);
+
+    writeVarint(out, apiNodeEventIndices.length);
+    for (int i = 0; i < apiNodeEventIndices.length; i++) {
+      writeVarint(out, apiNodeHasEntryBoundaryEvent[i] ? ENTRY_BOUNDARY_EVENT_FLAG : 0);
+      writeVarints(out, apiNodeEventIndices[i]);
+      writeVarints(out, apiNodeExitBoundaryEventIndices[i]);
+    }
+
+    writeVarints(out, apiNodeEdges);
+
+    // shifted, as the parent of an event can be one of the negative constants
+    for (int parentEventIdx : parentEventIndices) {
+      writeVarint(out, parentEventIdx - PARENT_NOT_IN_TRACE);
+    }
+    return ByteBuffer.wrap(out.toByteArray());
+  }
+
+  /** Reads an encoded topology, checking that its indices are within the counts it holds. */
+  static ApiTraceGraphTopology decode(ByteBuffer encoded) {
+    ByteBuffer buffer = encoded.duplicate();
+    int version = readVarint(buffer);
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported api trace graph topology version " + version);
+    }
+    int eventCount = readLength(buffer);
+    int eventEdgeCount = readIndex(buffer, Integer.MAX_VALUE);
+
+    int apiNodeCount = readLength(buffer);
+    int[][] apiNodeEventIndices = new int[apiNodeCount][];
+    int[][] apiNodeExitBoundaryEventIndices = new int[apiNodeCount][];
+    boolean[] apiNodeHasEntryBoundaryEvent = new boolean[apiNodeCount];
+    for (int i = 0; i < apiNodeCount; i++) {
+      apiNodeHasEntryBoundaryEvent[i] = (readVarint(buffer) & ENTRY_BOUNDARY_EVENT_FLAG) != 0;
+      apiNodeEventIndices[i] = readIndices(buffer, eventCount);
+      if (apiNodeEventIndices[i].length == 0) {
+        throw new IllegalArgumentException("Api node without head event");
+      }
+      apiNodeExitBoundaryEventIndices[i] = readIndices(buffer, eventCount);
+    }
+
+    int[] apiNodeEdges = new int[readLength(buffer)];
+    if (apiNodeEdges.length % EDGE_FIELDS != 0) {
+      throw new IllegalArgumentException("Incomplete api node edge");
+    }
+    for (int i = 0; i < apiNodeEdges.length; i += EDGE_FIELDS) {
+      apiNodeEdges[i] = readIndex(buffer, apiNodeCount);
+      // the edges of an api node follow each other
+      if (i > 0 && apiNodeEdges[i] < apiNodeEdges[i - EDGE_FIELDS]) {
+        throw new IllegalArgumentException("Api node edges out of order");
+      }
+      apiNodeEdges[i + 1] = readIndex(buffer, apiNodeCount);
+      apiNodeEdges[i + 2] = readIndex(buffer, eventCount);
+      apiNodeEdges[i + 3] = readIndex(buffer, eventCount);
+      apiNodeEdges[i + 4] = readIndex(buffer, eventEdgeCount);
+    }
+
+    int[] parentEventIndices = new int[eventCount];
+    for (int i = 0; i < eventCount; i++) {
+      parentEventIndices[i] =
+          readIndex(buffer, eventCount - PARENT_NOT_IN_TRACE) + PARENT_NOT_IN_TRACE;
+    }
+
+    if (buffer.hasRemaining()) {
+      throw new IllegalArgumentException("Trailing bytes after api trace graph topology");
+    }
+    return new ApiTraceGraphTopology(
+        eventCount,
+        eventEdgeCount,
+        apiNodeEventIndices,
+        apiNodeExitBoundaryEventIndices,
+        apiNodeHasEntryBoundaryEvent,
+        apiNodeEdges,
+        parentEventIndices);
+  }
+
+  private static void writeVarints(ByteArrayOutputStream out, int[] values) {
+    writeVarint(out, values.length);
+    for (int value : values) {
+      writeVarint(out, value);
+    }
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int[] readIndices(ByteBuffer buffer, int bound) {
+    int[] indices = new int[readLength(buffer)];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = readIndex(buffer, bound);
+    }
+    return indices;
+  }
+
+  // a count of values that follow, which each take at least a byte
+  private static int readLength(ByteBuffer buffer) {
+    return readIndex(buffer, buffer.remaining() + 1);
+  }
+
+  private static int readIndex(ByteBuffer buffer, int bound) {
+    int value = readVarint(buffer);
+    if (value < 0 || value >= bound) {
+      throw new IllegalArgumentException("Index " + value + " out of bounds " + bound);
+    }
+    return value;
+  }
+
+  private static int readVarint(ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+}
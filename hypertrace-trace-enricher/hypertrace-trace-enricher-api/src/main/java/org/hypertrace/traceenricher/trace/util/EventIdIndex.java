@@ -0,0 +1,87 @@
+package org.hypertrace.traceenricher.trace.util;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hypertrace.core.datamodel.Event;
+
+/**
+ * Maps the ids of the events of a trace to their index in its event list. Span ids are 8 bytes, so
+ * they are usually the keys of an open addressing table of longs, which neither boxes the indices
+ * nor hashes the id buffers. Traces with ids of other lengths fall back to a hash map.
+ */
+final class EventIdIndex {
+  private static final int SPAN_ID_LENGTH = Long.BYTES;
+
+  // the open addressing table, a value of 0 marks an empty slot, others are the index + 1
+  private final long[] keys;
+  private final int[] values;
+  private final int mask;
+
+  // only used when some id is not a span id
+  private final Map<ByteBuffer, Integer> indexById;
+
+  EventIdIndex(List<Event> events) {
+    boolean spanIds =
+        events.stream().allMatch(event -> event.getEventId().remaining() == SPAN_ID_LENGTH);
+    if (spanIds) {
+      // at most half full
+      int capacity = Integer.highestOneBit(Math.max(events.size(), 1) * 2 - 1) << 1;
+      keys = new long[capacity];
+      values = new int[capacity];
+      mask = capacity - 1;
+      indexById = null;
+    } else {
+      keys = null;
+      values = null;
+      mask = 0;
+      indexById = new HashMap<>();
+    }
+
+    // a later event with the same id wins
+    for (int i = 0; i < events.size(); i++) {
+      ByteBuffer eventId = events.get(i).getEventId();
+      if (indexById != null) {
+        indexById.put(eventId, i);
+      } else {
+        long key = toKey(eventId);
+        int slot = slotOf(key);
+        while (values[slot] != 0 && keys[slot] != key) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = i + 1;
+      }
+    }
+  }
+
+  /** Returns the index of the event with the given id, or -1 if the trace has none. */
+  int indexOf(ByteBuffer eventId) {
+    if (indexById != null) {
+      Integer index = indexById.get(eventId);
+      return index == null ? -1 : index;
+    }
+    if (eventId.remaining() != SPAN_ID_LENGTH) {
+      return -1;
+    }
+
+    long key = toKey(eventId);
+    for (int slot = slotOf(key); values[slot] != 0; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        return values[slot] - 1;
+      }
+    }
+    return -1;
+  }
+
+  private int slotOf(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  // absolute get, so the position of the id is left as is
+  private static long toKey(ByteBuffer eventId) {
+    return eventId.getLong(eventId.position());
+  }
+}
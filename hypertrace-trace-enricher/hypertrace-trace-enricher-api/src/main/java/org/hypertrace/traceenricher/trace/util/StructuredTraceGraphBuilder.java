@@ -7,59 +7,24 @@ import org.hypertrace.core.datamodel.shared.StructuredTraceGraph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Builds the graph of a trace. The enrichers of a trace share its graph through their enrichment
+ * context instead, which only rebuilds it when the trace changes.
+ */
 public class StructuredTraceGraphBuilder {
   private static final Logger LOG = LoggerFactory.getLogger(StructuredTraceGraphBuilder.class);
 
-  private static final ThreadLocal<StructuredTraceGraph> cachedGraphThreadLocal =
-      new ThreadLocal<>();
-  private static final ThreadLocal<StructuredTrace> cachedTraceThreadLocal = new ThreadLocal<>();
-
   public static StructuredTraceGraph buildGraph(StructuredTrace trace) {
-    StructuredTrace cachedTrace = cachedTraceThreadLocal.get();
-    StructuredTraceGraph cachedGraph = cachedGraphThreadLocal.get();
-    boolean shouldRebuildTraceEventsGraph =
-        GraphBuilderUtil.isTraceEventsChanged(cachedTrace, trace);
-    boolean shouldRebuildTraceEntitiesGraph =
-        GraphBuilderUtil.isTraceEntitiesChanged(cachedTrace, trace);
-
-    if (null == cachedGraph
-        || GraphBuilderUtil.isDifferentTrace(cachedTrace, trace)
-        || (shouldRebuildTraceEventsGraph && shouldRebuildTraceEntitiesGraph)) {
-      Instant start = Instant.now();
-      StructuredTraceGraph graph = new StructuredTraceGraph(trace);
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(
-            "Time taken in building StructuredTraceGraph, duration_millis:{} for tenantId:{}",
-            Duration.between(start, Instant.now()).toMillis(),
-            trace.getCustomerId());
-      }
-      cachedTraceThreadLocal.set(StructuredTrace.newBuilder(trace).build());
-      cachedGraphThreadLocal.set(graph);
-      debugGraph("Case: Rebuilding the graph.", graph, trace);
-      return graph;
+    Instant start = Instant.now();
+    StructuredTraceGraph graph = new StructuredTraceGraph(trace);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(
+          "Time taken in building StructuredTraceGraph, duration_millis:{} for tenantId:{}",
+          Duration.between(start, Instant.now()).toMillis(),
+          trace.getCustomerId());
     }
-
-    if (shouldRebuildTraceEventsGraph || shouldRebuildTraceEntitiesGraph) {
-      Instant start = Instant.now();
-      if (shouldRebuildTraceEventsGraph) {
-        cachedGraph.reCreateTraceEventsGraph(trace);
-      } else {
-        cachedGraph.reCreateTraceEntitiesGraph(trace);
-      }
-      if (LOG.isDebugEnabled()) {
-        LOG.debug(
-            "Time taken in building TraceEventsGraph, duration_millis:{} for tenantId:{}",
-            Duration.between(start, Instant.now()).toMillis(),
-            trace.getCustomerId());
-      }
-      cachedTraceThreadLocal.set(StructuredTrace.newBuilder(trace).build());
-      cachedGraphThreadLocal.set(cachedGraph);
-      debugGraph("Case: Partially building the graph.", cachedGraph, trace);
-      return cachedGraph;
-    }
-
-    debugGraph("Case: Not building the graph.", cachedGraphThreadLocal.get(), trace);
-    return cachedGraph;
+    debugGraph("Case: Building the graph.", graph, trace);
+    return graph;
   }
 
   private static void debugGraph(
@@ -2,7 +2,6 @@ package org.hypertrace.traceenricher.trace.util;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockConstruction;
-import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.when;
 
 import java.nio.ByteBuffer;
@@ -14,7 +13,6 @@ import org.hypertrace.core.datamodel.StructuredTrace;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedConstruction;
-import org.mockito.MockedStatic;
 
 public class ApiTraceGraphBuilderTest {
 
@@ -35,28 +33,14 @@ public class ApiTraceGraphBuilderTest {
     when(underTestTrace.getEntityEventEdgeList()).thenReturn(List.of());
     when(underTestTrace.getEventEdgeList()).thenReturn(List.of(eventEdge));
 
-    // structure trace builder
-    try (MockedStatic<StructuredTrace> builderMockedStatic = mockStatic(StructuredTrace.class)) {
-      StructuredTrace.Builder builder = mock(StructuredTrace.Builder.class);
-      when(builder.build()).thenReturn(underTestTrace);
-
-      builderMockedStatic
-          .when(() -> StructuredTrace.newBuilder(underTestTrace))
-          .thenReturn(builder);
-
-      // make two calls, and check that first call create cache entries, and second call uses same
-      try (MockedConstruction<ApiTraceGraph> mockedConstruction =
-          mockConstruction(ApiTraceGraph.class)) {
-        // first call
-        ApiTraceGraph actual = ApiTraceGraphBuilder.buildGraph(underTestTrace);
-        Assertions.assertNotNull(actual);
-        Assertions.assertEquals(1, mockedConstruction.constructed().size());
-
-        // second call
-        ApiTraceGraph second = ApiTraceGraphBuilder.buildGraph(underTestTrace);
-        Assertions.assertEquals(actual, second);
-        Assertions.assertEquals(1, mockedConstruction.constructed().size());
-      }
+    try (MockedConstruction<ApiTraceGraph> mockedConstruction =
+        mockConstruction(ApiTraceGraph.class)) {
+      ApiTraceGraph first = ApiTraceGraphBuilder.buildGraph(underTestTrace);
+      Assertions.assertSame(mockedConstruction.constructed().get(0), first);
+
+      // not cached, the enrichment context of a trace shares its graphs between its enrichers
+      ApiTraceGraph second = ApiTraceGraphBuilder.buildGraph(underTestTrace);
+      Assertions.assertNotSame(first, second);
     }
   }
 }
@@ -0,0 +1,378 @@
+package org.hypertrace.traceenricher.trace.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.hypertrace.core.datamodel.ApiNodeEventEdge;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.Edge;
+import org.hypertrace.core.datamodel.EdgeType;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.ApiNode;
+import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
+import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
+import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
+import org.hypertrace.traceenricher.enrichedspan.constants.v1.Api;
+import org.hypertrace.traceenricher.enrichedspan.constants.v1.BoundaryTypeValue;
+import org.hypertrace.traceenricher.enrichedspan.constants.v1.CommonAttribute;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the api trace graph with {@link ReferenceApiTraceGraph}, which builds the api nodes and
+ * their edges the way the api trace graph was built on the structured trace graph, with lists of
+ * children and maps of the events. Graphs restored from their topology are compared as well.
+ */
+public class ApiTraceGraphEquivalenceTest {
+
+  private static final String SPAN_TYPE_ATTR =
+      EnrichedSpanConstants.getValue(CommonAttribute.COMMON_ATTRIBUTE_SPAN_TYPE);
+  private static final String API_BOUNDARY_TYPE_ATTR =
+      EnrichedSpanConstants.getValue(Api.API_BOUNDARY_TYPE);
+  private static final String ENTRY =
+      EnrichedSpanConstants.getValue(BoundaryTypeValue.BOUNDARY_TYPE_VALUE_ENTRY);
+  private static final String EXIT =
+      EnrichedSpanConstants.getValue(BoundaryTypeValue.BOUNDARY_TYPE_VALUE_EXIT);
+
+  private final List<Event> events = new ArrayList<>();
+  private final List<Edge> edges = new ArrayList<>();
+
+  @Test
+  public void testHotrodTrace() throws IOException {
+    URL resource =
+        Thread.currentThread().getContextClassLoader().getResource("StructuredTrace-Hotrod.avro");
+
+    SpecificDatumReader<StructuredTrace> datumReader =
+        new SpecificDatumReader<>(StructuredTrace.getClassSchema());
+    DataFileReader<StructuredTrace> dfrStructuredTrace =
+        new DataFileReader<>(new File(resource.getPath()), datumReader);
+    StructuredTrace trace = dfrStructuredTrace.next();
+    dfrStructuredTrace.close();
+    if (trace.getAttributes() == null) {
+      trace.setAttributes(Attributes.newBuilder().setAttributeMap(new HashMap<>()).build());
+    }
+
+    assertSameAsReference(trace);
+  }
+
+  @Test
+  public void testTraceWithMissingParents() {
+    int frontendEntry = addEvent("frontend", ENTRY);
+    int frontendInternal = addEvent("frontend", null);
+    int frontendExit = addEvent("frontend", EXIT);
+    addEdge(frontendEntry, frontendInternal);
+    addEdge(frontendInternal, frontendExit);
+    int customerEntry = addEvent("customer", ENTRY);
+    addEdge(frontendExit, customerEntry);
+
+    // the exit span calling the route service is missing
+    int routeEntry = addEvent("route", ENTRY);
+    int routeExit = addEvent("route", EXIT);
+    addEdge(routeEntry, routeExit);
+    // the entry span of the service called by the route service is missing
+    int driverInternal = addEvent("driver", null);
+    int driverExit = addEvent("driver", EXIT);
+    addEdge(routeExit, driverInternal);
+    addEdge(driverInternal, driverExit);
+    // the internal span between the entry and the exit span of the redis service is missing
+    int redisEntry = addEvent("redis", ENTRY);
+    addEdge(driverExit, redisEntry);
+    addEvent("redis", EXIT);
+
+    assertSameAsReference(createTrace());
+  }
+
+  @Test
+  public void testTraceWithNonEntryRoots() {
+    // a client only calling a service
+    int clientExit = addEvent("client", EXIT);
+    int serverEntry = addEvent("server", ENTRY);
+    int serverExit = addEvent("server", EXIT);
+    addEdge(clientExit, serverEntry);
+    addEdge(serverEntry, serverExit);
+    int databaseEntry = addEvent("database", ENTRY);
+    addEdge(serverExit, databaseEntry);
+
+    // an internal root, the services it calls are not reached from it
+    int jobInternal = addEvent("job", null);
+    int jobExit = addEvent("job", EXIT);
+    addEdge(jobInternal, jobExit);
+    int workerEntry = addEvent("worker", ENTRY);
+    addEdge(jobExit, workerEntry);
+
+    // an exit root of a client calling nothing
+    addEvent("other-client", EXIT);
+
+    // an entry span with the entry span of another service as child, as when the exit span of a
+    // proxy is missing
+    int proxyEntry = addEvent("proxy", ENTRY);
+    int backendEntry = addEvent("backend", ENTRY);
+    addEdge(proxyEntry, backendEntry);
+
+    assertSameAsReference(createTrace());
+  }
+
+  @Test
+  public void testTraceWithInvalidEdgeIndices() {
+    int frontendEntry = addEvent("frontend", ENTRY);
+    int frontendExit = addEvent("frontend", EXIT);
+    addEdge(frontendEntry, frontendExit);
+    int customerEntry = addEvent("customer", ENTRY);
+    addEdge(frontendExit, customerEntry);
+    int customerExit = addEvent("customer", EXIT);
+    addEdge(customerEntry, customerExit);
+
+    addEdge(-1, frontendEntry);
+    addEdge(customerExit, events.size());
+    addEdge(events.size() + 10, customerEntry);
+    addEdge(frontendExit, -5);
+    // an edge twice, and an edge from an exit span to a non entry span
+    addEdge(frontendExit, customerEntry);
+    int frontendInternal = addEvent("frontend", null);
+    addEdge(frontendExit, frontendInternal);
+
+    assertSameAsReference(createTrace());
+  }
+
+  private void assertSameAsReference(StructuredTrace trace) {
+    ReferenceApiTraceGraph reference = new ReferenceApiTraceGraph(trace);
+    ApiTraceGraph builtGraph = new ApiTraceGraph(trace);
+    assertSameAsReference(reference, builtGraph);
+
+    ApiTraceGraphTopology.of(builtGraph).addToTrace(trace);
+    assertSameAsReference(
+        reference, new ApiTraceGraph(trace, ApiTraceGraphTopology.fromTrace(trace).orElseThrow()));
+  }
+
+  private static void assertSameAsReference(
+      ReferenceApiTraceGraph reference, ApiTraceGraph graph) {
+    assertEquals(reference.apiNodeEventIndices.size(), graph.getApiNodeList().size());
+    for (int i = 0; i < reference.apiNodeEventIndices.size(); i++) {
+      ApiNode<Event> apiNode = graph.getApiNodeList().get(i);
+      assertEquals(reference.apiNodeEventIndices.get(i), reference.indicesOf(apiNode.getEvents()));
+      assertEquals(
+          reference.apiNodeExitBoundaryEventIndices.get(i),
+          reference.indicesOf(apiNode.getExitApiBoundaryEvents()));
+      assertEquals(
+          reference.apiNodeHasEntryBoundaryEvent.get(i),
+          apiNode.getEntryApiBoundaryEvent().isPresent());
+
+      int apiNodeIdx = i;
+      assertEquals(
+          reference.apiNodeEdges.stream()
+              .filter(edge -> edge.get(0) == apiNodeIdx)
+              .collect(Collectors.toList()),
+          toIndices(graph.getOutboundEdgesForApiNode(apiNode)));
+    }
+    assertEquals(reference.apiNodeEdges, toIndices(graph.getApiNodeEventEdgeList()));
+
+    assertEquals(
+        reference.entryBoundaryEventsWithIncomingEdge,
+        new HashSet<>(reference.indicesOf(graph.getApiEntryBoundaryEventsWithIncomingEdge())));
+    assertEquals(
+        reference.entryBoundaryEventsWithNoIncomingEdge,
+        new HashSet<>(reference.indicesOf(graph.getApiEntryBoundaryEventsWithNoIncomingEdge())));
+    assertEquals(
+        reference.exitBoundaryEventsWithOutgoingEdge,
+        new HashSet<>(reference.indicesOf(graph.getApiExitBoundaryEventsWithOutgoingEdge())));
+    assertEquals(
+        reference.exitBoundaryEventsWithNoOutgoingEdge,
+        new HashSet<>(reference.indicesOf(graph.getApiExitBoundaryEventsWithNoOutgoingEdge())));
+  }
+
+  // the source and target api node and event indices of each edge
+  private static List<List<Integer>> toIndices(List<ApiNodeEventEdge> apiNodeEdges) {
+    return apiNodeEdges.stream()
+        .map(
+            edge ->
+                List.of(
+                    edge.getSrcApiNodeIndex(),
+                    edge.getTgtApiNodeIndex(),
+                    edge.getSrcEventIndex(),
+                    edge.getTgtEventIndex()))
+        .collect(Collectors.toList());
+  }
+
+  // internal events have neither a span type nor an api boundary type
+  private int addEvent(String service, String boundaryType) {
+    Map<String, AttributeValue> enrichedAttributes = new HashMap<>();
+    if (boundaryType != null) {
+      enrichedAttributes.put(SPAN_TYPE_ATTR, AttributeValueCreator.create(boundaryType));
+      enrichedAttributes.put(API_BOUNDARY_TYPE_ATTR, AttributeValueCreator.create(boundaryType));
+    }
+    int index = events.size();
+    events.add(
+        Event.newBuilder()
+            .setCustomerId("customer")
+            .setEventId(ByteBuffer.allocate(Long.BYTES).putLong(0, index + 1))
+            .setEventName("event-" + index)
+            .setServiceName(service)
+            .setAttributesBuilder(Attributes.newBuilder().setAttributeMap(new HashMap<>()))
+            .setEnrichedAttributesBuilder(
+                Attributes.newBuilder().setAttributeMap(enrichedAttributes))
+            .build());
+    return index;
+  }
+
+  private void addEdge(int srcIndex, int tgtIndex) {
+    edges.add(
+        Edge.newBuilder()
+            .setSrcIndex(srcIndex)
+            .setTgtIndex(tgtIndex)
+            .setEdgeType(EdgeType.EVENT_EVENT)
+            .build());
+  }
+
+  private StructuredTrace createTrace() {
+    return StructuredTrace.newBuilder()
+        .setCustomerId("customer")
+        .setTraceId(ByteBuffer.wrap("2ebbc19b6428510f".getBytes()))
+        .setStartTimeMillis(0L)
+        .setEndTimeMillis(0L)
+        .setAttributes(Attributes.newBuilder().setAttributeMap(new HashMap<>()).build())
+        .setEntityList(new ArrayList<>())
+        .setEntityEdgeList(new ArrayList<>())
+        .setEventEdgeList(edges)
+        .setEntityEventEdgeList(new ArrayList<>())
+        .setEventList(events)
+        .build();
+  }
+
+  /**
+   * The api nodes of a trace and the edges between them, built with the children of each event
+   * and the api node of each entry boundary event in maps. Edges with an index outside of the
+   * event list are left out.
+   */
+  private static class ReferenceApiTraceGraph {
+    private final List<Event> events;
+    private final Map<ByteBuffer, Integer> eventIdToIndex = new HashMap<>();
+    private final Map<Integer, List<Integer>> children = new HashMap<>();
+    private final Set<Integer> eventsWithParent = new HashSet<>();
+    private final Map<Integer, Integer> apiNodeIndexByEntryBoundaryEvent = new HashMap<>();
+
+    private final List<List<Integer>> apiNodeEventIndices = new ArrayList<>();
+    private final List<List<Integer>> apiNodeExitBoundaryEventIndices = new ArrayList<>();
+    private final List<Boolean> apiNodeHasEntryBoundaryEvent = new ArrayList<>();
+    private final List<List<Integer>> apiNodeEdges = new ArrayList<>();
+    private final Set<Integer> entryBoundaryEventsWithIncomingEdge = new HashSet<>();
+    private final Set<Integer> entryBoundaryEventsWithNoIncomingEdge = new HashSet<>();
+    private final Set<Integer> exitBoundaryEventsWithOutgoingEdge = new HashSet<>();
+    private final Set<Integer> exitBoundaryEventsWithNoOutgoingEdge = new HashSet<>();
+
+    ReferenceApiTraceGraph(StructuredTrace trace) {
+      events = trace.getEventList();
+      for (int i = 0; i < events.size(); i++) {
+        eventIdToIndex.put(events.get(i).getEventId(), i);
+      }
+      for (Edge edge : trace.getEventEdgeList()) {
+        if (edge.getSrcIndex() >= 0
+            && edge.getSrcIndex() < events.size()
+            && edge.getTgtIndex() >= 0
+            && edge.getTgtIndex() < events.size()) {
+          children
+              .computeIfAbsent(edge.getSrcIndex(), k -> new ArrayList<>())
+              .add(edge.getTgtIndex());
+          eventsWithParent.add(edge.getTgtIndex());
+        }
+      }
+
+      Set<Integer> remainingEvents = new HashSet<>(eventIdToIndex.values());
+      for (int i = 0; i < events.size(); i++) {
+        if (EnrichedSpanUtils.isEntryApiBoundary(events.get(i))) {
+          remainingEvents.removeAll(buildApiNode(i));
+        }
+      }
+      for (int i = 0; i < events.size(); i++) {
+        if (!eventsWithParent.contains(i)
+            && remainingEvents.contains(i)
+            && EnrichedSpanUtils.isExitSpan(events.get(i))) {
+          remainingEvents.removeAll(buildApiNode(i));
+        }
+      }
+
+      for (int apiNodeIdx = 0; apiNodeIdx < apiNodeEventIndices.size(); apiNodeIdx++) {
+        for (int exitBoundaryEventIdx : apiNodeExitBoundaryEventIndices.get(apiNodeIdx)) {
+          for (int childIdx : children.getOrDefault(exitBoundaryEventIdx, List.of())) {
+            if (EnrichedSpanUtils.isEntryApiBoundary(events.get(childIdx))) {
+              apiNodeEdges.add(
+                  List.of(
+                      apiNodeIdx,
+                      apiNodeIndexByEntryBoundaryEvent.get(childIdx),
+                      exitBoundaryEventIdx,
+                      childIdx));
+              exitBoundaryEventsWithOutgoingEdge.add(exitBoundaryEventIdx);
+              entryBoundaryEventsWithIncomingEdge.add(childIdx);
+            }
+          }
+        }
+      }
+
+      for (int apiNodeIdx = 0; apiNodeIdx < apiNodeEventIndices.size(); apiNodeIdx++) {
+        int headEventIdx = apiNodeEventIndices.get(apiNodeIdx).get(0);
+        if (apiNodeHasEntryBoundaryEvent.get(apiNodeIdx)
+            && !entryBoundaryEventsWithIncomingEdge.contains(headEventIdx)) {
+          entryBoundaryEventsWithNoIncomingEdge.add(headEventIdx);
+        }
+        for (int exitBoundaryEventIdx : apiNodeExitBoundaryEventIndices.get(apiNodeIdx)) {
+          if (!exitBoundaryEventsWithOutgoingEdge.contains(exitBoundaryEventIdx)) {
+            exitBoundaryEventsWithNoOutgoingEdge.add(exitBoundaryEventIdx);
+          }
+        }
+      }
+    }
+
+    private List<Integer> buildApiNode(int rootIdx) {
+      List<Integer> eventIndices = new ArrayList<>();
+      eventIndices.add(rootIdx);
+      List<Integer> exitBoundaryEventIndices = new ArrayList<>();
+      if (EnrichedSpanUtils.isExitApiBoundary(events.get(rootIdx))) {
+        exitBoundaryEventIndices.add(rootIdx);
+      }
+
+      Queue<Integer> queue = new LinkedList<>();
+      queue.add(rootIdx);
+      while (!queue.isEmpty()) {
+        for (int childIdx : children.getOrDefault(queue.remove(), List.of())) {
+          Event child = events.get(childIdx);
+          if (EnrichedSpanUtils.isExitApiBoundary(child)) {
+            eventIndices.add(childIdx);
+            exitBoundaryEventIndices.add(childIdx);
+          } else if (!EnrichedSpanUtils.isEntryApiBoundary(child)) {
+            queue.add(childIdx);
+            eventIndices.add(childIdx);
+          }
+        }
+      }
+
+      boolean hasEntryBoundaryEvent = EnrichedSpanUtils.isEntryApiBoundary(events.get(rootIdx));
+      if (hasEntryBoundaryEvent) {
+        apiNodeIndexByEntryBoundaryEvent.put(rootIdx, apiNodeEventIndices.size());
+      }
+      apiNodeEventIndices.add(eventIndices);
+      apiNodeExitBoundaryEventIndices.add(exitBoundaryEventIndices);
+      apiNodeHasEntryBoundaryEvent.add(hasEntryBoundaryEvent);
+      return eventIndices;
+    }
+
+    List<Integer> indicesOf(List<Event> apiNodeEvents) {
+      return apiNodeEvents.stream()
+          .map(event -> eventIdToIndex.get(event.getEventId()))
+          .collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package org.hypertrace.traceenricher.trace.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.ApiNode;
+import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ApiTraceGraphTopologyTest {
+
+  private StructuredTrace trace;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    URL resource =
+        Thread.currentThread().getContextClassLoader().getResource("StructuredTrace-Hotrod.avro");
+
+    SpecificDatumReader<StructuredTrace> datumReader =
+        new SpecificDatumReader<>(StructuredTrace.getClassSchema());
+    DataFileReader<StructuredTrace> dfrStructuredTrace =
+        new DataFileReader<>(new File(resource.getPath()), datumReader);
+    trace = dfrStructuredTrace.next();
+    dfrStructuredTrace.close();
+    if (trace.getAttributes() == null) {
+      trace.setAttributes(Attributes.newBuilder().setAttributeMap(new HashMap<>()).build());
+    }
+  }
+
+  @Test
+  public void testRestoredGraphIsSameAsBuiltGraph() {
+    ApiTraceGraph builtGraph = new ApiTraceGraph(trace);
+    ApiTraceGraphTopology.of(builtGraph).addToTrace(trace);
+
+    ApiTraceGraph restoredGraph =
+        new ApiTraceGraph(trace, ApiTraceGraphTopology.fromTrace(trace).orElseThrow());
+
+    assertEquals(builtGraph.getApiNodeList().size(), restoredGraph.getApiNodeList().size());
+    for (int i = 0; i < builtGraph.getApiNodeList().size(); i++) {
+      ApiNode<Event> builtApiNode = builtGraph.getApiNodeList().get(i);
+      ApiNode<Event> restoredApiNode = restoredGraph.getApiNodeList().get(i);
+      assertEquals(builtApiNode.getHeadEvent(), restoredApiNode.getHeadEvent());
+      assertEquals(builtApiNode.getEvents(), restoredApiNode.getEvents());
+      assertEquals(
+          builtApiNode.getEntryApiBoundaryEvent(), restoredApiNode.getEntryApiBoundaryEvent());
+      assertEquals(
+          builtApiNode.getExitApiBoundaryEvents(), restoredApiNode.getExitApiBoundaryEvents());
+      assertEquals(
+          builtGraph.getOutboundEdgesForApiNode(builtApiNode),
+          restoredGraph.getOutboundEdgesForApiNode(restoredApiNode));
+      assertEquals(
+          builtGraph.getExitBoundaryEventsWithNoOutboundEdgeForApiNode(builtApiNode),
+          restoredGraph.getExitBoundaryEventsWithNoOutboundEdgeForApiNode(restoredApiNode));
+    }
+    assertEquals(builtGraph.getApiNodeEventEdgeList(), restoredGraph.getApiNodeEventEdgeList());
+    assertEquals(
+        builtGraph.getApiEntryBoundaryEventsWithIncomingEdge(),
+        restoredGraph.getApiEntryBoundaryEventsWithIncomingEdge());
+    assertEquals(
+        builtGraph.getApiEntryBoundaryEventsWithNoIncomingEdge(),
+        restoredGraph.getApiEntryBoundaryEventsWithNoIncomingEdge());
+    assertEquals(
+        builtGraph.getApiExitBoundaryEventsWithOutgoingEdge(),
+        restoredGraph.getApiExitBoundaryEventsWithOutgoingEdge());
+    assertEquals(
+        builtGraph.getApiExitBoundaryEventsWithNoOutgoingEdge(),
+        restoredGraph.getApiExitBoundaryEventsWithNoOutgoingEdge());
+  }
+
+  @Test
+  public void testParentEventIndices() {
+    ApiTraceGraphTopology topology =
+        ApiTraceGraphTopology.decode(
+            ApiTraceGraphTopology.of(new ApiTraceGraph(trace)).encode());
+
+    for (int i = 0; i < trace.getEventList().size(); i++) {
+      ByteBuffer parentEventId =
+          ApiTraceGraphTopology.getParentEventId(trace.getEventList().get(i));
+      int parentEventIdx = topology.getParentEventIndex(i);
+      if (parentEventId == null) {
+        assertEquals(ApiTraceGraphTopology.NO_PARENT, parentEventIdx);
+      } else if (parentEventIdx != ApiTraceGraphTopology.PARENT_NOT_IN_TRACE) {
+        assertEquals(parentEventId, trace.getEventList().get(parentEventIdx).getEventId());
+      }
+    }
+  }
+
+  @Test
+  public void testTopologyOfChangedTraceIsIgnored() {
+    ApiTraceGraphTopology.of(new ApiTraceGraph(trace)).addToTrace(trace);
+    assertTrue(ApiTraceGraphTopology.fromTrace(trace).isPresent());
+
+    trace.setEventEdgeList(new ArrayList<>(trace.getEventEdgeList().subList(1, 2)));
+
+    assertFalse(ApiTraceGraphTopology.fromTrace(trace).isPresent());
+  }
+
+  @Test
+  public void testInvalidTopologyIsIgnored() {
+    ByteBuffer encoded = ApiTraceGraphTopology.of(new ApiTraceGraph(trace)).encode();
+    ByteBuffer truncated = ByteBuffer.wrap(encoded.array(), 0, encoded.remaining() - 1);
+    trace
+        .getAttributes()
+        .getAttributeMap()
+        .put(
+            EnrichedSpanConstants.API_TRACE_GRAPH_TOPOLOGY,
+            AttributeValue.newBuilder().setBinaryValue(truncated).build());
+
+    assertFalse(ApiTraceGraphTopology.fromTrace(trace).isPresent());
+  }
+
+  @Test
+  public void testTraceWithoutTopology() {
+    assertFalse(ApiTraceGraphTopology.fromTrace(trace).isPresent());
+  }
+}
@@ -0,0 +1,65 @@
+package org.hypertrace.traceenricher.trace.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.hypertrace.core.datamodel.Event;
+import org.junit.jupiter.api.Test;
+
+public class EventIdIndexTest {
+
+  @Test
+  public void testIndexOfSpanIds() {
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      // spread over the high bits as well, and include 0
+      events.add(createEvent(ByteBuffer.allocate(8).putLong(0, (long) i << 40 | i)));
+    }
+    EventIdIndex eventIdIndex = new EventIdIndex(events);
+
+    for (int i = 0; i < events.size(); i++) {
+      assertEquals(i, eventIdIndex.indexOf(events.get(i).getEventId()));
+    }
+    assertEquals(-1, eventIdIndex.indexOf(ByteBuffer.allocate(8).putLong(0, -1L)));
+    assertEquals(-1, eventIdIndex.indexOf(ByteBuffer.wrap("short".getBytes())));
+  }
+
+  @Test
+  public void testIndexOfSpanIdNotAtStartOfBuffer() {
+    ByteBuffer eventId = ByteBuffer.allocate(12).putLong(4, 42L);
+    eventId.position(4);
+    EventIdIndex eventIdIndex = new EventIdIndex(List.of(createEvent(eventId)));
+
+    assertEquals(0, eventIdIndex.indexOf(ByteBuffer.allocate(8).putLong(0, 42L)));
+    assertEquals(4, eventId.position());
+  }
+
+  @Test
+  public void testIndexOfOtherIds() {
+    List<Event> events =
+        List.of(
+            createEvent(ByteBuffer.wrap("first-event".getBytes())),
+            createEvent(ByteBuffer.allocate(8).putLong(0, 1L)));
+    EventIdIndex eventIdIndex = new EventIdIndex(events);
+
+    assertEquals(0, eventIdIndex.indexOf(ByteBuffer.wrap("first-event".getBytes())));
+    assertEquals(1, eventIdIndex.indexOf(ByteBuffer.allocate(8).putLong(0, 1L)));
+    assertEquals(-1, eventIdIndex.indexOf(ByteBuffer.wrap("other-event".getBytes())));
+  }
+
+  @Test
+  public void testLastEventWithSameIdWins() {
+    List<Event> events =
+        List.of(
+            createEvent(ByteBuffer.allocate(8).putLong(0, 7L)),
+            createEvent(ByteBuffer.allocate(8).putLong(0, 7L)));
+
+    assertEquals(1, new EventIdIndex(events).indexOf(ByteBuffer.allocate(8).putLong(0, 7L)));
+  }
+
+  private static Event createEvent(ByteBuffer eventId) {
+    return Event.newBuilder().setCustomerId("customer").setEventId(eventId).build();
+  }
+}
@@ -2,7 +2,6 @@ package org.hypertrace.traceenricher.trace.util;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockConstruction;
-import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.when;
 
 import java.nio.ByteBuffer;
@@ -15,7 +14,6 @@ import org.hypertrace.core.datamodel.shared.StructuredTraceGraph;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedConstruction;
-import org.mockito.MockedStatic;
 
 public class StructuredTraceGraphBuilderTest {
 
@@ -36,25 +34,14 @@ public class StructuredTraceGraphBuilderTest {
     when(underTestTrace.getEntityEventEdgeList()).thenReturn(List.of());
     when(underTestTrace.getEventEdgeList()).thenReturn(List.of(eventEdge));
 
-    try (MockedStatic<StructuredTrace> builderMockedStatic = mockStatic(StructuredTrace.class)) {
+    try (MockedConstruction<StructuredTraceGraph> mockedConstruction =
+        mockConstruction(StructuredTraceGraph.class)) {
+      StructuredTraceGraph first = StructuredTraceGraphBuilder.buildGraph(underTestTrace);
+      Assertions.assertSame(mockedConstruction.constructed().get(0), first);
 
-      StructuredTrace.Builder builder = mock(StructuredTrace.Builder.class);
-      when(builder.build()).thenReturn(underTestTrace);
-
-      builderMockedStatic
-          .when(() -> StructuredTrace.newBuilder(underTestTrace))
-          .thenReturn(builder);
-
-      try (MockedConstruction<StructuredTraceGraph> mocked =
-          mockConstruction(StructuredTraceGraph.class)) {
-
-        // calls first time
-        StructuredTraceGraph actual = StructuredTraceGraphBuilder.buildGraph(underTestTrace);
-
-        // calls second time, this time it returns from cache
-        StructuredTraceGraph cached = StructuredTraceGraphBuilder.buildGraph(underTestTrace);
-        Assertions.assertEquals(actual, cached);
-      }
+      // not cached, the enrichment context of a trace shares its graphs between its enrichers
+      StructuredTraceGraph second = StructuredTraceGraphBuilder.buildGraph(underTestTrace);
+      Assertions.assertNotSame(first, second);
     }
   }
 }
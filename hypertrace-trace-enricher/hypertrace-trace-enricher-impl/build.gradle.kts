@@ -2,12 +2,20 @@ plugins {
   `java-library`
   jacoco
   id("org.hypertrace.jacoco-report-plugin")
+  id("me.champeau.jmh") version "0.6.6"
 }
 
 tasks.test {
   useJUnitPlatform()
 }
 
+jmh {
+  // ./gradlew :hypertrace-trace-enricher:hypertrace-trace-enricher-impl:jmh
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+}
+
 dependencies {
   implementation(project(":hypertrace-trace-enricher:enriched-span-constants"))
   implementation(project(":hypertrace-trace-enricher:hypertrace-trace-enricher-api"))
@@ -15,6 +23,7 @@ dependencies {
   implementation(project(":span-normalizer:span-normalizer-constants"))
   implementation(project(":semantic-convention-utils"))
   implementation(project(":hypertrace-trace-enricher:trace-reader"))
+  implementation(project(":tenant-metrics-utils"))
 
   implementation("org.hypertrace.core.datamodel:data-model:0.1.20")
   implementation("org.hypertrace.entity.service:entity-service-client:0.8.5")
@@ -0,0 +1,142 @@
+package org.hypertrace.traceenricher.enrichment;
+
+import com.typesafe.config.ConfigFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.Edge;
+import org.hypertrace.core.datamodel.EdgeType;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
+import org.hypertrace.traceenricher.enrichment.enrichers.ApiBoundaryTypeAttributeEnricher;
+import org.hypertrace.traceenricher.enrichment.enrichers.ApiStatusEnricher;
+import org.hypertrace.traceenricher.enrichment.enrichers.GrpcAttributeEnricher;
+import org.hypertrace.traceenricher.enrichment.enrichers.HttpAttributeEnricher;
+import org.hypertrace.traceenricher.enrichment.enrichers.SpanTypeAttributeEnricher;
+import org.hypertrace.traceenricher.enrichment.enrichers.TransactionNameEnricher;
+import org.hypertrace.traceenricher.enrichment.enrichers.UserAgentSpanEnricher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Enriches a synthetic trace with the enrichers that need no clients, one pass over the events per
+ * enricher versus one pass per group of consecutive local enrichers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EnrichmentProcessorBenchmark {
+
+  @Param({"10000"})
+  private int spanCount;
+
+  @Param({"false", "true"})
+  private boolean fuseEventEnrichment;
+
+  private EnrichmentProcessor processor;
+  private StructuredTrace trace;
+
+  @Setup(Level.Trial)
+  public void setUpProcessor() {
+    List<EnricherInfo> enricherInfos = new ArrayList<>();
+    addEnricher(enricherInfos, SpanTypeAttributeEnricher.class);
+    addEnricher(enricherInfos, ApiStatusEnricher.class);
+    addEnricher(enricherInfos, ApiBoundaryTypeAttributeEnricher.class);
+    addEnricher(enricherInfos, TransactionNameEnricher.class);
+    addEnricher(enricherInfos, HttpAttributeEnricher.class);
+    addEnricher(enricherInfos, UserAgentSpanEnricher.class);
+    addEnricher(enricherInfos, GrpcAttributeEnricher.class);
+    processor = new EnrichmentProcessor(enricherInfos, null, 1, fuseEventEnrichment);
+  }
+
+  // the enrichers modify the trace, so each invocation gets a new one
+  @Setup(Level.Invocation)
+  public void setUpTrace() {
+    trace = createTrace(spanCount);
+  }
+
+  @Benchmark
+  public StructuredTrace process() {
+    processor.process(trace);
+    return trace;
+  }
+
+  private static void addEnricher(
+      List<EnricherInfo> enricherInfos, Class<? extends Enricher> enricherClass) {
+    enricherInfos.add(
+        new EnricherInfo(
+            enricherClass.getSimpleName(), enricherClass, List.of(), ConfigFactory.empty()));
+  }
+
+  /**
+   * A trace of services calling each other: each server span has a client span child, which calls
+   * the server span of the next service.
+   */
+  private static StructuredTrace createTrace(int spanCount) {
+    long startTime = System.currentTimeMillis();
+    List<Event> events = new ArrayList<>(spanCount);
+    List<Edge> edges = new ArrayList<>(spanCount);
+    for (int i = 0; i < spanCount; i++) {
+      boolean server = i % 2 == 0;
+      Map<String, AttributeValue> attributes = new HashMap<>();
+      attributes.put("span.kind", AttributeValueCreator.create(server ? "server" : "client"));
+      attributes.put("http.method", AttributeValueCreator.create("GET"));
+      attributes.put(
+          "http.url",
+          AttributeValueCreator.create("http://service-" + i / 2 + ":8080/api/items?id=" + i));
+      attributes.put("http.status_code", AttributeValueCreator.create(server ? "200" : "503"));
+      attributes.put(
+          "http.user_agent",
+          AttributeValueCreator.create(
+              "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko)"
+                  + " Chrome/96.0.4664.110 Safari/537.36"));
+      events.add(
+          Event.newBuilder()
+              .setCustomerId("benchmark")
+              .setEventId(ByteBuffer.wrap(String.valueOf(i).getBytes()))
+              .setEventName(server ? "GET /api/items" : "GET")
+              .setServiceName("service-" + i / 2)
+              .setStartTimeMillis(startTime + i)
+              .setEndTimeMillis(startTime + 2L * spanCount - i)
+              .setAttributesBuilder(Attributes.newBuilder().setAttributeMap(attributes))
+              .setEnrichedAttributesBuilder(
+                  Attributes.newBuilder().setAttributeMap(new HashMap<>()))
+              .build());
+      if (i > 0) {
+        edges.add(
+            Edge.newBuilder()
+                .setSrcIndex(i - 1)
+                .setTgtIndex(i)
+                .setEdgeType(EdgeType.EVENT_EVENT)
+                .build());
+      }
+    }
+
+    return StructuredTrace.newBuilder()
+        .setCustomerId("benchmark")
+        .setTraceId(ByteBuffer.wrap(UUID.randomUUID().toString().getBytes()))
+        .setStartTimeMillis(startTime)
+        .setEndTimeMillis(startTime + 2L * spanCount)
+        .setAttributes(Attributes.newBuilder().setAttributeMap(new HashMap<>()).build())
+        .setEntityList(new ArrayList<>())
+        .setEntityEdgeList(new ArrayList<>())
+        .setEventEdgeList(edges)
+        .setEntityEventEdgeList(new ArrayList<>())
+        .setEventList(events)
+        .build();
+  }
+}
@@ -18,7 +18,6 @@ import org.hypertrace.core.datamodel.Event;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.datamodel.shared.StructuredTraceGraph;
 import org.hypertrace.traceenricher.enrichment.clients.ClientRegistry;
-import org.hypertrace.traceenricher.trace.util.StructuredTraceGraphBuilder;
 
 public abstract class AbstractTraceEnricher implements Enricher {
 
@@ -40,9 +39,9 @@ public abstract class AbstractTraceEnricher implements Enricher {
   @Override
   public void enrichTrace(StructuredTrace trace) {}
 
-  /** Wrapper to the structure graph factory for testing */
-  public StructuredTraceGraph buildGraph(StructuredTrace trace) {
-    return StructuredTraceGraphBuilder.buildGraph(trace);
+  /** Wrapper to the structure graph of the context for testing */
+  public StructuredTraceGraph buildGraph(EnrichmentContext context) {
+    return context.getStructuredTraceGraph();
   }
 
   @Nullable
@@ -26,4 +26,53 @@ public interface Enricher {
 
   /** Enrich Trace level attributes/metrics */
   void enrichTrace(StructuredTrace trace);
+
+  /**
+   * Enrich the attributes/metrics for an Entity, with the state shared by the enrichers of the
+   * trace. The methods taking an {@link EnrichmentContext} are the ones called by {@link
+   * EnrichmentProcessor}, an enricher overrides them to share the graphs of the trace.
+   */
+  default void enrichEntity(EnrichmentContext context, Entity entity) {
+    enrichEntity(context.getTrace(), entity);
+  }
+
+  default void onEnrichEntitiesComplete(EnrichmentContext context) {
+    onEnrichEntitiesComplete(context.getTrace());
+  }
+
+  default void enrichEvent(EnrichmentContext context, Event event) {
+    enrichEvent(context.getTrace(), event);
+  }
+
+  default void enrichEdge(EnrichmentContext context, Edge edge) {
+    enrichEdge(context.getTrace(), edge);
+  }
+
+  default void enrichTrace(EnrichmentContext context) {
+    enrichTrace(context.getTrace());
+  }
+
+  /**
+   * Whether {@link #enrichEvent} can be called for different events of a trace at the same time,
+   * also while other enrichers of the same dependency level enrich other events, but never while
+   * another enricher enriches the same event or the trace itself. It then must only write to the
+   * event it is given, and only read the parts of the trace that are written by the enrichers it
+   * declares as dependencies, or that no enricher writes. The other methods are never called
+   * concurrently for a trace.
+   *
+   * <p>An enricher that returns true documents what its {@link #enrichEvent} reads and writes, so
+   * that its dependencies can be checked against the enrichers writing what it reads.
+   */
+  default boolean isEventEnrichmentConcurrent() {
+    return false;
+  }
+
+  /**
+   * Whether {@link #enrichEvent} only reads and writes the event it is given, and the other methods
+   * do nothing. The events can then be enriched by this enricher and the next ones in a single pass
+   * over the events, instead of one pass per enricher.
+   */
+  default boolean isEventEnrichmentLocal() {
+    return false;
+  }
 }
@@ -0,0 +1,127 @@
+package org.hypertrace.traceenricher.enrichment;
+
+import javax.annotation.Nullable;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.StructuredTraceGraph;
+import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
+
+/**
+ * The state shared by the enrichers of a trace, created once per trace by {@link
+ * EnrichmentProcessor}. The graphs of the trace are built when they are first needed and kept until
+ * the part of the trace they are built from changes.
+ *
+ * <p>The events, the entities and the api boundaries of the events each have a version, which is
+ * incremented when they are invalidated, and a graph is rebuilt if it was built from an older
+ * version. Adding or removing events, entities or their edges is detected from the sizes of their
+ * lists. Any other change to the structure of the trace must be followed by {@link
+ * #invalidateEvents()} or {@link #invalidateEntities()}, and a change to the api boundary of events
+ * by {@link #invalidateApiBoundaries()}.
+ */
+public class EnrichmentContext {
+
+  private final StructuredTrace trace;
+
+  private long eventsVersion;
+  private long entitiesVersion;
+  private long apiBoundariesVersion;
+  // the list sizes at the last version, to detect additions without copying the lists
+  private int eventCount;
+  private int eventEdgeCount;
+  private int entityCount;
+  private int entityEdgeCount;
+
+  @Nullable private StructuredTraceGraph structuredTraceGraph;
+  private long structuredTraceGraphEventsVersion;
+  private long structuredTraceGraphEntitiesVersion;
+
+  @Nullable private ApiTraceGraph apiTraceGraph;
+  private long apiTraceGraphEventsVersion;
+  private long apiTraceGraphApiBoundariesVersion;
+
+  public EnrichmentContext(StructuredTrace trace) {
+    this.trace = trace;
+    this.eventCount = trace.getEventList().size();
+    this.eventEdgeCount = trace.getEventEdgeList().size();
+    this.entityCount = trace.getEntityList().size();
+    this.entityEdgeCount = trace.getEntityEdgeList().size();
+  }
+
+  public StructuredTrace getTrace() {
+    return trace;
+  }
+
+  public synchronized StructuredTraceGraph getStructuredTraceGraph() {
+    updateVersions();
+    if (structuredTraceGraph == null) {
+      structuredTraceGraph = new StructuredTraceGraph(trace);
+    } else if (structuredTraceGraphEventsVersion != eventsVersion
+        && structuredTraceGraphEntitiesVersion != entitiesVersion) {
+      structuredTraceGraph = new StructuredTraceGraph(trace);
+    } else if (structuredTraceGraphEventsVersion != eventsVersion) {
+      structuredTraceGraph.reCreateTraceEventsGraph(trace);
+    } else if (structuredTraceGraphEntitiesVersion != entitiesVersion) {
+      structuredTraceGraph.reCreateTraceEntitiesGraph(trace);
+    }
+    structuredTraceGraphEventsVersion = eventsVersion;
+    structuredTraceGraphEntitiesVersion = entitiesVersion;
+    return structuredTraceGraph;
+  }
+
+  public synchronized ApiTraceGraph getApiTraceGraph() {
+    updateVersions();
+    if (apiTraceGraph == null
+        || apiTraceGraphEventsVersion != eventsVersion
+        || apiTraceGraphApiBoundariesVersion != apiBoundariesVersion) {
+      apiTraceGraph = new ApiTraceGraph(trace);
+      apiTraceGraphEventsVersion = eventsVersion;
+      apiTraceGraphApiBoundariesVersion = apiBoundariesVersion;
+    }
+    return apiTraceGraph;
+  }
+
+  /** Marks the graphs built from the events and their edges as outdated. */
+  public synchronized void invalidateEvents() {
+    eventsVersion++;
+  }
+
+  /** Marks the graphs built from the entities and their edges as outdated. */
+  public synchronized void invalidateEntities() {
+    entitiesVersion++;
+  }
+
+  /** Marks the graphs built from the api boundaries of the events as outdated. */
+  public synchronized void invalidateApiBoundaries() {
+    apiBoundariesVersion++;
+  }
+
+  public synchronized long getEventsVersion() {
+    updateVersions();
+    return eventsVersion;
+  }
+
+  public synchronized long getEntitiesVersion() {
+    updateVersions();
+    return entitiesVersion;
+  }
+
+  public synchronized long getApiBoundariesVersion() {
+    return apiBoundariesVersion;
+  }
+
+  private void updateVersions() {
+    int newEventCount = trace.getEventList().size();
+    int newEventEdgeCount = trace.getEventEdgeList().size();
+    if (newEventCount != eventCount || newEventEdgeCount != eventEdgeCount) {
+      eventCount = newEventCount;
+      eventEdgeCount = newEventEdgeCount;
+      eventsVersion++;
+    }
+    int newEntityCount = trace.getEntityList().size();
+    int newEntityEdgeCount = trace.getEntityEdgeList().size();
+    if (newEntityCount != entityCount || newEntityEdgeCount != entityEdgeCount) {
+      entityCount = newEntityCount;
+      entityEdgeCount = newEntityEdgeCount;
+      entitiesVersion++;
+    }
+  }
+}
@@ -1,19 +1,22 @@
 package org.hypertrace.traceenricher.enrichment;
 
-import static org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry.registerCounter;
-
-import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Timer;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
 import org.hypertrace.core.datamodel.Edge;
 import org.hypertrace.core.datamodel.Entity;
 import org.hypertrace.core.datamodel.Event;
@@ -21,6 +24,9 @@ import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.datamodel.shared.DataflowMetricUtils;
 import org.hypertrace.core.datamodel.shared.HexUtils;
 import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
+import org.hypertrace.tenant.metrics.utils.TenantTimer;
 import org.hypertrace.traceenricher.enrichment.clients.ClientRegistry;
 import org.hypertrace.traceenricher.util.AvroToJsonLogger;
 import org.slf4j.Logger;
@@ -35,19 +41,41 @@ public class EnrichmentProcessor {
 
   // Must use linked hashmap
   private final Map<String, Enricher> enrichers = new LinkedHashMap<>();
+  private final Map<String, EnricherMetrics> enricherMetrics = new HashMap<>();
 
   private static final String ENRICHED_TRACES_COUNTER = "hypertrace.enriched.traces";
-  private static final ConcurrentMap<String, Counter> traceCounters = new ConcurrentHashMap<>();
-
   private static final String ENRICHED_TRACES_TIMER = "hypertrace.trace.enrichment.latency";
-  private static final ConcurrentMap<String, Timer> traceTimers = new ConcurrentHashMap<>();
-
   private static final String TRACE_ENRICHMENT_ERRORS_COUNTER =
       "hypertrace.trace.enrichment.errors";
-  private static final ConcurrentMap<String, Counter> traceErrorsCounters =
-      new ConcurrentHashMap<>();
+  // the levels are applied one after the other, so their latencies add up to the trace's
+  private static final String ENRICHER_LEVEL_TIMER = "hypertrace.trace.enrichment.level.latency";
+
+  // fewer events per task aren't worth handing over to another thread
+  private static final int MIN_EVENTS_PER_TASK = 64;
+
+  private final int parallelism;
+  // null if the enrichers are applied one after the other
+  @Nullable private final List<EnricherGroup> enricherGroups;
+  @Nullable private final ExecutorService executor;
 
   public EnrichmentProcessor(List<EnricherInfo> enricherInfoList, ClientRegistry clientRegistry) {
+    this(enricherInfoList, clientRegistry, 1, false);
+  }
+
+  /**
+   * If the parallelism is greater than 1, the events of a trace are enriched by up to that many
+   * threads, see {@link Enricher#isEventEnrichmentConcurrent()}. The enrichers are grouped in
+   * dependency levels, see {@link #buildEnricherLevels}, but two enrichers are never applied to the
+   * same trace at the same time, only the events are split between threads. The enrichers still see
+   * each other's writes in the order they are applied one after the other. Otherwise, if the event
+   * enrichment is fused, consecutive enrichers are applied in a single pass over the events. See
+   * {@link Enricher#isEventEnrichmentLocal()}.
+   */
+  public EnrichmentProcessor(
+      List<EnricherInfo> enricherInfoList,
+      ClientRegistry clientRegistry,
+      int parallelism,
+      boolean fuseEventEnrichment) {
     for (EnricherInfo enricherInfo : enricherInfoList) {
       try {
         if (enrichers.containsKey(enricherInfo.getName())) {
@@ -60,10 +88,23 @@ public class EnrichmentProcessor {
         enricher.init(enricherInfo.getEnricherConfig(), clientRegistry);
         LOG.info("Initialized the enricher: {}", enricherInfo.getClazz().getCanonicalName());
         enrichers.put(enricherInfo.getName(), enricher);
+        enricherMetrics.put(enricherInfo.getName(), new EnricherMetrics(enricherInfo.getName()));
       } catch (Exception e) {
         LOG.error("Exception initializing enricher:{}", enricherInfo, e);
       }
     }
+
+    this.parallelism = parallelism;
+    if (parallelism > 1) {
+      this.enricherGroups = buildEnricherLevels(enricherInfoList);
+      this.executor = new ForkJoinPool(parallelism);
+    } else if (fuseEventEnrichment) {
+      this.enricherGroups = buildFusedEnricherGroups(enricherInfoList);
+      this.executor = null;
+    } else {
+      this.enricherGroups = null;
+      this.executor = null;
+    }
   }
 
   /** Enriches the Trace by Invoking various Enrichers registered in */
@@ -71,68 +112,81 @@ public class EnrichmentProcessor {
     DataflowMetricUtils.reportArrivalLagAndInsertTimestamp(
         trace, enrichmentArrivalTimer, ENRICHMENT_ARRIVAL_TIME);
     AvroToJsonLogger.log(LOG, "Structured Trace before all the enrichment is: {}", trace);
-    for (Entry<String, Enricher> entry : enrichers.entrySet()) {
-      String metricKey = String.format("%s/%s", trace.getCustomerId(), entry.getKey());
-      Map<String, String> metricTags =
-          Map.of("tenantId", trace.getCustomerId(), "enricher", entry.getKey());
-      try {
-        Instant start = Instant.now();
-        applyEnricher(entry.getValue(), trace);
-        long timeElapsed = Duration.between(start, Instant.now()).toMillis();
-
-        traceCounters
-            .computeIfAbsent(metricKey, k -> registerCounter(ENRICHED_TRACES_COUNTER, metricTags))
-            .increment();
-        traceTimers
-            .computeIfAbsent(
-                metricKey,
-                k -> PlatformMetricsRegistry.registerTimer(ENRICHED_TRACES_TIMER, metricTags))
-            .record(timeElapsed, TimeUnit.MILLISECONDS);
-      } catch (Exception e) {
-        traceErrorsCounters
-            .computeIfAbsent(
-                metricKey, k -> registerCounter(TRACE_ENRICHMENT_ERRORS_COUNTER, metricTags))
-            .increment();
-        LOG.error(
-            "Could not apply the enricher: {} to the trace with traceId: {}",
-            entry.getKey(),
-            HexUtils.getHex(trace.getTraceId()),
-            e);
+    int tenantSlot = TenantSlots.slotOf(trace.getCustomerId());
+    EnrichmentContext context = new EnrichmentContext(trace);
+    if (enricherGroups == null) {
+      for (Entry<String, Enricher> entry : enrichers.entrySet()) {
+        applyEnricher(entry.getKey(), entry.getValue(), context, tenantSlot);
+      }
+    } else {
+      long levelStart = System.nanoTime();
+      for (EnricherGroup group : enricherGroups) {
+        applyEnricherGroup(group, context, tenantSlot);
+        if (group.levelTimer != null) {
+          long now = System.nanoTime();
+          group.levelTimer.get(tenantSlot).record(now - levelStart, TimeUnit.NANOSECONDS);
+          levelStart = now;
+        }
       }
     }
     AvroToJsonLogger.log(LOG, "Structured Trace after all the enrichment is: {}", trace);
   }
 
-  private void applyEnricher(Enricher enricher, StructuredTrace trace) {
-    // Enrich entities
-    List<Entity> entityList = trace.getEntityList();
-    LOG.debug("Enriching Entities for {}", enricher.getClass().getName());
-    for (Entity entity : entityList) {
-      enricher.enrichEntity(trace, entity);
+  private void applyEnricher(
+      String enricherName, Enricher enricher, EnrichmentContext context, int tenantSlot) {
+    EnricherMetrics metrics = enricherMetrics.get(enricherName);
+    try {
+      Instant start = Instant.now();
+      applyEnricher(enricher, context);
+      long timeElapsed = Duration.between(start, Instant.now()).toMillis();
+
+      metrics.traceCounter.increment(tenantSlot);
+      metrics.traceTimer.get(tenantSlot).record(timeElapsed, TimeUnit.MILLISECONDS);
+    } catch (Exception e) {
+      metrics.traceErrorsCounter.increment(tenantSlot);
+      logEnricherError(enricherName, context.getTrace(), e);
     }
-    enricher.onEnrichEntitiesComplete(trace);
+  }
+
+  private void applyEnricher(Enricher enricher, EnrichmentContext context) {
+    enrichEntities(enricher, context);
 
     LOG.debug("Enriching Events for {}", enricher.getClass().getName());
     // Enrich Events
-    List<Event> eventList = trace.getEventList();
+    List<Event> eventList = context.getTrace().getEventList();
     for (Event event : eventList) {
-      enricher.enrichEvent(trace, event);
+      enricher.enrichEvent(context, event);
+    }
+
+    enrichEdgesAndTrace(enricher, context);
+  }
+
+  private void enrichEntities(Enricher enricher, EnrichmentContext context) {
+    // Enrich entities
+    List<Entity> entityList = context.getTrace().getEntityList();
+    LOG.debug("Enriching Entities for {}", enricher.getClass().getName());
+    for (Entity entity : entityList) {
+      enricher.enrichEntity(context, entity);
     }
+    enricher.onEnrichEntitiesComplete(context);
+  }
 
+  private void enrichEdgesAndTrace(Enricher enricher, EnrichmentContext context) {
+    StructuredTrace trace = context.getTrace();
     // Enrich Edges
     List<Edge> eventEdgeList = trace.getEventEdgeList();
     for (Edge edge : eventEdgeList) {
-      enricher.enrichEdge(trace, edge);
+      enricher.enrichEdge(context, edge);
     }
 
     List<Edge> entityEdgeList = trace.getEntityEdgeList();
     for (Edge edge : entityEdgeList) {
-      enricher.enrichEdge(trace, edge);
+      enricher.enrichEdge(context, edge);
     }
 
     List<Edge> entityEventEdgeList = trace.getEntityEventEdgeList();
     for (Edge edge : entityEventEdgeList) {
-      enricher.enrichEdge(trace, edge);
+      enricher.enrichEdge(context, edge);
     }
 
     LOG.debug(
@@ -141,6 +195,265 @@ public class EnrichmentProcessor {
         enricher.getClass().getName());
 
     // Enrich trace attributes/metrics
-    enricher.enrichTrace(trace);
+    enricher.enrichTrace(context);
+  }
+
+  /**
+   * Applies the enrichers of a group. The enrichers of the single event pass are applied together:
+   * their entities are enriched one enricher after the other, then each event is enriched by all of
+   * them, in ranges of events on the executor if there is one, then their edges and the trace are
+   * enriched one enricher after the other. The other enrichers of the group are then applied one
+   * after the other.
+   */
+  private void applyEnricherGroup(
+      EnricherGroup group, EnrichmentContext context, int tenantSlot) {
+    Enricher[] eventPassEnrichers = group.eventPassEnrichers.values().toArray(new Enricher[0]);
+    String[] eventPassEnricherNames = group.eventPassEnrichers.keySet().toArray(new String[0]);
+    if (eventPassEnrichers.length > 0) {
+      // the first exception of each enricher, after which the enricher is no longer applied
+      AtomicReferenceArray<Exception> errors =
+          new AtomicReferenceArray<>(eventPassEnrichers.length);
+      long[] elapsedNanos = new long[eventPassEnrichers.length];
+
+      for (int i = 0; i < eventPassEnrichers.length; i++) {
+        long start = System.nanoTime();
+        try {
+          enrichEntities(eventPassEnrichers[i], context);
+        } catch (Exception e) {
+          errors.set(i, e);
+        }
+        elapsedNanos[i] += System.nanoTime() - start;
+      }
+
+      enrichEventsConcurrently(eventPassEnrichers, context, errors, elapsedNanos);
+
+      for (int i = 0; i < eventPassEnrichers.length; i++) {
+        if (errors.get(i) != null) {
+          continue;
+        }
+        long start = System.nanoTime();
+        try {
+          enrichEdgesAndTrace(eventPassEnrichers[i], context);
+        } catch (Exception e) {
+          errors.set(i, e);
+        }
+        elapsedNanos[i] += System.nanoTime() - start;
+      }
+
+      for (int i = 0; i < eventPassEnrichers.length; i++) {
+        EnricherMetrics metrics = enricherMetrics.get(eventPassEnricherNames[i]);
+        if (errors.get(i) == null) {
+          metrics.traceCounter.increment(tenantSlot);
+          metrics.traceTimer.get(tenantSlot).record(elapsedNanos[i], TimeUnit.NANOSECONDS);
+        } else {
+          metrics.traceErrorsCounter.increment(tenantSlot);
+          logEnricherError(eventPassEnricherNames[i], context.getTrace(), errors.get(i));
+        }
+      }
+    }
+
+    for (Entry<String, Enricher> entry : group.sequentialEnrichers.entrySet()) {
+      applyEnricher(entry.getKey(), entry.getValue(), context, tenantSlot);
+    }
+  }
+
+  private void enrichEventsConcurrently(
+      Enricher[] enrichers,
+      EnrichmentContext context,
+      AtomicReferenceArray<Exception> errors,
+      long[] elapsedNanos) {
+    List<Event> events = context.getTrace().getEventList();
+    int taskCount = Math.min(parallelism, events.size() / MIN_EVENTS_PER_TASK);
+    if (executor == null || taskCount <= 1) {
+      addTo(elapsedNanos, enrichEvents(enrichers, context, events, errors));
+      return;
+    }
+
+    List<Callable<long[]>> tasks = new ArrayList<>(taskCount);
+    for (int i = 0; i < taskCount; i++) {
+      List<Event> eventRange =
+          events.subList(i * events.size() / taskCount, (i + 1) * events.size() / taskCount);
+      tasks.add(() -> enrichEvents(enrichers, context, eventRange, errors));
+    }
+    try {
+      for (Future<long[]> future : executor.invokeAll(tasks)) {
+        addTo(elapsedNanos, future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while enriching events", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to enrich events", e.getCause());
+    }
+  }
+
+  /** Enriches the events with each enricher in turn, returns the time spent per enricher. */
+  private static long[] enrichEvents(
+      Enricher[] enrichers,
+      EnrichmentContext context,
+      List<Event> events,
+      AtomicReferenceArray<Exception> errors) {
+    long[] elapsedNanos = new long[enrichers.length];
+    for (Event event : events) {
+      for (int i = 0; i < enrichers.length; i++) {
+        if (errors.get(i) != null) {
+          continue;
+        }
+        long start = System.nanoTime();
+        try {
+          enrichers[i].enrichEvent(context, event);
+        } catch (Exception e) {
+          errors.compareAndSet(i, null, e);
+        }
+        elapsedNanos[i] += System.nanoTime() - start;
+      }
+    }
+    return elapsedNanos;
+  }
+
+  private static void addTo(long[] sums, long[] values) {
+    for (int i = 0; i < sums.length; i++) {
+      sums[i] += values[i];
+    }
+  }
+
+  private static void logEnricherError(String enricherName, StructuredTrace trace, Exception e) {
+    LOG.error(
+        "Could not apply the enricher: {} to the trace with traceId: {}",
+        enricherName,
+        HexUtils.getHex(trace.getTraceId()),
+        e);
+  }
+
+  /**
+   * Groups the enrichers by dependency level: an enricher is one level above the highest of its
+   * dependencies, so the enrichers of a level only depend on those of the levels below. An enricher
+   * is also never in a lower level than the enrichers before it, so that it still sees their writes
+   * and they don't see its writes, as when the enrichers are applied one after the other, even if
+   * that isn't declared. The enrichers of a level are grouped in their order, see {@link
+   * #addToGroups}, and the last group of a level times the level.
+   *
+   * <p>A level is therefore a run of consecutive enrichers, which ends at an enricher that depends
+   * on one of the run. The enrichers of a level are not applied concurrently: the enrichers don't
+   * declare what they write, and most of them write the attribute maps of the events and of the
+   * trace, which are not safe to write from several threads, or read what the enrichers before
+   * them wrote without declaring it. The levels only end the single pass over the events of the
+   * concurrent enrichers where one of them reads what another one of the pass writes.
+   */
+  private List<EnricherGroup> buildEnricherLevels(List<EnricherInfo> enricherInfoList) {
+    Map<String, Integer> levelIndexes = new HashMap<>();
+    List<List<EnricherGroup>> levels = new ArrayList<>();
+    int previousLevelIndex = 0;
+    // the list is sorted topologically, so dependencies come first
+    for (EnricherInfo enricherInfo : enricherInfoList) {
+      int levelIndex = previousLevelIndex;
+      for (EnricherInfo dependency : enricherInfo.getDependencies()) {
+        Integer dependencyLevelIndex = levelIndexes.get(dependency.getName());
+        if (dependencyLevelIndex != null) {
+          levelIndex = Math.max(levelIndex, dependencyLevelIndex + 1);
+        }
+      }
+      levelIndexes.put(enricherInfo.getName(), levelIndex);
+
+      Enricher enricher = enrichers.get(enricherInfo.getName());
+      if (enricher == null) {
+        // failed to initialize, its level is still kept for the enrichers depending on it
+        continue;
+      }
+      previousLevelIndex = levelIndex;
+      while (levels.size() <= levelIndex) {
+        levels.add(new ArrayList<>());
+      }
+      addToGroups(
+          levels.get(levelIndex),
+          enricherInfo.getName(),
+          enricher,
+          enricher.isEventEnrichmentConcurrent());
+    }
+
+    List<EnricherGroup> groups = new ArrayList<>();
+    for (int i = 0; i < levels.size(); i++) {
+      List<EnricherGroup> level = levels.get(i);
+      if (level.isEmpty()) {
+        continue;
+      }
+      Map<String, String> tags = Map.of("level", String.valueOf(i));
+      level.get(level.size() - 1).levelTimer = TenantTimer.of(ENRICHER_LEVEL_TIMER, tags);
+      for (EnricherGroup group : level) {
+        LOG.info(
+            "Enricher level: {}, concurrent event enrichers: {}, sequential enrichers: {}",
+            i,
+            group.eventPassEnrichers.keySet(),
+            group.sequentialEnrichers.keySet());
+      }
+      groups.addAll(level);
+    }
+    return groups;
+  }
+
+  /**
+   * Groups the enrichers in their order: consecutive enrichers whose events are enriched locally
+   * share a single pass over the events, which ends at the next enricher that is applied on its
+   * own, for instance because it builds a graph of the trace or enriches the trace.
+   */
+  private List<EnricherGroup> buildFusedEnricherGroups(List<EnricherInfo> enricherInfoList) {
+    List<EnricherGroup> groups = new ArrayList<>();
+    for (EnricherInfo enricherInfo : enricherInfoList) {
+      Enricher enricher = enrichers.get(enricherInfo.getName());
+      if (enricher != null) {
+        addToGroups(groups, enricherInfo.getName(), enricher, enricher.isEventEnrichmentLocal());
+      }
+    }
+    for (EnricherGroup fusedGroup : groups) {
+      LOG.info(
+          "Enricher group, fused enrichers: {}, sequential enrichers: {}",
+          fusedGroup.eventPassEnrichers.keySet(),
+          fusedGroup.sequentialEnrichers.keySet());
+    }
+    return groups;
+  }
+
+  /**
+   * Adds the enricher to the last of the groups, or to a new group if the last group would apply it
+   * before an enricher that comes before it.
+   */
+  private static void addToGroups(
+      List<EnricherGroup> groups, String enricherName, Enricher enricher, boolean eventPass) {
+    EnricherGroup group = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+    // the pass of a group comes before its other enrichers
+    if (group == null || (eventPass && !group.sequentialEnrichers.isEmpty())) {
+      group = new EnricherGroup();
+      groups.add(group);
+    }
+    if (eventPass) {
+      group.eventPassEnrichers.put(enricherName, enricher);
+    } else {
+      group.sequentialEnrichers.put(enricherName, enricher);
+    }
+  }
+
+  /**
+   * Enrichers whose events are enriched together in a single pass, followed by enrichers that are
+   * applied one after the other.
+   */
+  private static final class EnricherGroup {
+    private final Map<String, Enricher> eventPassEnrichers = new LinkedHashMap<>();
+    private final Map<String, Enricher> sequentialEnrichers = new LinkedHashMap<>();
+    // only set for the last group of a dependency level
+    @Nullable private TenantTimer levelTimer;
+  }
+
+  /** The per-tenant meters of an enricher, tagged with the enricher name. */
+  private static final class EnricherMetrics {
+    private final TenantCounter traceCounter;
+    private final TenantTimer traceTimer;
+    private final TenantCounter traceErrorsCounter;
+
+    private EnricherMetrics(String enricherName) {
+      Map<String, String> tags = Map.of("enricher", enricherName);
+      this.traceCounter = TenantCounter.of(ENRICHED_TRACES_COUNTER, tags);
+      this.traceTimer = TenantTimer.of(ENRICHED_TRACES_TIMER, tags);
+      this.traceErrorsCounter = TenantCounter.of(TRACE_ENRICHMENT_ERRORS_COUNTER, tags);
+    }
   }
 }
@@ -24,6 +24,7 @@ import org.hypertrace.traceenricher.enrichedspan.constants.v1.BoundaryTypeValue;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.Http;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.Protocol;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 
 /**
  * This is to determine if the span is the entry / exit point for a particular API. We can't use the
@@ -64,6 +65,11 @@ public class ApiBoundaryTypeAttributeEnricher extends AbstractTraceEnricher {
 
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
+    enrichEvent(new EnrichmentContext(trace), event);
+  }
+
+  @Override
+  public void enrichEvent(EnrichmentContext context, Event event) {
     if (event.getEnrichedAttributes() == null) {
       return;
     }
@@ -77,7 +83,7 @@ public class ApiBoundaryTypeAttributeEnricher extends AbstractTraceEnricher {
     boolean isExitSpan = EnrichedSpanUtils.isExitSpan(event);
 
     // does not need to build the full traversal graph, just get the parents mapping
-    StructuredTraceGraph graph = buildGraph(trace);
+    StructuredTraceGraph graph = buildGraph(context);
 
     if (isEntrySpan) {
       /*
@@ -120,6 +126,12 @@ public class ApiBoundaryTypeAttributeEnricher extends AbstractTraceEnricher {
     }
   }
 
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    // the api trace graph is built from the boundary types set above
+    context.invalidateApiBoundaries();
+  }
+
   /**
    * Extracts the host header from the span and adds it as an enriched attributed to the span. Note:
    * This could potentially be either pulled into a separate enricher later or this enricher class
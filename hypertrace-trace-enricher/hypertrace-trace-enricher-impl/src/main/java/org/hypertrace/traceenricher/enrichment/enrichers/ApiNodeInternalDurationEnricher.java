@@ -17,8 +17,8 @@ import org.hypertrace.entity.service.constants.EntityConstants;
 import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.SpanUtils;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
-import org.hypertrace.traceenricher.trace.util.ApiTraceGraphBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,8 +31,12 @@ public class ApiNodeInternalDurationEnricher extends AbstractTraceEnricher {
 
   @Override
   public void enrichTrace(StructuredTrace trace) {
+    enrichTrace(new EnrichmentContext(trace));
+  }
 
-    ApiTraceGraph apiTraceGraph = ApiTraceGraphBuilder.buildGraph(trace);
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
     List<ApiNode<Event>> apiNodes = apiTraceGraph.getApiNodeList();
 
     for (ApiNode<Event> apiNode : apiNodes) {
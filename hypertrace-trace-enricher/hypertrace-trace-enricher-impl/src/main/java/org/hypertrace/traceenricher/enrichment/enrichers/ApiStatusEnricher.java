@@ -35,6 +35,12 @@ public class ApiStatusEnricher extends AbstractTraceEnricher {
   private static final String HTTP_RESPONSE_STATUS_MESSAGE_ATTR =
       RawSpanConstants.getValue(Http.HTTP_RESPONSE_STATUS_MESSAGE);
 
+  @Override
+  public boolean isEventEnrichmentLocal() {
+    // only reads and writes the attributes of the event
+    return true;
+  }
+
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
     Protocol protocol = EnrichedSpanUtils.getProtocol(event);
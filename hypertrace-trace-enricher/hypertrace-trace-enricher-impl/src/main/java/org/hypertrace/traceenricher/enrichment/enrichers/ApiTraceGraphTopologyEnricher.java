@@ -0,0 +1,24 @@
+package org.hypertrace.traceenricher.enrichment.enrichers;
+
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
+import org.hypertrace.traceenricher.trace.util.ApiTraceGraphTopology;
+
+/**
+ * Adds the topology of the api trace graph to the trace, so that the view generators restore the
+ * graph from it instead of building it again. It must run after the enrichers which change the
+ * events, their edges or their api boundary types.
+ */
+public class ApiTraceGraphTopologyEnricher extends AbstractTraceEnricher {
+
+  @Override
+  public void enrichTrace(StructuredTrace trace) {
+    enrichTrace(new EnrichmentContext(trace));
+  }
+
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    ApiTraceGraphTopology.of(context.getApiTraceGraph()).addToTrace(context.getTrace());
+  }
+}
@@ -16,6 +16,7 @@ import org.hypertrace.entity.v1.servicetype.ServiceType;
 import org.hypertrace.semantic.convention.utils.span.SpanSemanticConventionUtils;
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.enrichment.clients.ClientRegistry;
 import org.hypertrace.traceenricher.util.EntityAvroConverter;
 import org.slf4j.Logger;
@@ -45,6 +46,12 @@ public class DefaultServiceEntityEnricher extends AbstractTraceEnricher {
 
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
+    enrichEvent(new EnrichmentContext(trace), event);
+  }
+
+  @Override
+  public void enrichEvent(EnrichmentContext context, Event event) {
+    StructuredTrace trace = context.getTrace();
     // Nothing to do if the span already has service id on it
     if (EnrichedSpanUtils.getServiceId(event) != null) {
       return;
@@ -66,7 +73,7 @@ public class DefaultServiceEntityEnricher extends AbstractTraceEnricher {
       // 2. Enrich the exit span with the parent span's service entity.
       //    This will enable creating an edge between the exit span and the backend
 
-      StructuredTraceGraph graph = buildGraph(trace);
+      StructuredTraceGraph graph = buildGraph(context);
       if (EnrichedSpanUtils.isExitSpan(event) && SpanAttributeUtils.isLeafSpan(graph, event)) {
         String parentSvcName =
             findServiceNameOfFirstAncestorThatIsNotAnExitSpanAndBelongsToADifferentService(
@@ -13,6 +13,17 @@ public class EntitySpanEnricher extends AbstractTraceEnricher {
   private static final Logger LOG = LoggerFactory.getLogger(EntitySpanEnricher.class);
   private TraceEntityAccessor entityAccessor;
 
+  /**
+   * Reads the attributes of the span that entities are derived from, which can be any raw or
+   * enriched attribute, so it depends on the space enricher and thereby on all the enrichers before
+   * it. Writes nothing to the trace, only to the entity service, which is already called
+   * concurrently by the stream threads.
+   */
+  @Override
+  public boolean isEventEnrichmentConcurrent() {
+    return true;
+  }
+
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
     try {
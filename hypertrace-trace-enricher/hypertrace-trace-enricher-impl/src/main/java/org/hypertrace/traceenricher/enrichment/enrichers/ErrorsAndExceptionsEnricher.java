@@ -19,8 +19,8 @@ import org.hypertrace.traceenricher.enrichedspan.constants.v1.ApiStatus;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.CommonAttribute;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.ErrorMetrics;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
-import org.hypertrace.traceenricher.trace.util.ApiTraceGraphBuilder;
 import org.hypertrace.traceenricher.util.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,11 +99,17 @@ public class ErrorsAndExceptionsEnricher extends AbstractTraceEnricher {
 
   @Override
   public void enrichTrace(StructuredTrace trace) {
+    enrichTrace(new EnrichmentContext(trace));
+  }
+
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    StructuredTrace trace = context.getTrace();
     // TODO: There could be other cases where the client which is initiating this transaction
     //  has errored out but the entry span in transaction might be fine (server responded but
     //  client couldn't process it). Those cases should be handled in future.
 
-    ApiTraceGraph apiTraceGraph = ApiTraceGraphBuilder.buildGraph(trace);
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
     for (ApiNode<Event> apiNode : apiTraceGraph.getApiNodeList()) {
       Optional<Event> entryEvent = apiNode.getEntryApiBoundaryEvent();
       int apiTraceErrorCount =
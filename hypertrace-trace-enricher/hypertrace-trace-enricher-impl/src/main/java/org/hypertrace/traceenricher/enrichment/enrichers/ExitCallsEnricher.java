@@ -20,14 +20,20 @@ import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
 import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
-import org.hypertrace.traceenricher.trace.util.ApiTraceGraphBuilder;
 
 public class ExitCallsEnricher extends AbstractTraceEnricher {
 
   @Override
   public void enrichTrace(StructuredTrace trace) {
-    Map<ByteBuffer, ApiExitCallInfo> exitCallInfo = computeApiExitCallCount(trace);
+    enrichTrace(new EnrichmentContext(trace));
+  }
+
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    StructuredTrace trace = context.getTrace();
+    Map<ByteBuffer, ApiExitCallInfo> exitCallInfo = computeApiExitCallCount(context);
     trace.getEventList().stream()
         .filter(event -> exitCallInfo.containsKey(event.getEventId()))
         .forEach(
@@ -59,8 +65,9 @@ public class ExitCallsEnricher extends AbstractTraceEnricher {
    *   <li>2. exit calls to backend from api_exit_span in api_node
    * </ul>
    */
-  Map<ByteBuffer, ApiExitCallInfo> computeApiExitCallCount(StructuredTrace trace) {
-    ApiTraceGraph apiTraceGraph = ApiTraceGraphBuilder.buildGraph(trace);
+  Map<ByteBuffer, ApiExitCallInfo> computeApiExitCallCount(EnrichmentContext context) {
+    StructuredTrace trace = context.getTrace();
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
     // event -> api exit call count for the corresponding api_node
     Map<ByteBuffer, ApiExitCallInfo> eventToExitInfo = Maps.newHashMap();
 
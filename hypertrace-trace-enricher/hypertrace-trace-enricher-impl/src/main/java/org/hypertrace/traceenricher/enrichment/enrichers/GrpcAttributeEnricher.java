@@ -17,6 +17,12 @@ public class GrpcAttributeEnricher extends AbstractTraceEnricher {
   private static final String GRPC_RECV_DOT = "Recv.";
   private static final String GRPC_SENT_DOT = "Sent.";
 
+  @Override
+  public boolean isEventEnrichmentLocal() {
+    // only reads and writes the attributes of the event
+    return true;
+  }
+
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
     // if protocol is Grpc update attribute
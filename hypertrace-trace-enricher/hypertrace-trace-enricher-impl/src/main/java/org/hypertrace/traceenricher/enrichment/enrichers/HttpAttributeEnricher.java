@@ -34,6 +34,22 @@ public class HttpAttributeEnricher extends AbstractTraceEnricher {
   private static final String QUERY_PARAM_DELIMITER = "&";
   private static final String QUERY_PARAM_KEY_VALUE_DELIMITER = "=";
 
+  /**
+   * Reads the http url and path attributes of the span, and writes the {@link
+   * Http#HTTP_REQUEST_PATH} and {@link Http#HTTP_REQUEST_QUERY_PARAM} enriched attributes of the
+   * span.
+   */
+  @Override
+  public boolean isEventEnrichmentConcurrent() {
+    return true;
+  }
+
+  @Override
+  public boolean isEventEnrichmentLocal() {
+    // only reads and writes the attributes of the event
+    return true;
+  }
+
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
 
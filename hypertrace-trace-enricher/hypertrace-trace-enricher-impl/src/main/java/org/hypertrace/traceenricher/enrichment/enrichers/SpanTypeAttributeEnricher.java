@@ -85,6 +85,12 @@ public class SpanTypeAttributeEnricher extends AbstractTraceEnricher {
   private final String envoyIngressSpanValue = RawSpanConstants.getValue(Envoy.ENVOY_INGRESS_SPAN);
   private final String envoyEgressSpanValue = RawSpanConstants.getValue(Envoy.ENVOY_EGRESS_SPAN);
 
+  @Override
+  public boolean isEventEnrichmentLocal() {
+    // only reads and writes the attributes of the event
+    return true;
+  }
+
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
     if (event.getAttributes() == null) {
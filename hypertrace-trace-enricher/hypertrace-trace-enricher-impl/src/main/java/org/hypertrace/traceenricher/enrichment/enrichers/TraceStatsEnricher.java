@@ -15,14 +15,20 @@ import org.hypertrace.core.datamodel.shared.ApiNode;
 import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
-import org.hypertrace.traceenricher.trace.util.ApiTraceGraphBuilder;
 
 public class TraceStatsEnricher extends AbstractTraceEnricher {
 
   @Override
   public void enrichTrace(StructuredTrace trace) {
-    ApiTraceGraph apiTraceGraph = ApiTraceGraphBuilder.buildGraph(trace);
+    enrichTrace(new EnrichmentContext(trace));
+  }
+
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    StructuredTrace trace = context.getTrace();
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
     if (apiTraceGraph.getApiNodeList().isEmpty()) {
       return;
     }
@@ -71,6 +71,21 @@ public class UserAgentSpanEnricher extends AbstractTraceEnricher {
     }
   }
 
+  /**
+   * Reads the protocol, which the span type enricher may have written, and the user agent
+   * attributes of the span, and writes the {@link UserAgent} enriched attributes of the span.
+   */
+  @Override
+  public boolean isEventEnrichmentConcurrent() {
+    return true;
+  }
+
+  @Override
+  public boolean isEventEnrichmentLocal() {
+    // only reads and writes the attributes of the event
+    return true;
+  }
+
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
     if (event.getAttributes() == null) {
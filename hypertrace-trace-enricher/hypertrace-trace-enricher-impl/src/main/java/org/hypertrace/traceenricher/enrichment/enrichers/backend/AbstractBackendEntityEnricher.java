@@ -32,6 +32,7 @@ import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.Backend;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.enrichment.clients.ClientRegistry;
 import org.hypertrace.traceenricher.enrichment.enrichers.BackendType;
 import org.hypertrace.traceenricher.enrichment.enrichers.backend.provider.BackendProvider;
@@ -87,8 +88,14 @@ public abstract class AbstractBackendEntityEnricher extends AbstractTraceEnriche
   // entity.
   @Override
   public void enrichTrace(StructuredTrace trace) {
+    enrichTrace(new EnrichmentContext(trace));
+  }
+
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    StructuredTrace trace = context.getTrace();
     try {
-      StructuredTraceGraph structuredTraceGraph = buildGraph(trace);
+      StructuredTraceGraph structuredTraceGraph = buildGraph(context);
       trace.getEventList().stream()
           // filter leaf exit spans only
           .filter(
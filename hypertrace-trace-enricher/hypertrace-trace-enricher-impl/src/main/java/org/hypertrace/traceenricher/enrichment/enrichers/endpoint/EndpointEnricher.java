@@ -18,8 +18,8 @@ import org.hypertrace.entity.data.service.v1.Entity;
 import org.hypertrace.entity.service.constants.EntityConstants;
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
 import org.hypertrace.traceenricher.enrichment.AbstractTraceEnricher;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.enrichment.clients.ClientRegistry;
-import org.hypertrace.traceenricher.trace.util.ApiTraceGraphBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -159,7 +159,12 @@ public class EndpointEnricher extends AbstractTraceEnricher {
    */
   @Override
   public void enrichTrace(StructuredTrace trace) {
-    List<ApiNode<Event>> apiNodes = ApiTraceGraphBuilder.buildGraph(trace).getApiNodeList();
+    enrichTrace(new EnrichmentContext(trace));
+  }
+
+  @Override
+  public void enrichTrace(EnrichmentContext context) {
+    List<ApiNode<Event>> apiNodes = context.getApiTraceGraph().getApiNodeList();
     for (ApiNode<Event> apiNode : apiNodes) {
       Optional<Event> optionalEvent = apiNode.getEntryApiBoundaryEvent();
       if (optionalEvent.isEmpty()) {
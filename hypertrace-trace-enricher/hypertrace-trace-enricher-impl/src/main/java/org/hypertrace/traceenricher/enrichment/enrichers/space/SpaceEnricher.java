@@ -36,6 +36,17 @@ public class SpaceEnricher extends AbstractTraceEnricher {
     this.ruleEvaluator = ruleEvaluator;
   }
 
+  /**
+   * Reads the attributes of the span that the space rules of the tenant refer to, which can be any
+   * raw or enriched attribute, so all the enrichers before it are declared as its dependencies.
+   * Writes the space ids enriched attribute of the span, the trace attribute is set by {@link
+   * #enrichTrace}.
+   */
+  @Override
+  public boolean isEventEnrichmentConcurrent() {
+    return true;
+  }
+
   @Override
   public void enrichEvent(StructuredTrace trace, Event event) {
     addEnrichedAttribute(
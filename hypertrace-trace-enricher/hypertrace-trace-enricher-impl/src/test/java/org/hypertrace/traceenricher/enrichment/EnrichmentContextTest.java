@@ -0,0 +1,89 @@
+package org.hypertrace.traceenricher.enrichment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Map;
+import org.hypertrace.core.datamodel.Edge;
+import org.hypertrace.core.datamodel.EdgeType;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.StructuredTraceGraph;
+import org.hypertrace.traceenricher.enrichment.enrichers.TestUtils;
+import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
+import org.junit.jupiter.api.Test;
+
+class EnrichmentContextTest {
+
+  @Test
+  void buildsGraphsOnceWhileTraceIsUnchanged() {
+    EnrichmentContext context = new EnrichmentContext(createTrace());
+
+    StructuredTraceGraph structuredTraceGraph = context.getStructuredTraceGraph();
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
+
+    assertSame(structuredTraceGraph, context.getStructuredTraceGraph());
+    assertSame(apiTraceGraph, context.getApiTraceGraph());
+    assertEquals(0, context.getEventsVersion());
+    assertEquals(0, context.getEntitiesVersion());
+  }
+
+  @Test
+  void detectsAddedEventEdges() {
+    StructuredTrace trace = createTrace();
+    EnrichmentContext context = new EnrichmentContext(trace);
+    Event child = trace.getEventList().get(1);
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
+    assertNull(context.getStructuredTraceGraph().getParentEvent(child));
+
+    trace
+        .getEventEdgeList()
+        .add(
+            Edge.newBuilder()
+                .setSrcIndex(0)
+                .setTgtIndex(1)
+                .setEdgeType(EdgeType.EVENT_EVENT)
+                .build());
+
+    assertEquals(1, context.getEventsVersion());
+    assertSame(
+        trace.getEventList().get(0), context.getStructuredTraceGraph().getParentEvent(child));
+    assertNotSame(apiTraceGraph, context.getApiTraceGraph());
+  }
+
+  @Test
+  void rebuildsOnlyApiTraceGraphWhenApiBoundariesAreInvalidated() {
+    EnrichmentContext context = new EnrichmentContext(createTrace());
+    StructuredTraceGraph structuredTraceGraph = context.getStructuredTraceGraph();
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
+
+    context.invalidateApiBoundaries();
+
+    assertEquals(1, context.getApiBoundariesVersion());
+    assertNotSame(apiTraceGraph, context.getApiTraceGraph());
+    assertSame(structuredTraceGraph, context.getStructuredTraceGraph());
+  }
+
+  @Test
+  void rebuildsStructuredTraceGraphWhenEventsAreInvalidated() {
+    EnrichmentContext context = new EnrichmentContext(createTrace());
+    StructuredTraceGraph structuredTraceGraph = context.getStructuredTraceGraph();
+    ApiTraceGraph apiTraceGraph = context.getApiTraceGraph();
+
+    context.invalidateEvents();
+
+    assertEquals(1, context.getEventsVersion());
+    // the events graph is re-created in place
+    assertSame(structuredTraceGraph, context.getStructuredTraceGraph());
+    assertNotSame(apiTraceGraph, context.getApiTraceGraph());
+  }
+
+  private static StructuredTrace createTrace() {
+    Event[] events = {
+      TestUtils.createEntryEventWithName("entry"), TestUtils.createExitEventName("exit")
+    };
+    return TestUtils.createTraceWithEventsAndEdges(events, Map.of());
+  }
+}
@@ -0,0 +1,253 @@
+package org.hypertrace.traceenricher.enrichment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
+import org.hypertrace.traceenricher.enrichment.clients.ClientRegistry;
+import org.hypertrace.traceenricher.enrichment.enrichers.TestUtils;
+import org.junit.jupiter.api.Test;
+
+class EnrichmentProcessorTest {
+
+  private static final Set<Thread> secondEnricherThreads = ConcurrentHashMap.newKeySet();
+  private static final AtomicBoolean lastEventEnrichedFirst = new AtomicBoolean();
+
+  @Test
+  void appliesEnrichersByLevelWithSameResultAsOneAfterTheOther() {
+    EnricherInfo first = enricherInfo("first", FirstEnricher.class, List.of());
+    EnricherInfo second = enricherInfo("second", SecondEnricher.class, List.of(first));
+    EnricherInfo counting = enricherInfo("counting", CountingEnricher.class, List.of(second));
+    List<EnricherInfo> enricherInfos = List.of(first, second, counting);
+
+    StructuredTrace sequentialTrace = createTrace(1000);
+    new EnrichmentProcessor(enricherInfos, mock(ClientRegistry.class)).process(sequentialTrace);
+    StructuredTrace levelledTrace = createTrace(1000);
+    secondEnricherThreads.clear();
+    new EnrichmentProcessor(enricherInfos, mock(ClientRegistry.class), 4, false)
+        .process(levelledTrace);
+
+    assertEquals(
+        "1000", levelledTrace.getAttributes().getAttributeMap().get("counting").getValue());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(
+          sequentialTrace.getEventList().get(i).getEnrichedAttributes(),
+          levelledTrace.getEventList().get(i).getEnrichedAttributes());
+    }
+    assertEquals(sequentialTrace.getAttributes(), levelledTrace.getAttributes());
+    // the events of a big trace are enriched on the executor
+    assertFalse(secondEnricherThreads.contains(Thread.currentThread()));
+  }
+
+  @Test
+  void appliesEnrichersByLevelInTheirOrderWithUndeclaredDependencies() {
+    EnricherInfo first = enricherInfo("first", FirstEnricher.class, List.of());
+    EnricherInfo second = enricherInfo("second", SecondEnricher.class, List.of(first));
+    // no dependencies, yet it must neither run before the second enricher nor after the first one
+    EnricherInfo overwriting = enricherInfo("overwriting", OverwritingEnricher.class, List.of());
+
+    for (List<EnricherInfo> enricherInfos :
+        List.of(List.of(first, second, overwriting), List.of(overwriting, first, second))) {
+      StructuredTrace sequentialTrace = createTrace(1000);
+      new EnrichmentProcessor(enricherInfos, mock(ClientRegistry.class)).process(sequentialTrace);
+      StructuredTrace levelledTrace = createTrace(1000);
+      new EnrichmentProcessor(enricherInfos, mock(ClientRegistry.class), 4, false)
+          .process(levelledTrace);
+
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(
+            sequentialTrace.getEventList().get(i).getEnrichedAttributes(),
+            levelledTrace.getEventList().get(i).getEnrichedAttributes());
+      }
+    }
+  }
+
+  @Test
+  void appliesEventsOfSmallTraceInCallingThread() {
+    EnricherInfo second = enricherInfo("second", SecondEnricher.class, List.of());
+    secondEnricherThreads.clear();
+
+    new EnrichmentProcessor(List.of(second), mock(ClientRegistry.class), 4, false)
+        .process(createTrace(10));
+
+    assertEquals(Set.of(Thread.currentThread()), secondEnricherThreads);
+  }
+
+  @Test
+  void stopsApplyingEnricherAfterItFails() {
+    EnricherInfo failing = enricherInfo("failing", FailingEnricher.class, List.of());
+    EnricherInfo first = enricherInfo("first", FirstEnricher.class, List.of());
+    StructuredTrace trace = createTrace(1000);
+
+    new EnrichmentProcessor(List.of(failing, first), mock(ClientRegistry.class), 4, false)
+        .process(trace);
+
+    long failedEvents =
+        trace.getEventList().stream()
+            .filter(event -> event.getEnrichedAttributes().getAttributeMap().containsKey("failing"))
+            .count();
+    // at most the first event of each task
+    assertTrue(failedEvents >= 1 && failedEvents <= 4);
+    // the other enrichers of the level are still applied to all events
+    assertTrue(
+        trace.getEventList().stream()
+            .allMatch(
+                event -> event.getEnrichedAttributes().getAttributeMap().containsKey("first")));
+  }
+
+  @Test
+  void appliesLocalEnrichersInSinglePassWithSameResultAsOneAfterTheOther() {
+    EnricherInfo first = enricherInfo("first", FirstEnricher.class, List.of());
+    EnricherInfo second = enricherInfo("second", SecondEnricher.class, List.of(first));
+    EnricherInfo counting = enricherInfo("counting", CountingEnricher.class, List.of(second));
+    List<EnricherInfo> enricherInfos = List.of(first, second, counting);
+
+    StructuredTrace sequentialTrace = createTrace(100);
+    new EnrichmentProcessor(enricherInfos, mock(ClientRegistry.class)).process(sequentialTrace);
+    StructuredTrace fusedTrace = createTrace(100);
+    new EnrichmentProcessor(enricherInfos, mock(ClientRegistry.class), 1, true).process(fusedTrace);
+
+    assertEquals("100", fusedTrace.getAttributes().getAttributeMap().get("counting").getValue());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(
+          sequentialTrace.getEventList().get(i).getEnrichedAttributes(),
+          fusedTrace.getEventList().get(i).getEnrichedAttributes());
+    }
+    assertEquals(sequentialTrace.getAttributes(), fusedTrace.getAttributes());
+  }
+
+  @Test
+  void enrichesEachEventWithAllLocalEnrichersBeforeTheNextEvent() {
+    EnricherInfo first = enricherInfo("first", FirstEnricher.class, List.of());
+    EnricherInfo peeking = enricherInfo("peeking", PeekingEnricher.class, List.of(first));
+
+    new EnrichmentProcessor(List.of(first, peeking), mock(ClientRegistry.class))
+        .process(createTrace(10));
+    assertTrue(lastEventEnrichedFirst.get());
+
+    new EnrichmentProcessor(List.of(first, peeking), mock(ClientRegistry.class), 1, true)
+        .process(createTrace(10));
+    assertFalse(lastEventEnrichedFirst.get());
+  }
+
+  private static EnricherInfo enricherInfo(
+      String name, Class<? extends Enricher> clazz, List<EnricherInfo> dependencies) {
+    return new EnricherInfo(name, clazz, dependencies, ConfigFactory.empty());
+  }
+
+  private static StructuredTrace createTrace(int eventCount) {
+    Event[] events = new Event[eventCount];
+    for (int i = 0; i < eventCount; i++) {
+      events[i] = TestUtils.createUnspecifiedTypeEventWithName("event-" + i);
+    }
+    return TestUtils.createTraceWithEventsAndEdges(events, Map.of());
+  }
+
+  public static class FirstEnricher extends AbstractTraceEnricher {
+    @Override
+    public boolean isEventEnrichmentConcurrent() {
+      return true;
+    }
+
+    @Override
+    public boolean isEventEnrichmentLocal() {
+      return true;
+    }
+
+    @Override
+    public void enrichEvent(StructuredTrace trace, Event event) {
+      addEnrichedAttribute(event, "first", AttributeValueCreator.create(event.getEventName()));
+    }
+  }
+
+  public static class FailingEnricher extends AbstractTraceEnricher {
+    @Override
+    public boolean isEventEnrichmentConcurrent() {
+      return true;
+    }
+
+    @Override
+    public void enrichEvent(StructuredTrace trace, Event event) {
+      addEnrichedAttribute(event, "failing", AttributeValueCreator.create(true));
+      throw new IllegalStateException("failed to enrich event");
+    }
+  }
+
+  public static class SecondEnricher extends AbstractTraceEnricher {
+    @Override
+    public boolean isEventEnrichmentConcurrent() {
+      return true;
+    }
+
+    @Override
+    public boolean isEventEnrichmentLocal() {
+      return true;
+    }
+
+    @Override
+    public void enrichEvent(StructuredTrace trace, Event event) {
+      secondEnricherThreads.add(Thread.currentThread());
+      String first =
+          event.getEnrichedAttributes().getAttributeMap().containsKey("first")
+              ? event.getEnrichedAttributes().getAttributeMap().get("first").getValue()
+              : "missing";
+      addEnrichedAttribute(event, "second", AttributeValueCreator.create(first));
+    }
+  }
+
+  public static class OverwritingEnricher extends AbstractTraceEnricher {
+    @Override
+    public void enrichEvent(StructuredTrace trace, Event event) {
+      addEnrichedAttribute(event, "first", AttributeValueCreator.create("overwritten"));
+    }
+  }
+
+  /** Not actually local, it looks at the last event to tell in which order events are enriched. */
+  public static class PeekingEnricher extends AbstractTraceEnricher {
+    @Override
+    public boolean isEventEnrichmentLocal() {
+      return true;
+    }
+
+    @Override
+    public void enrichEvent(StructuredTrace trace, Event event) {
+      List<Event> events = trace.getEventList();
+      if (event == events.get(0)) {
+        Event lastEvent = events.get(events.size() - 1);
+        lastEventEnrichedFirst.set(
+            lastEvent.getEnrichedAttributes().getAttributeMap().containsKey("first"));
+      }
+    }
+  }
+
+  public static class CountingEnricher extends AbstractTraceEnricher {
+    @Override
+    public void enrichTrace(StructuredTrace trace) {
+      long count =
+          trace.getEventList().stream()
+              .filter(
+                  event ->
+                      event
+                          .getEnrichedAttributes()
+                          .getAttributeMap()
+                          .get("second")
+                          .getValue()
+                          .equals(event.getEventName()))
+              .count();
+      trace
+          .getAttributes()
+          .getAttributeMap()
+          .put("counting", AttributeValueCreator.create(String.valueOf(count)));
+    }
+  }
+}
@@ -3,6 +3,7 @@ package org.hypertrace.traceenricher.enrichment.enrichers;
 import static org.hypertrace.core.span.normalizer.constants.OTelSpanTag.OTEL_SPAN_TAG_RPC_SYSTEM;
 import static org.hypertrace.core.span.normalizer.constants.RpcSpanTag.RPC_REQUEST_METADATA_AUTHORITY;
 import static org.hypertrace.core.span.normalizer.constants.RpcSpanTag.RPC_REQUEST_METADATA_HOST;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -22,6 +23,7 @@ import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUti
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.BoundaryTypeValue;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.CommonAttribute;
 import org.hypertrace.traceenricher.enrichedspan.constants.v1.Protocol;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.util.Constants;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -151,7 +153,7 @@ public class ApiBoundaryTypeAttributeEnricherTest extends AbstractAttributeEnric
     when(graph.getChildrenEvents(firstExit)).thenReturn(Lists.newArrayList(secondEntry));
     when(graph.getChildrenEvents(secondExit)).thenReturn(null);
 
-    when(target.buildGraph(trace)).thenReturn(graph);
+    doReturn(graph).when(target).buildGraph(any(EnrichmentContext.class));
 
     target.enrichEvent(trace, firstEntry);
     Assertions.assertEquals(
@@ -330,7 +332,7 @@ public class ApiBoundaryTypeAttributeEnricherTest extends AbstractAttributeEnric
 
     when(graph.getParentEvent(innerEntrySpan)).thenReturn(null);
 
-    doReturn(graph).when(target).buildGraph(trace);
+    doReturn(graph).when(target).buildGraph(any(EnrichmentContext.class));
   }
 
   private void mockDoubleEntryStructuredGraph() {
@@ -340,7 +342,7 @@ public class ApiBoundaryTypeAttributeEnricherTest extends AbstractAttributeEnric
     when(graph.getChildrenEvents(innerExitSpan)).thenReturn(Lists.newArrayList(outerExitSpan));
     when(graph.getChildrenEvents(outerExitSpan)).thenReturn(null);
 
-    doReturn(graph).when(target).buildGraph(trace);
+    doReturn(graph).when(target).buildGraph(any(EnrichmentContext.class));
   }
 
   private void mockProtocol(Event event, Protocol protocol) {
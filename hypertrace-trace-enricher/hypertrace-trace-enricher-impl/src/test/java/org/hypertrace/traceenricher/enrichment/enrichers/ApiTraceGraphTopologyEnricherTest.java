@@ -0,0 +1,49 @@
+package org.hypertrace.traceenricher.enrichment.enrichers;
+
+import static org.hypertrace.traceenricher.enrichment.enrichers.TestUtils.createEntryEventWithName;
+import static org.hypertrace.traceenricher.enrichment.enrichers.TestUtils.createExitEventName;
+import static org.hypertrace.traceenricher.enrichment.enrichers.TestUtils.createTraceWithEventsAndEdges;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
+import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
+import org.hypertrace.traceenricher.trace.util.ApiTraceGraphTopology;
+import org.junit.jupiter.api.Test;
+
+class ApiTraceGraphTopologyEnricherTest {
+
+  @Test
+  void topologyIsAddedToTraceAttribute() {
+    Event aEntryEvent = createEntryEventWithName("aEvent"); // 0
+    Event aExitEvent = createExitEventName("aExitEvent"); // 1
+    Event bEntryEvent = createEntryEventWithName("bEvent"); // 2
+
+    StructuredTrace trace =
+        createTraceWithEventsAndEdges(
+            new Event[] {aEntryEvent, aExitEvent, bEntryEvent},
+            new HashMap<>() {
+              {
+                put(0, new int[] {1});
+                put(1, new int[] {2});
+              }
+            });
+
+    new ApiTraceGraphTopologyEnricher().enrichTrace(trace);
+
+    assertTrue(
+        trace
+            .getAttributes()
+            .getAttributeMap()
+            .containsKey(EnrichedSpanConstants.API_TRACE_GRAPH_TOPOLOGY));
+    ApiTraceGraph apiTraceGraph =
+        new ApiTraceGraph(trace, ApiTraceGraphTopology.fromTrace(trace).orElseThrow());
+    assertEquals(2, apiTraceGraph.getApiNodeList().size());
+    assertEquals(1, apiTraceGraph.getApiNodeEventEdgeList().size());
+    assertEquals(aExitEvent, apiTraceGraph.getApiExitBoundaryEventsWithOutgoingEdge().get(0));
+    assertEquals(bEntryEvent, apiTraceGraph.getApiEntryBoundaryEventsWithIncomingEdge().get(0));
+  }
+}
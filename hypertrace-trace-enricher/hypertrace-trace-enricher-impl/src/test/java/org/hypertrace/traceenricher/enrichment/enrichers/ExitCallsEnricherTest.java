@@ -25,6 +25,7 @@ import org.hypertrace.core.datamodel.shared.ApiNode;
 import org.hypertrace.core.datamodel.shared.SpanAttributeUtils;
 import org.hypertrace.traceenricher.enrichedspan.constants.EnrichedSpanConstants;
 import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUtils;
+import org.hypertrace.traceenricher.enrichment.EnrichmentContext;
 import org.hypertrace.traceenricher.enrichment.enrichers.ExitCallsEnricher.ApiExitCallInfo;
 import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
 import org.junit.jupiter.api.Test;
@@ -95,7 +96,7 @@ public class ExitCallsEnricherTest {
             });
 
     Map<ByteBuffer, ApiExitCallInfo> eventToApiExitInfo =
-        exitCallsEnricher.computeApiExitCallCount(trace);
+        exitCallsEnricher.computeApiExitCallCount(new EnrichmentContext(trace));
     // verify exit call count per service per api_trace
     // this trace has 4 services
     // frontend service has 1 api_entry span and that api_node has 12 exit calls [drive: 1,
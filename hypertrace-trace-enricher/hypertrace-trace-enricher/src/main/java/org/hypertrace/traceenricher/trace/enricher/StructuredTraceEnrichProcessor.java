@@ -3,7 +3,9 @@ package org.hypertrace.traceenricher.trace.enricher;
 import static org.hypertrace.traceenricher.trace.enricher.StructuredTraceEnricherConstants.CACHE_LOADER_THREAD_POOL_SIZE;
 import static org.hypertrace.traceenricher.trace.enricher.StructuredTraceEnricherConstants.ENRICHER_CLIENTS_CONFIG_KEY;
 import static org.hypertrace.traceenricher.trace.enricher.StructuredTraceEnricherConstants.ENRICHER_CONFIG_TEMPLATE;
+import static org.hypertrace.traceenricher.trace.enricher.StructuredTraceEnricherConstants.ENRICHER_FUSE_EVENT_ENRICHMENT_CONFIG_KEY;
 import static org.hypertrace.traceenricher.trace.enricher.StructuredTraceEnricherConstants.ENRICHER_NAMES_CONFIG_KEY;
+import static org.hypertrace.traceenricher.trace.enricher.StructuredTraceEnricherConstants.ENRICHER_PARALLELISM_CONFIG_KEY;
 import static org.hypertrace.traceenricher.trace.enricher.StructuredTraceEnricherConstants.STRUCTURED_TRACES_ENRICHMENT_JOB_CONFIG_KEY;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
@@ -46,7 +48,10 @@ public class StructuredTraceEnrichProcessor
                       this.buildThreadFactory()));
           processor =
               new EnrichmentProcessor(
-                  enrichmentRegistry.getOrderedRegisteredEnrichers(), clientRegistry);
+                  enrichmentRegistry.getOrderedRegisteredEnrichers(),
+                  clientRegistry,
+                  getParallelism(jobConfig),
+                  isEventEnrichmentFused(jobConfig));
         }
       }
     }
@@ -73,6 +78,17 @@ public class StructuredTraceEnrichProcessor
     return enricherConfigs;
   }
 
+  private int getParallelism(Config jobConfig) {
+    return jobConfig.hasPath(ENRICHER_PARALLELISM_CONFIG_KEY)
+        ? jobConfig.getInt(ENRICHER_PARALLELISM_CONFIG_KEY)
+        : 1;
+  }
+
+  private boolean isEventEnrichmentFused(Config jobConfig) {
+    return jobConfig.hasPath(ENRICHER_FUSE_EVENT_ENRICHMENT_CONFIG_KEY)
+        && jobConfig.getBoolean(ENRICHER_FUSE_EVENT_ENRICHMENT_CONFIG_KEY);
+  }
+
   private Config getClientsConfig(Config jobConfig) {
     return jobConfig.getConfig(ENRICHER_CLIENTS_CONFIG_KEY);
   }
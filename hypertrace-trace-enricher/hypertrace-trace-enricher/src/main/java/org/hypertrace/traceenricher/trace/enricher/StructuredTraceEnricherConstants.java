@@ -7,6 +7,9 @@ public class StructuredTraceEnricherConstants {
   public static final String ENRICHER_CONFIGS_KEY = "enricher.configs";
   public static final String ENRICHER_NAMES_CONFIG_KEY = "enricher.names";
   public static final String ENRICHER_CLIENTS_CONFIG_KEY = "enricher.clients";
+  public static final String ENRICHER_PARALLELISM_CONFIG_KEY = "enricher.parallelism";
+  public static final String ENRICHER_FUSE_EVENT_ENRICHMENT_CONFIG_KEY =
+      "enricher.fuseEventEnrichment";
   public static final String CACHE_LOADER_THREAD_POOL_SIZE = "cache.loader.thread.pool.size";
   public static final String ENRICHER_CONFIG_TEMPLATE = "enricher.%s";
   public static final String STRUCTURED_TRACES_ENRICHMENT_JOB_CONFIG_KEY =
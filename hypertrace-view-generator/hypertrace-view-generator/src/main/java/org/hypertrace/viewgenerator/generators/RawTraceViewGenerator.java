@@ -22,6 +22,8 @@ import org.hypertrace.traceenricher.enrichedspan.constants.utils.EnrichedSpanUti
 import org.hypertrace.viewgenerator.api.RawTraceView;
 
 public class RawTraceViewGenerator extends BaseViewGenerator<RawTraceView> {
+  // set by the raw spans grouper on each fragment of a trace it had to emit in several parts
+  private static final String TRACE_FRAGMENT_SEQUENCE_ATTRIBUTE = "trace.fragment.sequence";
 
   @Override
   List<RawTraceView> generateView(
@@ -54,6 +56,7 @@ public class RawTraceViewGenerator extends BaseViewGenerator<RawTraceView> {
     builder.setNumServices(services.size());
     builder.setServices(new ArrayList<>(services));
     builder.setSpaceIds(getSpaceIdsFromTrace(structuredTrace));
+    builder.setFragmentSequence(getFragmentSequence(structuredTrace));
     return Lists.newArrayList(builder.build());
   }
 
@@ -80,4 +83,13 @@ public class RawTraceViewGenerator extends BaseViewGenerator<RawTraceView> {
         .map(AttributeValue::getValueList)
         .orElseGet(Collections::emptyList);
   }
+
+  private int getFragmentSequence(StructuredTrace trace) {
+    return Optional.ofNullable(trace.getAttributes())
+        .map(Attributes::getAttributeMap)
+        .map(map -> map.get(TRACE_FRAGMENT_SEQUENCE_ATTRIBUTE))
+        .map(AttributeValue::getValue)
+        .map(Integer::parseInt)
+        .orElse(-1);
+  }
 }
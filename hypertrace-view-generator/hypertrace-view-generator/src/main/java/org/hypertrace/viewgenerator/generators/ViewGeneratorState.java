@@ -5,24 +5,31 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
 import org.apache.avro.reflect.Nullable;
 import org.hypertrace.core.datamodel.Entity;
 import org.hypertrace.core.datamodel.Event;
-import org.hypertrace.core.datamodel.EventRef;
-import org.hypertrace.core.datamodel.EventRefType;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
+import org.hypertrace.traceenricher.trace.util.ApiTraceGraphTopology;
 
 public class ViewGeneratorState {
 
   private static final ThreadLocal<TraceState> traceStateThreadLocal = new ThreadLocal<>();
   private static final ThreadLocal<ApiTraceGraph> apiTraceGraphThreadLocal = new ThreadLocal<>();
 
+  /**
+   * Restores the api trace graph from the topology added to the trace by the trace enricher, and
+   * builds it if there is none.
+   */
   public static ApiTraceGraph getApiTraceGraph(StructuredTrace trace) {
     if (apiTraceGraphThreadLocal.get() == null
         || isDifferentTrace(apiTraceGraphThreadLocal.get().getTrace(), trace)) {
-      apiTraceGraphThreadLocal.set(new ApiTraceGraph(trace));
+      apiTraceGraphThreadLocal.set(
+          getTraceState(trace)
+              .getApiTraceGraphTopology()
+              .map(topology -> new ApiTraceGraph(trace, topology))
+              .orElseGet(() -> new ApiTraceGraph(trace)));
     }
     return apiTraceGraphThreadLocal.get();
   }
@@ -45,9 +52,11 @@ public class ViewGeneratorState {
     private final Map<ByteBuffer, Event> eventMap = new HashMap<>();
     private final Map<ByteBuffer, List<ByteBuffer>> parentToChildrenEventIds = new HashMap<>();
     private final Map<ByteBuffer, ByteBuffer> childToParentEventIds = new HashMap<>();
+    private final Optional<ApiTraceGraphTopology> apiTraceGraphTopology;
 
     public TraceState(StructuredTrace trace) {
       this.trace = trace;
+      this.apiTraceGraphTopology = ApiTraceGraphTopology.fromTrace(trace);
       for (Entity entity : trace.getEntityList()) {
         entityMap.put(entity.getEntityId(), entity);
       }
@@ -55,9 +64,10 @@ public class ViewGeneratorState {
         eventMap.put(event.getEventId(), event);
       }
 
-      for (Event event : trace.getEventList()) {
-        ByteBuffer childEventId = event.getEventId();
-        ByteBuffer parentEventId = getParentId(event);
+      List<Event> events = trace.getEventList();
+      for (int i = 0; i < events.size(); i++) {
+        ByteBuffer childEventId = events.get(i).getEventId();
+        ByteBuffer parentEventId = getParentId(events, i);
         if (parentEventId != null) {
           parentToChildrenEventIds
               .computeIfAbsent(parentEventId, v -> new ArrayList<>())
@@ -87,42 +97,23 @@ public class ViewGeneratorState {
       return childToParentEventIds;
     }
 
-    /**
-     * Note: As of now, open tracing specification represents two construct for providing support
-     * for relation between spans: child_of and follow_from. Ref :
-     * https://opentracing.io/specification/
-     *
-     * <p>On the other hand, as of now, open telemetry supports only concept of parent Ref :
-     * https://github.com/open-telemetry/opentelemetry-proto/blob/main/opentelemetry/proto/trace/v1/trace.proto#L85
-     *
-     * <p>However, there are open discussion for similar construct on otel community. Ref:
-     * https://github.com/open-telemetry/opentelemetry-specification/issues/65
-     *
-     * <p>As, both the construct `child_of` and `follow_from` represent parent-child relation in
-     * common where in one case parent is interested in child span's result while in other case not.
-     *
-     * <p>So, to support common behaviour, we will be establish link for `follow_from` as well.
-     *
-     * <p>Also expecting only 1 child-parent relation
-     */
+    public Optional<ApiTraceGraphTopology> getApiTraceGraphTopology() {
+      return apiTraceGraphTopology;
+    }
+
+    // the parents in the topology are found the same way, without looking the ids up
     @Nullable
-    private ByteBuffer getParentId(Event event) {
-      Map<Boolean, List<EventRef>> referenceSplits =
-          event.getEventRefList().stream()
-              .collect(
-                  Collectors.partitioningBy(
-                      eventRef -> eventRef.getRefType() == EventRefType.CHILD_OF));
-
-      List<EventRef> childEventRef = referenceSplits.get(true);
-      if (childEventRef != null && childEventRef.size() > 0) {
-        return childEventRef.get(0).getEventId();
-      } else {
-        List<EventRef> followFromEventRef = referenceSplits.get(false);
-        if (followFromEventRef != null && followFromEventRef.size() > 0) {
-          return followFromEventRef.get(0).getEventId();
-        }
+    private ByteBuffer getParentId(List<Event> events, int eventIdx) {
+      if (apiTraceGraphTopology.isEmpty()) {
+        return ApiTraceGraphTopology.getParentEventId(events.get(eventIdx));
+      }
+      int parentEventIdx = apiTraceGraphTopology.get().getParentEventIndex(eventIdx);
+      if (parentEventIdx == ApiTraceGraphTopology.NO_PARENT) {
+        return null;
+      } else if (parentEventIdx == ApiTraceGraphTopology.PARENT_NOT_IN_TRACE) {
+        return ApiTraceGraphTopology.getParentEventId(events.get(eventIdx));
       }
-      return null;
+      return events.get(parentEventIdx).getEventId();
     }
   }
 }
@@ -3,7 +3,12 @@ package org.hypertrace.viewgenerator.generators;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.viewgenerator.api.RawTraceView;
 import org.hypertrace.viewgenerator.generators.utils.TestUtilities;
 import org.junit.jupiter.api.BeforeEach;
@@ -25,5 +30,21 @@ public class RawTraceViewGeneratorTest {
     assertEquals(1, rawTraceViews.size());
     assertEquals(4, rawTraceViews.get(0).getNumServices());
     assertEquals(50, rawTraceViews.get(0).getNumSpans());
+    assertEquals(-1, rawTraceViews.get(0).getFragmentSequence());
+  }
+
+  @Test
+  public void testGenerateView_TraceFragment() throws IOException {
+    StructuredTrace trace = TestUtilities.getSampleHotRodTrace();
+    Map<String, AttributeValue> attributeMap =
+        trace.getAttributes() == null
+            ? new HashMap<>()
+            : new HashMap<>(trace.getAttributes().getAttributeMap());
+    attributeMap.put("trace.fragment.sequence", AttributeValue.newBuilder().setValue("2").build());
+    trace.setAttributes(Attributes.newBuilder().setAttributeMap(attributeMap).build());
+
+    List<RawTraceView> rawTraceViews = rawTraceViewGenerator.process(trace);
+    assertEquals(1, rawTraceViews.size());
+    assertEquals(2, rawTraceViews.get(0).getFragmentSequence());
   }
 }
@@ -8,12 +8,15 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import org.hypertrace.core.datamodel.Attributes;
 import org.hypertrace.core.datamodel.Entity;
 import org.hypertrace.core.datamodel.Event;
 import org.hypertrace.core.datamodel.EventRef;
 import org.hypertrace.core.datamodel.EventRefType;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.traceenricher.trace.util.ApiTraceGraph;
+import org.hypertrace.traceenricher.trace.util.ApiTraceGraphTopology;
 import org.hypertrace.viewgenerator.generators.ViewGeneratorState.TraceState;
 import org.junit.jupiter.api.Test;
 
@@ -38,6 +41,17 @@ public class ViewGeneratorStateTest {
     traceStateAsserts(traceState);
   }
 
+  @Test
+  public void testTraceStateWithApiTraceGraphTopology() {
+    StructuredTrace trace = getTestTrace(customerId, traceId1);
+    trace.setAttributes(Attributes.newBuilder().setAttributeMap(new HashMap<>()).build());
+    ApiTraceGraphTopology.of(new ApiTraceGraph(trace)).addToTrace(trace);
+
+    TraceState traceState = new TraceState(trace);
+    assertTrue(traceState.getApiTraceGraphTopology().isPresent());
+    traceStateAsserts(traceState);
+  }
+
   @Test
   public void testGetTraceState() {
     StructuredTrace trace = getTestTrace(customerId, traceId1);
@@ -4,6 +4,7 @@ plugins {
     id("org.hypertrace.docker-java-application-plugin")
     id("org.hypertrace.docker-publish-plugin")
     id("org.hypertrace.jacoco-report-plugin")
+    id("me.champeau.jmh") version "0.6.6"
 }
 
 application {
@@ -31,11 +32,21 @@ tasks.test {
     useJUnitPlatform()
 }
 
+jmh {
+    // ./gradlew :raw-spans-grouper:raw-spans-grouper:jmh
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // reports the bytes allocated per operation as gc.alloc.rate.norm
+    profilers.set(listOf("gc"))
+}
+
 dependencies {
     implementation("org.glassfish.jersey.core:jersey-common:2.34") {
         because("https://snyk.io/vuln/SNYK-JAVA-ORGGLASSFISHJERSEYCORE-1255637")
     }
     implementation(project(":span-normalizer:span-normalizer-api"))
+    implementation(project(":tenant-metrics-utils"))
     implementation("org.hypertrace.core.datamodel:data-model:0.1.20")
     implementation("org.hypertrace.core.serviceframework:platform-service-framework:0.1.33")
     implementation("org.hypertrace.core.serviceframework:platform-metrics:0.1.33")
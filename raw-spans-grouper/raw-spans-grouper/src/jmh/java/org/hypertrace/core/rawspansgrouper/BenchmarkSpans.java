@@ -0,0 +1,82 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.EventRef;
+import org.hypertrace.core.datamodel.EventRefType;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+
+/** Synthetic spans shared by the grouper benchmarks. */
+class BenchmarkSpans {
+
+  static final String TENANT_ID = "benchmark";
+
+  private BenchmarkSpans() {}
+
+  static TraceIdentity createTraceIdentity() {
+    return TraceIdentity.newBuilder()
+        .setTenantId(TENANT_ID)
+        .setTraceId(ByteBuffer.wrap(toBytes(UUID.randomUUID())))
+        .build();
+  }
+
+  /**
+   * Spans of a trace with 16-byte trace and 8-byte span ids, each span being a child of the
+   * previous one and carrying {@code attributeCount} attributes of typical http sizes.
+   */
+  static List<RawSpan> createTrace(TraceIdentity trace, int spanCount, int attributeCount) {
+    long startTime = System.currentTimeMillis();
+    List<RawSpan> rawSpans = new ArrayList<>(spanCount);
+    for (int i = 0; i < spanCount; i++) {
+      Map<String, AttributeValue> attributeMap = new HashMap<>();
+      for (int j = 0; j < attributeCount; j++) {
+        attributeMap.put(
+            "http.request.header.x-attribute-" + j,
+            AttributeValue.newBuilder().setValue("value-" + UUID.randomUUID()).build());
+      }
+      Event.Builder event =
+          Event.newBuilder()
+              .setCustomerId(TENANT_ID)
+              .setEventId(toSpanId(i))
+              .setEventName("GET /api/v1/resource-" + i)
+              .setStartTimeMillis(startTime + i)
+              .setEndTimeMillis(startTime + i + 1)
+              .setAttributes(Attributes.newBuilder().setAttributeMap(attributeMap).build());
+      if (i > 0) {
+        event.setEventRefList(
+            List.of(
+                EventRef.newBuilder()
+                    .setTraceId(trace.getTraceId())
+                    .setEventId(toSpanId(i - 1))
+                    .setRefType(EventRefType.CHILD_OF)
+                    .build()));
+      }
+      rawSpans.add(
+          RawSpan.newBuilder()
+              .setCustomerId(TENANT_ID)
+              .setTraceId(trace.getTraceId())
+              .setEvent(event.build())
+              .build());
+    }
+    return rawSpans;
+  }
+
+  private static ByteBuffer toSpanId(int index) {
+    return ByteBuffer.allocate(Long.BYTES).putLong(0, index + 1);
+  }
+
+  private static byte[] toBytes(UUID uuid) {
+    return ByteBuffer.allocate(2 * Long.BYTES)
+        .putLong(uuid.getMostSignificantBits())
+        .putLong(uuid.getLeastSignificantBits())
+        .array();
+  }
+}
@@ -0,0 +1,140 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * In-memory sorted store of serialized records, so that reads and writes pay the serde cost of a
+ * persistent store without its I/O.
+ */
+class SerializingKeyValueStore<K, V> implements KeyValueStore<K, V> {
+
+  private static final String TOPIC = "benchmark";
+
+  private final Serde<K> keySerde;
+  private final Serde<V> valueSerde;
+  private final TreeMap<Bytes, byte[]> records = new TreeMap<>();
+
+  SerializingKeyValueStore(Serde<K> keySerde, Serde<V> valueSerde) {
+    this.keySerde = keySerde;
+    this.valueSerde = valueSerde;
+  }
+
+  @Override
+  public void put(K key, V value) {
+    Bytes keyBytes = toBytes(key);
+    if (value == null) {
+      records.remove(keyBytes);
+    } else {
+      records.put(keyBytes, valueSerde.serializer().serialize(TOPIC, value));
+    }
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    V existingValue = get(key);
+    if (existingValue == null) {
+      put(key, value);
+    }
+    return existingValue;
+  }
+
+  @Override
+  public void putAll(List<KeyValue<K, V>> entries) {
+    for (KeyValue<K, V> entry : entries) {
+      put(entry.key, entry.value);
+    }
+  }
+
+  @Override
+  public V delete(K key) {
+    V oldValue = get(key);
+    put(key, null);
+    return oldValue;
+  }
+
+  @Override
+  public V get(K key) {
+    return valueSerde.deserializer().deserialize(TOPIC, records.get(toBytes(key)));
+  }
+
+  @Override
+  public KeyValueIterator<K, V> range(K from, K to) {
+    return iterator(records.subMap(toBytes(from), true, toBytes(to), true));
+  }
+
+  @Override
+  public KeyValueIterator<K, V> all() {
+    return iterator(records);
+  }
+
+  @Override
+  public long approximateNumEntries() {
+    return records.size();
+  }
+
+  @Override
+  public String name() {
+    return TOPIC;
+  }
+
+  @Override
+  public void init(ProcessorContext context, StateStore root) {}
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void close() {}
+
+  @Override
+  public boolean persistent() {
+    return false;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return true;
+  }
+
+  private Bytes toBytes(K key) {
+    return Bytes.wrap(keySerde.serializer().serialize(TOPIC, key));
+  }
+
+  /** Iterates over a copy, so that the records can be modified while iterating. */
+  private KeyValueIterator<K, V> iterator(NavigableMap<Bytes, byte[]> range) {
+    Iterator<Map.Entry<Bytes, byte[]>> it = new TreeMap<>(range).entrySet().iterator();
+    return new KeyValueIterator<>() {
+      @Override
+      public void close() {}
+
+      @Override
+      public K peekNextKey() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public KeyValue<K, V> next() {
+        Map.Entry<Bytes, byte[]> entry = it.next();
+        return KeyValue.pair(
+            keySerde.deserializer().deserialize(TOPIC, entry.getKey().get()),
+            valueSerde.deserializer().deserialize(TOPIC, entry.getValue()));
+      }
+    };
+  }
+}
@@ -0,0 +1,188 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.utils.Bytes;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.kafkastreams.framework.serdes.AvroSerde;
+import org.hypertrace.core.spannormalizer.SpanIdentity;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.TraceState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Groups and emits a trace with the span store plus span id list layout that the grouper used to
+ * have, and with the sequence-keyed {@link SpanBuffer}. Both layouts write through the same Avro
+ * serde, so only the layout differs.
+ *
+ * <p>The stores are in-memory sorted maps of serialized records that count the bytes written to
+ * them, i.e. what RocksDB and the changelog topic receive. The bytes written per byte of span
+ * payload are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpanStoreLayoutBenchmark {
+
+  private static final String TOPIC = "benchmark";
+
+  @Param({"10", "100", "1000"})
+  private int spanCount;
+
+  private final Serde<SpanIdentity> spanIdentitySerde = new AvroSerde<>();
+  private final Serde<TraceIdentity> traceIdentitySerde = new AvroSerde<>();
+  private final Serde<TraceState> traceStateSerde = new AvroSerde<>();
+  private final Serde<RawSpan> rawSpanSerde = new AvroSerde<>();
+
+  private TraceIdentity trace;
+  private List<RawSpan> rawSpans;
+  private long spanPayloadBytes;
+  private long bytesWrittenPerTrace;
+
+  @Setup(Level.Trial)
+  public void setUpTrace() {
+    trace = BenchmarkSpans.createTraceIdentity();
+    rawSpans = BenchmarkSpans.createTrace(trace, spanCount, 20);
+    spanPayloadBytes = 0;
+    for (RawSpan rawSpan : rawSpans) {
+      spanPayloadBytes += rawSpanSerde.serializer().serialize(TOPIC, rawSpan).length;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void printWriteAmplification() {
+    System.out.printf(
+        "%nspans=[%d], bytes written per span payload byte=[%.2f]%n",
+        spanCount, (double) bytesWrittenPerTrace / spanPayloadBytes);
+  }
+
+  /** One span store record and one rewrite of the growing span id list per span. */
+  @Benchmark
+  public List<RawSpan> spanStoreWithSpanIdList() {
+    SerializedStore spanStore = new SerializedStore();
+    SerializedStore traceStateStore = new SerializedStore();
+    Bytes traceKey = Bytes.wrap(traceIdentitySerde.serializer().serialize(TOPIC, trace));
+
+    for (RawSpan rawSpan : rawSpans) {
+      ByteBuffer spanId = rawSpan.getEvent().getEventId();
+      spanStore.put(toSpanKey(spanId), rawSpanSerde.serializer().serialize(TOPIC, rawSpan));
+      byte[] traceStateBytes = traceStateStore.get(traceKey);
+      TraceState traceState =
+          traceStateBytes == null
+              ? createTraceState(new ArrayList<>())
+              : traceStateSerde.deserializer().deserialize(TOPIC, traceStateBytes);
+      List<ByteBuffer> spanIds = new ArrayList<>(traceState.getSpanIds());
+      spanIds.add(spanId);
+      traceState.setSpanIds(spanIds);
+      traceStateStore.put(traceKey, traceStateSerde.serializer().serialize(TOPIC, traceState));
+    }
+
+    TraceState traceState =
+        traceStateSerde.deserializer().deserialize(TOPIC, traceStateStore.delete(traceKey));
+    List<RawSpan> emittedSpans = new ArrayList<>(traceState.getSpanIds().size());
+    for (ByteBuffer spanId : traceState.getSpanIds()) {
+      emittedSpans.add(
+          rawSpanSerde.deserializer().deserialize(TOPIC, spanStore.delete(toSpanKey(spanId))));
+    }
+    bytesWrittenPerTrace = spanStore.bytesWritten + traceStateStore.bytesWritten;
+    return emittedSpans;
+  }
+
+  /** One span buffer record and a fixed size trace state per span, one range read on emit. */
+  @Benchmark
+  public List<RawSpan> spanBuffer() {
+    SerializedStore spanBufferStore = new SerializedStore();
+    SerializedStore traceStateStore = new SerializedStore();
+    Bytes traceKey = Bytes.wrap(traceIdentitySerde.serializer().serialize(TOPIC, trace));
+
+    for (RawSpan rawSpan : rawSpans) {
+      byte[] traceStateBytes = traceStateStore.get(traceKey);
+      TraceState traceState =
+          traceStateBytes == null
+              ? createTraceState(List.of())
+              : traceStateSerde.deserializer().deserialize(TOPIC, traceStateBytes);
+      spanBufferStore.put(
+          SpanBuffer.toBufferKey(trace, traceState.getSpanCount()),
+          rawSpanSerde.serializer().serialize(TOPIC, rawSpan));
+      traceState.setSpanCount(traceState.getSpanCount() + 1);
+      traceStateStore.put(traceKey, traceStateSerde.serializer().serialize(TOPIC, traceState));
+    }
+
+    TraceState traceState =
+        traceStateSerde.deserializer().deserialize(TOPIC, traceStateStore.delete(traceKey));
+    NavigableMap<Bytes, byte[]> bufferedSpans =
+        spanBufferStore.range(
+            SpanBuffer.toBufferKey(trace, 0), SpanBuffer.toBufferKey(trace, Integer.MAX_VALUE));
+    List<RawSpan> emittedSpans = new ArrayList<>(bufferedSpans.size());
+    for (byte[] rawSpanBytes : bufferedSpans.values()) {
+      emittedSpans.add(rawSpanSerde.deserializer().deserialize(TOPIC, rawSpanBytes));
+    }
+    for (int sequenceNo = 0; sequenceNo < traceState.getSpanCount(); sequenceNo++) {
+      spanBufferStore.put(SpanBuffer.toBufferKey(trace, sequenceNo), null);
+    }
+    bytesWrittenPerTrace = spanBufferStore.bytesWritten + traceStateStore.bytesWritten;
+    return emittedSpans;
+  }
+
+  private Bytes toSpanKey(ByteBuffer spanId) {
+    return Bytes.wrap(
+        spanIdentitySerde
+            .serializer()
+            .serialize(TOPIC, new SpanIdentity(trace.getTenantId(), trace.getTraceId(), spanId)));
+  }
+
+  private TraceState createTraceState(List<ByteBuffer> spanIds) {
+    long now = System.currentTimeMillis();
+    return TraceState.newBuilder()
+        .setTraceStartTimestamp(now)
+        .setTraceEndTimestamp(now)
+        .setEmitTs(now)
+        .setTenantId(trace.getTenantId())
+        .setTraceId(trace.getTraceId())
+        .setSpanIds(spanIds)
+        .build();
+  }
+
+  /** Sorted map of serialized records, a put of a null value writes a tombstone of the key. */
+  private static class SerializedStore {
+    private final TreeMap<Bytes, byte[]> records = new TreeMap<>();
+    private long bytesWritten;
+
+    void put(Bytes key, byte[] value) {
+      bytesWritten += key.get().length + (value == null ? 0 : value.length);
+      if (value == null) {
+        records.remove(key);
+      } else {
+        records.put(key, value);
+      }
+    }
+
+    byte[] get(Bytes key) {
+      return records.get(key);
+    }
+
+    byte[] delete(Bytes key) {
+      byte[] oldValue = records.get(key);
+      put(key, null);
+      return oldValue;
+    }
+
+    NavigableMap<Bytes, byte[]> range(Bytes from, Bytes to) {
+      return records.subMap(from, true, to, true);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.common.serialization.Serde;
+import org.hypertrace.core.rawspansgrouper.serde.TraceIdentitySerde;
+import org.hypertrace.core.rawspansgrouper.serde.TraceStateSerde;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.TraceState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Round trips a trace state record through the schema registry serdes the state stores used to be
+ * written with and through the compact state store serdes, and migrates a legacy record, i.e.
+ * reads it with the legacy serdes and writes it compact.
+ *
+ * <p>Trace states of the span buffer layout have no span ids, trace states written before it have
+ * one per span. The record sizes of both layouts are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StateStoreSerdeBenchmark {
+
+  private static final String TOPIC = "benchmark";
+
+  @Param({"0", "100"})
+  private int spanIdCount;
+
+  private final Serde<TraceIdentity> legacyKeySerde = new SpecificAvroSerde<>();
+  private final Serde<TraceState> legacyValueSerde = new SpecificAvroSerde<>();
+  private Serde<TraceIdentity> compactKeySerde;
+  private Serde<TraceState> compactValueSerde;
+
+  private TraceIdentity traceIdentity;
+  private TraceState traceState;
+  private byte[] legacyKeyBytes;
+  private byte[] legacyValueBytes;
+
+  @Setup(Level.Trial)
+  public void setUpRecords() {
+    Map<String, String> serdeConfig = Map.of("schema.registry.url", "mock://benchmark");
+    legacyKeySerde.configure(serdeConfig, true);
+    legacyValueSerde.configure(serdeConfig, false);
+    compactKeySerde = new TraceIdentitySerde();
+    compactValueSerde = new TraceStateSerde();
+
+    traceIdentity = BenchmarkSpans.createTraceIdentity();
+    List<ByteBuffer> spanIds = new ArrayList<>(spanIdCount);
+    for (int i = 0; i < spanIdCount; i++) {
+      spanIds.add(ByteBuffer.allocate(Long.BYTES).putLong(0, i + 1));
+    }
+    long now = System.currentTimeMillis();
+    traceState =
+        TraceState.newBuilder()
+            .setTraceStartTimestamp(now)
+            .setTraceEndTimestamp(now + 1_000)
+            .setEmitTs(now + 31_000)
+            .setTenantId(traceIdentity.getTenantId())
+            .setTraceId(traceIdentity.getTraceId())
+            .setSpanIds(spanIds)
+            .setSpanCount(spanIdCount)
+            .build();
+    legacyKeyBytes = legacyKeySerde.serializer().serialize(TOPIC, traceIdentity);
+    legacyValueBytes = legacyValueSerde.serializer().serialize(TOPIC, traceState);
+  }
+
+  @TearDown(Level.Trial)
+  public void printRecordSizes() {
+    System.out.printf(
+        "%nspan ids=[%d], legacy key bytes=[%d], compact key bytes=[%d],"
+            + " legacy value bytes=[%d], compact value bytes=[%d]%n",
+        spanIdCount,
+        legacyKeyBytes.length,
+        compactKeySerde.serializer().serialize(TOPIC, traceIdentity).length,
+        legacyValueBytes.length,
+        compactValueSerde.serializer().serialize(TOPIC, traceState).length);
+  }
+
+  @Benchmark
+  public void legacyRoundTrip(Blackhole blackhole) {
+    roundTrip(legacyKeySerde, legacyValueSerde, blackhole);
+  }
+
+  @Benchmark
+  public void compactRoundTrip(Blackhole blackhole) {
+    roundTrip(compactKeySerde, compactValueSerde, blackhole);
+  }
+
+  /** What the migration of the legacy trace state store pays once per record. */
+  @Benchmark
+  public void migrateLegacyRecord(Blackhole blackhole) {
+    TraceIdentity key = legacyKeySerde.deserializer().deserialize(TOPIC, legacyKeyBytes);
+    TraceState value = legacyValueSerde.deserializer().deserialize(TOPIC, legacyValueBytes);
+    blackhole.consume(compactKeySerde.serializer().serialize(TOPIC, key));
+    blackhole.consume(compactValueSerde.serializer().serialize(TOPIC, value));
+  }
+
+  private void roundTrip(
+      Serde<TraceIdentity> keySerde, Serde<TraceState> valueSerde, Blackhole blackhole) {
+    byte[] keyBytes = keySerde.serializer().serialize(TOPIC, traceIdentity);
+    byte[] valueBytes = valueSerde.serializer().serialize(TOPIC, traceState);
+    blackhole.consume(keySerde.deserializer().deserialize(TOPIC, keyBytes));
+    blackhole.consume(valueSerde.deserializer().deserialize(TOPIC, valueBytes));
+  }
+}
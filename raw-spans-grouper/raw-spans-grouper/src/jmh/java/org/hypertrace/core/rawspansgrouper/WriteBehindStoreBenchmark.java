@@ -0,0 +1,79 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.rawspansgrouper.serde.TraceIdentitySerde;
+import org.hypertrace.core.rawspansgrouper.serde.TraceStateSerde;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.TraceState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reads and updates the trace state of a hot trace once per span, as the grouper does, for the
+ * spans received between two commits. The trace state store is read and written directly, or
+ * through a {@link WriteBehindKeyValueStore} that is flushed at the end, i.e. on commit. Both
+ * stores write through the compact state store serdes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WriteBehindStoreBenchmark {
+
+  @Param({"1", "10", "100"})
+  private int spansPerCommit;
+
+  private TraceIdentity trace;
+  private SerializingKeyValueStore<TraceIdentity, TraceState> traceStateStore;
+  private WriteBehindKeyValueStore<TraceIdentity, TraceState> writeBehindStore;
+
+  @Setup(Level.Trial)
+  public void setUpStores() {
+    trace = BenchmarkSpans.createTraceIdentity();
+    traceStateStore =
+        new SerializingKeyValueStore<>(new TraceIdentitySerde(), new TraceStateSerde());
+    long now = System.currentTimeMillis();
+    traceStateStore.put(
+        trace,
+        TraceState.newBuilder()
+            .setTraceStartTimestamp(now)
+            .setTraceEndTimestamp(now)
+            .setEmitTs(now)
+            .setTenantId(trace.getTenantId())
+            .setTraceId(trace.getTraceId())
+            .build());
+    writeBehindStore = new WriteBehindKeyValueStore<>(traceStateStore, 10_000);
+  }
+
+  @Benchmark
+  public TraceState serializingStore() {
+    return updateTraceState(traceStateStore);
+  }
+
+  /** After the first span the trace state is read from the cache. */
+  @Benchmark
+  public TraceState writeBehindStore() {
+    TraceState traceState = updateTraceState(writeBehindStore);
+    writeBehindStore.flush();
+    return traceState;
+  }
+
+  private TraceState updateTraceState(KeyValueStore<TraceIdentity, TraceState> store) {
+    TraceState traceState = null;
+    for (int i = 0; i < spansPerCommit; i++) {
+      traceState = store.get(trace);
+      traceState.setTraceEndTimestamp(traceState.getTraceEndTimestamp() + 1);
+      traceState.setEmitTs(traceState.getTraceEndTimestamp());
+      traceState.setSpanCount(traceState.getSpanCount() + 1);
+      store.put(trace, traceState);
+    }
+    return traceState;
+  }
+}
@@ -0,0 +1,79 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.spannormalizer.SpanIdentity;
+
+/**
+ * Span store of the grouper before the {@link SpanBuffer}, keyed by the {@link SpanIdentity} of a
+ * span. It is only read from for traces that were in flight when the span buffer was introduced,
+ * and drained as they are emitted.
+ *
+ * <p>The store is opened with raw keys and values so that it can be scanned in slices that continue
+ * from the last scanned key. Keys and values are serialized with the default serdes as before,
+ * under the changelog topic of the store, so existing records are unchanged.
+ */
+class LegacySpanStore {
+
+  /** lower than every key of the store */
+  static final Bytes FIRST_KEY = Bytes.wrap(new byte[0]);
+
+  private final KeyValueStore<Bytes, byte[]> spanStore;
+  private final Serde<SpanIdentity> keySerde;
+  private final Serde<RawSpan> valueSerde;
+  private final String changelogTopic;
+
+  LegacySpanStore(
+      KeyValueStore<Bytes, byte[]> spanStore,
+      Serde<SpanIdentity> keySerde,
+      Serde<RawSpan> valueSerde,
+      String changelogTopic) {
+    this.spanStore = spanStore;
+    this.keySerde = keySerde;
+    this.valueSerde = valueSerde;
+    this.changelogTopic = changelogTopic;
+  }
+
+  /** Deletes and returns the span, or returns null if the store does not have it. */
+  RawSpan delete(SpanIdentity spanIdentity) {
+    Bytes key = Bytes.wrap(keySerde.serializer().serialize(changelogTopic, spanIdentity));
+    byte[] value = spanStore.get(key);
+    if (value == null) {
+      return null;
+    }
+    // a put of a null value deletes without reading back the old value
+    spanStore.put(key, null);
+    return toRawSpan(value);
+  }
+
+  /**
+   * Iterates over the serialized spans in key order, starting with {@code from}.
+   *
+   * <p>The keys depend on the default key serde, so there is no key known to be higher than every
+   * key of the store to end a range with. The whole store is iterated instead, skipping the keys
+   * lower than {@code from}, which are not deserialized. The store only shrinks, so this gets
+   * cheaper as it is drained.
+   */
+  KeyValueIterator<Bytes, byte[]> scanFrom(Bytes from) {
+    KeyValueIterator<Bytes, byte[]> it = spanStore.all();
+    while (it.hasNext() && it.peekNextKey().compareTo(from) < 0) {
+      it.next();
+    }
+    return it;
+  }
+
+  void delete(Bytes key) {
+    spanStore.put(key, null);
+  }
+
+  SpanIdentity toSpanIdentity(Bytes key) {
+    return keySerde.deserializer().deserialize(changelogTopic, key.get());
+  }
+
+  RawSpan toRawSpan(byte[] value) {
+    return valueSerde.deserializer().deserialize(changelogTopic, value);
+  }
+}
@@ -5,16 +5,45 @@ public class RawSpanGrouperConstants {
   public static final String OUTPUT_TOPIC_CONFIG_KEY = "output.topic";
   public static final String SPAN_GROUPBY_SESSION_WINDOW_INTERVAL_CONFIG_KEY =
       "span.groupby.session.window.interval";
+  public static final String TRACE_EMIT_PUNCTUATOR_INTERVAL_CONFIG_KEY =
+      "trace.emit.punctuator.interval.ms";
+  public static final String EARLY_EMIT_ENABLED_CONFIG_KEY = "trace.early.emit.enabled";
+  public static final String EARLY_EMIT_GRACE_PERIOD_CONFIG_KEY =
+      "trace.early.emit.grace.period.ms";
+  public static final String FRAGMENT_MAX_SPAN_COUNT_CONFIG_KEY = "trace.fragment.max.span.count";
   public static final String RAW_SPANS_GROUPER_JOB_CONFIG = "raw-spans-grouper-job-config";
   public static final String SPAN_STATE_STORE_NAME = "span-data-store";
-  public static final String TRACE_STATE_STORE = "trace-state-store";
+  public static final String SPAN_BUFFER_STORE = "span-buffer-store";
+  public static final String TRACE_STATE_STORE = "trace-state-compact-store";
+  public static final String LEGACY_TRACE_STATE_STORE = "trace-state-store";
+  public static final String TRACE_EMIT_INDEX_STORE = "trace-emit-index-store";
   public static final String OUTPUT_TOPIC_PRODUCER = "output-topic-producer";
   public static final String SPANS_PER_TRACE_METRIC = "spans_per_trace";
   public static final String TRACE_CREATION_TIME = "trace.creation.time";
+  public static final String TRACE_FRAGMENT_SEQUENCE_ATTRIBUTE = "trace.fragment.sequence";
   public static final String DATAFLOW_SAMPLING_PERCENT_CONFIG_KEY =
       "dataflow.metriccollection.sampling.percent";
   public static final String INFLIGHT_TRACE_MAX_SPAN_COUNT = "max.span.count";
   public static final String DEFAULT_INFLIGHT_TRACE_MAX_SPAN_COUNT = "default.max.span.count";
+  public static final String TRACE_STATE_CACHE_MAX_SIZE_CONFIG_KEY = "trace.state.cache.max.size";
+  public static final String INFLIGHT_TRACE_MAX_BYTES = "max.trace.bytes";
+  public static final String DEFAULT_INFLIGHT_TRACE_MAX_BYTES = "default.max.trace.bytes";
+  public static final String INFLIGHT_TENANT_MAX_BYTES = "max.tenant.bytes";
+  public static final String DEFAULT_INFLIGHT_TENANT_MAX_BYTES = "default.max.tenant.bytes";
+  public static final String SPAN_ATTRIBUTE_TRIM_LENGTH_CONFIG_KEY = "span.attribute.trim.length";
   public static final String DROPPED_SPANS_COUNTER = "hypertrace.dropped.spans";
   public static final String TRUNCATED_TRACES_COUNTER = "hypertrace.truncated.traces";
+  public static final String BYTE_LIMIT_DROPPED_SPANS_COUNTER =
+      "hypertrace.byte.limit.dropped.spans";
+  public static final String TRIMMED_SPANS_COUNTER = "hypertrace.trimmed.spans";
+  public static final String SPAN_STORE_SWEEP_INTERVAL_CONFIG_KEY = "span.store.sweep.interval.ms";
+  public static final String SPAN_STORE_SWEEP_MAX_ENTRIES_CONFIG_KEY =
+      "span.store.sweep.max.entries";
+  public static final String ORPHANED_SPAN_MIN_AGE_CONFIG_KEY = "orphaned.span.min.age.ms";
+  public static final String ORPHANED_SPANS_RECLAIMED_COUNTER =
+      "hypertrace.rawspansgrouper.orphaned.spans.reclaimed";
+  public static final String ORPHANED_SPAN_BYTES_RECLAIMED_COUNTER =
+      "hypertrace.rawspansgrouper.orphaned.span.bytes.reclaimed";
+  public static final String LATE_SPANS_AFTER_EARLY_EMIT_COUNTER =
+      "hypertrace.rawspansgrouper.traces.with.spans.after.early.emit";
 }
@@ -1,10 +1,14 @@
 package org.hypertrace.core.rawspansgrouper;
 
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.INPUT_TOPIC_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.LEGACY_TRACE_STATE_STORE;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.OUTPUT_TOPIC_CONFIG_KEY;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.OUTPUT_TOPIC_PRODUCER;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.RAW_SPANS_GROUPER_JOB_CONFIG;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_BUFFER_STORE;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_STATE_STORE_NAME;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_EMIT_INDEX_STORE;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_STATE_CACHE_MAX_SIZE_CONFIG_KEY;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_STATE_STORE;
 
 import com.typesafe.config.Config;
@@ -12,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.kstream.KStream;
@@ -23,8 +28,10 @@ import org.apache.kafka.streams.state.Stores;
 import org.hypertrace.core.datamodel.RawSpan;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.kafkastreams.framework.KafkaStreamsApp;
+import org.hypertrace.core.rawspansgrouper.serde.RawSpanSerde;
+import org.hypertrace.core.rawspansgrouper.serde.TraceIdentitySerde;
+import org.hypertrace.core.rawspansgrouper.serde.TraceStateSerde;
 import org.hypertrace.core.serviceframework.config.ConfigClient;
-import org.hypertrace.core.spannormalizer.SpanIdentity;
 import org.hypertrace.core.spannormalizer.TraceIdentity;
 import org.hypertrace.core.spannormalizer.TraceState;
 import org.slf4j.Logger;
@@ -33,6 +40,7 @@ import org.slf4j.LoggerFactory;
 public class RawSpansGrouper extends KafkaStreamsApp {
 
   private static final Logger logger = LoggerFactory.getLogger(RawSpansGrouper.class);
+  private static final int DEFAULT_TRACE_STATE_CACHE_MAX_SIZE = 10_000;
 
   public RawSpansGrouper(ConfigClient configClient) {
     super(configClient);
@@ -56,22 +64,58 @@ public class RawSpansGrouper extends KafkaStreamsApp {
       inputStreams.put(inputTopic, inputStream);
     }
 
-    // Retrieve the default value serde defined in config and use it
+    // Retrieve the default value serde defined in config and use it for the stores written before
+    // the grouper's own stores used compact serdes
     Serde valueSerde = defaultValueSerde(properties);
     Serde keySerde = defaultKeySerde(properties);
 
+    // trace states are updated on every span, so they are kept deserialized until committed
+    int traceStateCacheMaxSize =
+        jobConfig.hasPath(TRACE_STATE_CACHE_MAX_SIZE_CONFIG_KEY)
+            ? jobConfig.getInt(TRACE_STATE_CACHE_MAX_SIZE_CONFIG_KEY)
+            : DEFAULT_TRACE_STATE_CACHE_MAX_SIZE;
     StoreBuilder<KeyValueStore<TraceIdentity, TraceState>> traceStateStoreBuilder =
+        new WriteBehindStoreBuilder<>(
+            Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(TRACE_STATE_STORE),
+                    new TraceIdentitySerde(),
+                    new TraceStateSerde())
+                .withCachingEnabled(),
+            traceStateCacheMaxSize);
+
+    // trace states written with the default serdes, only read from to migrate them on init
+    StoreBuilder<KeyValueStore<TraceIdentity, TraceState>> legacyTraceStateStoreBuilder =
         Stores.keyValueStoreBuilder(
-                Stores.persistentKeyValueStore(TRACE_STATE_STORE), keySerde, valueSerde)
+            Stores.persistentKeyValueStore(LEGACY_TRACE_STATE_STORE), keySerde, valueSerde);
+
+    // only read from for traces that were started before the span buffer was introduced, with
+    // raw keys and values so that it can be scanned in slices, see LegacySpanStore
+    StoreBuilder<KeyValueStore<Bytes, byte[]>> spanStoreBuilder =
+        Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(SPAN_STATE_STORE_NAME),
+                Serdes.Bytes(),
+                Serdes.ByteArray())
+            .withCachingEnabled();
+
+    StoreBuilder<KeyValueStore<Bytes, RawSpan>> spanBufferStoreBuilder =
+        Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(SPAN_BUFFER_STORE),
+                Serdes.Bytes(),
+                new RawSpanSerde())
             .withCachingEnabled();
 
-    StoreBuilder<KeyValueStore<SpanIdentity, RawSpan>> spanStoreBuilder =
+    StoreBuilder<KeyValueStore<Bytes, byte[]>> traceEmitIndexStoreBuilder =
         Stores.keyValueStoreBuilder(
-                Stores.persistentKeyValueStore(SPAN_STATE_STORE_NAME), keySerde, valueSerde)
+                Stores.persistentKeyValueStore(TRACE_EMIT_INDEX_STORE),
+                Serdes.Bytes(),
+                Serdes.ByteArray())
             .withCachingEnabled();
 
     streamsBuilder.addStateStore(spanStoreBuilder);
+    streamsBuilder.addStateStore(spanBufferStoreBuilder);
     streamsBuilder.addStateStore(traceStateStoreBuilder);
+    streamsBuilder.addStateStore(legacyTraceStateStoreBuilder);
+    streamsBuilder.addStateStore(traceEmitIndexStoreBuilder);
 
     Produced<String, StructuredTrace> outputTopicProducer = Produced.with(Serdes.String(), null);
     outputTopicProducer = outputTopicProducer.withName(OUTPUT_TOPIC_PRODUCER);
@@ -81,7 +125,10 @@ public class RawSpansGrouper extends KafkaStreamsApp {
             RawSpansProcessor::new,
             Named.as(RawSpansProcessor.class.getSimpleName()),
             SPAN_STATE_STORE_NAME,
-            TRACE_STATE_STORE)
+            SPAN_BUFFER_STORE,
+            TRACE_STATE_STORE,
+            LEGACY_TRACE_STATE_STORE,
+            TRACE_EMIT_INDEX_STORE)
         .to(outputTopic, outputTopicProducer);
 
     return streamsBuilder;
@@ -0,0 +1,161 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_BUFFER_STORE;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.hypertrace.core.kafkastreams.framework.rocksdb.RocksDBStateStoreConfigSetter;
+import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+import org.rocksdb.Options;
+import org.rocksdb.Statistics;
+import org.rocksdb.StatsLevel;
+import org.rocksdb.TickerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the framework's RocksDB settings to all stores and optionally tunes the span buffer on
+ * top of them.
+ *
+ * <p>A span is written once, read once when its trace is emitted and deleted right after. With
+ * {@code rocksdb.span.store.write.buffer.size} and {@code rocksdb.span.store.max.write.buffers},
+ * the span buffer gets larger or more write buffers than the other stores, so that a put and its
+ * delete meet in the same memtable: the flush then only writes the tombstone, which is dropped
+ * once compacted into the last level, instead of both versions. The memory is taken per partition,
+ * so the tuning is opt-in and sized for the deployment. The legacy span store is only drained and
+ * keeps the framework's settings.
+ *
+ * <p>With {@code rocksdb.statistics.enabled}, RocksDB statistics of every store are exposed as
+ * gauges tagged with the store name, summed over the store's partitions.
+ */
+public class RawSpansGrouperRocksDBConfigSetter implements RocksDBConfigSetter {
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(RawSpansGrouperRocksDBConfigSetter.class);
+
+  static final String SPAN_STORE_WRITE_BUFFER_SIZE_CONFIG_KEY =
+      "rocksdb.span.store.write.buffer.size";
+  static final String SPAN_STORE_MAX_WRITE_BUFFERS_CONFIG_KEY =
+      "rocksdb.span.store.max.write.buffers";
+  static final String STATISTICS_ENABLED_CONFIG_KEY = "rocksdb.statistics.enabled";
+
+  private static final Map<String, TickerType> STATISTICS_GAUGES =
+      Map.of(
+          "hypertrace.rawspansgrouper.rocksdb.stall.micros", TickerType.STALL_MICROS,
+          "hypertrace.rawspansgrouper.rocksdb.compaction.read.bytes",
+              TickerType.COMPACT_READ_BYTES,
+          "hypertrace.rawspansgrouper.rocksdb.compaction.write.bytes",
+              TickerType.COMPACT_WRITE_BYTES,
+          "hypertrace.rawspansgrouper.rocksdb.memtable.hits", TickerType.MEMTABLE_HIT,
+          "hypertrace.rawspansgrouper.rocksdb.memtable.misses", TickerType.MEMTABLE_MISS,
+          "hypertrace.rawspansgrouper.rocksdb.block.cache.hits", TickerType.BLOCK_CACHE_HIT,
+          "hypertrace.rawspansgrouper.rocksdb.block.cache.misses", TickerType.BLOCK_CACHE_MISS);
+
+  // statistics of the open stores, per store name as stores of all partitions share the name
+  private static final ConcurrentMap<String, Set<Statistics>> storeStatistics =
+      new ConcurrentHashMap<>();
+  // gauges only hold weak references to the numbers they report
+  private static final List<TickerCount> statisticsGauges = new CopyOnWriteArrayList<>();
+
+  private final RocksDBConfigSetter defaultConfigSetter = new RocksDBStateStoreConfigSetter();
+  private Statistics statistics;
+
+  @Override
+  public void setConfig(String storeName, Options options, Map<String, Object> configs) {
+    defaultConfigSetter.setConfig(storeName, options, configs);
+
+    if (SPAN_BUFFER_STORE.equals(storeName)) {
+      Optional<Long> writeBufferSize = getLong(configs, SPAN_STORE_WRITE_BUFFER_SIZE_CONFIG_KEY);
+      Optional<Long> maxWriteBuffers = getLong(configs, SPAN_STORE_MAX_WRITE_BUFFERS_CONFIG_KEY);
+      writeBufferSize.ifPresent(options::setWriteBufferSize);
+      maxWriteBuffers.ifPresent(value -> options.setMaxWriteBufferNumber(value.intValue()));
+      if (writeBufferSize.isPresent() || maxWriteBuffers.isPresent()) {
+        // flush a single memtable at a time, merging them would only rewrite more tombstones
+        options.setMinWriteBufferNumberToMerge(1);
+      }
+    }
+
+    if (Boolean.parseBoolean(String.valueOf(configs.get(STATISTICS_ENABLED_CONFIG_KEY)))) {
+      statistics = new Statistics();
+      statistics.setStatsLevel(StatsLevel.EXCEPT_DETAILED_TIMERS);
+      options.setStatistics(statistics);
+      registerStatistics(storeName, statistics);
+    }
+  }
+
+  @Override
+  public void close(String storeName, Options options) {
+    defaultConfigSetter.close(storeName, options);
+    if (statistics != null) {
+      storeStatistics.getOrDefault(storeName, Set.of()).remove(statistics);
+      statistics.close();
+    }
+  }
+
+  private static void registerStatistics(String storeName, Statistics statistics) {
+    storeStatistics
+        .computeIfAbsent(
+            storeName,
+            k -> {
+              Set<Statistics> statisticsSet = ConcurrentHashMap.newKeySet();
+              STATISTICS_GAUGES.forEach(
+                  (gaugeName, tickerType) ->
+                      statisticsGauges.add(
+                          PlatformMetricsRegistry.registerGauge(
+                              gaugeName,
+                              Map.of("store", k),
+                              new TickerCount(statisticsSet, tickerType))));
+              logger.info("Registered RocksDB statistics gauges for store=[{}]", k);
+              return statisticsSet;
+            })
+        .add(statistics);
+  }
+
+  private static Optional<Long> getLong(Map<String, Object> configs, String key) {
+    Object value = configs.get(key);
+    return value == null
+        ? Optional.empty()
+        : Optional.of(Long.parseLong(String.valueOf(value)));
+  }
+
+  /** Ticker count summed over the open stores of a store name, read when the gauge is polled. */
+  private static class TickerCount extends Number {
+    private final Set<Statistics> statisticsSet;
+    private final TickerType tickerType;
+
+    private TickerCount(Set<Statistics> statisticsSet, TickerType tickerType) {
+      this.statisticsSet = statisticsSet;
+      this.tickerType = tickerType;
+    }
+
+    @Override
+    public long longValue() {
+      long count = 0;
+      for (Statistics statistics : statisticsSet) {
+        count += statistics.getTickerCount(tickerType);
+      }
+      return count;
+    }
+
+    @Override
+    public int intValue() {
+      return (int) longValue();
+    }
+
+    @Override
+    public float floatValue() {
+      return longValue();
+    }
+
+    @Override
+    public double doubleValue() {
+      return longValue();
+    }
+  }
+}
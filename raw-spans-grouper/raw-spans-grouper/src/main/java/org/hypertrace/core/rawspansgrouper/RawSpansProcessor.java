@@ -1,33 +1,50 @@
 package org.hypertrace.core.rawspansgrouper;
 
 import static org.hypertrace.core.datamodel.shared.AvroBuilderCache.fastNewBuilder;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.BYTE_LIMIT_DROPPED_SPANS_COUNTER;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.DATAFLOW_SAMPLING_PERCENT_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.DEFAULT_INFLIGHT_TENANT_MAX_BYTES;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.DEFAULT_INFLIGHT_TRACE_MAX_BYTES;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.DEFAULT_INFLIGHT_TRACE_MAX_SPAN_COUNT;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.DROPPED_SPANS_COUNTER;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.EARLY_EMIT_ENABLED_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.EARLY_EMIT_GRACE_PERIOD_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.FRAGMENT_MAX_SPAN_COUNT_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.INFLIGHT_TENANT_MAX_BYTES;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.INFLIGHT_TRACE_MAX_BYTES;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.INFLIGHT_TRACE_MAX_SPAN_COUNT;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.LATE_SPANS_AFTER_EARLY_EMIT_COUNTER;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.LEGACY_TRACE_STATE_STORE;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.ORPHANED_SPAN_MIN_AGE_CONFIG_KEY;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.OUTPUT_TOPIC_PRODUCER;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.RAW_SPANS_GROUPER_JOB_CONFIG;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_ATTRIBUTE_TRIM_LENGTH_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_BUFFER_STORE;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_GROUPBY_SESSION_WINDOW_INTERVAL_CONFIG_KEY;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_STATE_STORE_NAME;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_STORE_SWEEP_INTERVAL_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPAN_STORE_SWEEP_MAX_ENTRIES_CONFIG_KEY;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_EMIT_INDEX_STORE;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_EMIT_PUNCTUATOR_INTERVAL_CONFIG_KEY;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_STATE_STORE;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRIMMED_SPANS_COUNTER;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRUNCATED_TRACES_COUNTER;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.typesafe.config.Config;
-import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.Timer;
 import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.kstream.Transformer;
-import org.apache.kafka.streams.processor.Cancellable;
 import org.apache.kafka.streams.processor.ProcessorContext;
 import org.apache.kafka.streams.processor.PunctuationType;
 import org.apache.kafka.streams.processor.To;
@@ -36,19 +53,37 @@ import org.apache.kafka.streams.state.KeyValueStore;
 import org.hypertrace.core.datamodel.RawSpan;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.datamodel.shared.HexUtils;
-import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
 import org.hypertrace.core.spannormalizer.SpanIdentity;
 import org.hypertrace.core.spannormalizer.TraceIdentity;
 import org.hypertrace.core.spannormalizer.TraceState;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
+import org.hypertrace.tenant.metrics.utils.TenantTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Receives spans keyed by trace_id and stores them. A {@link TraceEmitPunctuator} is scheduled to
- * run after the {@link RawSpansProcessor#groupingWindowTimeoutMs} interval to emit the trace. If
- * any spans for the trace arrive within the {@link RawSpansProcessor#groupingWindowTimeoutMs}
- * interval then the {@link RawSpansProcessor#groupingWindowTimeoutMs} will get reset and the trace
- * will get an additional {@link RawSpansProcessor#groupingWindowTimeoutMs} time to accept spans.
+ * Receives spans keyed by trace_id and stores them. Every new trace is added to a {@link
+ * TraceEmitIndex} and a single {@link TraceEmitPunctuator} per task emits the trace once the {@link
+ * RawSpansProcessor#groupingWindowTimeoutMs} interval has passed. If any spans for the trace arrive
+ * within the {@link RawSpansProcessor#groupingWindowTimeoutMs} interval then the {@link
+ * RawSpansProcessor#groupingWindowTimeoutMs} will get reset and the trace will get an additional
+ * {@link RawSpansProcessor#groupingWindowTimeoutMs} time to accept spans.
+ *
+ * <p>With early emission enabled, a trace whose root span has been seen only waits for {@link
+ * RawSpansProcessor#earlyEmitGracePeriodMs} after its last span. The punctuator falls back to the
+ * regular window if not all parent references of the trace resolve at that point.
+ *
+ * <p>With fragments enabled, the buffered spans of a trace are emitted as a fragment every {@link
+ * RawSpansProcessor#fragmentMaxSpanCount} spans, tagged with a fragment sequence number, and the
+ * trace keeps accepting spans. Downstream, every fragment is enriched and viewed as a trace of its
+ * own: spans whose parent was emitted with an earlier fragment lose their parent link, and trace
+ * level views such as the raw trace view get one row per fragment, keyed by its sequence number.
+ *
+ * <p>Traces are also limited by the serialized size of their spans so that the emitted trace
+ * stays below the producer's record size limit, and the buffered spans of each tenant by a {@link
+ * TenantByteBudget}. A span that does not fit either limit is flushed with a fragment when
+ * fragments are enabled, otherwise its attribute values are trimmed or it is dropped.
  */
 public class RawSpansProcessor
     implements Transformer<TraceIdentity, RawSpan, KeyValue<String, StructuredTrace>> {
@@ -56,35 +91,112 @@ public class RawSpansProcessor
   private static final Logger logger = LoggerFactory.getLogger(RawSpansProcessor.class);
   private static final String PROCESSING_LATENCY_TIMER =
       "hypertrace.rawspansgrouper.processing.latency";
-  private static final ConcurrentMap<String, Timer> tenantToSpansGroupingTimer =
-      new ConcurrentHashMap<>();
+  private static final long DEFAULT_TRACE_EMIT_PUNCTUATOR_INTERVAL_MS = 1000;
+  private static final long DEFAULT_EARLY_EMIT_GRACE_PERIOD_MS = 500;
+  private static final long EARLY_EMITTED_TRACES_CACHE_MAX_SIZE = 100_000;
+  private static final long DEFAULT_SPAN_STORE_SWEEP_INTERVAL_MS = 60_000;
+  private static final int DEFAULT_SPAN_STORE_SWEEP_MAX_ENTRIES = 10_000;
+  private static final long DEFAULT_ORPHANED_SPAN_MIN_AGE_MS = 3_600_000;
+  private static final TenantTimer tenantToSpansGroupingTimer =
+      TenantTimer.of(PROCESSING_LATENCY_TIMER);
   private ProcessorContext context;
-  private KeyValueStore<SpanIdentity, RawSpan> spanStore;
+  private LegacySpanStore spanStore;
+  private SpanBuffer spanBuffer;
   private KeyValueStore<TraceIdentity, TraceState> traceStateStore;
   private long groupingWindowTimeoutMs;
+  private long traceEmitPunctuatorIntervalMs;
+  private TraceEmitIndex traceEmitIndex;
+  private TraceEmitPunctuator traceEmitPunctuator;
+  // the span store sweeper is disabled when not positive
+  private long spanStoreSweepIntervalMs;
+  private int spanStoreSweepMaxEntries;
+  private long orphanedSpanMinAgeMs;
+  // spans per emitted fragment, fragments are disabled when not positive
+  private long fragmentMaxSpanCount = -1;
+  private boolean earlyEmitEnabled;
+  private long earlyEmitGracePeriodMs;
+  // traces emitted on root span completion, to detect spans that arrive after the emission
+  private Cache<TraceIdentity, Boolean> earlyEmittedTraces;
   private To outputTopic;
   private double dataflowSamplingPercent = -1;
   private static final Map<String, Long> maxSpanCountMap = new HashMap<>();
   private long defaultMaxSpanCountLimit = Long.MAX_VALUE;
+  private final Map<String, Long> maxTraceBytesMap = new HashMap<>();
+  private long defaultMaxTraceBytesLimit = Long.MAX_VALUE;
+  private TenantByteBudget tenantByteBudget;
+  // max length of attribute values of spans trimmed to fit the byte limit, no trimming if not set
+  private int attributeTrimLength = -1;
+  private final SpanSizeLimiter spanSizeLimiter = new SpanSizeLimiter();
 
   // counter for number of spans dropped per tenant
-  private static final ConcurrentMap<String, Counter> droppedSpansCounter =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter droppedSpansCounter = TenantCounter.of(DROPPED_SPANS_COUNTER);
 
   // counter for number of truncated traces per tenant
-  private static final ConcurrentMap<String, Counter> truncatedTracesCounter =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter truncatedTracesCounter =
+      TenantCounter.of(TRUNCATED_TRACES_COUNTER);
+
+  // counter for number of spans dropped per tenant because of the trace byte limit
+  private static final TenantCounter byteLimitDroppedSpansCounter =
+      TenantCounter.of(BYTE_LIMIT_DROPPED_SPANS_COUNTER);
+
+  // counter for number of spans with trimmed attributes per tenant
+  private static final TenantCounter trimmedSpansCounter = TenantCounter.of(TRIMMED_SPANS_COUNTER);
+
+  // counter for number of early emitted traces that received spans afterwards per tenant
+  private static final TenantCounter lateSpansAfterEarlyEmitCounter =
+      TenantCounter.of(LATE_SPANS_AFTER_EARLY_EMIT_COUNTER);
 
   @Override
   public void init(ProcessorContext context) {
     this.context = context;
     this.spanStore =
-        (KeyValueStore<SpanIdentity, RawSpan>) context.getStateStore(SPAN_STATE_STORE_NAME);
+        new LegacySpanStore(
+            (KeyValueStore<Bytes, byte[]>) context.getStateStore(SPAN_STATE_STORE_NAME),
+            (Serde<SpanIdentity>) context.keySerde(),
+            (Serde<RawSpan>) context.valueSerde(),
+            // the topic the store serialized its records with
+            context.applicationId() + "-" + SPAN_STATE_STORE_NAME + "-changelog");
+    this.spanBuffer =
+        new SpanBuffer((KeyValueStore<Bytes, RawSpan>) context.getStateStore(SPAN_BUFFER_STORE));
     this.traceStateStore =
         (KeyValueStore<TraceIdentity, TraceState>) context.getStateStore(TRACE_STATE_STORE);
+    this.traceEmitIndex =
+        new TraceEmitIndex(
+            (KeyValueStore<Bytes, byte[]>) context.getStateStore(TRACE_EMIT_INDEX_STORE));
     Config jobConfig = (Config) (context.appConfigs().get(RAW_SPANS_GROUPER_JOB_CONFIG));
     this.groupingWindowTimeoutMs =
         jobConfig.getLong(SPAN_GROUPBY_SESSION_WINDOW_INTERVAL_CONFIG_KEY) * 1000;
+    this.traceEmitPunctuatorIntervalMs =
+        jobConfig.hasPath(TRACE_EMIT_PUNCTUATOR_INTERVAL_CONFIG_KEY)
+            ? jobConfig.getLong(TRACE_EMIT_PUNCTUATOR_INTERVAL_CONFIG_KEY)
+            : DEFAULT_TRACE_EMIT_PUNCTUATOR_INTERVAL_MS;
+    this.earlyEmitEnabled =
+        jobConfig.hasPath(EARLY_EMIT_ENABLED_CONFIG_KEY)
+            && jobConfig.getBoolean(EARLY_EMIT_ENABLED_CONFIG_KEY);
+    this.earlyEmitGracePeriodMs =
+        jobConfig.hasPath(EARLY_EMIT_GRACE_PERIOD_CONFIG_KEY)
+            ? jobConfig.getLong(EARLY_EMIT_GRACE_PERIOD_CONFIG_KEY)
+            : DEFAULT_EARLY_EMIT_GRACE_PERIOD_MS;
+    this.spanStoreSweepIntervalMs =
+        jobConfig.hasPath(SPAN_STORE_SWEEP_INTERVAL_CONFIG_KEY)
+            ? jobConfig.getLong(SPAN_STORE_SWEEP_INTERVAL_CONFIG_KEY)
+            : DEFAULT_SPAN_STORE_SWEEP_INTERVAL_MS;
+    this.spanStoreSweepMaxEntries =
+        jobConfig.hasPath(SPAN_STORE_SWEEP_MAX_ENTRIES_CONFIG_KEY)
+            ? jobConfig.getInt(SPAN_STORE_SWEEP_MAX_ENTRIES_CONFIG_KEY)
+            : DEFAULT_SPAN_STORE_SWEEP_MAX_ENTRIES;
+    this.orphanedSpanMinAgeMs =
+        jobConfig.hasPath(ORPHANED_SPAN_MIN_AGE_CONFIG_KEY)
+            ? jobConfig.getLong(ORPHANED_SPAN_MIN_AGE_CONFIG_KEY)
+            : DEFAULT_ORPHANED_SPAN_MIN_AGE_MS;
+    if (jobConfig.hasPath(FRAGMENT_MAX_SPAN_COUNT_CONFIG_KEY)) {
+      this.fragmentMaxSpanCount = jobConfig.getLong(FRAGMENT_MAX_SPAN_COUNT_CONFIG_KEY);
+    }
+    this.earlyEmittedTraces =
+        CacheBuilder.newBuilder()
+            .maximumSize(EARLY_EMITTED_TRACES_CACHE_MAX_SIZE)
+            .expireAfterWrite(Duration.ofMillis(groupingWindowTimeoutMs))
+            .build();
 
     if (jobConfig.hasPath(DATAFLOW_SAMPLING_PERCENT_CONFIG_KEY)
         && jobConfig.getDouble(DATAFLOW_SAMPLING_PERCENT_CONFIG_KEY) > 0
@@ -105,32 +217,118 @@ public class RawSpansProcessor
       defaultMaxSpanCountLimit = jobConfig.getLong(DEFAULT_INFLIGHT_TRACE_MAX_SPAN_COUNT);
     }
 
+    if (jobConfig.hasPath(INFLIGHT_TRACE_MAX_BYTES)) {
+      Config subConfig = jobConfig.getConfig(INFLIGHT_TRACE_MAX_BYTES);
+      subConfig
+          .entrySet()
+          .forEach(
+              (entry) ->
+                  maxTraceBytesMap.put(entry.getKey(), subConfig.getBytes(entry.getKey())));
+    }
+
+    if (jobConfig.hasPath(DEFAULT_INFLIGHT_TRACE_MAX_BYTES)) {
+      defaultMaxTraceBytesLimit = jobConfig.getBytes(DEFAULT_INFLIGHT_TRACE_MAX_BYTES);
+    }
+
+    Map<String, Long> maxTenantBytesMap = new HashMap<>();
+    if (jobConfig.hasPath(INFLIGHT_TENANT_MAX_BYTES)) {
+      Config subConfig = jobConfig.getConfig(INFLIGHT_TENANT_MAX_BYTES);
+      subConfig
+          .entrySet()
+          .forEach(
+              (entry) ->
+                  maxTenantBytesMap.put(entry.getKey(), subConfig.getBytes(entry.getKey())));
+    }
+    this.tenantByteBudget =
+        new TenantByteBudget(
+            maxTenantBytesMap,
+            jobConfig.hasPath(DEFAULT_INFLIGHT_TENANT_MAX_BYTES)
+                ? jobConfig.getBytes(DEFAULT_INFLIGHT_TENANT_MAX_BYTES)
+                : Long.MAX_VALUE);
+
+    if (jobConfig.hasPath(SPAN_ATTRIBUTE_TRIM_LENGTH_CONFIG_KEY)) {
+      attributeTrimLength = jobConfig.getInt(SPAN_ATTRIBUTE_TRIM_LENGTH_CONFIG_KEY);
+    }
+
     this.outputTopic = To.child(OUTPUT_TOPIC_PRODUCER);
-    restorePunctuators();
+    migrateLegacyTraceStates(
+        (KeyValueStore<TraceIdentity, TraceState>) context.getStateStore(LEGACY_TRACE_STATE_STORE));
+    restoreInFlightTraces(traceEmitIndex.isEmpty());
+    schedulePunctuator();
   }
 
   public KeyValue<String, StructuredTrace> transform(TraceIdentity key, RawSpan value) {
-    Instant start = Instant.now();
+    long startNanos = System.nanoTime();
     long currentTimeMs = System.currentTimeMillis();
 
+    // resolved once for all the per-tenant metrics of the span
+    int tenantSlot = TenantSlots.slotOf(key.getTenantId());
     TraceState traceState = traceStateStore.get(key);
     boolean firstEntry = (traceState == null);
 
-    if (shouldDropSpan(key, traceState)) {
+    String tenantId = key.getTenantId();
+    long maxTraceBytes = maxTraceBytesMap.getOrDefault(tenantId, defaultMaxTraceBytesLimit);
+    // only serialized to measure it when there is a byte limit to enforce
+    long spanBytes =
+        maxTraceBytes < Long.MAX_VALUE || tenantByteBudget.isLimited(tenantId)
+            ? spanSizeLimiter.getSerializedSize(value)
+            : 0;
+
+    // checked before any fragment is flushed, so that a dropped span never leaves an empty state
+    if (shouldDropSpan(key, tenantSlot, traceState)) {
       return null;
     }
 
-    String tenantId = key.getTenantId();
+    long remainingTenantBytes = tenantByteBudget.getRemainingBytes(tenantId);
+    if (!firstEntry
+        && fragmentMaxSpanCount > 0
+        && traceState.getSpanCount() > 0
+        && (traceState.getSpanCount() >= fragmentMaxSpanCount
+            || spanBytes > maxTraceBytes - traceState.getSpanBytes()
+            // only when releasing the bytes of this trace makes room for the span, the budget may
+            // be used up by other traces of the tenant
+            || (spanBytes > remainingTenantBytes
+                && traceState.getSpanBytes() + remainingTenantBytes >= spanBytes))) {
+      // flushed before the in-flight limits apply so that fragmented traces are not truncated
+      traceEmitPunctuator.emitFragment(key, traceState, currentTimeMs);
+      // persisted right away as the span may still be dropped by the byte limits, which must not
+      // leave the state pointing at the spans of the emitted fragment. Such an empty state is
+      // deleted by the punctuator once it is due.
+      traceStateStore.put(key, traceState);
+    }
+
+    long inFlightTraceBytes = firstEntry ? 0 : traceState.getSpanBytes();
+    long remainingBytes =
+        Math.min(
+            maxTraceBytes - inFlightTraceBytes, tenantByteBudget.getRemainingBytes(tenantId));
+    if (spanBytes > remainingBytes) {
+      spanBytes = trimSpanToByteLimit(key, tenantSlot, value, remainingBytes);
+      if (spanBytes < 0) {
+        return null;
+      }
+    }
+    tenantByteBudget.add(tenantId, spanBytes);
+
     ByteBuffer traceId = value.getTraceId();
-    ByteBuffer spanId = value.getEvent().getEventId();
-    spanStore.put(new SpanIdentity(tenantId, traceId, spanId), value);
+    spanBuffer.append(key, firstEntry ? 0 : traceState.getSpanCount(), value);
+
+    if (firstEntry && earlyEmittedTraces.getIfPresent(key) != null) {
+      earlyEmittedTraces.invalidate(key);
+      lateSpansAfterEarlyEmitCounter.increment(tenantSlot);
+    }
+
+    boolean rootSpanSeen =
+        earlyEmitEnabled && (isRootSpan(value) || (!firstEntry && traceState.getRootSpanSeen()));
 
     /*
      the trace emit ts is essentially currentTs + groupingWindowTimeoutMs
      i.e. if there is no span added in the next 'groupingWindowTimeoutMs' interval
-     then the trace can be finalized and emitted
+     then the trace can be finalized and emitted.
+     once the root span is seen the trace is likely complete, so only a short grace
+     period is given for the remaining spans
     */
-    long traceEmitTs = currentTimeMs + groupingWindowTimeoutMs;
+    long traceEmitTs =
+        currentTimeMs + (rootSpanSeen ? earlyEmitGracePeriodMs : groupingWindowTimeoutMs);
     if (logger.isDebugEnabled()) {
       logger.debug(
           "Updating trigger_ts=[{}] for for tenant_id=[{}], trace_id=[{}]",
@@ -147,11 +345,20 @@ public class RawSpansProcessor
               .setEmitTs(traceEmitTs)
               .setTenantId(tenantId)
               .setTraceId(traceId)
-              .setSpanIds(List.of(spanId))
+              .setSpanIds(List.of())
+              .setSpanCount(1)
+              .setSpanBytes(spanBytes)
+              .setRootSpanSeen(rootSpanSeen)
               .build();
-      schedulePunctuator(key);
+      traceEmitIndex.add(key, traceEmitTs);
     } else {
-      traceState.getSpanIds().add(spanId);
+      if (rootSpanSeen && !traceState.getRootSpanSeen()) {
+        // the emit ts moves before the indexed one, so the trace is indexed again
+        traceEmitIndex.add(key, traceEmitTs);
+        traceState.setRootSpanSeen(true);
+      }
+      traceState.setSpanCount(traceState.getSpanCount() + 1);
+      traceState.setSpanBytes(traceState.getSpanBytes() + spanBytes);
       traceState.setTraceEndTimestamp(currentTimeMs);
       traceState.setEmitTs(traceEmitTs);
     }
@@ -159,19 +366,15 @@ public class RawSpansProcessor
     traceStateStore.put(key, traceState);
 
     tenantToSpansGroupingTimer
-        .computeIfAbsent(
-            value.getCustomerId(),
-            k ->
-                PlatformMetricsRegistry.registerTimer(
-                    PROCESSING_LATENCY_TIMER, Map.of("tenantId", k)))
-        .record(Duration.between(start, Instant.now()).toMillis(), TimeUnit.MILLISECONDS);
+        .get(tenantSlot)
+        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
     // the punctuator will emit the trace
     return null;
   }
 
-  private boolean shouldDropSpan(TraceIdentity key, TraceState traceState) {
+  private boolean shouldDropSpan(TraceIdentity key, int tenantSlot, TraceState traceState) {
     int inFlightSpansPerTrace =
-        traceState != null ? traceState.getSpanIds().size() : Integer.MIN_VALUE;
+        traceState != null ? SpanBuffer.getSpanCount(traceState) : Integer.MIN_VALUE;
     long maxSpanCountTenantLimit =
         maxSpanCountMap.containsKey(key.getTenantId())
             ? maxSpanCountMap.get(key.getTenantId())
@@ -181,31 +384,18 @@ public class RawSpansProcessor
 
       if (logger.isDebugEnabled()) {
         logger.debug(
-            "Dropping span [{}] from tenant_id={}, trace_id={} after grouping {} spans",
-            traceState.getSpanIds().stream().map(HexUtils::getHex).collect(Collectors.toList()),
+            "Dropping span from tenant_id={}, trace_id={} after grouping {} spans",
             key.getTenantId(),
             HexUtils.getHex(key.getTraceId()),
-            traceState.getSpanIds().size());
+            inFlightSpansPerTrace);
       }
 
       // increment the counter for dropped spans
-      droppedSpansCounter
-          .computeIfAbsent(
-              key.getTenantId(),
-              k ->
-                  PlatformMetricsRegistry.registerCounter(
-                      DROPPED_SPANS_COUNTER, Map.of("tenantId", k)))
-          .increment();
+      droppedSpansCounter.increment(tenantSlot);
 
       // increment the counter when the number of spans reaches the max.span.count limit.
       if (inFlightSpansPerTrace == maxSpanCountTenantLimit) {
-        truncatedTracesCounter
-            .computeIfAbsent(
-                key.getTenantId(),
-                k ->
-                    PlatformMetricsRegistry.registerCounter(
-                        TRUNCATED_TRACES_COUNTER, Map.of("tenantId", k)))
-            .increment();
+        truncatedTracesCounter.increment(tenantSlot);
       }
       // drop the span as limit is reached
       return true;
@@ -213,46 +403,131 @@ public class RawSpansProcessor
     return false;
   }
 
-  private void schedulePunctuator(TraceIdentity key) {
-    TraceEmitPunctuator punctuator =
+  /**
+   * Trims the attribute values of a span that does not fit the remaining byte budget of its trace
+   * or tenant.
+   *
+   * @return the serialized size of the trimmed span, or -1 if the span has to be dropped
+   */
+  private long trimSpanToByteLimit(
+      TraceIdentity key, int tenantSlot, RawSpan rawSpan, long remainingBytes) {
+    if (attributeTrimLength >= 0
+        && SpanSizeLimiter.trimAttributeValues(rawSpan, attributeTrimLength)) {
+      trimmedSpansCounter.increment(tenantSlot);
+      long trimmedSpanBytes = spanSizeLimiter.getSerializedSize(rawSpan);
+      if (trimmedSpanBytes <= remainingBytes) {
+        return trimmedSpanBytes;
+      }
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug(
+          "Dropping span from tenant_id={}, trace_id={} as it exceeds the byte limits",
+          key.getTenantId(),
+          HexUtils.getHex(key.getTraceId()));
+    }
+    byteLimitDroppedSpansCounter.increment(tenantSlot);
+    return -1;
+  }
+
+  private boolean isRootSpan(RawSpan rawSpan) {
+    return rawSpan.getEvent().getEventRefList() == null
+        || rawSpan.getEvent().getEventRefList().isEmpty();
+  }
+
+  private void schedulePunctuator() {
+    this.traceEmitPunctuator =
         new TraceEmitPunctuator(
-            key,
+            traceEmitIndex,
             context,
             spanStore,
+            spanBuffer,
             traceStateStore,
+            tenantByteBudget,
             outputTopic,
             groupingWindowTimeoutMs,
+            earlyEmittedTraces,
             dataflowSamplingPercent);
-    Cancellable cancellable =
-        context.schedule(
-            Duration.ofMillis(groupingWindowTimeoutMs),
-            PunctuationType.WALL_CLOCK_TIME,
-            punctuator);
-    punctuator.setCancellable(cancellable);
+    context.schedule(
+        Duration.ofMillis(traceEmitPunctuatorIntervalMs),
+        PunctuationType.WALL_CLOCK_TIME,
+        traceEmitPunctuator);
     logger.debug(
-        "Scheduled a punctuator to emit trace for key=[{}] to run after [{}] ms",
-        key,
-        groupingWindowTimeoutMs);
+        "Scheduled a punctuator to emit traces every [{}] ms", traceEmitPunctuatorIntervalMs);
+
+    if (spanStoreSweepIntervalMs > 0) {
+      context.schedule(
+          Duration.ofMillis(spanStoreSweepIntervalMs),
+          PunctuationType.WALL_CLOCK_TIME,
+          new SpanStoreSweeper(
+              spanBuffer,
+              spanStore,
+              traceStateStore,
+              orphanedSpanMinAgeMs,
+              spanStoreSweepMaxEntries));
+      logger.debug(
+          "Scheduled a punctuator to delete orphaned spans every [{}] ms",
+          spanStoreSweepIntervalMs);
+    }
   }
 
   @Override
   public void close() {}
 
   /**
-   * Punctuators are not persisted - so on restart we recover punctuators and schedule them to run
-   * after {@link RawSpansProcessor#groupingWindowTimeoutMs}
+   * Trace states written before the compact state store serdes are in a store of their own, as
+   * records of the default serdes cannot be told apart from compact ones whatever serdes are
+   * configured. They are moved to the compact trace state store, and indexed, with a single pass
+   * over the legacy store, which is empty after the first start of the task after the upgrade.
+   * Their buffered spans are read from the {@link LegacySpanStore} as before.
+   */
+  void migrateLegacyTraceStates(KeyValueStore<TraceIdentity, TraceState> legacyTraceStateStore) {
+    List<KeyValue<TraceIdentity, TraceState>> legacyEntries = new ArrayList<>();
+    List<KeyValue<TraceIdentity, TraceState>> deletedEntries = new ArrayList<>();
+    try (KeyValueIterator<TraceIdentity, TraceState> it = legacyTraceStateStore.all()) {
+      while (it.hasNext()) {
+        KeyValue<TraceIdentity, TraceState> entry = it.next();
+        legacyEntries.add(entry);
+        deletedEntries.add(KeyValue.pair(entry.key, null));
+      }
+    }
+    if (legacyEntries.isEmpty()) {
+      return;
+    }
+    // a bulk write, which bypasses the cache of the write-behind store
+    traceStateStore.putAll(legacyEntries);
+    for (KeyValue<TraceIdentity, TraceState> entry : legacyEntries) {
+      traceEmitIndex.add(entry.key, entry.value.getEmitTs());
+    }
+    legacyTraceStateStore.putAll(deletedEntries);
+    logger.info("Migrated=[{}] trace states to the compact store", legacyEntries.size());
+  }
+
+  /**
+   * Seeds the {@link TenantByteBudget}, which is kept in memory, with the bytes of the traces in
+   * flight when the task is assigned, so that emitting them releases bytes that were counted. This
+   * is a single pass over the trace state store, which only holds in-flight traces.
+   *
+   * <p>The {@link TraceEmitIndex} is persisted, so it is only rebuilt in the same pass when the
+   * index store is empty while the trace state store may not be, i.e. the first start after
+   * upgrading from per-trace punctuators.
    */
-  void restorePunctuators() {
+  void restoreInFlightTraces(boolean rebuildTraceEmitIndex) {
     long count = 0;
     Instant start = Instant.now();
     try (KeyValueIterator<TraceIdentity, TraceState> it = traceStateStore.all()) {
       while (it.hasNext()) {
-        schedulePunctuator(it.next().key);
+        KeyValue<TraceIdentity, TraceState> entry = it.next();
+        tenantByteBudget.add(entry.key.getTenantId(), entry.value.getSpanBytes());
+        if (rebuildTraceEmitIndex) {
+          traceEmitIndex.add(entry.key, entry.value.getEmitTs());
+        }
         count++;
       }
       logger.info(
-          "Restored=[{}] punctuators, Duration=[{}]",
+          "Restored=[{}] in-flight traces, rebuilt_index=[{}], Duration=[{}]",
           count,
+          rebuildTraceEmitIndex,
           Duration.between(start, Instant.now()));
     }
   }
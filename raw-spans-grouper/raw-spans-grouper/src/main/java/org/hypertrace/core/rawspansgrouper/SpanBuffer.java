@@ -0,0 +1,117 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.TraceState;
+
+/**
+ * Buffers the spans of in-flight traces in a single store keyed by {@code (tenant_id, trace_id,
+ * sequence_no)}. Appending a span is a single put that does not depend on the span ids seen so far,
+ * all spans of a trace are contiguous in key order so they are read back with one range scan, and
+ * the spans that were read are deleted by key without another read.
+ *
+ * <p>Tenant and trace ids are length-prefixed so that the key prefix of a trace never matches the
+ * prefix of another trace, and the sequence number is encoded big-endian so spans are read back
+ * in arrival order.
+ */
+class SpanBuffer {
+
+  /** lower than every buffer key */
+  static final Bytes FIRST_KEY = Bytes.wrap(new byte[0]);
+  // buffer keys start with the tenant id length, which never has its high byte set
+  private static final Bytes LAST_KEY = Bytes.wrap(new byte[] {(byte) 0xFF});
+
+  private final KeyValueStore<Bytes, RawSpan> spanBufferStore;
+
+  SpanBuffer(KeyValueStore<Bytes, RawSpan> spanBufferStore) {
+    this.spanBufferStore = spanBufferStore;
+  }
+
+  void append(TraceIdentity key, int sequenceNo, RawSpan rawSpan) {
+    spanBufferStore.put(toBufferKey(key, sequenceNo), rawSpan);
+  }
+
+  /**
+   * Returns all buffered spans of the trace in arrival order, with their buffer keys so that
+   * exactly the spans that were read can be deleted.
+   */
+  List<KeyValue<Bytes, RawSpan>> getAll(TraceIdentity key) {
+    List<KeyValue<Bytes, RawSpan>> bufferedSpans = new ArrayList<>();
+    try (KeyValueIterator<Bytes, RawSpan> it =
+        spanBufferStore.range(toBufferKey(key, 0), toBufferKey(key, Integer.MAX_VALUE))) {
+      while (it.hasNext()) {
+        bufferedSpans.add(it.next());
+      }
+    }
+    return bufferedSpans;
+  }
+
+  /**
+   * Deletes the buffered spans returned by {@link #getAll(TraceIdentity)}. This also covers spans
+   * at sequence numbers beyond the span count of the trace state, e.g. left behind by a trace
+   * state that was lost, which would otherwise be emitted with the next trace of the same id. A
+   * put of a null value deletes without reading back the old value.
+   */
+  void deleteAll(List<KeyValue<Bytes, RawSpan>> bufferedSpans) {
+    for (KeyValue<Bytes, RawSpan> bufferedSpan : bufferedSpans) {
+      spanBufferStore.put(bufferedSpan.key, null);
+    }
+  }
+
+  /**
+   * Number of spans held for the trace, including spans of traces started before the span buffer
+   * that are still referenced by id from the legacy span store.
+   */
+  static int getSpanCount(TraceState traceState) {
+    return traceState.getSpanIds().size() + traceState.getSpanCount();
+  }
+
+  /** Iterates over the buffered spans of all traces in key order, starting at {@code from}. */
+  KeyValueIterator<Bytes, RawSpan> scanFrom(Bytes from) {
+    return spanBufferStore.range(from, LAST_KEY);
+  }
+
+  void delete(Bytes bufferKey) {
+    spanBufferStore.put(bufferKey, null);
+  }
+
+  long approximateNumEntries() {
+    return spanBufferStore.approximateNumEntries();
+  }
+
+  static Bytes toBufferKey(TraceIdentity key, int sequenceNo) {
+    byte[] tenantId = key.getTenantId().getBytes(UTF_8);
+    ByteBuffer traceId = key.getTraceId().duplicate();
+    ByteBuffer buffer =
+        ByteBuffer.allocate(
+            Integer.BYTES + tenantId.length + Integer.BYTES + traceId.remaining() + Integer.BYTES);
+    buffer
+        .putInt(tenantId.length)
+        .put(tenantId)
+        .putInt(traceId.remaining())
+        .put(traceId)
+        .putInt(sequenceNo);
+    return Bytes.wrap(buffer.array());
+  }
+
+  static TraceIdentity toTraceIdentity(Bytes bufferKey) {
+    ByteBuffer buffer = ByteBuffer.wrap(bufferKey.get());
+    byte[] tenantId = new byte[buffer.getInt()];
+    buffer.get(tenantId);
+    byte[] traceId = new byte[buffer.getInt()];
+    buffer.get(traceId);
+    return TraceIdentity.newBuilder()
+        .setTenantId(new String(tenantId, UTF_8))
+        .setTraceId(ByteBuffer.wrap(traceId))
+        .build();
+  }
+}
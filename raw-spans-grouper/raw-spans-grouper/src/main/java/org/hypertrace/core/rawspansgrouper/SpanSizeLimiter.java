@@ -0,0 +1,76 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.RawSpan;
+
+/**
+ * Measures the serialized size of spans so that the grouper can keep traces within a byte budget,
+ * and trims oversized attribute values of spans that would exceed it.
+ *
+ * <p>Not thread safe, an instance is owned by a single {@link RawSpansProcessor}.
+ */
+class SpanSizeLimiter {
+
+  private final DatumWriter<RawSpan> datumWriter = new SpecificDatumWriter<>(RawSpan.class);
+  private final ByteCountingOutputStream outputStream = new ByteCountingOutputStream();
+  private final BinaryEncoder encoder =
+      EncoderFactory.get().directBinaryEncoder(outputStream, null);
+
+  /** Size of the span in Avro binary encoding, without writing out the bytes. */
+  long getSerializedSize(RawSpan rawSpan) {
+    outputStream.count = 0;
+    try {
+      datumWriter.write(rawSpan, encoder);
+      encoder.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return outputStream.count;
+  }
+
+  /**
+   * Truncates the string attribute values of the span that are longer than {@code
+   * maxValueLength}.
+   *
+   * @return true if any attribute value was trimmed
+   */
+  static boolean trimAttributeValues(RawSpan rawSpan, int maxValueLength) {
+    Attributes attributes = rawSpan.getEvent().getAttributes();
+    if (attributes == null || attributes.getAttributeMap() == null) {
+      return false;
+    }
+    boolean trimmed = false;
+    for (Map.Entry<String, AttributeValue> entry : attributes.getAttributeMap().entrySet()) {
+      String value = entry.getValue().getValue();
+      if (value != null && value.length() > maxValueLength) {
+        entry.getValue().setValue(value.substring(0, maxValueLength));
+        trimmed = true;
+      }
+    }
+    return trimmed;
+  }
+
+  /** Discards the written bytes and only counts them. */
+  private static class ByteCountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
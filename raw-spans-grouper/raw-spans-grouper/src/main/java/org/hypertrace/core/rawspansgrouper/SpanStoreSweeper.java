@@ -0,0 +1,178 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.ORPHANED_SPANS_RECLAIMED_COUNTER;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.ORPHANED_SPAN_BYTES_RECLAIMED_COUNTER;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.Punctuator;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.rawspansgrouper.serde.RawSpanSerde;
+import org.hypertrace.core.spannormalizer.SpanIdentity;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.TraceState;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes spans whose trace has no {@link TraceState} anymore, e.g. when the trace state was lost
+ * or emitted without its spans after a crash or rebalance. Such spans are never emitted, so without
+ * the sweeper they would stay in the span stores forever.
+ *
+ * <p>Every run scans at most {@code maxEntriesPerRun} entries of the {@link SpanBuffer} and of the
+ * {@link LegacySpanStore}, continuing where the previous run stopped, so that a run does not hold
+ * up the processing of spans. Only spans older than {@code orphanedSpanMinAgeMs} are deleted.
+ *
+ * <p>The deleted spans and the serialized bytes of their records, key and value, are counted per
+ * tenant.
+ */
+class SpanStoreSweeper implements Punctuator {
+
+  private static final Logger logger = LoggerFactory.getLogger(SpanStoreSweeper.class);
+
+  // counter for number of deleted orphaned spans per tenant
+  private static final TenantCounter reclaimedSpansCounter =
+      TenantCounter.of(ORPHANED_SPANS_RECLAIMED_COUNTER);
+  // counter for bytes of deleted orphaned span records per tenant
+  private static final TenantCounter reclaimedBytesCounter =
+      TenantCounter.of(ORPHANED_SPAN_BYTES_RECLAIMED_COUNTER);
+
+  // serializer of the span buffer values, spans are only serialized again when they are deleted
+  private final Serializer<RawSpan> spanBufferSerializer = new RawSpanSerde().serializer();
+
+  private final SpanBuffer spanBuffer;
+  private final LegacySpanStore spanStore;
+  private final KeyValueStore<TraceIdentity, TraceState> traceStateStore;
+  private final long orphanedSpanMinAgeMs;
+  private final int maxEntriesPerRun;
+  private Bytes cursor = SpanBuffer.FIRST_KEY;
+  private Bytes spanStoreCursor = LegacySpanStore.FIRST_KEY;
+
+  SpanStoreSweeper(
+      SpanBuffer spanBuffer,
+      LegacySpanStore spanStore,
+      KeyValueStore<TraceIdentity, TraceState> traceStateStore,
+      long orphanedSpanMinAgeMs,
+      int maxEntriesPerRun) {
+    this.spanBuffer = spanBuffer;
+    this.spanStore = spanStore;
+    this.traceStateStore = traceStateStore;
+    this.orphanedSpanMinAgeMs = orphanedSpanMinAgeMs;
+    this.maxEntriesPerRun = maxEntriesPerRun;
+  }
+
+  /** @param timestamp correspond to current system time */
+  @Override
+  public void punctuate(long timestamp) {
+    long maxStartTimeMillis = timestamp - orphanedSpanMinAgeMs;
+    int reclaimedSpans = sweepSpanBuffer(maxStartTimeMillis) + sweepSpanStore(maxStartTimeMillis);
+    if (reclaimedSpans > 0) {
+      logger.info("Deleted=[{}] orphaned spans", reclaimedSpans);
+    }
+  }
+
+  private int sweepSpanBuffer(long maxStartTimeMillis) {
+    List<KeyValue<Bytes, RawSpan>> orphanedSpans = new ArrayList<>();
+    // the next run starts from the beginning once the end of the buffer is reached
+    Bytes nextCursor = SpanBuffer.FIRST_KEY;
+    TraceIdentity trace = null;
+    boolean orphanedTrace = false;
+    int scannedEntries = 0;
+    try (KeyValueIterator<Bytes, RawSpan> it = spanBuffer.scanFrom(cursor)) {
+      while (it.hasNext()) {
+        KeyValue<Bytes, RawSpan> entry = it.next();
+        if (scannedEntries++ == maxEntriesPerRun) {
+          nextCursor = entry.key;
+          break;
+        }
+        TraceIdentity entryTrace = SpanBuffer.toTraceIdentity(entry.key);
+        // the spans of a trace are contiguous, so its state is looked up once
+        if (!entryTrace.equals(trace)) {
+          trace = entryTrace;
+          orphanedTrace = !hasTraceState(trace);
+        }
+        if (orphanedTrace && isOlderThan(entry.value, maxStartTimeMillis)) {
+          orphanedSpans.add(entry);
+        }
+      }
+    }
+    cursor = nextCursor;
+
+    for (KeyValue<Bytes, RawSpan> orphanedSpan : orphanedSpans) {
+      spanBuffer.delete(orphanedSpan.key);
+      recordReclaimedSpan(
+          orphanedSpan.value.getCustomerId(),
+          orphanedSpan.key.get().length
+              + spanBufferSerializer.serialize(null, orphanedSpan.value).length);
+    }
+    return orphanedSpans.size();
+  }
+
+  private int sweepSpanStore(long maxStartTimeMillis) {
+    List<KeyValue<Bytes, byte[]>> orphanedSpans = new ArrayList<>();
+    List<String> orphanedSpanTenantIds = new ArrayList<>();
+    Bytes nextCursor = LegacySpanStore.FIRST_KEY;
+    int scannedEntries = 0;
+    try (KeyValueIterator<Bytes, byte[]> it = spanStore.scanFrom(spanStoreCursor)) {
+      while (it.hasNext()) {
+        KeyValue<Bytes, byte[]> entry = it.next();
+        if (scannedEntries++ == maxEntriesPerRun) {
+          nextCursor = entry.key;
+          break;
+        }
+        // the span is checked first as the key has to be deserialized
+        RawSpan rawSpan = spanStore.toRawSpan(entry.value);
+        if (!isOlderThan(rawSpan, maxStartTimeMillis)) {
+          continue;
+        }
+        SpanIdentity spanIdentity = spanStore.toSpanIdentity(entry.key);
+        TraceIdentity trace =
+            TraceIdentity.newBuilder()
+                .setTenantId(spanIdentity.getTenantId())
+                .setTraceId(spanIdentity.getTraceId())
+                .build();
+        if (!hasTraceState(trace)) {
+          orphanedSpans.add(entry);
+          orphanedSpanTenantIds.add(rawSpan.getCustomerId());
+        }
+      }
+    }
+    spanStoreCursor = nextCursor;
+
+    for (int i = 0; i < orphanedSpans.size(); i++) {
+      KeyValue<Bytes, byte[]> orphanedSpan = orphanedSpans.get(i);
+      spanStore.delete(orphanedSpan.key);
+      recordReclaimedSpan(
+          orphanedSpanTenantIds.get(i), orphanedSpan.key.get().length + orphanedSpan.value.length);
+    }
+    return orphanedSpans.size();
+  }
+
+  /**
+   * Looked up with a read-only range query, which the {@link WriteBehindKeyValueStore} serves
+   * without caching the state, so that the sweep does not evict the cached states of the hot
+   * traces.
+   */
+  private boolean hasTraceState(TraceIdentity trace) {
+    try (KeyValueIterator<TraceIdentity, TraceState> it = traceStateStore.range(trace, trace)) {
+      return it.hasNext();
+    }
+  }
+
+  private boolean isOlderThan(RawSpan rawSpan, long maxStartTimeMillis) {
+    return rawSpan.getEvent().getStartTimeMillis() <= maxStartTimeMillis;
+  }
+
+  private void recordReclaimedSpan(String tenantId, long serializedBytes) {
+    int tenantSlot = TenantSlots.slotOf(tenantId);
+    reclaimedSpansCounter.increment(tenantSlot);
+    reclaimedBytesCounter.increment(tenantSlot, serializedBytes);
+  }
+}
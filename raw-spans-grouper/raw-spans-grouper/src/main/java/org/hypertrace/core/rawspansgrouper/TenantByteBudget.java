@@ -0,0 +1,61 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serialized bytes of the spans buffered for the in-flight traces of each tenant, held against a
+ * per-tenant budget. Bytes are added as spans are buffered and released when their trace or
+ * fragment is emitted.
+ *
+ * <p>The count is kept in memory per task, so the budget applies per partition. It is seeded with
+ * the bytes of the traces in flight when the task is assigned, see {@link
+ * RawSpansProcessor#restoreInFlightTraces(boolean)}.
+ *
+ * <p>Not thread safe, an instance is owned by a single {@link RawSpansProcessor}.
+ */
+class TenantByteBudget {
+
+  private final Map<String, Long> maxTenantBytesMap;
+  private final long defaultMaxTenantBytes;
+  private final Map<String, Long> inFlightTenantBytes = new HashMap<>();
+
+  TenantByteBudget(Map<String, Long> maxTenantBytesMap, long defaultMaxTenantBytes) {
+    this.maxTenantBytesMap = maxTenantBytesMap;
+    this.defaultMaxTenantBytes = defaultMaxTenantBytes;
+  }
+
+  boolean isLimited(String tenantId) {
+    return getMaxBytes(tenantId) < Long.MAX_VALUE;
+  }
+
+  /** Bytes that can still be buffered for the tenant. */
+  long getRemainingBytes(String tenantId) {
+    long maxBytes = getMaxBytes(tenantId);
+    return maxBytes == Long.MAX_VALUE
+        ? Long.MAX_VALUE
+        : maxBytes - inFlightTenantBytes.getOrDefault(tenantId, 0L);
+  }
+
+  void add(String tenantId, long bytes) {
+    if (bytes > 0) {
+      inFlightTenantBytes.merge(tenantId, bytes, Long::sum);
+    }
+  }
+
+  void release(String tenantId, long bytes) {
+    Long inFlightBytes = inFlightTenantBytes.get(tenantId);
+    if (inFlightBytes == null || bytes <= 0) {
+      return;
+    }
+    if (inFlightBytes <= bytes) {
+      inFlightTenantBytes.remove(tenantId);
+    } else {
+      inFlightTenantBytes.put(tenantId, inFlightBytes - bytes);
+    }
+  }
+
+  private long getMaxBytes(String tenantId) {
+    return maxTenantBytesMap.getOrDefault(tenantId, defaultMaxTenantBytes);
+  }
+}
@@ -0,0 +1,91 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+
+/**
+ * Index of in-flight traces ordered by emit timestamp. It lets a single {@link
+ * TraceEmitPunctuator} per task find the traces that are due with a range scan instead of visiting
+ * every open trace.
+ *
+ * <p>The index is kept in its own persistent store keyed by {@code (emit_ts, tenant_id,
+ * trace_id)}, with the emit timestamp encoded big-endian so that the byte order of the keys is the
+ * emit order. As the store is changelogged, the index survives restarts and rebalances.
+ *
+ * <p>An indexed timestamp is a lower bound on the actual emit timestamp of the trace: the emit
+ * timestamp only moves forward as spans arrive, so the index is not touched on every span. Instead
+ * the punctuator re-indexes a polled trace at its current emit timestamp if it is not due yet.
+ */
+class TraceEmitIndex {
+
+  private static final byte[] EMPTY_VALUE = new byte[0];
+  private static final Bytes LOWEST_KEY = Bytes.wrap(new byte[Long.BYTES]);
+
+  private final KeyValueStore<Bytes, byte[]> indexStore;
+
+  TraceEmitIndex(KeyValueStore<Bytes, byte[]> indexStore) {
+    this.indexStore = indexStore;
+  }
+
+  void add(TraceIdentity key, long emitTs) {
+    indexStore.put(toIndexKey(emitTs, key), EMPTY_VALUE);
+  }
+
+  /**
+   * Removes and returns, in emit order, all traces whose indexed emit timestamp is not after {@code
+   * timestamp}.
+   */
+  List<TraceIdentity> pollDue(long timestamp) {
+    // every index key is longer than the bare timestamp so this bound covers 'timestamp' fully
+    Bytes upperBound = Bytes.wrap(ByteBuffer.allocate(Long.BYTES).putLong(timestamp + 1).array());
+    List<Bytes> dueKeys = new ArrayList<>();
+    try (KeyValueIterator<Bytes, byte[]> it = indexStore.range(LOWEST_KEY, upperBound)) {
+      while (it.hasNext()) {
+        dueKeys.add(it.next().key);
+      }
+    }
+
+    List<TraceIdentity> dueTraces = new ArrayList<>(dueKeys.size());
+    for (Bytes dueKey : dueKeys) {
+      // a put of a null value deletes without reading back the old value
+      indexStore.put(dueKey, null);
+      dueTraces.add(toTraceIdentity(dueKey));
+    }
+    return dueTraces;
+  }
+
+  boolean isEmpty() {
+    try (KeyValueIterator<Bytes, byte[]> it = indexStore.all()) {
+      return !it.hasNext();
+    }
+  }
+
+  static Bytes toIndexKey(long emitTs, TraceIdentity key) {
+    byte[] tenantId = key.getTenantId().getBytes(UTF_8);
+    ByteBuffer traceId = key.getTraceId().duplicate();
+    ByteBuffer buffer =
+        ByteBuffer.allocate(Long.BYTES + Integer.BYTES + tenantId.length + traceId.remaining());
+    buffer.putLong(emitTs).putInt(tenantId.length).put(tenantId).put(traceId);
+    return Bytes.wrap(buffer.array());
+  }
+
+  static TraceIdentity toTraceIdentity(Bytes indexKey) {
+    ByteBuffer buffer = ByteBuffer.wrap(indexKey.get());
+    buffer.getLong();
+    byte[] tenantId = new byte[buffer.getInt()];
+    buffer.get(tenantId);
+    byte[] traceId = new byte[buffer.remaining()];
+    buffer.get(traceId);
+    return TraceIdentity.newBuilder()
+        .setTenantId(new String(tenantId, UTF_8))
+        .setTraceId(ByteBuffer.wrap(traceId))
+        .build();
+  }
+}
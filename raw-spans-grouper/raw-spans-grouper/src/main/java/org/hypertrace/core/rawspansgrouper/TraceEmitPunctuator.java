@@ -1,10 +1,12 @@
 package org.hypertrace.core.rawspansgrouper;
 
+import static org.hypertrace.core.datamodel.shared.AvroBuilderCache.fastNewBuilder;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.SPANS_PER_TRACE_METRIC;
 import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_CREATION_TIME;
+import static org.hypertrace.core.rawspansgrouper.RawSpanGrouperConstants.TRACE_FRAGMENT_SEQUENCE_ATTRIBUTE;
 
+import com.google.common.cache.Cache;
 import com.google.common.util.concurrent.RateLimiter;
-import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.Timer;
@@ -17,32 +19,45 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import org.apache.kafka.streams.processor.Cancellable;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.processor.ProcessorContext;
-import org.apache.kafka.streams.processor.PunctuationType;
 import org.apache.kafka.streams.processor.Punctuator;
 import org.apache.kafka.streams.processor.To;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.EventRef;
+import org.hypertrace.core.datamodel.EventRefType;
 import org.hypertrace.core.datamodel.RawSpan;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.datamodel.TimestampRecord;
 import org.hypertrace.core.datamodel.Timestamps;
 import org.hypertrace.core.datamodel.shared.DataflowMetricUtils;
 import org.hypertrace.core.datamodel.shared.HexUtils;
+import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
 import org.hypertrace.core.datamodel.shared.trace.StructuredTraceBuilder;
 import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
 import org.hypertrace.core.spannormalizer.SpanIdentity;
 import org.hypertrace.core.spannormalizer.TraceIdentity;
 import org.hypertrace.core.spannormalizer.TraceState;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
+import org.hypertrace.tenant.metrics.utils.TenantTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Checks if a trace can be finalized and emitted based on inactivity period of {@link
- * RawSpansProcessor#groupingWindowTimeoutMs}
+ * Emits the traces that have been inactive for {@link RawSpansProcessor#groupingWindowTimeoutMs}.
+ * A single instance is scheduled per task and only looks at the traces that are due according to
+ * the {@link TraceEmitIndex}, so the cost of a punctuation does not depend on the number of
+ * in-flight traces.
+ *
+ * <p>Traces whose root span has been seen are due after a short grace period. They are only
+ * emitted at that point if every parent reference resolves within the trace, otherwise they wait
+ * for the regular grouping window.
  */
 class TraceEmitPunctuator implements Punctuator {
 
@@ -52,78 +67,122 @@ class TraceEmitPunctuator implements Punctuator {
   private static final Timer spansGrouperArrivalLagTimer =
       PlatformMetricsRegistry.registerTimer(DataflowMetricUtils.ARRIVAL_LAG, new HashMap<>());
   private static final String TRACES_EMITTER_COUNTER = "hypertrace.emitted.traces";
-  private static final ConcurrentMap<String, Counter> tenantToTraceEmittedCounter =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter tenantToTraceEmittedCounter =
+      TenantCounter.of(TRACES_EMITTER_COUNTER);
   private static final String PUNCTUATE_LATENCY_TIMER =
       "hypertrace.rawspansgrouper.punctuate.latency";
-  private static final ConcurrentMap<String, Timer> tenantToPunctuateLatencyTimer =
-      new ConcurrentHashMap<>();
+  private static final TenantTimer tenantToPunctuateLatencyTimer =
+      TenantTimer.of(PUNCTUATE_LATENCY_TIMER);
   private static final String SPANS_PER_TRACE = "hypertrace.rawspansgrouper.spans.per.trace";
-  private static final ConcurrentMap<String, Counter> tenantToSpanPerTraceCounter =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter tenantToSpanPerTraceCounter =
+      TenantCounter.of(SPANS_PER_TRACE);
   private static final RateLimiter spanStoreCountRateLimiter = RateLimiter.create(1 / 60d);
   private static final String SPAN_STORE_COUNT = "hypertrace.rawspansgrouper.span.store.count";
-  private static final ConcurrentMap<String, Counter> tenantToSpanStoreCountCounter =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter tenantToSpanStoreCountCounter =
+      TenantCounter.of(SPAN_STORE_COUNT);
+  private static final String TRACE_FRAGMENTS_EMITTED_COUNTER =
+      "hypertrace.rawspansgrouper.emitted.trace.fragments";
+  private static final TenantCounter tenantToTraceFragmentEmittedCounter =
+      TenantCounter.of(TRACE_FRAGMENTS_EMITTED_COUNTER);
   private static final String TRACE_WITH_DUPLICATE_SPANS =
       "hypertrace.rawspansgrouper.trace.with.duplicate.spans";
-  private static final ConcurrentMap<String, Counter> tenantToTraceWithDuplicateSpansCounter =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter tenantToTraceWithDuplicateSpansCounter =
+      TenantCounter.of(TRACE_WITH_DUPLICATE_SPANS);
 
   private final double dataflowSamplingPercent;
-  private final TraceIdentity key;
+  private final TraceEmitIndex traceEmitIndex;
   private final ProcessorContext context;
-  private final KeyValueStore<SpanIdentity, RawSpan> spanStore;
+  private final LegacySpanStore spanStore;
+  private final SpanBuffer spanBuffer;
   private final KeyValueStore<TraceIdentity, TraceState> traceStateStore;
+  private final TenantByteBudget tenantByteBudget;
   private final To outputTopicProducer;
   private final long groupingWindowTimeoutMs;
-  private Cancellable cancellable;
+  private final Cache<TraceIdentity, Boolean> earlyEmittedTraces;
 
   TraceEmitPunctuator(
-      TraceIdentity key,
+      TraceEmitIndex traceEmitIndex,
       ProcessorContext context,
-      KeyValueStore<SpanIdentity, RawSpan> spanStore,
+      LegacySpanStore spanStore,
+      SpanBuffer spanBuffer,
       KeyValueStore<TraceIdentity, TraceState> traceStateStore,
+      TenantByteBudget tenantByteBudget,
       To outputTopicProducer,
       long groupingWindowTimeoutMs,
+      Cache<TraceIdentity, Boolean> earlyEmittedTraces,
       double dataflowSamplingPercent) {
-    this.key = key;
+    this.traceEmitIndex = traceEmitIndex;
     this.context = context;
     this.spanStore = spanStore;
+    this.spanBuffer = spanBuffer;
     this.traceStateStore = traceStateStore;
+    this.tenantByteBudget = tenantByteBudget;
     this.outputTopicProducer = outputTopicProducer;
     this.groupingWindowTimeoutMs = groupingWindowTimeoutMs;
+    this.earlyEmittedTraces = earlyEmittedTraces;
     this.dataflowSamplingPercent = dataflowSamplingPercent;
   }
 
-  public void setCancellable(Cancellable cancellable) {
-    this.cancellable = cancellable;
-  }
-
   /** @param timestamp correspond to current system time */
   @Override
   public void punctuate(long timestamp) {
+    for (TraceIdentity key : traceEmitIndex.pollDue(timestamp)) {
+      emitTraceIfExpired(key, timestamp);
+    }
+  }
+
+  /**
+   * A read-only lookup, see {@link WriteBehindKeyValueStore}: most polled states are not due yet
+   * and are left unchanged, so they must not be written back to the store.
+   */
+  private TraceState getTraceState(TraceIdentity key) {
+    try (KeyValueIterator<TraceIdentity, TraceState> it = traceStateStore.range(key, key)) {
+      return it.hasNext() ? it.next().value : null;
+    }
+  }
+
+  private void emitTraceIfExpired(TraceIdentity key, long timestamp) {
     Instant startTime = Instant.now();
-    // always cancel the punctuator else it will get re-scheduled automatically
-    cancellable.cancel();
-
-    TraceState traceState = traceStateStore.get(key);
-    if (null == traceState
-        || null == traceState.getSpanIds()
-        || traceState.getSpanIds().isEmpty()) {
-      /*
-       todo - debug why this happens .
-       Typically seen when punctuators are created via {@link RawSpansGroupingTransformer.restorePunctuators}
-      */
-      logger.warn(
-          "TraceState for tenant_id=[{}], trace_id=[{}] is missing.",
+
+    TraceState traceState = getTraceState(key);
+    if (null == traceState) {
+      // expected for the regular index entry of a trace that was emitted early
+      logger.debug(
+          "No in-flight trace for tenant_id=[{}], trace_id=[{}].",
           key.getTenantId(),
           HexUtils.getHex(key.getTraceId()));
       return;
     }
+    if (SpanBuffer.getSpanCount(traceState) == 0) {
+      // left behind by a fragment flush when the span that triggered it was dropped
+      if (traceState.getEmitTs() <= timestamp) {
+        logger.debug(
+            "Deleting empty trace state for tenant_id=[{}], trace_id=[{}].",
+            key.getTenantId(),
+            HexUtils.getHex(key.getTraceId()));
+        traceStateStore.delete(key);
+        tenantByteBudget.release(traceState.getTenantId(), traceState.getSpanBytes());
+      } else {
+        traceEmitIndex.add(key, traceState.getEmitTs());
+      }
+      return;
+    }
 
     long emitTs = traceState.getEmitTs();
     if (emitTs <= timestamp) {
+      List<KeyValue<Bytes, RawSpan>> bufferedSpans = spanBuffer.getAll(key);
+      if (traceState.getRootSpanSeen() && !hasResolvedParentRefs(traceState, bufferedSpans)) {
+        long windowEmitTs = traceState.getTraceEndTimestamp() + groupingWindowTimeoutMs;
+        if (windowEmitTs > timestamp) {
+          // the trace is not complete yet so it falls back to the regular grouping window
+          traceState.setRootSpanSeen(false);
+          traceState.setEmitTs(windowEmitTs);
+          traceStateStore.put(key, traceState);
+          traceEmitIndex.add(key, windowEmitTs);
+          return;
+        }
+      }
+
       // we can emit this trace so just delete the entry for this 'key'
       // Implies that no new spans for the trace have arrived within the last
       // 'groupingWindowTimeoutMs' interval
@@ -132,31 +191,42 @@ class TraceEmitPunctuator implements Punctuator {
 
       ByteBuffer traceId = traceState.getTraceId();
       String tenantId = traceState.getTenantId();
+      int tenantSlot = TenantSlots.slotOf(tenantId);
+      tenantByteBudget.release(tenantId, traceState.getSpanBytes());
       List<RawSpan> rawSpanList = new ArrayList<>();
 
-      Set<ByteBuffer> spanIds = new HashSet<>(traceState.getSpanIds());
-      spanIds.forEach(
-          v -> {
-            SpanIdentity spanIdentity = new SpanIdentity(tenantId, traceId, v);
-            RawSpan rawSpan = spanStore.delete(spanIdentity);
-            // ideally this shouldn't happen
-            if (rawSpan != null) {
-              rawSpanList.add(rawSpan);
-            }
-          });
-
-      if (traceState.getSpanIds().size() != spanIds.size()) {
-        tenantToTraceWithDuplicateSpansCounter
-            .computeIfAbsent(
-                tenantId,
-                k ->
-                    PlatformMetricsRegistry.registerCounter(
-                        TRACE_WITH_DUPLICATE_SPANS, Map.of("tenantId", k)))
-            .increment();
+      Set<ByteBuffer> spanIds = new HashSet<>();
+      int duplicateSpanCount = 0;
+      // spans of traces started before the span buffer are looked up by id in the legacy store
+      for (ByteBuffer spanId : traceState.getSpanIds()) {
+        if (!spanIds.add(spanId)) {
+          duplicateSpanCount++;
+          continue;
+        }
+        RawSpan rawSpan = spanStore.delete(new SpanIdentity(tenantId, traceId, spanId));
+        // ideally this shouldn't happen
+        if (rawSpan != null) {
+          rawSpanList.add(rawSpan);
+        }
+      }
+      for (KeyValue<Bytes, RawSpan> bufferedSpan : bufferedSpans) {
+        if (spanIds.add(bufferedSpan.value.getEvent().getEventId())) {
+          rawSpanList.add(bufferedSpan.value);
+        } else {
+          duplicateSpanCount++;
+        }
+      }
+      spanBuffer.deleteAll(bufferedSpans);
+      if (traceState.getRootSpanSeen()) {
+        earlyEmittedTraces.put(key, Boolean.TRUE);
+      }
+
+      if (duplicateSpanCount > 0) {
+        tenantToTraceWithDuplicateSpansCounter.increment(tenantSlot);
         if (logger.isDebugEnabled()) {
           logger.debug(
               "Duplicate spanIds: [{}], unique spanIds count: [{}] for tenant: [{}] trace: [{}]",
-              traceState.getSpanIds().size(),
+              duplicateSpanCount,
               spanIds.size(),
               tenantId,
               HexUtils.getHex(traceId));
@@ -169,6 +239,10 @@ class TraceEmitPunctuator implements Punctuator {
       StructuredTrace trace =
           StructuredTraceBuilder.buildStructuredTraceFromRawSpans(
               rawSpanList, traceId, tenantId, timestamps);
+      if (traceState.getFragmentCount() > 0) {
+        // the last fragment of a trace that was emitted incrementally
+        setFragmentSequence(trace, traceState.getFragmentCount());
+      }
 
       if (logger.isDebugEnabled()) {
         logger.debug(
@@ -180,57 +254,109 @@ class TraceEmitPunctuator implements Punctuator {
 
       // report entries in spanStore
       if (spanStoreCountRateLimiter.tryAcquire()) {
-        tenantToSpanStoreCountCounter
-            .computeIfAbsent(
-                tenantId,
-                k ->
-                    PlatformMetricsRegistry.registerCounter(
-                        SPAN_STORE_COUNT, Map.of("tenantId", k)))
-            .increment(spanStore.approximateNumEntries() * 1.0);
+        tenantToSpanStoreCountCounter.increment(tenantSlot, spanBuffer.approximateNumEntries());
       }
 
       // report count of spanIds per trace
-      tenantToSpanPerTraceCounter
-          .computeIfAbsent(
-              tenantId,
-              k -> PlatformMetricsRegistry.registerCounter(SPANS_PER_TRACE, Map.of("tenantId", k)))
-          .increment(spanIds.size() * 1.0);
+      tenantToSpanPerTraceCounter.increment(tenantSlot, spanIds.size());
 
       // report trace emitted count
-      tenantToTraceEmittedCounter
-          .computeIfAbsent(
-              tenantId,
-              k ->
-                  PlatformMetricsRegistry.registerCounter(
-                      TRACES_EMITTER_COUNTER, Map.of("tenantId", k)))
-          .increment();
+      tenantToTraceEmittedCounter.increment(tenantSlot);
 
       // report punctuate latency
       tenantToPunctuateLatencyTimer
-          .computeIfAbsent(
-              tenantId,
-              k ->
-                  PlatformMetricsRegistry.registerTimer(
-                      PUNCTUATE_LATENCY_TIMER, Map.of("tenantId", k)))
+          .get(tenantSlot)
           .record(Duration.between(startTime, Instant.now()).toMillis(), TimeUnit.MILLISECONDS);
 
       context.forward(null, trace, outputTopicProducer);
     } else {
       // implies spans for the trace have arrived within the last 'sessionTimeoutMs' interval
-      // so the session inactivity window is extended from the last timestamp
+      // so the trace is re-indexed at the extended emit timestamp
       if (logger.isDebugEnabled()) {
         logger.debug(
-            "Re-scheduling emit trigger for tenant_id=[{}], trace_id=[{}] to [{}]",
+            "Re-indexing emit trigger for tenant_id=[{}], trace_id=[{}] to [{}]",
             key.getTenantId(),
             HexUtils.getHex(key.getTraceId()),
-            Instant.ofEpochMilli(emitTs + groupingWindowTimeoutMs));
+            Instant.ofEpochMilli(emitTs));
+      }
+      traceEmitIndex.add(key, emitTs);
+    }
+  }
+
+  /**
+   * Emits the buffered spans of a trace that is still in flight as a fragment, so that large or
+   * long-running traces are neither truncated nor kept in the span buffer until they go idle. The
+   * trace keeps accepting spans; the caller persists the updated trace state.
+   */
+  void emitFragment(TraceIdentity key, TraceState traceState, long timestamp) {
+    List<KeyValue<Bytes, RawSpan>> bufferedSpans = spanBuffer.getAll(key);
+    spanBuffer.deleteAll(bufferedSpans);
+    List<RawSpan> rawSpanList = new ArrayList<>(bufferedSpans.size());
+    bufferedSpans.forEach(bufferedSpan -> rawSpanList.add(bufferedSpan.value));
+    int fragmentSequence = traceState.getFragmentCount();
+    tenantByteBudget.release(traceState.getTenantId(), traceState.getSpanBytes());
+    traceState.setSpanCount(0);
+    traceState.setSpanBytes(0L);
+    traceState.setFragmentCount(fragmentSequence + 1);
+
+    String tenantId = traceState.getTenantId();
+    int tenantSlot = TenantSlots.slotOf(tenantId);
+    ByteBuffer traceId = traceState.getTraceId();
+    StructuredTrace trace =
+        StructuredTraceBuilder.buildStructuredTraceFromRawSpans(
+            rawSpanList,
+            traceId,
+            tenantId,
+            trackEndToEndLatencyTimestamps(timestamp, traceState.getTraceStartTimestamp()));
+    setFragmentSequence(trace, fragmentSequence);
+
+    if (logger.isDebugEnabled()) {
+      logger.debug(
+          "Emit fragment=[{}] of tenant_id=[{}], trace_id=[{}], spans_count=[{}]",
+          fragmentSequence,
+          tenantId,
+          HexUtils.getHex(traceId),
+          rawSpanList.size());
+    }
+
+    // report trace fragment emitted count
+    tenantToTraceFragmentEmittedCounter.increment(tenantSlot);
+
+    context.forward(null, trace, outputTopicProducer);
+  }
+
+  private void setFragmentSequence(StructuredTrace trace, int fragmentSequence) {
+    Map<String, AttributeValue> attributeMap =
+        trace.getAttributes() == null
+            ? new HashMap<>()
+            : new HashMap<>(trace.getAttributes().getAttributeMap());
+    attributeMap.put(
+        TRACE_FRAGMENT_SEQUENCE_ATTRIBUTE, AttributeValueCreator.create(fragmentSequence));
+    trace.setAttributes(
+        fastNewBuilder(Attributes.Builder.class).setAttributeMap(attributeMap).build());
+  }
+
+  /**
+   * Whether every parent reference of the trace's spans resolves to a span of the trace, either
+   * buffered or still held in the legacy span store.
+   */
+  private boolean hasResolvedParentRefs(
+      TraceState traceState, List<KeyValue<Bytes, RawSpan>> bufferedSpans) {
+    Set<ByteBuffer> spanIds = new HashSet<>(traceState.getSpanIds());
+    bufferedSpans.forEach(bufferedSpan -> spanIds.add(bufferedSpan.value.getEvent().getEventId()));
+    for (KeyValue<Bytes, RawSpan> bufferedSpan : bufferedSpans) {
+      List<EventRef> eventRefs = bufferedSpan.value.getEvent().getEventRefList();
+      if (eventRefs == null) {
+        continue;
+      }
+      for (EventRef eventRef : eventRefs) {
+        if (eventRef.getRefType() == EventRefType.CHILD_OF
+            && !spanIds.contains(eventRef.getEventId())) {
+          return false;
+        }
       }
-      long newEmitTs = emitTs + groupingWindowTimeoutMs;
-      // if current timestamp is ahead of newEmitTs then just add a grace of 100ms and fire it
-      long duration = Math.max(100, newEmitTs - timestamp);
-      cancellable =
-          context.schedule(Duration.ofMillis(duration), PunctuationType.WALL_CLOCK_TIME, this);
     }
+    return true;
   }
 
   private Timestamps trackEndToEndLatencyTimestamps(
@@ -0,0 +1,250 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+/**
+ * Keeps the most recently used values of a store as objects in memory and only writes them to the
+ * underlying store on {@link #flush()}, i.e. when the task commits, or when they are evicted. The
+ * underlying store serializes values, so a value that is read and updated for every record of a
+ * hot key is serialized once per commit instead of twice per record.
+ *
+ * <p>The store registers itself as the root store of the task, so Kafka Streams flushes it before
+ * committing offsets. Range queries flush the pending writes first and are served by the
+ * underlying store. They do not fill the cache, so scans that visit every key do not evict the
+ * values of the hot keys. {@link #putAll(List)} is meant for bulk writes and also bypasses the
+ * cache.
+ *
+ * <p>Values returned by {@link #get(Object)} are the cached instances and may be modified by the
+ * caller, so a read value is written back on the next flush like a put one. A lookup with {@code
+ * range(key, key)} is read-only instead: it is served from the cache without marking the value
+ * for write back, or from the underlying store without caching the value, so callers that may
+ * leave a value unchanged do not cause a write.
+ */
+class WriteBehindKeyValueStore<K, V> implements KeyValueStore<K, V> {
+
+  private final KeyValueStore<K, V> inner;
+  private final LinkedHashMap<K, CachedValue<V>> cache;
+  // number of cached values that differ from the underlying store
+  private int dirtyCount;
+
+  WriteBehindKeyValueStore(KeyValueStore<K, V> inner, int maxCacheSize) {
+    this.inner = inner;
+    this.cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+            if (size() <= maxCacheSize) {
+              return false;
+            }
+            if (eldest.getValue().dirty) {
+              inner.put(eldest.getKey(), eldest.getValue().value);
+              dirtyCount--;
+            }
+            return true;
+          }
+        };
+  }
+
+  @Override
+  public V get(K key) {
+    CachedValue<V> cachedValue = cache.get(key);
+    if (cachedValue != null) {
+      markDirty(cachedValue);
+      return cachedValue.value;
+    }
+    V value = inner.get(key);
+    if (value != null) {
+      dirtyCount++;
+      cache.put(key, new CachedValue<>(value, true));
+    }
+    return value;
+  }
+
+  @Override
+  public void put(K key, V value) {
+    CachedValue<V> cachedValue = cache.get(key);
+    if (cachedValue == null) {
+      dirtyCount++;
+      cache.put(key, new CachedValue<>(value, true));
+    } else {
+      cachedValue.value = value;
+      markDirty(cachedValue);
+    }
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    V existingValue = get(key);
+    if (existingValue == null) {
+      put(key, value);
+    }
+    return existingValue;
+  }
+
+  /** Written to the underlying store right away, replacing the cached values of the keys. */
+  @Override
+  public void putAll(List<KeyValue<K, V>> entries) {
+    for (KeyValue<K, V> entry : entries) {
+      CachedValue<V> cachedValue = cache.remove(entry.key);
+      if (cachedValue != null && cachedValue.dirty) {
+        dirtyCount--;
+      }
+    }
+    inner.putAll(entries);
+  }
+
+  /** A null value is cached as a pending delete until the next flush. */
+  @Override
+  public V delete(K key) {
+    V oldValue = get(key);
+    put(key, null);
+    return oldValue;
+  }
+
+  @Override
+  public KeyValueIterator<K, V> range(K from, K to) {
+    if (from.equals(to)) {
+      CachedValue<V> cachedValue = cache.get(from);
+      // the underlying store holds the latest value of a key that is not cached
+      return cachedValue == null
+          ? inner.range(from, to)
+          : new CachedValueIterator<>(from, cachedValue.value);
+    }
+    writePending();
+    return inner.range(from, to);
+  }
+
+  @Override
+  public KeyValueIterator<K, V> all() {
+    writePending();
+    return inner.all();
+  }
+
+  @Override
+  public long approximateNumEntries() {
+    writePending();
+    return inner.approximateNumEntries();
+  }
+
+  @Override
+  public String name() {
+    return inner.name();
+  }
+
+  @Override
+  public void init(ProcessorContext context, StateStore root) {
+    inner.init(context, root);
+  }
+
+  @Override
+  public void flush() {
+    writePending();
+    inner.flush();
+  }
+
+  /** Pending writes are dropped, the store is flushed before a clean close. */
+  @Override
+  public void close() {
+    cache.clear();
+    dirtyCount = 0;
+    inner.close();
+  }
+
+  @Override
+  public boolean persistent() {
+    return inner.persistent();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return inner.isOpen();
+  }
+
+  int getCacheSize() {
+    return cache.size();
+  }
+
+  private void markDirty(CachedValue<V> cachedValue) {
+    if (!cachedValue.dirty) {
+      cachedValue.dirty = true;
+      dirtyCount++;
+    }
+  }
+
+  private void writePending() {
+    // range lookups during a punctuation do not iterate the cache again
+    if (dirtyCount == 0) {
+      return;
+    }
+    Iterator<Map.Entry<K, CachedValue<V>>> it = cache.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<K, CachedValue<V>> entry = it.next();
+      CachedValue<V> cachedValue = entry.getValue();
+      if (!cachedValue.dirty) {
+        continue;
+      }
+      // a put of a null value deletes without reading back the old value
+      inner.put(entry.getKey(), cachedValue.value);
+      if (cachedValue.value == null) {
+        it.remove();
+      } else {
+        cachedValue.dirty = false;
+      }
+    }
+    dirtyCount = 0;
+  }
+
+  private static class CachedValueIterator<K, V> implements KeyValueIterator<K, V> {
+    private KeyValue<K, V> next;
+
+    // a pending delete is cached as a null value
+    private CachedValueIterator(K key, V value) {
+      this.next = value == null ? null : KeyValue.pair(key, value);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public KeyValue<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      KeyValue<K, V> entry = next;
+      next = null;
+      return entry;
+    }
+
+    @Override
+    public K peekNextKey() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      return next.key;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static class CachedValue<V> {
+    private V value;
+    private boolean dirty;
+
+    private CachedValue(V value, boolean dirty) {
+      this.value = value;
+      this.dirty = dirty;
+    }
+  }
+}
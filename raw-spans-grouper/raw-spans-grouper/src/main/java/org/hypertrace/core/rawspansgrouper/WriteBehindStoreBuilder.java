@@ -0,0 +1,61 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import java.util.Map;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+
+/** Builds the store of the given builder wrapped in a {@link WriteBehindKeyValueStore}. */
+class WriteBehindStoreBuilder<K, V> implements StoreBuilder<KeyValueStore<K, V>> {
+
+  private final StoreBuilder<KeyValueStore<K, V>> storeBuilder;
+  private final int maxCacheSize;
+
+  WriteBehindStoreBuilder(StoreBuilder<KeyValueStore<K, V>> storeBuilder, int maxCacheSize) {
+    this.storeBuilder = storeBuilder;
+    this.maxCacheSize = maxCacheSize;
+  }
+
+  @Override
+  public StoreBuilder<KeyValueStore<K, V>> withCachingEnabled() {
+    storeBuilder.withCachingEnabled();
+    return this;
+  }
+
+  @Override
+  public StoreBuilder<KeyValueStore<K, V>> withCachingDisabled() {
+    storeBuilder.withCachingDisabled();
+    return this;
+  }
+
+  @Override
+  public StoreBuilder<KeyValueStore<K, V>> withLoggingEnabled(Map<String, String> config) {
+    storeBuilder.withLoggingEnabled(config);
+    return this;
+  }
+
+  @Override
+  public StoreBuilder<KeyValueStore<K, V>> withLoggingDisabled() {
+    storeBuilder.withLoggingDisabled();
+    return this;
+  }
+
+  @Override
+  public KeyValueStore<K, V> build() {
+    return new WriteBehindKeyValueStore<>(storeBuilder.build(), maxCacheSize);
+  }
+
+  @Override
+  public Map<String, String> logConfig() {
+    return storeBuilder.logConfig();
+  }
+
+  @Override
+  public boolean loggingEnabled() {
+    return storeBuilder.loggingEnabled();
+  }
+
+  @Override
+  public String name() {
+    return storeBuilder.name();
+  }
+}
@@ -0,0 +1,105 @@
+package org.hypertrace.core.rawspansgrouper.serde;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Enumeration;
+import org.apache.avro.Schema;
+import org.apache.avro.message.BinaryMessageDecoder;
+import org.apache.avro.message.BinaryMessageEncoder;
+import org.apache.avro.message.MissingSchemaException;
+import org.apache.avro.specific.SpecificData;
+import org.apache.kafka.common.errors.SerializationException;
+import org.hypertrace.core.datamodel.RawSpan;
+
+/**
+ * Writes a {@link RawSpan} in the Avro single object encoding: the span's binary encoding behind a
+ * two byte marker and the 8 byte fingerprint of its schema, instead of a schema registry id.
+ *
+ * <p>Spans are read with the schema of the running release, and the writer schema is looked up by
+ * its fingerprint. Spans buffered by the previous release are still read after an upgrade of the
+ * data model that changes the {@link RawSpan} schema, as long as the previous schema is registered:
+ * before such an upgrade, add the current {@code RawSpan.getClassSchema()} as an {@code .avsc} file
+ * under {@value #WRITER_SCHEMAS_DIR} and list it in {@value #WRITER_SCHEMAS_INDEX}.
+ */
+public class RawSpanSerde extends StateStoreSerde<RawSpan> {
+
+  static final String WRITER_SCHEMAS_DIR = "raw-span-schemas/";
+  static final String WRITER_SCHEMAS_INDEX = WRITER_SCHEMAS_DIR + "schemas.list";
+
+  private static final BinaryMessageEncoder<RawSpan> ENCODER =
+      new BinaryMessageEncoder<>(SpecificData.get(), RawSpan.getClassSchema());
+  private static final BinaryMessageDecoder<RawSpan> DECODER =
+      new BinaryMessageDecoder<>(SpecificData.get(), RawSpan.getClassSchema());
+
+  static {
+    loadWriterSchemas();
+  }
+
+  /** Registers a schema spans may have been written with, see {@link RawSpanSerde}. */
+  static void addWriterSchema(Schema writerSchema) {
+    DECODER.addSchema(writerSchema);
+  }
+
+  @Override
+  protected byte[] serializeCompact(RawSpan data) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(512);
+    try {
+      ENCODER.encode(data, outputStream);
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
+    return outputStream.toByteArray();
+  }
+
+  @Override
+  protected RawSpan deserializeCompact(byte[] data) {
+    try {
+      return DECODER.decode(data);
+    } catch (MissingSchemaException e) {
+      throw new SerializationException(
+          "Span written with a RawSpan schema that is not registered under " + WRITER_SCHEMAS_DIR,
+          e);
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
+  }
+
+  /** Every line of an index names a schema file of the directory, lines with # are comments. */
+  private static void loadWriterSchemas() {
+    try {
+      Enumeration<URL> indexes =
+          RawSpanSerde.class.getClassLoader().getResources(WRITER_SCHEMAS_INDEX);
+      while (indexes.hasMoreElements()) {
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(indexes.nextElement().openStream(), UTF_8))) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+              addWriterSchema(loadSchema(WRITER_SCHEMAS_DIR + line));
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Schema loadSchema(String resource) throws IOException {
+    try (InputStream inputStream =
+        RawSpanSerde.class.getClassLoader().getResourceAsStream(resource)) {
+      if (inputStream == null) {
+        throw new IOException("Missing RawSpan writer schema " + resource);
+      }
+      return new Schema.Parser().parse(inputStream);
+    }
+  }
+}
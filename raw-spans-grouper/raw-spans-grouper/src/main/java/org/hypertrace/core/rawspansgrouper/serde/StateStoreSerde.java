@@ -0,0 +1,52 @@
+package org.hypertrace.core.rawspansgrouper.serde;
+
+import java.util.Map;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * Base of the serdes of the grouper's own state stores. The stores are only read back by the
+ * grouper, so their records are written in a compact layout without a schema registry id.
+ *
+ * <p>Stores written with the default serdes before the compact layout are not read with these
+ * serdes, whatever the default serdes are. They are kept under their old names and migrated to
+ * differently named stores instead, see {@link
+ * org.hypertrace.core.rawspansgrouper.RawSpansProcessor}.
+ */
+public abstract class StateStoreSerde<T> implements Serde<T> {
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {}
+
+  @Override
+  public void close() {}
+
+  @Override
+  public Serializer<T> serializer() {
+    return (topic, data) -> data == null ? null : serializeCompact(data);
+  }
+
+  @Override
+  public Deserializer<T> deserializer() {
+    return (topic, data) -> data == null ? null : deserializeCompact(data);
+  }
+
+  /**
+   * Compact records start with the version of their layout. A record of an unknown version, e.g.
+   * written by a newer release before a rollback, fails instead of being misread.
+   */
+  protected static void checkFormatVersion(byte[] data, byte formatVersion) {
+    if (data.length == 0 || data[0] != formatVersion) {
+      throw new SerializationException(
+          String.format(
+              "Unsupported state store record format version=[%d], expected=[%d]",
+              data.length == 0 ? -1 : data[0], formatVersion));
+    }
+  }
+
+  protected abstract byte[] serializeCompact(T data);
+
+  protected abstract T deserializeCompact(byte[] data);
+}
@@ -0,0 +1,55 @@
+package org.hypertrace.core.rawspansgrouper.serde;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+
+/**
+ * Writes a {@link TraceIdentity} as {@code (format_version, tenant_id, trace_id)}: the tenant id
+ * is length-prefixed with a varint and the raw trace id bytes take up the rest of the key.
+ */
+public class TraceIdentitySerde extends StateStoreSerde<TraceIdentity> {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  @Override
+  protected byte[] serializeCompact(TraceIdentity data) {
+    byte[] traceId = new byte[data.getTraceId().remaining()];
+    data.getTraceId().duplicate().get(traceId);
+    ByteArrayOutputStream outputStream =
+        new ByteArrayOutputStream(1 + 2 * Integer.BYTES + traceId.length);
+    outputStream.write(FORMAT_VERSION);
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(outputStream, null);
+    try {
+      encoder.writeString(data.getTenantId());
+      encoder.flush();
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
+    outputStream.writeBytes(traceId);
+    return outputStream.toByteArray();
+  }
+
+  @Override
+  protected TraceIdentity deserializeCompact(byte[] data) {
+    checkFormatVersion(data, FORMAT_VERSION);
+    ByteArrayInputStream inputStream = new ByteArrayInputStream(data, 1, data.length - 1);
+    BinaryDecoder decoder = DecoderFactory.get().directBinaryDecoder(inputStream, null);
+    try {
+      String tenantId = decoder.readString();
+      return TraceIdentity.newBuilder()
+          .setTenantId(tenantId)
+          .setTraceId(ByteBuffer.wrap(inputStream.readAllBytes()))
+          .build();
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
+  }
+}
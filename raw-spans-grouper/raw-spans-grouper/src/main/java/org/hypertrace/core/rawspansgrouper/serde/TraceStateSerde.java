@@ -0,0 +1,81 @@
+package org.hypertrace.core.rawspansgrouper.serde;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+import org.hypertrace.core.spannormalizer.TraceState;
+
+/**
+ * Writes a {@link TraceState} in a fixed field order after a format version byte. Numbers are
+ * zig-zag varints, and the end and emit timestamps are stored as deltas to the previous timestamp
+ * so that they take up only a few bytes.
+ */
+public class TraceStateSerde extends StateStoreSerde<TraceState> {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  @Override
+  protected byte[] serializeCompact(TraceState data) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64);
+    outputStream.write(FORMAT_VERSION);
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(outputStream, null);
+    try {
+      encoder.writeLong(data.getTraceStartTimestamp());
+      encoder.writeLong(data.getTraceEndTimestamp() - data.getTraceStartTimestamp());
+      encoder.writeLong(data.getEmitTs() - data.getTraceEndTimestamp());
+      encoder.writeString(data.getTenantId());
+      encoder.writeBytes(data.getTraceId().duplicate());
+      encoder.writeInt(data.getSpanIds().size());
+      for (ByteBuffer spanId : data.getSpanIds()) {
+        encoder.writeBytes(spanId.duplicate());
+      }
+      encoder.writeInt(data.getSpanCount());
+      encoder.writeBoolean(data.getRootSpanSeen());
+      encoder.writeInt(data.getFragmentCount());
+      encoder.writeLong(data.getSpanBytes());
+      encoder.flush();
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
+    return outputStream.toByteArray();
+  }
+
+  @Override
+  protected TraceState deserializeCompact(byte[] data) {
+    checkFormatVersion(data, FORMAT_VERSION);
+    BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(data, 1, data.length - 1, null);
+    try {
+      long traceStartTimestamp = decoder.readLong();
+      long traceEndTimestamp = traceStartTimestamp + decoder.readLong();
+      long emitTs = traceEndTimestamp + decoder.readLong();
+      String tenantId = decoder.readString();
+      ByteBuffer traceId = decoder.readBytes(null);
+      int spanIdCount = decoder.readInt();
+      List<ByteBuffer> spanIds = new ArrayList<>(spanIdCount);
+      for (int i = 0; i < spanIdCount; i++) {
+        spanIds.add(decoder.readBytes(null));
+      }
+      return TraceState.newBuilder()
+          .setTraceStartTimestamp(traceStartTimestamp)
+          .setTraceEndTimestamp(traceEndTimestamp)
+          .setEmitTs(emitTs)
+          .setTenantId(tenantId)
+          .setTraceId(traceId)
+          .setSpanIds(spanIds)
+          .setSpanCount(decoder.readInt())
+          .setRootSpanSeen(decoder.readBoolean())
+          .setFragmentCount(decoder.readInt())
+          .setSpanBytes(decoder.readLong())
+          .build();
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.junit.jupiter.api.Test;
+
+class LegacySpanStoreTest {
+
+  @Test
+  public void whenScannedFromKeyExpectAllHigherKeysWhateverTheirFirstByte() {
+    KeyValueStore<Bytes, byte[]> store =
+        Stores.inMemoryKeyValueStore(RawSpanGrouperConstants.SPAN_STATE_STORE_NAME).get();
+    store.init(new MockProcessorContext(), store);
+    // keys written by a serde without the magic byte of the schema registry wire format
+    Bytes firstKey = Bytes.wrap(new byte[] {0, 5});
+    Bytes secondKey = Bytes.wrap(new byte[] {2, 1});
+    Bytes thirdKey = Bytes.wrap(new byte[] {(byte) 0xff, 0});
+    for (Bytes key : List.of(thirdKey, firstKey, secondKey)) {
+      store.put(key, new byte[] {1});
+    }
+    LegacySpanStore underTest =
+        new LegacySpanStore(
+            store, mock(Serde.class), mock(Serde.class), "span-data-store-changelog");
+
+    assertEquals(
+        List.of(firstKey, secondKey, thirdKey), scannedKeys(underTest, LegacySpanStore.FIRST_KEY));
+    assertEquals(List.of(secondKey, thirdKey), scannedKeys(underTest, secondKey));
+    try (KeyValueIterator<Bytes, byte[]> it =
+        underTest.scanFrom(Bytes.wrap(new byte[] {(byte) 0xff, 1}))) {
+      assertFalse(it.hasNext());
+    }
+  }
+
+  private static List<Bytes> scannedKeys(LegacySpanStore spanStore, Bytes from) {
+    List<Bytes> keys = new ArrayList<>();
+    try (KeyValueIterator<Bytes, byte[]> it = spanStore.scanFrom(from)) {
+      it.forEachRemaining(entry -> keys.add(entry.key));
+    }
+    return keys;
+  }
+}
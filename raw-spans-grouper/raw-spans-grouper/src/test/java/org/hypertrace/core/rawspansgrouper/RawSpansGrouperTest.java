@@ -1,16 +1,19 @@
 package org.hypertrace.core.rawspansgrouper;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
 import io.confluent.kafka.streams.serdes.avro.SpecificAvroSerde;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -22,58 +25,37 @@ import org.apache.kafka.streams.StreamsConfig;
 import org.apache.kafka.streams.TestInputTopic;
 import org.apache.kafka.streams.TestOutputTopic;
 import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
 import org.hypertrace.core.datamodel.Event;
 import org.hypertrace.core.datamodel.RawSpan;
 import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.serviceframework.config.ConfigClientFactory;
 import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.junitpioneer.jupiter.SetEnvironmentVariable;
 
 public class RawSpansGrouperTest {
 
+  private TopologyTestDriver td;
+  private TestInputTopic<TraceIdentity, RawSpan> inputTopic;
+  private TestOutputTopic outputTopic;
+
+  @AfterEach
+  public void tearDown() {
+    if (td != null) {
+      td.close();
+    }
+  }
+
   @Test
   @SetEnvironmentVariable(key = "SERVICE_NAME", value = "raw-spans-grouper")
   public void whenRawSpansAreReceivedWithInactivityExpectTraceToBeOutput(@TempDir Path tempDir) {
-    File file = tempDir.resolve("state").toFile();
-
-    RawSpansGrouper underTest = new RawSpansGrouper(ConfigClientFactory.getClient());
-    Config config =
-        ConfigFactory.parseURL(
-            getClass().getClassLoader().getResource("configs/raw-spans-grouper/application.conf"));
-
-    Map<String, Object> baseProps = underTest.getBaseStreamsConfig();
-    Map<String, Object> streamsProps = underTest.getStreamsConfig(config);
-    baseProps.forEach(streamsProps::put);
-    Map<String, Object> mergedProps = streamsProps;
-
-    mergedProps.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, SpecificAvroSerde.class);
-    mergedProps.put(RawSpanGrouperConstants.RAW_SPANS_GROUPER_JOB_CONFIG, config);
-    mergedProps.put(StreamsConfig.STATE_DIR_CONFIG, file.getAbsolutePath());
-
-    StreamsBuilder streamsBuilder =
-        underTest.buildTopology(mergedProps, new StreamsBuilder(), new HashMap<>());
-
-    Properties props = new Properties();
-    mergedProps.forEach(props::put);
-
-    Serde defaultValueSerde = new StreamsConfig(mergedProps).defaultValueSerde();
-
-    Serde<TraceIdentity> traceIdentitySerde = new StreamsConfig(mergedProps).defaultKeySerde();
-
-    TopologyTestDriver td = new TopologyTestDriver(streamsBuilder.build(), props);
-    TestInputTopic<TraceIdentity, RawSpan> inputTopic =
-        td.createInputTopic(
-            config.getString(RawSpanGrouperConstants.INPUT_TOPIC_CONFIG_KEY),
-            traceIdentitySerde.serializer(),
-            defaultValueSerde.serializer());
-
-    TestOutputTopic outputTopic =
-        td.createOutputTopic(
-            config.getString(RawSpanGrouperConstants.OUTPUT_TOPIC_CONFIG_KEY),
-            Serdes.String().deserializer(),
-            defaultValueSerde.deserializer());
+    startGrouper(loadConfig(), tempDir);
 
     String tenantId = "tenant1";
 
@@ -271,6 +253,277 @@ public class RawSpansGrouperTest {
     assertEquals(6, trace.getEventList().size());
   }
 
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "raw-spans-grouper")
+  public void whenSpanIsDroppedAfterFragmentExpectFragmentSequenceToContinue(
+      @TempDir Path tempDir) {
+    startGrouper(
+        loadConfig()
+            .withValue(
+                RawSpanGrouperConstants.FRAGMENT_MAX_SPAN_COUNT_CONFIG_KEY,
+                ConfigValueFactory.fromAnyRef(100))
+            .withValue(
+                RawSpanGrouperConstants.DEFAULT_INFLIGHT_TRACE_MAX_BYTES,
+                ConfigValueFactory.fromAnyRef(500)),
+        tempDir);
+    TraceIdentity traceIdentity = createTraceIdentity("tenant3", "trace-5");
+
+    inputTopic.pipeInput(traceIdentity, createRawSpan("trace-5", "event-1", "tenant3", ""));
+    inputTopic.pipeInput(traceIdentity, createRawSpan("trace-5", "event-2", "tenant3", ""));
+    // does not fit the byte limit, so the first two spans are flushed and this one is dropped
+    inputTopic.pipeInput(
+        traceIdentity, createRawSpan("trace-5", "event-3", "tenant3", "a".repeat(1000)));
+    inputTopic.pipeInput(traceIdentity, createRawSpan("trace-5", "event-4", "tenant3", ""));
+
+    StructuredTrace fragment = (StructuredTrace) outputTopic.readValue();
+    assertEquals(Set.of("event-1", "event-2"), getEventIds(fragment));
+    assertEquals("0", getFragmentSequence(fragment));
+    assertTrue(outputTopic.isEmpty());
+
+    td.advanceWallClockTime(Duration.ofSeconds(35));
+    StructuredTrace trace = (StructuredTrace) outputTopic.readValue();
+    assertEquals(Set.of("event-4"), getEventIds(trace));
+    assertEquals("1", getFragmentSequence(trace));
+  }
+
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "raw-spans-grouper")
+  public void whenLastSpanIsDroppedAfterFragmentExpectTraceStateDeleted(@TempDir Path tempDir) {
+    startGrouper(
+        loadConfig()
+            .withValue(
+                RawSpanGrouperConstants.FRAGMENT_MAX_SPAN_COUNT_CONFIG_KEY,
+                ConfigValueFactory.fromAnyRef(100))
+            .withValue(
+                RawSpanGrouperConstants.DEFAULT_INFLIGHT_TRACE_MAX_BYTES,
+                ConfigValueFactory.fromAnyRef(500)),
+        tempDir);
+    TraceIdentity traceIdentity = createTraceIdentity("tenant3", "trace-11");
+
+    inputTopic.pipeInput(traceIdentity, createRawSpan("trace-11", "event-1", "tenant3", ""));
+    // flushes the first span and is dropped, no other span of the trace arrives
+    inputTopic.pipeInput(
+        traceIdentity, createRawSpan("trace-11", "event-2", "tenant3", "a".repeat(1000)));
+
+    StructuredTrace fragment = (StructuredTrace) outputTopic.readValue();
+    assertEquals(Set.of("event-1"), getEventIds(fragment));
+
+    td.advanceWallClockTime(Duration.ofSeconds(35));
+    assertTrue(outputTopic.isEmpty());
+    KeyValueStore<Object, Object> traceStateStore =
+        td.getKeyValueStore(RawSpanGrouperConstants.TRACE_STATE_STORE);
+    try (KeyValueIterator<Object, Object> iterator = traceStateStore.all()) {
+      assertFalse(iterator.hasNext());
+    }
+  }
+
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "raw-spans-grouper")
+  public void whenSpanExceedsTraceByteLimitExpectAttributesTrimmed(@TempDir Path tempDir) {
+    startGrouper(
+        loadConfig()
+            .withValue(
+                RawSpanGrouperConstants.DEFAULT_INFLIGHT_TRACE_MAX_BYTES,
+                ConfigValueFactory.fromAnyRef(500))
+            .withValue(
+                RawSpanGrouperConstants.SPAN_ATTRIBUTE_TRIM_LENGTH_CONFIG_KEY,
+                ConfigValueFactory.fromAnyRef(10)),
+        tempDir);
+    TraceIdentity traceIdentity = createTraceIdentity("tenant3", "trace-6");
+
+    inputTopic.pipeInput(traceIdentity, createRawSpan("trace-6", "event-1", "tenant3", ""));
+    inputTopic.pipeInput(
+        traceIdentity, createRawSpan("trace-6", "event-2", "tenant3", "a".repeat(1000)));
+    td.advanceWallClockTime(Duration.ofSeconds(35));
+
+    StructuredTrace trace = (StructuredTrace) outputTopic.readValue();
+    assertEquals(Set.of("event-1", "event-2"), getEventIds(trace));
+    assertEquals("a".repeat(10), getRequestBody(trace, "event-2"));
+  }
+
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "raw-spans-grouper")
+  public void whenSpanExceedsTraceByteLimitExpectSpanDropped(@TempDir Path tempDir) {
+    startGrouper(
+        loadConfig()
+            .withValue(
+                RawSpanGrouperConstants.DEFAULT_INFLIGHT_TRACE_MAX_BYTES,
+                ConfigValueFactory.fromAnyRef(500)),
+        tempDir);
+    TraceIdentity traceIdentity = createTraceIdentity("tenant3", "trace-7");
+
+    inputTopic.pipeInput(traceIdentity, createRawSpan("trace-7", "event-1", "tenant3", ""));
+    // no trim length is configured, so the span is dropped
+    inputTopic.pipeInput(
+        traceIdentity, createRawSpan("trace-7", "event-2", "tenant3", "a".repeat(1000)));
+    inputTopic.pipeInput(traceIdentity, createRawSpan("trace-7", "event-3", "tenant3", ""));
+    td.advanceWallClockTime(Duration.ofSeconds(35));
+
+    StructuredTrace trace = (StructuredTrace) outputTopic.readValue();
+    assertEquals(Set.of("event-1", "event-3"), getEventIds(trace));
+    assertTrue(outputTopic.isEmpty());
+  }
+
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "raw-spans-grouper")
+  public void whenTenantByteBudgetIsExceededExpectSpanDroppedUntilTraceIsEmitted(
+      @TempDir Path tempDir) {
+    startGrouper(
+        loadConfig()
+            .withValue(
+                RawSpanGrouperConstants.INFLIGHT_TENANT_MAX_BYTES,
+                ConfigValueFactory.fromMap(Map.of("tenant3", 500))),
+        tempDir);
+    String attributeValue = "a".repeat(300);
+
+    inputTopic.pipeInput(
+        createTraceIdentity("tenant3", "trace-8"),
+        createRawSpan("trace-8", "event-1", "tenant3", attributeValue));
+    // the spans of trace-8 are still buffered, so this one does not fit the tenant budget
+    inputTopic.pipeInput(
+        createTraceIdentity("tenant3", "trace-9"),
+        createRawSpan("trace-9", "event-2", "tenant3", attributeValue));
+    // other tenants have no budget
+    inputTopic.pipeInput(
+        createTraceIdentity("tenant2", "trace-10"),
+        createRawSpan("trace-10", "event-3", "tenant2", attributeValue));
+    td.advanceWallClockTime(Duration.ofSeconds(35));
+
+    Set<String> eventIds = new HashSet<>();
+    eventIds.addAll(getEventIds((StructuredTrace) outputTopic.readValue()));
+    eventIds.addAll(getEventIds((StructuredTrace) outputTopic.readValue()));
+    assertEquals(Set.of("event-1", "event-3"), eventIds);
+    assertTrue(outputTopic.isEmpty());
+
+    // the bytes of trace-8 are released once it is emitted
+    inputTopic.pipeInput(
+        createTraceIdentity("tenant3", "trace-9"),
+        createRawSpan("trace-9", "event-4", "tenant3", attributeValue));
+    td.advanceWallClockTime(Duration.ofSeconds(35));
+
+    StructuredTrace trace = (StructuredTrace) outputTopic.readValue();
+    assertEquals(Set.of("event-4"), getEventIds(trace));
+  }
+
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "raw-spans-grouper")
+  public void whenTenantByteBudgetIsUsedByOtherTracesExpectNoFragment(@TempDir Path tempDir) {
+    startGrouper(
+        loadConfig()
+            .withValue(
+                RawSpanGrouperConstants.FRAGMENT_MAX_SPAN_COUNT_CONFIG_KEY,
+                ConfigValueFactory.fromAnyRef(100))
+            .withValue(
+                RawSpanGrouperConstants.INFLIGHT_TENANT_MAX_BYTES,
+                ConfigValueFactory.fromMap(Map.of("tenant3", 500))),
+        tempDir);
+    String attributeValue = "a".repeat(300);
+
+    inputTopic.pipeInput(
+        createTraceIdentity("tenant3", "trace-12"),
+        createRawSpan("trace-12", "event-1", "tenant3", attributeValue));
+    inputTopic.pipeInput(
+        createTraceIdentity("tenant3", "trace-13"),
+        createRawSpan("trace-13", "event-2", "tenant3", ""));
+    // the budget is used by trace-12, flushing the single span of trace-13 would not make room
+    inputTopic.pipeInput(
+        createTraceIdentity("tenant3", "trace-13"),
+        createRawSpan("trace-13", "event-3", "tenant3", attributeValue));
+    assertTrue(outputTopic.isEmpty());
+
+    td.advanceWallClockTime(Duration.ofSeconds(35));
+    Set<Set<String>> traces = new HashSet<>();
+    traces.add(getEventIds((StructuredTrace) outputTopic.readValue()));
+    traces.add(getEventIds((StructuredTrace) outputTopic.readValue()));
+    assertEquals(Set.of(Set.of("event-1"), Set.of("event-2")), traces);
+    assertTrue(outputTopic.isEmpty());
+  }
+
+  private Config loadConfig() {
+    return ConfigFactory.parseURL(
+        getClass().getClassLoader().getResource("configs/raw-spans-grouper/application.conf"));
+  }
+
+  private void startGrouper(Config config, Path tempDir) {
+    File file = tempDir.resolve("state").toFile();
+
+    RawSpansGrouper underTest = new RawSpansGrouper(ConfigClientFactory.getClient());
+
+    Map<String, Object> baseProps = underTest.getBaseStreamsConfig();
+    Map<String, Object> streamsProps = underTest.getStreamsConfig(config);
+    baseProps.forEach(streamsProps::put);
+    Map<String, Object> mergedProps = streamsProps;
+
+    mergedProps.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, SpecificAvroSerde.class);
+    mergedProps.put(RawSpanGrouperConstants.RAW_SPANS_GROUPER_JOB_CONFIG, config);
+    mergedProps.put(StreamsConfig.STATE_DIR_CONFIG, file.getAbsolutePath());
+
+    StreamsBuilder streamsBuilder =
+        underTest.buildTopology(mergedProps, new StreamsBuilder(), new HashMap<>());
+
+    Properties props = new Properties();
+    mergedProps.forEach(props::put);
+
+    Serde defaultValueSerde = new StreamsConfig(mergedProps).defaultValueSerde();
+
+    Serde<TraceIdentity> traceIdentitySerde = new StreamsConfig(mergedProps).defaultKeySerde();
+
+    td = new TopologyTestDriver(streamsBuilder.build(), props);
+    inputTopic =
+        td.createInputTopic(
+            config.getString(RawSpanGrouperConstants.INPUT_TOPIC_CONFIG_KEY),
+            traceIdentitySerde.serializer(),
+            defaultValueSerde.serializer());
+
+    outputTopic =
+        td.createOutputTopic(
+            config.getString(RawSpanGrouperConstants.OUTPUT_TOPIC_CONFIG_KEY),
+            Serdes.String().deserializer(),
+            defaultValueSerde.deserializer());
+  }
+
+  private RawSpan createRawSpan(
+      String traceId, String eventId, String tenantId, String attributeValue) {
+    Event event = createEvent(eventId, tenantId);
+    event.setAttributes(
+        Attributes.newBuilder()
+            .setAttributeMap(
+                Map.of(
+                    "http.request.body",
+                    AttributeValue.newBuilder().setValue(attributeValue).build()))
+            .build());
+    return RawSpan.newBuilder()
+        .setTraceId(ByteBuffer.wrap(traceId.getBytes()))
+        .setCustomerId(tenantId)
+        .setEvent(event)
+        .build();
+  }
+
+  private Set<String> getEventIds(StructuredTrace trace) {
+    return trace.getEventList().stream()
+        .map(event -> new String(event.getEventId().array()))
+        .collect(Collectors.toSet());
+  }
+
+  private String getRequestBody(StructuredTrace trace, String eventId) {
+    return trace.getEventList().stream()
+        .filter(event -> eventId.equals(new String(event.getEventId().array())))
+        .findFirst()
+        .orElseThrow()
+        .getAttributes()
+        .getAttributeMap()
+        .get("http.request.body")
+        .getValue();
+  }
+
+  private String getFragmentSequence(StructuredTrace trace) {
+    return trace
+        .getAttributes()
+        .getAttributeMap()
+        .get(RawSpanGrouperConstants.TRACE_FRAGMENT_SEQUENCE_ATTRIBUTE)
+        .getValue();
+  }
+
   private Event createEvent(String eventId, String tenantId) {
     return Event.newBuilder()
         .setCustomerId(tenantId)
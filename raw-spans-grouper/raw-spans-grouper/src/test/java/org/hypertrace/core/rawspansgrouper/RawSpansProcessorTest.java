@@ -0,0 +1,238 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.MockProcessorContext;
+import org.apache.kafka.streams.processor.MockProcessorContext.CapturedForward;
+import org.apache.kafka.streams.processor.MockProcessorContext.CapturedPunctuator;
+import org.apache.kafka.streams.processor.Punctuator;
+import org.apache.kafka.streams.processor.TaskId;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.datamodel.StructuredTrace;
+import org.hypertrace.core.kafkastreams.framework.serdes.AvroSerde;
+import org.hypertrace.core.rawspansgrouper.serde.RawSpanSerde;
+import org.hypertrace.core.rawspansgrouper.serde.TraceIdentitySerde;
+import org.hypertrace.core.rawspansgrouper.serde.TraceStateSerde;
+import org.hypertrace.core.spannormalizer.SpanIdentity;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.TraceState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs the processor against in-memory stores that are filled before {@link
+ * RawSpansProcessor#init}, i.e. as they are found when a task is assigned. The stores use the
+ * hypertrace {@link AvroSerde} as default serde, like the ingester does.
+ */
+class RawSpansProcessorTest {
+
+  private final Serde avroSerde = new AvroSerde();
+  private MockProcessorContext context;
+  private KeyValueStore<TraceIdentity, TraceState> traceStateStore;
+  private KeyValueStore<Bytes, RawSpan> spanBufferStore;
+  private KeyValueStore<TraceIdentity, TraceState> legacyTraceStateStore;
+  private KeyValueStore<Bytes, byte[]> legacySpanStore;
+
+  @BeforeEach
+  public void setUp(@TempDir Path tempDir) {
+    Config config =
+        ConfigFactory.parseURL(
+                getClass()
+                    .getClassLoader()
+                    .getResource("configs/raw-spans-grouper/application.conf"))
+            .withValue(
+                RawSpanGrouperConstants.INFLIGHT_TENANT_MAX_BYTES,
+                ConfigValueFactory.fromMap(Map.of("tenant3", 500)));
+    Properties props = new Properties();
+    props.put(StreamsConfig.APPLICATION_ID_CONFIG, "raw-spans-grouper");
+    props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+    props.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, AvroSerde.class);
+    props.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, AvroSerde.class);
+    props.put(RawSpanGrouperConstants.RAW_SPANS_GROUPER_JOB_CONFIG, config);
+    File stateDir = tempDir.resolve("state").toFile();
+    context = new MockProcessorContext(props, new TaskId(0, 0), stateDir);
+
+    traceStateStore =
+        register(
+            new WriteBehindKeyValueStore<>(
+                Stores.keyValueStoreBuilder(
+                        Stores.inMemoryKeyValueStore(RawSpanGrouperConstants.TRACE_STATE_STORE),
+                        new TraceIdentitySerde(),
+                        new TraceStateSerde())
+                    .withLoggingDisabled()
+                    .build(),
+                100));
+    spanBufferStore =
+        register(
+            Stores.keyValueStoreBuilder(
+                    Stores.inMemoryKeyValueStore(RawSpanGrouperConstants.SPAN_BUFFER_STORE),
+                    Serdes.Bytes(),
+                    new RawSpanSerde())
+                .withLoggingDisabled()
+                .build());
+    legacyTraceStateStore =
+        register(
+            Stores.keyValueStoreBuilder(
+                    Stores.inMemoryKeyValueStore(RawSpanGrouperConstants.LEGACY_TRACE_STATE_STORE),
+                    avroSerde,
+                    avroSerde)
+                .withLoggingDisabled()
+                .build());
+    legacySpanStore =
+        register(
+            Stores.keyValueStoreBuilder(
+                    Stores.inMemoryKeyValueStore(RawSpanGrouperConstants.SPAN_STATE_STORE_NAME),
+                    Serdes.Bytes(),
+                    Serdes.ByteArray())
+                .withLoggingDisabled()
+                .build());
+    register(
+        Stores.keyValueStoreBuilder(
+                Stores.inMemoryKeyValueStore(RawSpanGrouperConstants.TRACE_EMIT_INDEX_STORE),
+                Serdes.Bytes(),
+                Serdes.ByteArray())
+            .withLoggingDisabled()
+            .build());
+  }
+
+  @Test
+  public void whenTracesAreInFlightOnInitExpectTheirBytesCountedAgainstTenantBudget() {
+    traceStateStore.put(
+        createTraceIdentity("tenant3", "trace-1"),
+        TraceState.newBuilder()
+            .setSpanIds(List.of())
+            .setSpanCount(1)
+            .setSpanBytes(450)
+            .setEmitTs(System.currentTimeMillis() + 30_000)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(100)
+            .setTenantId("tenant3")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
+    traceStateStore.flush();
+
+    RawSpansProcessor underTest = new RawSpansProcessor();
+    underTest.init(context);
+    // only 50 bytes are left for the tenant and no trim length is configured
+    underTest.transform(
+        createTraceIdentity("tenant3", "trace-2"),
+        createRawSpan("trace-2", "event-1", "tenant3", "a".repeat(300)));
+
+    assertNull(traceStateStore.get(createTraceIdentity("tenant3", "trace-2")));
+    try (KeyValueIterator<Bytes, RawSpan> iterator = spanBufferStore.all()) {
+      assertFalse(iterator.hasNext());
+    }
+  }
+
+  @Test
+  public void whenTraceStatesWereWrittenWithDefaultSerdesExpectThemMigratedAndEmitted() {
+    TraceIdentity traceIdentity = createTraceIdentity("tenant3", "trace-1");
+    legacyTraceStateStore.put(
+        traceIdentity,
+        TraceState.newBuilder()
+            .setSpanIds(List.of(ByteBuffer.wrap("event-1".getBytes())))
+            .setEmitTs(1000)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(100)
+            .setTenantId("tenant3")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
+    // spans of the legacy layout are keyed by their span identity, written with the default serdes
+    String legacySpanTopic =
+        "raw-spans-grouper-" + RawSpanGrouperConstants.SPAN_STATE_STORE_NAME + "-changelog";
+    byte[] legacySpanKey =
+        avroSerde
+            .serializer()
+            .serialize(
+                legacySpanTopic,
+                SpanIdentity.newBuilder()
+                    .setTenantId("tenant3")
+                    .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+                    .setSpanId(ByteBuffer.wrap("event-1".getBytes()))
+                    .build());
+    legacySpanStore.put(
+        Bytes.wrap(legacySpanKey),
+        avroSerde
+            .serializer()
+            .serialize(legacySpanTopic, createRawSpan("trace-1", "event-1", "tenant3", "")));
+
+    RawSpansProcessor underTest = new RawSpansProcessor();
+    underTest.init(context);
+    try (KeyValueIterator<TraceIdentity, TraceState> iterator = legacyTraceStateStore.all()) {
+      assertFalse(iterator.hasNext());
+    }
+    assertNotNull(traceStateStore.get(traceIdentity));
+
+    getTraceEmitPunctuator().punctuate(System.currentTimeMillis());
+    List<CapturedForward> forwarded = context.forwarded();
+    assertEquals(1, forwarded.size());
+    StructuredTrace trace = (StructuredTrace) forwarded.get(0).keyValue().value;
+    assertEquals(1, trace.getEventList().size());
+    assertEquals("event-1", new String(trace.getEventList().get(0).getEventId().array()));
+    assertNull(traceStateStore.get(traceIdentity));
+  }
+
+  private Punctuator getTraceEmitPunctuator() {
+    return context.scheduledPunctuators().stream()
+        .map(CapturedPunctuator::getPunctuator)
+        .filter(punctuator -> punctuator instanceof TraceEmitPunctuator)
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private <S extends KeyValueStore<?, ?>> S register(S store) {
+    store.init(context, store);
+    return store;
+  }
+
+  private RawSpan createRawSpan(
+      String traceId, String eventId, String tenantId, String attributeValue) {
+    return RawSpan.newBuilder()
+        .setTraceId(ByteBuffer.wrap(traceId.getBytes()))
+        .setCustomerId(tenantId)
+        .setEvent(
+            Event.newBuilder()
+                .setCustomerId(tenantId)
+                .setEventId(ByteBuffer.wrap(eventId.getBytes()))
+                .setStartTimeMillis(System.currentTimeMillis())
+                .setAttributes(
+                    Attributes.newBuilder()
+                        .setAttributeMap(
+                            Map.of(
+                                "http.request.body",
+                                AttributeValue.newBuilder().setValue(attributeValue).build()))
+                        .build())
+                .build())
+        .build();
+  }
+
+  private TraceIdentity createTraceIdentity(String tenantId, String traceId) {
+    return TraceIdentity.newBuilder()
+        .setTenantId(tenantId)
+        .setTraceId(ByteBuffer.wrap(traceId.getBytes()))
+        .build();
+  }
+}
@@ -0,0 +1,78 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.junit.jupiter.api.Test;
+
+class SpanBufferTest {
+
+  @Test
+  public void whenSpansAreBufferedExpectSequenceOrderWithinTrace() {
+    TraceIdentity trace = createTraceIdentity("tenant1", "trace-1");
+    assertTrue(SpanBuffer.toBufferKey(trace, 0).compareTo(SpanBuffer.toBufferKey(trace, 1)) < 0);
+    assertTrue(
+        SpanBuffer.toBufferKey(trace, 255).compareTo(SpanBuffer.toBufferKey(trace, 256)) < 0);
+  }
+
+  @Test
+  public void whenTraceIdIsPrefixOfAnotherExpectNoOverlappingKeyRanges() {
+    TraceIdentity trace = createTraceIdentity("tenant1", "trace-1");
+    TraceIdentity otherTrace = createTraceIdentity("tenant1", "trace-10");
+    Bytes lowerBound = SpanBuffer.toBufferKey(trace, 0);
+    Bytes upperBound = SpanBuffer.toBufferKey(trace, Integer.MAX_VALUE);
+    Bytes otherKey = SpanBuffer.toBufferKey(otherTrace, 0);
+    assertTrue(otherKey.compareTo(lowerBound) < 0 || otherKey.compareTo(upperBound) > 0);
+  }
+
+  @Test
+  public void whenBufferKeyIsDecodedExpectSameTraceIdentity() {
+    TraceIdentity trace = createTraceIdentity("tenant1", "trace-1");
+    assertEquals(trace, SpanBuffer.toTraceIdentity(SpanBuffer.toBufferKey(trace, 42)));
+  }
+
+  @Test
+  public void whenSpansAreDeletedExpectAllReadSpansDeleted() {
+    TraceIdentity trace = createTraceIdentity("tenant1", "trace-1");
+    // the span at sequence number 5 is beyond the span count of a trace state that was lost
+    List<KeyValue<Bytes, RawSpan>> storedSpans =
+        List.of(
+            KeyValue.pair(SpanBuffer.toBufferKey(trace, 0), mock(RawSpan.class)),
+            KeyValue.pair(SpanBuffer.toBufferKey(trace, 5), mock(RawSpan.class)));
+    KeyValueStore<Bytes, RawSpan> spanBufferStore = mock(KeyValueStore.class);
+    KeyValueIterator<Bytes, RawSpan> it = mock(KeyValueIterator.class);
+    when(it.hasNext()).thenReturn(true, true, false);
+    when(it.next()).thenReturn(storedSpans.get(0), storedSpans.get(1));
+    when(spanBufferStore.range(
+            SpanBuffer.toBufferKey(trace, 0), SpanBuffer.toBufferKey(trace, Integer.MAX_VALUE)))
+        .thenReturn(it);
+    SpanBuffer spanBuffer = new SpanBuffer(spanBufferStore);
+
+    List<KeyValue<Bytes, RawSpan>> bufferedSpans = spanBuffer.getAll(trace);
+    assertEquals(storedSpans, bufferedSpans);
+
+    spanBuffer.deleteAll(bufferedSpans);
+    verify(spanBufferStore).put(eq(SpanBuffer.toBufferKey(trace, 0)), isNull());
+    verify(spanBufferStore).put(eq(SpanBuffer.toBufferKey(trace, 5)), isNull());
+  }
+
+  private TraceIdentity createTraceIdentity(String tenantId, String traceId) {
+    return TraceIdentity.newBuilder()
+        .setTenantId(tenantId)
+        .setTraceId(ByteBuffer.wrap(traceId.getBytes()))
+        .build();
+  }
+}
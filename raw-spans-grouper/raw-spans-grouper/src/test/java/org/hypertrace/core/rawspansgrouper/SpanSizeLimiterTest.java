@@ -0,0 +1,55 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.datamodel.Attributes;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.junit.jupiter.api.Test;
+
+class SpanSizeLimiterTest {
+
+  @Test
+  public void whenAttributeValuesAreTrimmedExpectSmallerSerializedSize() {
+    SpanSizeLimiter spanSizeLimiter = new SpanSizeLimiter();
+    RawSpan rawSpan = createRawSpan("a".repeat(1000), "short");
+    long spanBytes = spanSizeLimiter.getSerializedSize(rawSpan);
+
+    assertTrue(SpanSizeLimiter.trimAttributeValues(rawSpan, 10));
+    assertEquals(
+        "a".repeat(10),
+        rawSpan.getEvent().getAttributes().getAttributeMap().get("http.request.body").getValue());
+    assertEquals(
+        "short",
+        rawSpan.getEvent().getAttributes().getAttributeMap().get("http.method").getValue());
+    assertTrue(spanSizeLimiter.getSerializedSize(rawSpan) <= spanBytes - 990);
+  }
+
+  @Test
+  public void whenAttributeValuesAreShortExpectNoTrimming() {
+    RawSpan rawSpan = createRawSpan("body", "GET");
+    assertFalse(SpanSizeLimiter.trimAttributeValues(rawSpan, 10));
+  }
+
+  private RawSpan createRawSpan(String body, String method) {
+    Map<String, AttributeValue> attributeMap = new HashMap<>();
+    attributeMap.put("http.request.body", AttributeValue.newBuilder().setValue(body).build());
+    attributeMap.put("http.method", AttributeValue.newBuilder().setValue(method).build());
+    return RawSpan.newBuilder()
+        .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+        .setCustomerId("tenant1")
+        .setEvent(
+            Event.newBuilder()
+                .setCustomerId("tenant1")
+                .setEventId(ByteBuffer.wrap("event-1".getBytes()))
+                .setAttributes(Attributes.newBuilder().setAttributeMap(attributeMap).build())
+                .build())
+        .build();
+  }
+}
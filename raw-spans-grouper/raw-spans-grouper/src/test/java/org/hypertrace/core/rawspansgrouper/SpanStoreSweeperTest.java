@@ -0,0 +1,212 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.rawspansgrouper.serde.RawSpanSerde;
+import org.hypertrace.core.spannormalizer.SpanIdentity;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.TraceState;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
+import org.junit.jupiter.api.Test;
+
+class SpanStoreSweeperTest {
+
+  private static final long NOW = 10_000_000L;
+  private static final long MIN_AGE_MS = 3_600_000L;
+  private static final TenantCounter reclaimedSpansCounter =
+      TenantCounter.of(RawSpanGrouperConstants.ORPHANED_SPANS_RECLAIMED_COUNTER);
+  private static final TenantCounter reclaimedBytesCounter =
+      TenantCounter.of(RawSpanGrouperConstants.ORPHANED_SPAN_BYTES_RECLAIMED_COUNTER);
+
+  @Test
+  public void whenTraceStateIsMissingExpectOldSpansDeleted() {
+    TraceIdentity orphanedTrace = createTraceIdentity("tenant1", "trace-1");
+    TraceIdentity liveTrace = createTraceIdentity("tenant1", "trace-2");
+    Bytes orphanedOldKey = SpanBuffer.toBufferKey(orphanedTrace, 0);
+    Bytes orphanedRecentKey = SpanBuffer.toBufferKey(orphanedTrace, 1);
+    Bytes liveKey = SpanBuffer.toBufferKey(liveTrace, 0);
+    RawSpan orphanedOldSpan = createRawSpan(NOW - MIN_AGE_MS - 1);
+
+    KeyValueStore<Bytes, RawSpan> spanBufferStore = mock(KeyValueStore.class);
+    when(spanBufferStore.range(any(), any()))
+        .thenReturn(
+            iterator(
+                List.of(
+                    KeyValue.pair(orphanedOldKey, orphanedOldSpan),
+                    KeyValue.pair(orphanedRecentKey, createRawSpan(NOW - 1)),
+                    KeyValue.pair(liveKey, createRawSpan(NOW - MIN_AGE_MS - 1)))));
+    LegacySpanStore spanStore = legacySpanStore();
+    KeyValueStore<TraceIdentity, TraceState> traceStateStore = traceStateStore(liveTrace);
+    int tenantSlot = TenantSlots.slotOf("tenant1");
+    long reclaimedSpans = reclaimedSpansCounter.count(tenantSlot);
+    long reclaimedBytes = reclaimedBytesCounter.count(tenantSlot);
+
+    new SpanStoreSweeper(
+            new SpanBuffer(spanBufferStore), spanStore, traceStateStore, MIN_AGE_MS, 100)
+        .punctuate(NOW);
+
+    // looked up without filling the cache of the trace state store
+    verify(traceStateStore, never()).get(any());
+    verify(spanBufferStore).put(eq(orphanedOldKey), isNull());
+    verify(spanBufferStore, never()).put(eq(orphanedRecentKey), any());
+    verify(spanBufferStore, never()).put(eq(liveKey), any());
+    assertEquals(reclaimedSpans + 1, reclaimedSpansCounter.count(tenantSlot));
+    assertEquals(
+        reclaimedBytes
+            + orphanedOldKey.get().length
+            + new RawSpanSerde().serializer().serialize("topic", orphanedOldSpan).length,
+        reclaimedBytesCounter.count(tenantSlot));
+  }
+
+  @Test
+  public void whenRunIsBoundedExpectNextRunToContinueAfterLastScannedKey() {
+    TraceIdentity trace = createTraceIdentity("tenant1", "trace-1");
+    Bytes firstKey = SpanBuffer.toBufferKey(trace, 0);
+    Bytes secondKey = SpanBuffer.toBufferKey(trace, 1);
+
+    KeyValueStore<Bytes, RawSpan> spanBufferStore = mock(KeyValueStore.class);
+    when(spanBufferStore.range(eq(SpanBuffer.FIRST_KEY), any()))
+        .thenReturn(
+            iterator(
+                List.of(
+                    KeyValue.pair(firstKey, createRawSpan(NOW)),
+                    KeyValue.pair(secondKey, createRawSpan(NOW)))));
+    when(spanBufferStore.range(eq(secondKey), any()))
+        .thenReturn(iterator(List.of(KeyValue.pair(secondKey, createRawSpan(NOW)))));
+    LegacySpanStore spanStore = legacySpanStore();
+
+    SpanStoreSweeper sweeper =
+        new SpanStoreSweeper(
+            new SpanBuffer(spanBufferStore),
+            spanStore,
+            traceStateStore(),
+            MIN_AGE_MS,
+            1);
+    sweeper.punctuate(NOW);
+    sweeper.punctuate(NOW);
+
+    verify(spanBufferStore).range(eq(secondKey), any());
+  }
+
+  @Test
+  public void whenLegacySpanStoreRunIsBoundedExpectNextRunToContinueAfterLastScannedKey() {
+    // the keys of the default key serde do not necessarily start with a magic byte
+    Bytes orphanedKey = Bytes.wrap(new byte[] {10, 1});
+    Bytes nextKey = Bytes.wrap(new byte[] {10, 2});
+    byte[] orphanedValue = new byte[64];
+    byte[] nextValue = new byte[32];
+    TraceIdentity orphanedTrace = createTraceIdentity("tenant1", "trace-1");
+
+    KeyValueStore<Bytes, RawSpan> spanBufferStore = mock(KeyValueStore.class);
+    when(spanBufferStore.range(any(), any())).thenAnswer(invocation -> iterator(List.of()));
+    LegacySpanStore spanStore = legacySpanStore();
+    when(spanStore.scanFrom(LegacySpanStore.FIRST_KEY))
+        .thenAnswer(
+            invocation ->
+                iterator(
+                    List.of(
+                        KeyValue.pair(orphanedKey, orphanedValue),
+                        KeyValue.pair(nextKey, nextValue))));
+    when(spanStore.toRawSpan(any())).thenReturn(createRawSpan(NOW - MIN_AGE_MS - 1));
+    when(spanStore.toSpanIdentity(orphanedKey))
+        .thenReturn(
+            new SpanIdentity(
+                orphanedTrace.getTenantId(),
+                orphanedTrace.getTraceId(),
+                ByteBuffer.wrap("event-1".getBytes())));
+
+    SpanStoreSweeper sweeper =
+        new SpanStoreSweeper(
+            new SpanBuffer(spanBufferStore), spanStore, traceStateStore(), MIN_AGE_MS, 1);
+    int tenantSlot = TenantSlots.slotOf("tenant1");
+    long reclaimedBytes = reclaimedBytesCounter.count(tenantSlot);
+    sweeper.punctuate(NOW);
+
+    verify(spanStore).delete(orphanedKey);
+    verify(spanStore, never()).delete(nextKey);
+    assertEquals(
+        reclaimedBytes + orphanedKey.get().length + orphanedValue.length,
+        reclaimedBytesCounter.count(tenantSlot));
+
+    sweeper.punctuate(NOW);
+    verify(spanStore).scanFrom(nextKey);
+  }
+
+  private static LegacySpanStore legacySpanStore() {
+    LegacySpanStore spanStore = mock(LegacySpanStore.class);
+    when(spanStore.scanFrom(any())).thenAnswer(invocation -> iterator(List.of()));
+    return spanStore;
+  }
+
+  private static KeyValueStore<TraceIdentity, TraceState> traceStateStore(
+      TraceIdentity... liveTraces) {
+    KeyValueStore<TraceIdentity, TraceState> traceStateStore = mock(KeyValueStore.class);
+    when(traceStateStore.range(any(), any())).thenAnswer(invocation -> iterator(List.of()));
+    for (TraceIdentity liveTrace : liveTraces) {
+      when(traceStateStore.range(liveTrace, liveTrace))
+          .thenAnswer(
+              invocation -> iterator(List.of(KeyValue.pair(liveTrace, mock(TraceState.class)))));
+    }
+    return traceStateStore;
+  }
+
+  private static <K, V> KeyValueIterator<K, V> iterator(List<KeyValue<K, V>> entries) {
+    Iterator<KeyValue<K, V>> it = entries.iterator();
+    return new KeyValueIterator<>() {
+      @Override
+      public void close() {}
+
+      @Override
+      public K peekNextKey() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public KeyValue<K, V> next() {
+        return it.next();
+      }
+    };
+  }
+
+  private RawSpan createRawSpan(long startTimeMillis) {
+    return RawSpan.newBuilder()
+        .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+        .setCustomerId("tenant1")
+        .setEvent(
+            Event.newBuilder()
+                .setCustomerId("tenant1")
+                .setEventId(ByteBuffer.wrap("event-1".getBytes()))
+                .setStartTimeMillis(startTimeMillis)
+                .build())
+        .build();
+  }
+
+  private TraceIdentity createTraceIdentity(String tenantId, String traceId) {
+    return TraceIdentity.newBuilder()
+        .setTenantId(tenantId)
+        .setTraceId(ByteBuffer.wrap(traceId.getBytes()))
+        .build();
+  }
+}
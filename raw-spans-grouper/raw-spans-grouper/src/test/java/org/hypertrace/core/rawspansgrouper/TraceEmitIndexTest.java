@@ -0,0 +1,37 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.apache.kafka.common.utils.Bytes;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.junit.jupiter.api.Test;
+
+class TraceEmitIndexTest {
+
+  @Test
+  public void whenIndexKeyIsDecodedExpectSameTraceIdentity() {
+    TraceIdentity traceIdentity = createTraceIdentity("tenant1", "trace-1");
+    Bytes indexKey = TraceEmitIndex.toIndexKey(1000L, traceIdentity);
+    assertEquals(traceIdentity, TraceEmitIndex.toTraceIdentity(indexKey));
+  }
+
+  @Test
+  public void whenIndexKeysAreComparedExpectEmitTimestampOrder() {
+    Bytes earlier = TraceEmitIndex.toIndexKey(255L, createTraceIdentity("tenant2", "trace-2"));
+    Bytes later = TraceEmitIndex.toIndexKey(256L, createTraceIdentity("tenant1", "trace-1"));
+    Bytes muchLater =
+        TraceEmitIndex.toIndexKey(
+            System.currentTimeMillis(), createTraceIdentity("tenant1", "trace-1"));
+    assertTrue(earlier.compareTo(later) < 0);
+    assertTrue(later.compareTo(muchLater) < 0);
+  }
+
+  private TraceIdentity createTraceIdentity(String tenantId, String traceId) {
+    return TraceIdentity.newBuilder()
+        .setTenantId(tenantId)
+        .setTraceId(ByteBuffer.wrap(traceId.getBytes()))
+        .build();
+  }
+}
@@ -1,20 +1,33 @@
 package org.hypertrace.core.rawspansgrouper;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.cache.CacheBuilder;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
-import org.apache.kafka.streams.processor.Cancellable;
+import java.util.Map;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.processor.ProcessorContext;
 import org.apache.kafka.streams.processor.To;
+import org.apache.kafka.streams.state.KeyValueIterator;
 import org.apache.kafka.streams.state.KeyValueStore;
 import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.EventRef;
+import org.hypertrace.core.datamodel.EventRefType;
 import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.datamodel.StructuredTrace;
 import org.hypertrace.core.kafkastreams.framework.serdes.AvroSerde;
 import org.hypertrace.core.spannormalizer.SpanIdentity;
 import org.hypertrace.core.spannormalizer.TraceIdentity;
@@ -25,74 +38,92 @@ import org.junit.jupiter.api.Test;
 class TraceEmitPunctuatorTest {
 
   private TraceEmitPunctuator underTest;
-  private KeyValueStore<SpanIdentity, RawSpan> spanStore;
+  private TraceEmitIndex traceEmitIndex;
+  private ProcessorContext context;
+  private LegacySpanStore spanStore;
+  private SpanBuffer spanBuffer;
   private KeyValueStore<TraceIdentity, TraceState> traceStateStore;
 
   @BeforeEach
   public void setUp() {
     AvroSerde avroSerde = new AvroSerde();
-    ProcessorContext context = mock(ProcessorContext.class);
+    context = mock(ProcessorContext.class);
     when(context.keySerde()).thenReturn(avroSerde);
-    spanStore = mock(KeyValueStore.class);
+    spanStore = mock(LegacySpanStore.class);
+    spanBuffer = mock(SpanBuffer.class);
     traceStateStore = mock(KeyValueStore.class);
     To outputTopicProducer = mock(To.class);
+    traceEmitIndex = mock(TraceEmitIndex.class);
+    when(traceEmitIndex.pollDue(anyLong()))
+        .thenReturn(
+            List.of(
+                TraceIdentity.newBuilder()
+                    .setTenantId("__default")
+                    .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+                    .build()));
     underTest =
         new TraceEmitPunctuator(
-            TraceIdentity.newBuilder()
-                .setTenantId("__default")
-                .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
-                .build(),
+            traceEmitIndex,
             context,
             spanStore,
+            spanBuffer,
             traceStateStore,
+            new TenantByteBudget(Map.of(), Long.MAX_VALUE),
             outputTopicProducer,
             100,
+            CacheBuilder.newBuilder().build(),
             -1);
-    underTest.setCancellable(mock(Cancellable.class));
   }
 
   @Test
   public void whenPunctuatorIsRescheduledExpectNoChangesToTraceEmitTriggerStore() {
-    when(traceStateStore.get(
+    givenTraceState(
+        TraceIdentity.newBuilder()
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build(),
+        TraceState.newBuilder()
+            .setSpanIds(List.of(ByteBuffer.wrap("span-1".getBytes())))
+            .setEmitTs(300)
+            .setTraceStartTimestamp(150)
+            .setTraceEndTimestamp(300)
+            .setTenantId("tenant")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
+    underTest.punctuate(200);
+    // a read-only lookup, the state is not due so it is not written back
+    verify(traceStateStore, times(1)).range(any(), any());
+    verify(traceStateStore, never()).get(any());
+    verify(traceStateStore, never()).put(any(), any());
+    // the trace is re-indexed at its current emit timestamp
+    verify(traceEmitIndex)
+        .add(
             eq(
                 TraceIdentity.newBuilder()
                     .setTenantId("__default")
                     .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
-                    .build())))
-        .thenReturn(
-            TraceState.newBuilder()
-                .setSpanIds(List.of(ByteBuffer.wrap("span-1".getBytes())))
-                .setEmitTs(300)
-                .setTraceStartTimestamp(150)
-                .setTraceEndTimestamp(300)
-                .setTenantId("tenant")
-                .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
-                .build());
-    underTest.punctuate(200);
-    // the above when() call should be the only interaction
-    verify(traceStateStore, times(1)).get(any());
+                    .build()),
+            eq(300L));
   }
 
   @Test
   public void whenTraceIsEmittedExpectDeleteOperationOnTraceStateStore() {
 
-    when(traceStateStore.get(
-            eq(
-                TraceIdentity.newBuilder()
-                    .setTenantId("__default")
-                    .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
-                    .build())))
-        .thenReturn(
-            TraceState.newBuilder()
-                .setSpanIds(List.of(ByteBuffer.wrap("span-1".getBytes())))
-                .setEmitTs(180)
-                .setTraceStartTimestamp(100)
-                .setTraceEndTimestamp(130)
-                .setTenantId("tenant")
-                .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
-                .build());
+    givenTraceState(
+        TraceIdentity.newBuilder()
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build(),
+        TraceState.newBuilder()
+            .setSpanIds(List.of(ByteBuffer.wrap("span-1".getBytes())))
+            .setEmitTs(180)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(130)
+            .setTenantId("tenant")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
 
-    when(spanStore.delete(any()))
+    when(spanStore.delete(any(SpanIdentity.class)))
         .thenReturn(
             RawSpan.newBuilder()
                 .setCustomerId("__default")
@@ -103,9 +134,9 @@ class TraceEmitPunctuatorTest {
                         .build())
                 .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
                 .build());
-    underTest.punctuate(200); // the above when() call should be the only interaction
-    verify(traceStateStore, times(1)).get(any());
-    verify(spanStore, times(1)).delete(any());
+    underTest.punctuate(200);
+    verify(traceStateStore, times(1)).range(any(), any());
+    verify(spanStore, times(1)).delete(any(SpanIdentity.class));
     verify(traceStateStore)
         .delete(
             eq(
@@ -113,5 +144,214 @@ class TraceEmitPunctuatorTest {
                     .setTenantId("__default")
                     .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
                     .build()));
+    verify(traceEmitIndex, never()).add(any(), anyLong());
+  }
+
+  @Test
+  public void whenTraceIsEmittedExpectBufferedSpansToBeRemoved() {
+    TraceIdentity traceIdentity =
+        TraceIdentity.newBuilder()
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build();
+    givenTraceState(
+        traceIdentity,
+        TraceState.newBuilder()
+            .setSpanIds(List.of())
+            .setSpanCount(2)
+            .setEmitTs(180)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(130)
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
+    List<KeyValue<Bytes, RawSpan>> bufferedSpans =
+        bufferedSpans(traceIdentity, createRawSpan("span-1"), createRawSpan("span-2"));
+    when(spanBuffer.getAll(eq(traceIdentity))).thenReturn(bufferedSpans);
+
+    underTest.punctuate(200);
+    verify(spanBuffer, times(1)).getAll(eq(traceIdentity));
+    verify(spanBuffer).deleteAll(eq(bufferedSpans));
+    verify(spanStore, never()).delete(any(SpanIdentity.class));
+    verify(traceStateStore).delete(eq(traceIdentity));
+  }
+
+  @Test
+  public void whenTraceStateHasNoSpansExpectItToBeDeleted() {
+    TraceIdentity traceIdentity =
+        TraceIdentity.newBuilder()
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build();
+    givenTraceState(
+        traceIdentity,
+        TraceState.newBuilder()
+            .setSpanIds(List.of())
+            .setSpanCount(0)
+            .setFragmentCount(1)
+            .setEmitTs(180)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(130)
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
+
+    underTest.punctuate(200);
+    verify(traceStateStore).delete(eq(traceIdentity));
+    verify(traceEmitIndex, never()).add(any(), anyLong());
+    verify(context, never()).forward(any(), any(), any(To.class));
+  }
+
+  @Test
+  public void whenRootSpanIsSeenWithUnresolvedParentExpectFallbackToGroupingWindow() {
+    TraceIdentity traceIdentity =
+        TraceIdentity.newBuilder()
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build();
+    givenTraceState(
+        traceIdentity,
+        TraceState.newBuilder()
+            .setSpanIds(List.of())
+            .setSpanCount(2)
+            .setRootSpanSeen(true)
+            .setEmitTs(180)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(170)
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
+    RawSpan childSpan = createRawSpan("span-2");
+    childSpan
+        .getEvent()
+        .setEventRefList(
+            List.of(
+                EventRef.newBuilder()
+                    .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+                    .setEventId(ByteBuffer.wrap("span-missing".getBytes()))
+                    .setRefType(EventRefType.CHILD_OF)
+                    .build()));
+    when(spanBuffer.getAll(eq(traceIdentity)))
+        .thenReturn(bufferedSpans(traceIdentity, createRawSpan("span-1"), childSpan));
+
+    underTest.punctuate(200);
+    verify(spanBuffer, never()).deleteAll(any());
+    verify(traceStateStore, never()).delete(any(SpanIdentity.class));
+    // re-indexed at the end of the regular grouping window
+    verify(traceEmitIndex).add(eq(traceIdentity), eq(270L));
+  }
+
+  @Test
+  public void whenFragmentIsEmittedExpectTraceStateToKeepAcceptingSpans() {
+    TraceIdentity traceIdentity =
+        TraceIdentity.newBuilder()
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build();
+    TraceState traceState =
+        TraceState.newBuilder()
+            .setSpanIds(List.of())
+            .setSpanCount(2)
+            .setFragmentCount(1)
+            .setEmitTs(180)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(130)
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build();
+    List<KeyValue<Bytes, RawSpan>> bufferedSpans =
+        bufferedSpans(traceIdentity, createRawSpan("span-1"), createRawSpan("span-2"));
+    when(spanBuffer.getAll(eq(traceIdentity))).thenReturn(bufferedSpans);
+
+    underTest.emitFragment(traceIdentity, traceState, 150);
+    verify(spanBuffer).deleteAll(eq(bufferedSpans));
+    verify(context)
+        .forward(
+            isNull(),
+            argThat(
+                trace ->
+                    ((StructuredTrace) trace).getEventList().size() == 2
+                        && ((StructuredTrace) trace)
+                            .getAttributes()
+                            .getAttributeMap()
+                            .get(RawSpanGrouperConstants.TRACE_FRAGMENT_SEQUENCE_ATTRIBUTE)
+                            .getValue()
+                            .equals("1")),
+            any(To.class));
+    assertEquals(0, traceState.getSpanCount());
+    assertEquals(2, traceState.getFragmentCount());
+    verify(traceStateStore, never()).delete(any(SpanIdentity.class));
+  }
+
+  @Test
+  public void whenRootSpanParentIsInLegacySpanStoreExpectEarlyEmission() {
+    TraceIdentity traceIdentity =
+        TraceIdentity.newBuilder()
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build();
+    givenTraceState(
+        traceIdentity,
+        TraceState.newBuilder()
+            .setSpanIds(List.of(ByteBuffer.wrap("span-legacy".getBytes())))
+            .setSpanCount(1)
+            .setRootSpanSeen(true)
+            .setEmitTs(180)
+            .setTraceStartTimestamp(100)
+            .setTraceEndTimestamp(170)
+            .setTenantId("__default")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .build());
+    RawSpan childSpan = createRawSpan("span-2");
+    childSpan
+        .getEvent()
+        .setEventRefList(
+            List.of(
+                EventRef.newBuilder()
+                    .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+                    .setEventId(ByteBuffer.wrap("span-legacy".getBytes()))
+                    .setRefType(EventRefType.CHILD_OF)
+                    .build()));
+    when(spanBuffer.getAll(eq(traceIdentity)))
+        .thenReturn(bufferedSpans(traceIdentity, childSpan));
+    when(spanStore.delete(any(SpanIdentity.class))).thenReturn(createRawSpan("span-legacy"));
+
+    underTest.punctuate(200);
+    verify(traceStateStore).delete(eq(traceIdentity));
+    verify(traceEmitIndex, never()).add(any(), anyLong());
+    verify(context)
+        .forward(
+            isNull(),
+            argThat(trace -> ((StructuredTrace) trace).getEventList().size() == 2),
+            any(To.class));
+  }
+
+  private void givenTraceState(TraceIdentity traceIdentity, TraceState traceState) {
+    KeyValueIterator<TraceIdentity, TraceState> iterator = mock(KeyValueIterator.class);
+    when(iterator.hasNext()).thenReturn(true, false);
+    when(iterator.next()).thenReturn(KeyValue.pair(traceIdentity, traceState));
+    when(traceStateStore.range(eq(traceIdentity), eq(traceIdentity))).thenReturn(iterator);
+  }
+
+  private List<KeyValue<Bytes, RawSpan>> bufferedSpans(
+      TraceIdentity traceIdentity, RawSpan... rawSpans) {
+    List<KeyValue<Bytes, RawSpan>> bufferedSpans = new ArrayList<>();
+    for (RawSpan rawSpan : rawSpans) {
+      bufferedSpans.add(
+          KeyValue.pair(SpanBuffer.toBufferKey(traceIdentity, bufferedSpans.size()), rawSpan));
+    }
+    return bufferedSpans;
+  }
+
+  private RawSpan createRawSpan(String spanId) {
+    return RawSpan.newBuilder()
+        .setCustomerId("__default")
+        .setEvent(
+            Event.newBuilder()
+                .setEventId(ByteBuffer.wrap(spanId.getBytes()))
+                .setCustomerId("__default")
+                .build())
+        .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+        .build();
   }
 }
@@ -0,0 +1,156 @@
+package org.hypertrace.core.rawspansgrouper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.junit.jupiter.api.Test;
+
+class WriteBehindKeyValueStoreTest {
+
+  @Test
+  public void whenValueIsUpdatedExpectWriteOnlyOnFlush() {
+    KeyValueStore<String, String> inner = mock(KeyValueStore.class);
+    WriteBehindKeyValueStore<String, String> store = new WriteBehindKeyValueStore<>(inner, 10);
+
+    store.put("trace-1", "state-1");
+    store.put("trace-1", "state-2");
+    assertEquals("state-2", store.get("trace-1"));
+    verify(inner, never()).put(any(), any());
+    verify(inner, never()).get(any());
+
+    store.flush();
+    verify(inner, times(1)).put("trace-1", "state-2");
+    verify(inner, times(1)).flush();
+
+    // nothing pending after the flush
+    store.flush();
+    verify(inner, times(1)).put(any(), any());
+  }
+
+  @Test
+  public void whenValueIsReadExpectCachedInstanceWrittenBackOnFlush() {
+    KeyValueStore<String, List<String>> inner = mock(KeyValueStore.class);
+    List<String> state = new ArrayList<>(List.of("span-1"));
+    when(inner.get("trace-1")).thenReturn(state);
+    WriteBehindKeyValueStore<String, List<String>> store =
+        new WriteBehindKeyValueStore<>(inner, 10);
+
+    assertSame(state, store.get("trace-1"));
+    // modified without a put
+    store.get("trace-1").add("span-2");
+    verify(inner, times(1)).get("trace-1");
+
+    store.flush();
+    verify(inner, times(1)).put("trace-1", List.of("span-1", "span-2"));
+
+    // nothing pending after the flush
+    store.flush();
+    verify(inner, times(1)).put(any(), any());
+  }
+
+  @Test
+  public void whenValueIsLookedUpByRangeExpectNoWriteBack() {
+    KeyValueStore<String, String> inner = mock(KeyValueStore.class);
+    WriteBehindKeyValueStore<String, String> store = new WriteBehindKeyValueStore<>(inner, 10);
+    store.put("trace-1", "state-1");
+    store.flush();
+
+    try (KeyValueIterator<String, String> it = store.range("trace-1", "trace-1")) {
+      assertEquals(KeyValue.pair("trace-1", "state-1"), it.next());
+      assertFalse(it.hasNext());
+    }
+    // served from the cache
+    verify(inner, never()).range(any(), any());
+
+    store.flush();
+    verify(inner, times(1)).put(any(), any());
+  }
+
+  @Test
+  public void whenUncachedValueIsLookedUpByRangeExpectPendingWritesKept() {
+    KeyValueStore<String, String> inner = mock(KeyValueStore.class);
+    WriteBehindKeyValueStore<String, String> store = new WriteBehindKeyValueStore<>(inner, 10);
+    store.put("trace-1", "state-1");
+
+    store.range("trace-2", "trace-2");
+    verify(inner).range("trace-2", "trace-2");
+    verify(inner, never()).put(any(), any());
+    assertEquals(1, store.getCacheSize());
+  }
+
+  @Test
+  public void whenStoreIsScannedExpectCacheNotFilled() {
+    KeyValueStore<String, String> inner = mock(KeyValueStore.class);
+    WriteBehindKeyValueStore<String, String> store = new WriteBehindKeyValueStore<>(inner, 10);
+    store.put("trace-1", "state-1");
+
+    store.all();
+    store.range("trace-2", "trace-3");
+    verify(inner, times(1)).put("trace-1", "state-1");
+    verify(inner).all();
+    verify(inner).range("trace-2", "trace-3");
+    assertEquals(1, store.getCacheSize());
+  }
+
+  @Test
+  public void whenEntriesArePutInBulkExpectCacheBypassed() {
+    KeyValueStore<String, String> inner = mock(KeyValueStore.class);
+    WriteBehindKeyValueStore<String, String> store = new WriteBehindKeyValueStore<>(inner, 10);
+    store.put("trace-1", "state-1");
+
+    List<KeyValue<String, String>> entries =
+        List.of(KeyValue.pair("trace-1", "state-2"), KeyValue.pair("trace-2", "state-3"));
+    store.putAll(entries);
+    verify(inner).putAll(entries);
+    assertEquals(0, store.getCacheSize());
+
+    // the replaced pending write of trace-1 is not written
+    store.flush();
+    verify(inner, never()).put(any(), any());
+  }
+
+  @Test
+  public void whenValueIsDeletedExpectNullPutOnFlush() {
+    KeyValueStore<String, String> inner = mock(KeyValueStore.class);
+    when(inner.get("trace-1")).thenReturn("state-1");
+    WriteBehindKeyValueStore<String, String> store = new WriteBehindKeyValueStore<>(inner, 10);
+
+    assertEquals("state-1", store.delete("trace-1"));
+    assertNull(store.get("trace-1"));
+
+    store.flush();
+    verify(inner).put(eq("trace-1"), isNull());
+    assertEquals(0, store.getCacheSize());
+  }
+
+  @Test
+  public void whenCacheIsFullExpectDirtyEldestWrittenOnEviction() {
+    KeyValueStore<String, String> inner = mock(KeyValueStore.class);
+    WriteBehindKeyValueStore<String, String> store = new WriteBehindKeyValueStore<>(inner, 2);
+
+    store.put("trace-1", "state-1");
+    store.put("trace-2", "state-2");
+    // trace-1 is used more recently than trace-2
+    store.get("trace-1");
+    store.put("trace-3", "state-3");
+
+    verify(inner, times(1)).put("trace-2", "state-2");
+    verify(inner, times(1)).put(any(), any());
+    assertEquals(2, store.getCacheSize());
+  }
+}
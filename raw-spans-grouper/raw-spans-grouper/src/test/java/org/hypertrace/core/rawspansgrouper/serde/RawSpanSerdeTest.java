@@ -0,0 +1,79 @@
+package org.hypertrace.core.rawspansgrouper.serde;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.message.BinaryMessageEncoder;
+import org.apache.kafka.common.errors.SerializationException;
+import org.hypertrace.core.datamodel.Event;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.junit.jupiter.api.Test;
+
+class RawSpanSerdeTest {
+
+  @Test
+  public void whenCompactValueIsReadExpectSameRawSpan() {
+    RawSpanSerde serde = new RawSpanSerde();
+    RawSpan rawSpan = createRawSpan();
+
+    byte[] bytes = serde.serializer().serialize("topic", rawSpan);
+    assertEquals(rawSpan, serde.deserializer().deserialize("topic", bytes));
+  }
+
+  @Test
+  public void whenSpanWasWrittenWithPreviousSchemaExpectItReadOnceSchemaIsRegistered()
+      throws IOException {
+    // a previous data model release whose RawSpan had a field that was dropped since
+    List<Schema.Field> fields = new ArrayList<>();
+    for (Schema.Field field : RawSpan.getClassSchema().getFields()) {
+      fields.add(new Schema.Field(field, field.schema()));
+    }
+    fields.add(new Schema.Field("received_time_millis", Schema.create(Schema.Type.LONG), null, 0L));
+    Schema previousSchema =
+        Schema.createRecord(
+            RawSpan.getClassSchema().getName(),
+            null,
+            RawSpan.getClassSchema().getNamespace(),
+            false,
+            fields);
+    RawSpan rawSpan = createRawSpan();
+    GenericData.Record previousRawSpan = new GenericData.Record(previousSchema);
+    for (Schema.Field field : RawSpan.getClassSchema().getFields()) {
+      previousRawSpan.put(field.name(), rawSpan.get(field.pos()));
+    }
+    previousRawSpan.put("received_time_millis", 1_650_000_000_000L);
+    byte[] bytes =
+        new BinaryMessageEncoder<GenericRecord>(GenericData.get(), previousSchema)
+            .encode(previousRawSpan)
+            .array();
+
+    RawSpanSerde serde = new RawSpanSerde();
+    assertThrows(
+        SerializationException.class, () -> serde.deserializer().deserialize("topic", bytes));
+
+    RawSpanSerde.addWriterSchema(previousSchema);
+    assertEquals(rawSpan, serde.deserializer().deserialize("topic", bytes));
+  }
+
+  private RawSpan createRawSpan() {
+    return RawSpan.newBuilder()
+        .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+        .setCustomerId("tenant1")
+        .setEvent(
+            Event.newBuilder()
+                .setCustomerId("tenant1")
+                .setEventId(ByteBuffer.wrap("event-1".getBytes()))
+                .setEventName("GET /api")
+                .setStartTimeMillis(1_650_000_000_000L)
+                .setEndTimeMillis(1_650_000_000_100L)
+                .build())
+        .build();
+  }
+}
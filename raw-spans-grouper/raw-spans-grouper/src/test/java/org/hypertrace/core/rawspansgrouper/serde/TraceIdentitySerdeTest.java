@@ -0,0 +1,38 @@
+package org.hypertrace.core.rawspansgrouper.serde;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import org.apache.kafka.common.errors.SerializationException;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.junit.jupiter.api.Test;
+
+class TraceIdentitySerdeTest {
+
+  @Test
+  public void whenCompactKeyIsReadExpectSameTraceIdentity() {
+    TraceIdentitySerde serde = new TraceIdentitySerde();
+    TraceIdentity traceIdentity = createTraceIdentity("tenant1", "0123456789abcdef");
+
+    byte[] bytes = serde.serializer().serialize("topic", traceIdentity);
+    // version byte, varint tenant length, tenant and the raw trace id
+    assertEquals(1 + 1 + "tenant1".length() + 16, bytes.length);
+    assertEquals(traceIdentity, serde.deserializer().deserialize("topic", bytes));
+  }
+
+  @Test
+  public void whenFormatVersionIsUnknownExpectSerializationException() {
+    TraceIdentitySerde serde = new TraceIdentitySerde();
+    assertThrows(
+        SerializationException.class,
+        () -> serde.deserializer().deserialize("topic", new byte[] {2, 0, 1}));
+  }
+
+  private TraceIdentity createTraceIdentity(String tenantId, String traceId) {
+    return TraceIdentity.newBuilder()
+        .setTenantId(tenantId)
+        .setTraceId(ByteBuffer.wrap(traceId.getBytes()))
+        .build();
+  }
+}
@@ -0,0 +1,42 @@
+package org.hypertrace.core.rawspansgrouper.serde;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.kafka.common.errors.SerializationException;
+import org.hypertrace.core.spannormalizer.TraceState;
+import org.junit.jupiter.api.Test;
+
+class TraceStateSerdeTest {
+
+  @Test
+  public void whenCompactValueIsReadExpectSameTraceState() {
+    TraceStateSerde serde = new TraceStateSerde();
+    TraceState traceState =
+        TraceState.newBuilder()
+            .setTraceStartTimestamp(1_650_000_000_000L)
+            .setTraceEndTimestamp(1_650_000_001_000L)
+            .setEmitTs(1_650_000_031_000L)
+            .setTenantId("tenant1")
+            .setTraceId(ByteBuffer.wrap("trace-1".getBytes()))
+            .setSpanIds(List.of(ByteBuffer.wrap("span-1".getBytes())))
+            .setSpanCount(5)
+            .setRootSpanSeen(true)
+            .setFragmentCount(2)
+            .setSpanBytes(4096)
+            .build();
+
+    byte[] bytes = serde.serializer().serialize("topic", traceState);
+    assertEquals(traceState, serde.deserializer().deserialize("topic", bytes));
+  }
+
+  @Test
+  public void whenFormatVersionIsUnknownExpectSerializationException() {
+    TraceStateSerde serde = new TraceStateSerde();
+    assertThrows(
+        SerializationException.class,
+        () -> serde.deserializer().deserialize("topic", new byte[] {2, 0, 0}));
+  }
+}
@@ -43,6 +43,7 @@ include("hypertrace-metrics-generator:hypertrace-metrics-generator")
 
 // utils
 include("semantic-convention-utils")
+include("tenant-metrics-utils")
 
 // e2e pipeline
 include("hypertrace-ingester")
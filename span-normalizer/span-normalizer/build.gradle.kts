@@ -5,6 +5,7 @@ plugins {
   id("org.hypertrace.docker-java-application-plugin")
   id("org.hypertrace.docker-publish-plugin")
   id("org.hypertrace.jacoco-report-plugin")
+  id("me.champeau.jmh") version "0.6.6"
 }
 
 application {
@@ -32,16 +33,27 @@ tasks.test {
   useJUnitPlatform()
 }
 
+jmh {
+  // ./gradlew :span-normalizer:span-normalizer:jmh
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+  // reports the bytes allocated per operation as gc.alloc.rate.norm
+  profilers.set(listOf("gc"))
+}
+
 dependencies {
   implementation(project(":span-normalizer:raw-span-constants"))
   implementation(project(":span-normalizer:span-normalizer-api"))
   implementation(project(":span-normalizer:span-normalizer-constants"))
   implementation(project(":semantic-convention-utils"))
+  implementation(project(":tenant-metrics-utils"))
 
   implementation("org.hypertrace.core.datamodel:data-model:0.1.20")
   implementation("org.hypertrace.core.serviceframework:platform-service-framework:0.1.33")
   implementation("org.hypertrace.core.serviceframework:platform-metrics:0.1.33")
   implementation("org.hypertrace.core.kafkastreams.framework:kafka-streams-framework:0.1.23")
+  implementation("io.opentelemetry:opentelemetry-proto:1.6.0-alpha")
 
   // Required for the GRPC clients.
   runtimeOnly("io.grpc:grpc-netty:1.42.0")
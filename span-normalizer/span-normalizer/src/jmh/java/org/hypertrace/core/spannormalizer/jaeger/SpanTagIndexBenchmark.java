@@ -0,0 +1,112 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Tag handling of a span through the pre-processor and the normalizer. Before the {@link
+ * SpanTagIndex}, the span tags were lowercased and collected into a map for tenant resolution,
+ * again for the span filter and for normalization, and every key was lowercased once more to build
+ * the attribute map. With the index they are collected once, and the attribute map is filled from
+ * the index.
+ *
+ * <p>Spans carry 30 to 80 tags with the names of typical http spans, some of them mixed case like
+ * the request headers that clients send.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpanTagIndexBenchmark {
+
+  private static final List<String> COMMON_TAG_KEYS =
+      List.of(
+          "span.kind",
+          "http.method",
+          "http.url",
+          "http.status_code",
+          "http.route",
+          "http.user_agent",
+          "http.request.method",
+          "http.response.status_code",
+          "net.peer.ip",
+          "net.peer.port",
+          "component",
+          "error",
+          "otel.library.name",
+          "traceable.agent.version",
+          "http.request.header.Content-Type",
+          "http.request.header.X-Request-Id",
+          "http.request.header.User-Agent",
+          "http.response.header.Content-Type",
+          "http.response.header.Content-Length",
+          "http.request.body",
+          "http.response.body");
+  private static final List<String> TENANT_AND_FILTER_KEYS =
+      List.of("tenant-id", "http.url", "http.method", "span.kind");
+
+  @Param({"30", "50", "80"})
+  private int tagCount;
+
+  private List<KeyValue> tags;
+
+  @Setup(Level.Trial)
+  public void setUpTags() {
+    tags = new ArrayList<>(tagCount);
+    for (int i = 0; i < tagCount; i++) {
+      String key =
+          i < COMMON_TAG_KEYS.size()
+              ? COMMON_TAG_KEYS.get(i)
+              : "http.request.header.X-Custom-Header-" + (i - COMMON_TAG_KEYS.size());
+      tags.add(KeyValue.newBuilder().setKey(key).setVStr("value-" + UUID.randomUUID()).build());
+    }
+  }
+
+  @Benchmark
+  public void repeatedTagMaps(Blackhole blackhole) {
+    // tenant resolution, span filter and normalization each collected their own map
+    for (int pass = 0; pass < 3; pass++) {
+      Map<String, KeyValue> tagMap = new HashMap<>();
+      for (KeyValue tag : tags) {
+        tagMap.put(tag.getKey().toLowerCase(), tag);
+      }
+      for (String key : TENANT_AND_FILTER_KEYS) {
+        blackhole.consume(tagMap.get(key));
+      }
+    }
+    Map<String, String> attributeMap = new HashMap<>();
+    for (KeyValue tag : tags) {
+      attributeMap.put(tag.getKey().toLowerCase(), tag.getVStr());
+    }
+    blackhole.consume(attributeMap);
+  }
+
+  @Benchmark
+  public void sharedTagIndex(Blackhole blackhole) {
+    Map<String, KeyValue> tagIndex = SpanTagIndex.of(tags);
+    for (int pass = 0; pass < 3; pass++) {
+      for (String key : TENANT_AND_FILTER_KEYS) {
+        blackhole.consume(tagIndex.get(key));
+      }
+    }
+    Map<String, String> attributeMap = new HashMap<>((int) (tagIndex.size() / 0.75f) + 1);
+    for (Map.Entry<String, KeyValue> entry : tagIndex.entrySet()) {
+      attributeMap.put(entry.getKey(), entry.getValue().getVStr());
+    }
+    blackhole.consume(attributeMap);
+  }
+}
@@ -0,0 +1,124 @@
+package org.hypertrace.core.spannormalizer.redaction;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Redacts the attributes of an http span with the {@code spanRedaction.piiPciFields} of the
+ * application config, checking every field against every attribute as the span normalizer used to,
+ * or through the {@link PIIPCIRedactor}.
+ *
+ * <p>Most attributes are not sensitive; a few carry an account number, a card number, a PAN or a
+ * VPA, and the rest are request headers with values of a similar length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedactionBenchmark {
+
+  private static final Map<String, String> HTTP_SPAN_TAGS =
+      Map.ofEntries(
+          Map.entry("span.kind", "server"),
+          Map.entry("http.method", "POST"),
+          Map.entry("http.url", "https://api.example.com/v1/payments?pan=ABCPE1234F"),
+          Map.entry("http.status_code", "200"),
+          Map.entry("http.route", "/v1/payments"),
+          Map.entry("http.user_agent", "Mozilla/5.0 (X11; Linux x86_64) Firefox/96.0"),
+          Map.entry("net.peer.ip", "10.12.3.45"),
+          Map.entry("net.peer.port", "53412"),
+          Map.entry("component", "netty"),
+          Map.entry("otel.library.name", "io.opentelemetry.netty-4.1"),
+          Map.entry("account_number", "123456789012"),
+          Map.entry("card_number", "4111111111111111"),
+          Map.entry("cvv", "123"),
+          Map.entry("payee.vpa", "987654321012@okbank"),
+          Map.entry("http.request.header.content-type", "application/json"),
+          Map.entry("http.request.header.x-request-id", "7c9e6679-7425-40de-944b-e07fc1f90ae7"),
+          Map.entry("http.response.header.content-length", "2048"),
+          Map.entry(
+              "http.request.body",
+              "{\"amount\": 50000, \"currency\": \"INR\", \"account_number\": \"123456789012\"}"),
+          Map.entry("http.response.body", "{\"id\": \"pay_29QQoUBi66xm2f\", \"status\": \"ok\"}"));
+
+  @Param({"1", "3"})
+  private int copies;
+
+  private List<PIIPCIField> piiPciFields;
+  private PIIPCIRedactor redactor;
+  private Map<String, String> tags;
+
+  @Setup(Level.Trial)
+  public void setUpFields() {
+    piiPciFields =
+        ConfigFactory.parseResources("configs/common/application.conf")
+            .resolve()
+            .getConfigList(SpanNormalizerConstants.PII_PCI_CONFIG_KEY)
+            .stream()
+            .map(
+                conf ->
+                    new PIIPCIField(
+                        conf.getString("name"),
+                        conf.getString("regexString"),
+                        conf.getStringList("keys"),
+                        conf.getString("type")))
+            .collect(Collectors.toList());
+    redactor = new PIIPCIRedactor(piiPciFields);
+    tags = new HashMap<>();
+    for (int i = 0; i < copies; i++) {
+      String suffix = i == 0 ? "" : "." + i;
+      HTTP_SPAN_TAGS.forEach((key, value) -> tags.put(key + suffix, value));
+    }
+  }
+
+  @Benchmark
+  public Map<String, AttributeValue> fieldByField() {
+    Map<String, AttributeValue> attributeMap = toAttributes();
+    for (PIIPCIField piiPciField : piiPciFields) {
+      for (Map.Entry<String, AttributeValue> attribute : attributeMap.entrySet()) {
+        if (!piiPciField.getTagKeySet().isEmpty()
+            && !piiPciField.getTagKeySet().contains(attribute.getKey())) {
+          continue;
+        }
+        if (piiPciField.getRegexInfo().isEmpty()
+            || piiPciField
+                .getRegexInfo()
+                .get()
+                .getRegexPattern()
+                .matcher(attribute.getValue().getValue())
+                .find()) {
+          attribute.setValue(piiPciField.getReplacementValue());
+        }
+      }
+    }
+    return attributeMap;
+  }
+
+  @Benchmark
+  public Map<String, AttributeValue> redactor() {
+    Map<String, AttributeValue> attributeMap = toAttributes();
+    redactor.redact(attributeMap);
+    return attributeMap;
+  }
+
+  private Map<String, AttributeValue> toAttributes() {
+    Map<String, AttributeValue> attributeMap = new HashMap<>();
+    tags.forEach(
+        (key, value) -> attributeMap.put(key, AttributeValue.newBuilder().setValue(value).build()));
+    return attributeMap;
+  }
+}
@@ -1,26 +1,34 @@
 package org.hypertrace.core.spannormalizer;
 
+import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants.FUSED_TOPOLOGY_ENABLED_CONFIG_KEY;
 import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants.INPUT_TOPIC_CONFIG_KEY;
+import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants.OTLP_INPUT_TOPIC_CONFIG_KEY;
 import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants.OUTPUT_TOPIC_CONFIG_KEY;
 import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants.OUTPUT_TOPIC_RAW_LOGS_CONFIG_KEY;
 import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants.SPAN_NORMALIZER_JOB_CONFIG;
 
 import com.typesafe.config.Config;
-import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
-import java.util.Collections;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.Consumed;
 import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Named;
+import org.apache.kafka.streams.kstream.Produced;
 import org.hypertrace.core.kafkastreams.framework.KafkaStreamsApp;
 import org.hypertrace.core.serviceframework.config.ConfigClient;
+import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanNormalizerTransformer;
 import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanPreProcessor;
-import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanSerde;
 import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanToAvroRawSpanTransformer;
 import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanToLogRecordsTransformer;
+import org.hypertrace.core.spannormalizer.jaeger.LazyJaegerSpan;
+import org.hypertrace.core.spannormalizer.jaeger.LazyJaegerSpanSerde;
 import org.hypertrace.core.spannormalizer.jaeger.PreProcessedSpan;
+import org.hypertrace.core.spannormalizer.otlp.OtlpSpanToRawSpanTransformer;
+import org.hypertrace.core.spannormalizer.otlp.OtlpTraceRequestSerde;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,14 +51,37 @@ public class SpanNormalizer extends KafkaStreamsApp {
     String outputTopic = jobConfig.getString(OUTPUT_TOPIC_CONFIG_KEY);
     String outputTopicRawLogs = jobConfig.getString(OUTPUT_TOPIC_RAW_LOGS_CONFIG_KEY);
 
-    KStream<byte[], Span> inputStream = (KStream<byte[], Span>) inputStreams.get(inputTopic);
+    KStream<byte[], LazyJaegerSpan> inputStream =
+        (KStream<byte[], LazyJaegerSpan>) inputStreams.get(inputTopic);
     if (inputStream == null) {
+      // spans are only decoded as far as needed to drop them, see LazyJaegerSpan
       inputStream =
           streamsBuilder.stream(
-              inputTopic, Consumed.with(Serdes.ByteArray(), new JaegerSpanSerde()));
+              inputTopic, Consumed.with(Serdes.ByteArray(), new LazyJaegerSpanSerde()));
       inputStreams.put(inputTopic, inputStream);
     }
 
+    if (jobConfig.hasPath(OTLP_INPUT_TOPIC_CONFIG_KEY)) {
+      buildOtlpTopology(
+          jobConfig.getString(OTLP_INPUT_TOPIC_CONFIG_KEY),
+          outputTopic,
+          outputTopicRawLogs,
+          streamsBuilder,
+          inputStreams);
+    }
+
+    if (jobConfig.hasPath(FUSED_TOPOLOGY_ENABLED_CONFIG_KEY)
+        && jobConfig.getBoolean(FUSED_TOPOLOGY_ENABLED_CONFIG_KEY)) {
+      // a single processor node forwards to both sinks by name
+      KStream<Object, Object> normalizedStream =
+          inputStream.transform(
+              JaegerSpanNormalizerTransformer::new, Named.as("jaeger-span-normalizer"));
+      normalizedStream.to(outputTopic, Produced.as(JaegerSpanNormalizerTransformer.RAW_SPANS_SINK));
+      normalizedStream.to(
+          outputTopicRawLogs, Produced.as(JaegerSpanNormalizerTransformer.RAW_LOGS_SINK));
+      return streamsBuilder;
+    }
+
     KStream<byte[], PreProcessedSpan> preProcessedStream =
         inputStream.transform(JaegerSpanPreProcessor::new);
     preProcessedStream.transform(JaegerSpanToAvroRawSpanTransformer::new).to(outputTopic);
@@ -58,6 +89,29 @@ public class SpanNormalizer extends KafkaStreamsApp {
     return streamsBuilder;
   }
 
+  private void buildOtlpTopology(
+      String otlpInputTopic,
+      String outputTopic,
+      String outputTopicRawLogs,
+      StreamsBuilder streamsBuilder,
+      Map<String, KStream<?, ?>> inputStreams) {
+    KStream<byte[], ExportTraceServiceRequest> otlpInputStream =
+        (KStream<byte[], ExportTraceServiceRequest>) inputStreams.get(otlpInputTopic);
+    if (otlpInputStream == null) {
+      otlpInputStream =
+          streamsBuilder.stream(
+              otlpInputTopic, Consumed.with(Serdes.ByteArray(), new OtlpTraceRequestSerde()));
+      inputStreams.put(otlpInputTopic, otlpInputStream);
+    }
+
+    KStream<Object, Object> normalizedStream =
+        otlpInputStream.transform(
+            OtlpSpanToRawSpanTransformer::new, Named.as("otlp-span-normalizer"));
+    normalizedStream.to(outputTopic, Produced.as(OtlpSpanToRawSpanTransformer.RAW_SPANS_SINK));
+    normalizedStream.to(
+        outputTopicRawLogs, Produced.as(OtlpSpanToRawSpanTransformer.RAW_LOGS_SINK));
+  }
+
   @Override
   public String getJobConfigKey() {
     return SPAN_NORMALIZER_JOB_CONFIG;
@@ -71,7 +125,12 @@ public class SpanNormalizer extends KafkaStreamsApp {
   @Override
   public List<String> getInputTopics(Map<String, Object> properties) {
     Config jobConfig = getJobConfig(properties);
-    return Collections.singletonList(jobConfig.getString(INPUT_TOPIC_CONFIG_KEY));
+    List<String> inputTopics = new ArrayList<>();
+    inputTopics.add(jobConfig.getString(INPUT_TOPIC_CONFIG_KEY));
+    if (jobConfig.hasPath(OTLP_INPUT_TOPIC_CONFIG_KEY)) {
+      inputTopics.add(jobConfig.getString(OTLP_INPUT_TOPIC_CONFIG_KEY));
+    }
+    return inputTopics;
   }
 
   @Override
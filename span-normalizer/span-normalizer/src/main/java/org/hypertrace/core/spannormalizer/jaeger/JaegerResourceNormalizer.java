@@ -3,29 +3,62 @@ package org.hypertrace.core.spannormalizer.jaeger;
 import static org.hypertrace.core.datamodel.shared.AvroBuilderCache.fastNewBuilder;
 import static org.hypertrace.core.spannormalizer.util.JaegerHTTagsConverter.createFromJaegerKeyValue;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import org.hypertrace.core.datamodel.AttributeValue;
 import org.hypertrace.core.datamodel.Attributes;
 import org.hypertrace.core.datamodel.Resource;
+import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
 
+/**
+ * Normalizes the process tags of spans to a {@link Resource}. Nearly all spans of a process share
+ * the same tags, so resources are cached by process tags and the spans share a single instance,
+ * which must not be modified.
+ */
 class JaegerResourceNormalizer {
+  private static final long RESOURCE_CACHE_MAX_SIZE = 10_000;
+
   // Shouldn't get any dupe keys, but in case we do, only read the first
   private static final Collector<Entry<String, AttributeValue>, ?, Map<String, AttributeValue>>
       MAP_COLLECTOR =
           Collectors.toUnmodifiableMap(Entry::getKey, Entry::getValue, (first, second) -> first);
 
+  // keyed by the tenant id key and the process tags
+  private final Cache<Entry<Optional<String>, List<KeyValue>>, Optional<Resource>> resourceCache =
+      CacheBuilder.newBuilder().maximumSize(RESOURCE_CACHE_MAX_SIZE).recordStats().build();
+
+  JaegerResourceNormalizer() {
+    PlatformMetricsRegistry.registerCache(
+        this.getClass().getName() + ".resourceCache", resourceCache, Collections.emptyMap());
+  }
+
   Optional<Resource> normalize(Span span, Optional<String> tenantIdKey) {
-    return Optional.of(span.getProcess())
-        .map(Process::getTagsList)
-        .flatMap(keyValueList -> buildResource(keyValueList, tenantIdKey));
+    return normalize(span.getProcess(), tenantIdKey);
+  }
+
+  Optional<Resource> normalize(Process process, Optional<String> tenantIdKey) {
+    List<KeyValue> keyValueList = process.getTagsList();
+    if (keyValueList.isEmpty()) {
+      return Optional.empty();
+    }
+    try {
+      return resourceCache.get(
+          Map.entry(tenantIdKey, keyValueList), () -> buildResource(keyValueList, tenantIdKey));
+    } catch (ExecutionException e) {
+      // building a resource doesn't throw checked exceptions
+      throw new IllegalStateException(e.getCause());
+    }
   }
 
   private Optional<Resource> buildResource(
@@ -19,10 +19,6 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.regex.Matcher;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.avro.Schema;
@@ -41,14 +37,17 @@ import org.hypertrace.core.datamodel.MetricValue;
 import org.hypertrace.core.datamodel.Metrics;
 import org.hypertrace.core.datamodel.RawSpan;
 import org.hypertrace.core.datamodel.RawSpan.Builder;
+import org.hypertrace.core.datamodel.Resource;
 import org.hypertrace.core.datamodel.eventfields.jaeger.JaegerFields;
 import org.hypertrace.core.datamodel.shared.trace.AttributeValueCreator;
-import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
 import org.hypertrace.core.span.constants.RawSpanConstants;
 import org.hypertrace.core.span.constants.v1.JaegerAttribute;
 import org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants;
 import org.hypertrace.core.spannormalizer.redaction.PIIPCIField;
+import org.hypertrace.core.spannormalizer.redaction.PIIPCIRedactor;
 import org.hypertrace.core.spannormalizer.util.JaegerHTTagsConverter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
+import org.hypertrace.tenant.metrics.utils.TenantTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,14 +59,16 @@ public class JaegerSpanNormalizer {
   public static final String OLD_JAEGER_SERVICENAME_KEY = "jaeger.servicename";
 
   private static final String SPAN_NORMALIZATION_TIME_METRIC = "span.normalization.time";
+  private static final String SPAN_REDACTION_TIME_METRIC = "span.redaction.time";
 
   private static JaegerSpanNormalizer INSTANCE;
-  private final ConcurrentMap<String, Timer> tenantToSpanNormalizationTimer =
-      new ConcurrentHashMap<>();
+  private final TenantTimer tenantToSpanNormalizationTimer =
+      TenantTimer.of(SPAN_NORMALIZATION_TIME_METRIC);
+  private final TenantTimer tenantToSpanRedactionTimer = TenantTimer.of(SPAN_REDACTION_TIME_METRIC);
 
   private final JaegerResourceNormalizer resourceNormalizer = new JaegerResourceNormalizer();
   private final TenantIdHandler tenantIdHandler;
-  private final List<PIIPCIField> PIIPCIFields = new ArrayList<>();
+  private final PIIPCIRedactor piiPciRedactor;
 
   public static JaegerSpanNormalizer get(Config config) {
     if (INSTANCE == null) {
@@ -81,6 +82,7 @@ public class JaegerSpanNormalizer {
   }
 
   public JaegerSpanNormalizer(Config config) {
+    List<PIIPCIField> piiPciFields = new ArrayList<>();
     try {
       if (config.hasPath(SpanNormalizerConstants.SPAN_REDACTION_CONFIG_KEY)) {
         config.getConfigList(SpanNormalizerConstants.PII_PCI_CONFIG_KEY).stream()
@@ -91,37 +93,85 @@ public class JaegerSpanNormalizer {
                         conf.getString("regexString"),
                         conf.getStringList("keys"),
                         conf.getString("type")))
-            .forEach(PIIPCIFields::add);
+            .forEach(piiPciFields::add);
       }
     } catch (Exception e) {
       LOG.error("An exception occurred while loading redaction configs: ", e);
     }
+    this.piiPciRedactor = createPiiPciRedactor(piiPciFields);
     this.tenantIdHandler = new TenantIdHandler(config);
   }
 
+  private static PIIPCIRedactor createPiiPciRedactor(List<PIIPCIField> piiPciFields) {
+    try {
+      return new PIIPCIRedactor(piiPciFields);
+    } catch (RuntimeException e) {
+      // the fields were compiled on their own, so this is not expected
+      LOG.error("An exception occurred while compiling redaction configs: ", e);
+      return new PIIPCIRedactor(List.of());
+    }
+  }
+
   public Timer getSpanNormalizationTimer(String tenantId) {
-    return tenantToSpanNormalizationTimer.get(tenantId);
+    return tenantToSpanNormalizationTimer.get(TenantSlots.slotOf(tenantId));
   }
 
   @Nullable
   public RawSpan convert(String tenantId, Span jaegerSpan) throws Exception {
-    Map<String, KeyValue> tags =
-        jaegerSpan.getTagsList().stream()
-            .collect(Collectors.toMap(t -> t.getKey().toLowerCase(), t -> t, (v1, v2) -> v2));
+    return convert(
+        TenantSlots.slotOf(tenantId),
+        tenantId,
+        jaegerSpan,
+        SpanTagIndex.of(jaegerSpan.getTagsList()),
+        null,
+        1);
+  }
+
+  /** Converts the span reusing the tag index built by the {@link JaegerSpanPreProcessor}. */
+  @Nullable
+  public RawSpan convert(PreProcessedSpan preProcessedSpan) throws Exception {
+    return convert(
+        preProcessedSpan.getTenantSlot(),
+        preProcessedSpan.getTenantId(),
+        preProcessedSpan.getSpan(),
+        preProcessedSpan.getSpanTags(),
+        preProcessedSpan.getResource(),
+        preProcessedSpan.getSamplingWeight());
+  }
 
+  private RawSpan convert(
+      int tenantSlot,
+      String tenantId,
+      Span jaegerSpan,
+      Map<String, KeyValue> tags,
+      @Nullable Optional<Resource> resource,
+      double samplingWeight)
+      throws Exception {
     // Record the time taken for converting the span, along with the tenant id tag.
     return tenantToSpanNormalizationTimer
-        .computeIfAbsent(
-            tenantId,
-            tenant ->
-                PlatformMetricsRegistry.registerTimer(
-                    SPAN_NORMALIZATION_TIME_METRIC, Map.of("tenantId", tenant)))
-        .recordCallable(getRawSpanNormalizerCallable(jaegerSpan, tags, tenantId));
+        .get(tenantSlot)
+        .recordCallable(
+            getRawSpanNormalizerCallable(
+                jaegerSpan, tags, tenantSlot, tenantId, resource, samplingWeight));
+  }
+
+  /**
+   * Normalizes the resource of a process, to be shared by the spans of the process through {@link
+   * PreProcessedSpan#setResource}.
+   */
+  public Optional<Resource> normalizeResource(JaegerSpanInternalModel.Process process) {
+    return resourceNormalizer.normalize(
+        process, tenantIdHandler.getTenantIdProvider().getTenantIdTagKey());
   }
 
   @Nonnull
   private Callable<RawSpan> getRawSpanNormalizerCallable(
-      Span jaegerSpan, Map<String, KeyValue> spanTags, String tenantId) {
+      Span jaegerSpan,
+      Map<String, KeyValue> spanTags,
+      int tenantSlot,
+      String tenantId,
+      @Nullable Optional<Resource> resource,
+      double samplingWeight) {
     return () -> {
       Builder rawSpanBuilder = fastNewBuilder(RawSpan.Builder.class);
       rawSpanBuilder.setCustomerId(tenantId);
@@ -135,12 +185,25 @@ public class JaegerSpanNormalizer {
               tenantIdHandler.getTenantIdProvider().getTenantIdTagKey());
       rawSpanBuilder.setEvent(event);
       rawSpanBuilder.setReceivedTimeMillis(System.currentTimeMillis());
-      resourceNormalizer
-          .normalize(jaegerSpan, tenantIdHandler.getTenantIdProvider().getTenantIdTagKey())
+      (resource != null
+              ? resource
+              : resourceNormalizer.normalize(
+                  jaegerSpan, tenantIdHandler.getTenantIdProvider().getTenantIdTagKey()))
           .ifPresent(rawSpanBuilder::setResource);
 
-      if (!PIIPCIFields.isEmpty()) {
-        redactSpanAttributes(rawSpanBuilder);
+      if (!piiPciRedactor.isEmpty()) {
+        redactSpanAttributes(tenantSlot, rawSpanBuilder);
+      }
+
+      // on the span, so that it is carried along with it to the trace by the grouper
+      if (samplingWeight != 1) {
+        rawSpanBuilder
+            .getEvent()
+            .getAttributes()
+            .getAttributeMap()
+            .put(
+                SpanNormalizerConstants.SAMPLING_WEIGHT_ATTRIBUTE,
+                AttributeValue.newBuilder().setValue(Double.toString(samplingWeight)).build());
       }
 
       // build raw span
@@ -154,74 +217,15 @@ public class JaegerSpanNormalizer {
   }
 
   // redact PII tags, tag comparisons are case-insensitive (Resource tags are skipped)
-  private void redactSpanAttributes(Builder rawSpanBuilder) {
+  private void redactSpanAttributes(int tenantSlot, Builder rawSpanBuilder) {
     try {
       var attributeMap = rawSpanBuilder.getEvent().getAttributes().getAttributeMap();
-
-      int piiFieldsCount = 0;
-      int pciFieldsCount = 0;
-
-      Set<String> tagKeys = attributeMap.keySet();
-      for (PIIPCIField piiPciField : PIIPCIFields) {
-        Matcher matcher = null;
-        if (piiPciField.getRegexInfo().isPresent()) {
-          matcher = piiPciField.getRegexInfo().get().getRegexPattern().matcher("");
-        }
-        PIIPCIField.PIIPCIFieldType piiPciFieldType = piiPciField.getPiiPciFieldType();
-        for (String tagKey : tagKeys) {
-          /* A Simple regex like PAN no. can have false positives.
-             Hence, we only redact tag val when tagKey is present in possible list of regexTagKeySet.
-             If regexTagKeySet is empty, we redact the tag val if it matches against regex pattern.
-          */
-          if (skipRedactionForTagKey(tagKey, piiPciField.getTagKeySet())) {
-            continue;
-          }
-
-          boolean containsSensitiveData = false;
-          if (piiPciField.getRegexInfo().isPresent()) {
-            assert matcher != null;
-            matcher.reset(attributeMap.get(tagKey).getValue());
-            if (matcher.find()) {
-              containsSensitiveData = true;
-            }
-          } else {
-            // this condition implies that match type of PII/PCI field is KEY based.
-            containsSensitiveData = true;
-          }
-
-          if (containsSensitiveData) {
-            if (piiPciFieldType == PIIPCIField.PIIPCIFieldType.PII) {
-              piiFieldsCount += 1;
-            } else {
-              pciFieldsCount += 1;
-            }
-            attributeMap.put(tagKey, piiPciField.getReplacementValue());
-          }
-        }
-      }
-      // if the trace contains PII field, add a field to indicate this. We can later slice-and-dice
-      // based on this tag
-      if (piiFieldsCount > 0) {
-        attributeMap.put(
-            SpanNormalizerConstants.REDACTED_PII_TAGS_KEY,
-            AttributeValue.newBuilder().setValue(String.valueOf(piiFieldsCount)).build());
-      }
-
-      if (pciFieldsCount > 0) {
-        attributeMap.put(
-            SpanNormalizerConstants.REDACTED_PCI_TAGS_KEY,
-            AttributeValue.newBuilder().setValue(String.valueOf(pciFieldsCount)).build());
-      }
-
+      tenantToSpanRedactionTimer.get(tenantSlot).record(() -> piiPciRedactor.redact(attributeMap));
     } catch (Exception e) {
       LOG.error("An exception occurred while performing span redaction: ", e);
     }
   }
 
-  private boolean skipRedactionForTagKey(String tagKey, Set<String> tagKeySet) {
-    return !tagKeySet.isEmpty() && !tagKeySet.contains(tagKey);
-  }
-
   /**
    * Builds the event object from the jaeger span. Note: tagsMap should contain keys that have
    * already been converted to lowercase by the caller.
@@ -264,21 +268,20 @@ public class JaegerSpanNormalizer {
     eventBuilder.setAttributesBuilder(
         fastNewBuilder(Attributes.Builder.class).setAttributeMap(attributeFieldMap));
 
-    List<KeyValue> tagsList = jaegerSpan.getTagsList();
     // Stop populating first class fields for - grpc, rpc, http, and sql.
     // see more details:
     // https://github.com/hypertrace/hypertrace/issues/244
     // https://github.com/hypertrace/hypertrace/issues/245
-    for (KeyValue keyValue : tagsList) {
-      // Convert all attributes to lower case so that we don't have to
-      // deal with the case sensitivity across different layers in the
-      // platform.
-      String key = keyValue.getKey().toLowerCase();
+    // All attributes are keyed in lower case so that we don't have to
+    // deal with the case sensitivity across different layers in the
+    // platform.
+    for (Map.Entry<String, KeyValue> tag : tagsMap.entrySet()) {
+      String key = tag.getKey();
       // Do not add the tenant id to the tags.
       if ((tenantIdKey.isPresent() && key.equals(tenantIdKey.get()))) {
         continue;
       }
-      attributeFieldMap.put(key, JaegerHTTagsConverter.createFromJaegerKeyValue(keyValue));
+      attributeFieldMap.put(key, JaegerHTTagsConverter.createFromJaegerKeyValue(tag.getValue()));
     }
 
     // Jaeger Fields - flags, warnings, logs, jaeger service name in the Process
@@ -0,0 +1,63 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.To;
+import org.hypertrace.core.datamodel.LogEvents;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+
+/**
+ * Pre-processes, normalizes and extracts the logs of a span in a single processor node, instead of
+ * one node per stage. The raw span and the log events are forwarded to the sink nodes named {@link
+ * #RAW_SPANS_SINK} and {@link #RAW_LOGS_SINK}, so the transformer itself never returns a record.
+ */
+public class JaegerSpanNormalizerTransformer
+    implements Transformer<byte[], LazyJaegerSpan, KeyValue<Object, Object>> {
+
+  public static final String RAW_SPANS_SINK = "raw-spans-sink";
+  public static final String RAW_LOGS_SINK = "raw-logs-sink";
+
+  private final JaegerSpanPreProcessor preProcessor = new JaegerSpanPreProcessor();
+  private final JaegerSpanToAvroRawSpanTransformer rawSpanTransformer =
+      new JaegerSpanToAvroRawSpanTransformer();
+  private final JaegerSpanToLogRecordsTransformer logRecordsTransformer =
+      new JaegerSpanToLogRecordsTransformer();
+  private final To toRawSpans = To.child(RAW_SPANS_SINK);
+  private final To toRawLogs = To.child(RAW_LOGS_SINK);
+  private ProcessorContext context;
+
+  @Override
+  public void init(ProcessorContext context) {
+    this.context = context;
+    preProcessor.init(context);
+    rawSpanTransformer.init(context);
+    logRecordsTransformer.init(context);
+  }
+
+  @Override
+  public KeyValue<Object, Object> transform(byte[] key, LazyJaegerSpan value) {
+    PreProcessedSpan preProcessedSpan = preProcessor.preProcess(value);
+    if (preProcessedSpan == null) {
+      return null;
+    }
+
+    KeyValue<TraceIdentity, RawSpan> rawSpan = rawSpanTransformer.transform(key, preProcessedSpan);
+    if (rawSpan != null) {
+      context.forward(rawSpan.key, rawSpan.value, toRawSpans);
+    }
+    KeyValue<String, LogEvents> logEvents = logRecordsTransformer.transform(key, preProcessedSpan);
+    if (logEvents != null) {
+      context.forward(logEvents.key, logEvents.value, toRawLogs);
+    }
+    return null;
+  }
+
+  @Override
+  public void close() {
+    preProcessor.close();
+    rawSpanTransformer.close();
+    logRecordsTransformer.close();
+  }
+}
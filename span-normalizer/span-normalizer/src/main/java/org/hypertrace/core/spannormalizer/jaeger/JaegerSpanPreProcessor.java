@@ -9,28 +9,34 @@ import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
 import io.micrometer.core.instrument.Counter;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.kstream.Transformer;
 import org.apache.kafka.streams.processor.ProcessorContext;
 import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+import org.hypertrace.core.spannormalizer.sampling.TraceSampler;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class JaegerSpanPreProcessor
-    implements Transformer<byte[], Span, KeyValue<byte[], PreProcessedSpan>> {
+    implements Transformer<byte[], LazyJaegerSpan, KeyValue<byte[], PreProcessedSpan>> {
 
   static final String SPANS_COUNTER = "hypertrace.reported.spans";
   private static final String DROPPED_SPANS_COUNTER = "hypertrace.reported.spans.dropped";
   private static final Logger LOG = LoggerFactory.getLogger(JaegerSpanPreProcessor.class);
-  private static final ConcurrentMap<String, Counter> statusToSpansCounter =
-      new ConcurrentHashMap<>();
-  private static final ConcurrentMap<String, Counter> tenantToSpansDroppedCount =
-      new ConcurrentHashMap<>();
+  private static final Counter receivedSpansCounter =
+      PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", "received"));
+  private static final Counter droppedSpansCounter =
+      PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", "dropped"));
+  private static final Counter errorSpansCounter =
+      PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", "error"));
+  private static final TenantCounter tenantToSpansDroppedCount =
+      TenantCounter.of(DROPPED_SPANS_COUNTER);
   private TenantIdHandler tenantIdHandler;
   private SpanFilter spanFilter;
+  private TraceSampler traceSampler;
 
   public JaegerSpanPreProcessor() {
     // empty constructor
@@ -40,6 +46,7 @@ public class JaegerSpanPreProcessor
   JaegerSpanPreProcessor(Config jobConfig) {
     tenantIdHandler = new TenantIdHandler(jobConfig);
     spanFilter = new SpanFilter(jobConfig);
+    traceSampler = TraceSampler.get(jobConfig);
   }
 
   @Override
@@ -47,50 +54,60 @@ public class JaegerSpanPreProcessor
     Config jobConfig = (Config) context.appConfigs().get(SPAN_NORMALIZER_JOB_CONFIG);
     tenantIdHandler = new TenantIdHandler(jobConfig);
     spanFilter = new SpanFilter(jobConfig);
+    traceSampler = TraceSampler.get(jobConfig);
   }
 
   @Override
-  public KeyValue<byte[], PreProcessedSpan> transform(byte[] key, Span value) {
+  public KeyValue<byte[], PreProcessedSpan> transform(byte[] key, LazyJaegerSpan value) {
+    PreProcessedSpan preProcessedSpan = preProcess(value);
+    return preProcessedSpan == null ? null : new KeyValue<>(key, preProcessedSpan);
+  }
+
+  /** Pre-processes the span recording the span counts, returns null if the span is dropped. */
+  @Nullable
+  PreProcessedSpan preProcess(LazyJaegerSpan value) {
+    return preProcess(value, null);
+  }
+
+  /**
+   * Pre-processes a span whose process tags have already been indexed by the caller, so that spans
+   * sharing a process don't index it again. Returns null if the span is dropped.
+   */
+  @Nullable
+  public PreProcessedSpan preProcess(
+      LazyJaegerSpan value, @Nullable Map<String, JaegerSpanInternalModel.KeyValue> processTags) {
     try {
       // this is total spans count received. Irrespective of the fact we are able to parse them, or
       // they have tenantId or not.
-      statusToSpansCounter
-          .computeIfAbsent(
-              "received",
-              k -> PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", k)))
-          .increment();
+      receivedSpansCounter.increment();
 
-      PreProcessedSpan preProcessedSpan = preProcessSpan(value);
+      PreProcessedSpan preProcessedSpan = preProcessSpan(value, processTags);
 
       if (null == preProcessedSpan) {
-        statusToSpansCounter
-            .computeIfAbsent(
-                "dropped",
-                k -> PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", k)))
-            .increment();
+        droppedSpansCounter.increment();
         return null;
       }
 
-      return new KeyValue<>(key, preProcessedSpan);
+      return preProcessedSpan;
     } catch (Exception e) {
       LOG.error("Error preprocessing span", e);
-      statusToSpansCounter
-          .computeIfAbsent(
-              "error",
-              k -> PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", k)))
-          .increment();
+      errorSpansCounter.increment();
       return null;
     }
   }
 
   @VisibleForTesting
   PreProcessedSpan preProcessSpan(Span span) {
-    Map<String, JaegerSpanInternalModel.KeyValue> spanTags =
-        span.getTagsList().stream()
-            .collect(Collectors.toMap(t -> t.getKey().toLowerCase(), t -> t, (v1, v2) -> v2));
-    Map<String, JaegerSpanInternalModel.KeyValue> processTags =
-        span.getProcess().getTagsList().stream()
-            .collect(Collectors.toMap(t -> t.getKey().toLowerCase(), t -> t, (v1, v2) -> v2));
+    return preProcessSpan(LazyJaegerSpan.of(span), null);
+  }
+
+  private PreProcessedSpan preProcessSpan(
+      LazyJaegerSpan span, @Nullable Map<String, JaegerSpanInternalModel.KeyValue> processTags) {
+    // indexed once here and passed on with the span to the later stages
+    Map<String, JaegerSpanInternalModel.KeyValue> spanTags = SpanTagIndex.of(span.getTagsList());
+    if (processTags == null) {
+      processTags = SpanTagIndex.of(span.getProcess().getTagsList());
+    }
 
     Optional<String> maybeTenantId =
         tenantIdHandler.getAllowedTenantId(span, spanTags, processTags);
@@ -99,20 +116,29 @@ public class JaegerSpanPreProcessor
     }
 
     String tenantId = maybeTenantId.get();
+    int tenantSlot = TenantSlots.slotOf(tenantId);
 
     if (spanFilter.shouldDropSpan(span, spanTags, processTags)) {
       // increment dropped counter at tenant level
-      tenantToSpansDroppedCount
-          .computeIfAbsent(
-              tenantId,
-              tenant ->
-                  PlatformMetricsRegistry.registerCounter(
-                      DROPPED_SPANS_COUNTER, Map.of("tenantId", tenantId)))
-          .increment();
+      tenantToSpansDroppedCount.increment(tenantSlot);
+      return null;
+    }
+
+    // sampled last, so that the spans dropped above don't take up the span caps of the tenant
+    double samplingWeight =
+        traceSampler.sample(
+            tenantSlot,
+            tenantId,
+            span.getProcess().getServiceName(),
+            span.getTraceId(),
+            tenantIdHandler.getSampleRate(tenantId));
+    if (samplingWeight == TraceSampler.SAMPLED_OUT) {
       return null;
     }
 
-    return new PreProcessedSpan(tenantId, span);
+    PreProcessedSpan preProcessedSpan = new PreProcessedSpan(tenantId, span, spanTags, processTags);
+    preProcessedSpan.setSamplingWeight(samplingWeight);
+    return preProcessedSpan;
   }
 
   @Override
@@ -5,17 +5,15 @@ import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstan
 import static org.hypertrace.core.spannormalizer.jaeger.JaegerSpanPreProcessor.SPANS_COUNTER;
 
 import com.typesafe.config.Config;
-import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
 import io.micrometer.core.instrument.Counter;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.kstream.Transformer;
 import org.apache.kafka.streams.processor.ProcessorContext;
 import org.hypertrace.core.datamodel.RawSpan;
 import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
 import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,12 +23,14 @@ public class JaegerSpanToAvroRawSpanTransformer
   private static final Logger LOGGER =
       LoggerFactory.getLogger(JaegerSpanToAvroRawSpanTransformer.class);
 
-  private static final ConcurrentMap<String, Counter> statusToSpansCounter =
-      new ConcurrentHashMap<>();
+  private static final Counter droppedSpansCounter =
+      PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", "dropped"));
+  private static final Counter errorSpansCounter =
+      PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", "error"));
 
   private static final String VALID_SPAN_RECEIVED_COUNT = "hypertrace.reported.spans.processed";
-  private static final ConcurrentMap<String, Counter> tenantToSpanReceivedCount =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter tenantToSpanReceivedCount =
+      TenantCounter.of(VALID_SPAN_RECEIVED_COUNT);
 
   private JaegerSpanNormalizer converter;
 
@@ -42,19 +42,12 @@ public class JaegerSpanToAvroRawSpanTransformer
 
   @Override
   public KeyValue<TraceIdentity, RawSpan> transform(byte[] key, PreProcessedSpan preProcessedSpan) {
-    Span value = preProcessedSpan.getSpan();
     String tenantId = preProcessedSpan.getTenantId();
     try {
-      RawSpan rawSpan = converter.convert(tenantId, value);
+      RawSpan rawSpan = converter.convert(preProcessedSpan);
       if (null != rawSpan) {
         // these are spans per tenant that we were able to parse / convert, and had tenantId.
-        tenantToSpanReceivedCount
-            .computeIfAbsent(
-                tenantId,
-                tenant ->
-                    PlatformMetricsRegistry.registerCounter(
-                        VALID_SPAN_RECEIVED_COUNT, Map.of("tenantId", tenantId)))
-            .increment();
+        tenantToSpanReceivedCount.increment(preProcessedSpan.getTenantSlot());
         // we use the (tenant_id, trace_id) as the key so that raw_span_grouper
         // job can do a groupByKey without having to create a repartition topic
         TraceIdentity traceIdentity =
@@ -64,19 +57,11 @@ public class JaegerSpanToAvroRawSpanTransformer
                 .build();
         return new KeyValue<>(traceIdentity, rawSpan);
       }
-      statusToSpansCounter
-          .computeIfAbsent(
-              "dropped",
-              k -> PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", k)))
-          .increment();
+      droppedSpansCounter.increment();
       return null;
     } catch (Exception e) {
       LOGGER.error("Error converting spans - ", e);
-      statusToSpansCounter
-          .computeIfAbsent(
-              "error",
-              k -> PlatformMetricsRegistry.registerCounter(SPANS_COUNTER, Map.of("result", k)))
-          .increment();
+      errorSpansCounter.increment();
       return null;
     }
   }
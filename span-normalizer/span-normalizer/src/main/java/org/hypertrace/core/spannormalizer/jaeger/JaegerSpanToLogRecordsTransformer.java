@@ -8,13 +8,9 @@ import com.google.protobuf.util.Timestamps;
 import com.typesafe.config.Config;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
-import io.micrometer.core.instrument.Counter;
 import java.nio.ByteBuffer;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.kstream.Transformer;
@@ -22,8 +18,9 @@ import org.apache.kafka.streams.processor.ProcessorContext;
 import org.hypertrace.core.datamodel.Attributes;
 import org.hypertrace.core.datamodel.LogEvent;
 import org.hypertrace.core.datamodel.LogEvents;
-import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+import org.hypertrace.core.spannormalizer.jaeger.tenant.TenantPolicy;
 import org.hypertrace.core.spannormalizer.util.JaegerHTTagsConverter;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,23 +29,21 @@ public class JaegerSpanToLogRecordsTransformer
 
   private static final Logger LOG =
       LoggerFactory.getLogger(JaegerSpanToLogRecordsTransformer.class);
-  private static final String TENANT_IDS_TO_EXCLUDE_LOGS_CONFIG = "processor.excludeLogsTenantIds";
-
   private static final String VALID_SPAN_WITH_LOGS_RECEIVED_COUNT =
       "hypertrace.reported.span.with.logs.processed";
+  private static final String SHED_SPAN_WITH_LOGS_COUNT = "hypertrace.reported.span.with.logs.shed";
 
-  private static final ConcurrentMap<String, Counter> tenantToSpanWithLogsReceivedCount =
-      new ConcurrentHashMap<>();
+  private static final TenantCounter tenantToSpanWithLogsReceivedCount =
+      TenantCounter.of(VALID_SPAN_WITH_LOGS_RECEIVED_COUNT);
+  private static final TenantCounter tenantToSpanWithLogsShedCount =
+      TenantCounter.of(SHED_SPAN_WITH_LOGS_COUNT);
 
-  private List<String> tenantIdsToExclude;
+  private Supplier<TenantPolicy> tenantPolicy;
 
   @Override
   public void init(ProcessorContext context) {
     Config jobConfig = (Config) context.appConfigs().get(SPAN_NORMALIZER_JOB_CONFIG);
-    this.tenantIdsToExclude =
-        jobConfig.hasPath(TENANT_IDS_TO_EXCLUDE_LOGS_CONFIG)
-            ? jobConfig.getStringList(TENANT_IDS_TO_EXCLUDE_LOGS_CONFIG)
-            : Collections.emptyList();
+    this.tenantPolicy = TenantPolicy.supplier(jobConfig);
   }
 
   @Override
@@ -56,17 +51,15 @@ public class JaegerSpanToLogRecordsTransformer
     try {
       Span value = preProcessedSpan.getSpan();
       String tenantId = preProcessedSpan.getTenantId();
-      if (value.getLogsCount() == 0 || tenantIdsToExclude.contains(tenantId)) {
+      if (value.getLogsCount() == 0) {
+        return null;
+      }
+      if (!tenantPolicy.get().isLogsEnabled(tenantId)) {
+        tenantToSpanWithLogsShedCount.increment(preProcessedSpan.getTenantSlot());
         return null;
       }
 
-      tenantToSpanWithLogsReceivedCount
-          .computeIfAbsent(
-              tenantId,
-              tenant ->
-                  PlatformMetricsRegistry.registerCounter(
-                      VALID_SPAN_WITH_LOGS_RECEIVED_COUNT, Map.of("tenantId", tenantId)))
-          .increment();
+      tenantToSpanWithLogsReceivedCount.increment(preProcessedSpan.getTenantSlot());
 
       return new KeyValue<>(null, buildLogEventRecords(value, tenantId));
     } catch (Exception e) {
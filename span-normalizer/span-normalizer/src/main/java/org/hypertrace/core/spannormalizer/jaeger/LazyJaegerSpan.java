@@ -0,0 +1,177 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Jaeger span of which only the fields needed to decide whether to drop it are decoded up front:
+ * the trace id, the tags, the process and whether it has references. The other fields, among them
+ * the logs and warnings, are decoded by {@link #getSpan()}, so they are never decoded for a span
+ * that is dropped by the {@link TenantIdHandler} or the {@link SpanFilter}.
+ *
+ * <p>{@link #getSpan()} reuses the decoded tags and process and only decodes the byte ranges of the
+ * other fields, so a span that is not dropped isn't decoded twice.
+ */
+public class LazyJaegerSpan {
+
+  private static final int TRACE_ID_FIELD_NUMBER = 1;
+  private static final int REFERENCES_FIELD_NUMBER = 4;
+  private static final int TAGS_FIELD_NUMBER = 8;
+  private static final int PROCESS_FIELD_NUMBER = 10;
+
+  private final byte[] data;
+  // [offset, length] pairs of the runs of fields that are decoded lazily
+  private final int[] remainingRanges;
+  private final ByteString traceId;
+  private final List<KeyValue> tags;
+  // null if the span has no process
+  private final Process process;
+  private final boolean hasReferences;
+  private Span span;
+
+  private LazyJaegerSpan(
+      byte[] data,
+      int[] remainingRanges,
+      ByteString traceId,
+      List<KeyValue> tags,
+      Process process,
+      boolean hasReferences) {
+    this.data = data;
+    this.remainingRanges = remainingRanges;
+    this.traceId = traceId;
+    this.tags = tags;
+    this.process = process;
+    this.hasReferences = hasReferences;
+  }
+
+  public static LazyJaegerSpan of(Span span) {
+    LazyJaegerSpan lazyJaegerSpan =
+        new LazyJaegerSpan(
+            null,
+            new int[0],
+            span.getTraceId(),
+            span.getTagsList(),
+            span.hasProcess() ? span.getProcess() : null,
+            span.getReferencesCount() > 0);
+    lazyJaegerSpan.span = span;
+    return lazyJaegerSpan;
+  }
+
+  public static LazyJaegerSpan parseFrom(byte[] data) throws InvalidProtocolBufferException {
+    CodedInputStream input = CodedInputStream.newInstance(data);
+    ExtensionRegistryLite extensionRegistry = ExtensionRegistryLite.getEmptyRegistry();
+    ByteString traceId = ByteString.EMPTY;
+    List<KeyValue> tags = new ArrayList<>();
+    Process process = null;
+    boolean hasReferences = false;
+    List<Integer> remainingRanges = new ArrayList<>();
+    int rangeStart = 0;
+    try {
+      while (true) {
+        int fieldStart = input.getTotalBytesRead();
+        int tag = input.readTag();
+        if (tag == 0) {
+          break;
+        }
+        int fieldNumber = WireFormat.getTagFieldNumber(tag);
+        int wireType = WireFormat.getTagWireType(tag);
+        if (fieldNumber == TAGS_FIELD_NUMBER
+            && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+          addRange(remainingRanges, rangeStart, fieldStart);
+          tags.add(input.readMessage(KeyValue.parser(), extensionRegistry));
+          rangeStart = input.getTotalBytesRead();
+        } else if (fieldNumber == PROCESS_FIELD_NUMBER
+            && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+          addRange(remainingRanges, rangeStart, fieldStart);
+          Process nextProcess = input.readMessage(Process.parser(), extensionRegistry);
+          // a message field that occurs more than once is merged
+          process =
+              process == null ? nextProcess : process.toBuilder().mergeFrom(nextProcess).build();
+          rangeStart = input.getTotalBytesRead();
+        } else if (fieldNumber == TRACE_ID_FIELD_NUMBER
+            && wireType == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+          // also left in the remaining ranges, it is small enough to be decoded again
+          traceId = input.readBytes();
+        } else {
+          if (fieldNumber == REFERENCES_FIELD_NUMBER) {
+            hasReferences = true;
+          }
+          if (!input.skipField(tag)) {
+            break;
+          }
+        }
+      }
+    } catch (InvalidProtocolBufferException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new InvalidProtocolBufferException(e);
+    }
+    addRange(remainingRanges, rangeStart, input.getTotalBytesRead());
+
+    return new LazyJaegerSpan(
+        data,
+        remainingRanges.stream().mapToInt(Integer::intValue).toArray(),
+        traceId,
+        tags,
+        process,
+        hasReferences);
+  }
+
+  private static void addRange(List<Integer> ranges, int start, int end) {
+    if (end > start) {
+      ranges.add(start);
+      ranges.add(end - start);
+    }
+  }
+
+  public ByteString getTraceId() {
+    return traceId;
+  }
+
+  public List<KeyValue> getTagsList() {
+    return tags;
+  }
+
+  public Process getProcess() {
+    return process == null ? Process.getDefaultInstance() : process;
+  }
+
+  public boolean hasReferences() {
+    return hasReferences;
+  }
+
+  /** Returns the fully decoded span, decoding the remaining fields on the first call. */
+  public Span getSpan() {
+    if (span == null) {
+      try {
+        Span.Builder builder = Span.newBuilder();
+        for (int i = 0; i < remainingRanges.length; i += 2) {
+          builder.mergeFrom(data, remainingRanges[i], remainingRanges[i + 1]);
+        }
+        builder.addAllTags(tags);
+        if (process != null) {
+          builder.setProcess(process);
+        }
+        span = builder.build();
+      } catch (InvalidProtocolBufferException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return span;
+  }
+
+  /** The same as the string of the decoded span, for logging dropped spans. */
+  @Override
+  public String toString() {
+    return getSpan().toString();
+  }
+}
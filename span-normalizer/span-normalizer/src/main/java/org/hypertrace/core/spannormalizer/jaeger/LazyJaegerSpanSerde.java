@@ -0,0 +1,47 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.Map;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+/** Serde of Jaeger spans that are only decoded as far as needed, see {@link LazyJaegerSpan}. */
+public class LazyJaegerSpanSerde implements Serde<LazyJaegerSpan> {
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {}
+
+  @Override
+  public void close() {}
+
+  @Override
+  public Serializer<LazyJaegerSpan> serializer() {
+    return new Ser();
+  }
+
+  @Override
+  public Deserializer<LazyJaegerSpan> deserializer() {
+    return new De();
+  }
+
+  public static class Ser implements Serializer<LazyJaegerSpan> {
+
+    @Override
+    public byte[] serialize(String topic, LazyJaegerSpan data) {
+      return data.getSpan().toByteArray();
+    }
+  }
+
+  public static class De implements Deserializer<LazyJaegerSpan> {
+
+    @Override
+    public LazyJaegerSpan deserialize(String topic, byte[] data) {
+      try {
+        return LazyJaegerSpan.parseFrom(data);
+      } catch (InvalidProtocolBufferException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
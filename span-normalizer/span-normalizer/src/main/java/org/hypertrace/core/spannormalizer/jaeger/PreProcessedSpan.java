@@ -1,22 +1,99 @@
 package org.hypertrace.core.spannormalizer.jaeger;
 
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.hypertrace.core.datamodel.Resource;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
 
 public class PreProcessedSpan {
 
   private final String tenantId;
-  private final Span span;
+  private final LazyJaegerSpan span;
+  private int tenantSlot = -1;
+  private Map<String, KeyValue> spanTags;
+  private Map<String, KeyValue> processTags;
+  // null if the resource has to be normalized from the process of the span
+  @Nullable private Optional<Resource> resource;
+  private double samplingWeight = 1;
 
   public PreProcessedSpan(String tenantId, Span span) {
+    this(tenantId, span, null, null);
+  }
+
+  public PreProcessedSpan(
+      String tenantId,
+      Span span,
+      Map<String, KeyValue> spanTags,
+      Map<String, KeyValue> processTags) {
+    this(tenantId, LazyJaegerSpan.of(span), spanTags, processTags);
+  }
+
+  public PreProcessedSpan(
+      String tenantId,
+      LazyJaegerSpan span,
+      Map<String, KeyValue> spanTags,
+      Map<String, KeyValue> processTags) {
     this.tenantId = tenantId;
     this.span = span;
+    this.spanTags = spanTags;
+    this.processTags = processTags;
   }
 
   public String getTenantId() {
     return tenantId;
   }
 
+  /** The metrics slot of the tenant, see {@link TenantSlots}. Resolved once per span. */
+  public int getTenantSlot() {
+    if (tenantSlot < 0) {
+      tenantSlot = TenantSlots.slotOf(tenantId);
+    }
+    return tenantSlot;
+  }
+
+  /** The fully decoded span, see {@link LazyJaegerSpan#getSpan()}. */
   public Span getSpan() {
-    return span;
+    return span.getSpan();
+  }
+
+  /** Span tags keyed by lowercase key, see {@link SpanTagIndex}. Built on first use if needed. */
+  public Map<String, KeyValue> getSpanTags() {
+    if (spanTags == null) {
+      spanTags = SpanTagIndex.of(span.getTagsList());
+    }
+    return spanTags;
+  }
+
+  /** Process tags keyed by lowercase key, see {@link SpanTagIndex}. Built on first use if needed. */
+  public Map<String, KeyValue> getProcessTags() {
+    if (processTags == null) {
+      processTags = SpanTagIndex.of(span.getProcess().getTagsList());
+    }
+    return processTags;
+  }
+
+  /**
+   * The normalized resource of the span, if it was normalized by the caller. Spans sharing a
+   * process share the resource, so it is normalized once for all of them.
+   */
+  @Nullable
+  public Optional<Resource> getResource() {
+    return resource;
+  }
+
+  public void setResource(Optional<Resource> resource) {
+    this.resource = resource;
+  }
+
+  /** The number of spans this span stands for after sampling, 1 if it wasn't sampled. */
+  public double getSamplingWeight() {
+    return samplingWeight;
+  }
+
+  public void setSamplingWeight(double samplingWeight) {
+    this.samplingWeight = samplingWeight;
   }
 }
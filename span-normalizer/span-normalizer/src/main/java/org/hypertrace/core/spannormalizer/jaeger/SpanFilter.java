@@ -8,18 +8,23 @@ import com.google.common.util.concurrent.RateLimiter;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigList;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.hypertrace.core.span.constants.RawSpanConstants;
 import org.hypertrace.core.span.constants.v1.SpanAttribute;
+import org.hypertrace.core.spannormalizer.jaeger.SpanDropFilter.Operator;
+import org.hypertrace.core.spannormalizer.util.ReloadableConfigFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,67 +53,124 @@ public class SpanFilter {
   private static final String ROOT_SPAN_ALWAYS_DROP = "alwaysDrop";
   private static final String ROOT_SPAN_DROP_EXCLUSIONS = "exclusionsMatchCriterion";
 
+  /**
+   * Optional path of a file with the above configs. It is checked for changes every {@link
+   * #SPAN_FILTER_RULES_RELOAD_INTERVAL_CONFIG} and takes precedence over the job config, so that
+   * rules can be changed without a restart.
+   */
+  private static final String SPAN_FILTER_RULES_FILE_CONFIG = "processor.spanFilterRulesFile";
+
+  private static final String SPAN_FILTER_RULES_RELOAD_INTERVAL_CONFIG =
+      "processor.spanFilterRulesReloadInterval";
+  private static final Duration DEFAULT_SPAN_FILTER_RULES_RELOAD_INTERVAL = Duration.ofSeconds(30);
+
   private static final String COMMA = ",";
   private static final String COLON = ":";
 
-  private List<List<Pair<String, String>>> spanDropCriterion = Collections.emptyList();
-  private List<List<SpanDropFilter>> spanDropFilters = Collections.emptyList();
-  ;
-  private boolean alwaysDropRootSpan = false;
-  private List<List<Pair<String, String>>> rootSpanDropExclusionCriterion = Collections.emptyList();
+  private final Supplier<CompiledRules> compiledRules;
 
   public SpanFilter(Config config) {
-    if (config.hasPath(SPAN_DROP_CRITERION_CONFIG)) {
-      List<String> criterion = config.getStringList(SPAN_DROP_CRITERION_CONFIG);
-      LOG.info("Span drop criterion: {}", criterion);
-      // Parse the config to see if there is any criteria to drop spans.
-      this.spanDropCriterion = parseStringList(criterion);
+    if (config.hasPath(SPAN_FILTER_RULES_FILE_CONFIG)) {
+      ReloadableConfigFile<CompiledRules> rulesFile =
+          new ReloadableConfigFile<>(
+              Path.of(config.getString(SPAN_FILTER_RULES_FILE_CONFIG)),
+              config.hasPath(SPAN_FILTER_RULES_RELOAD_INTERVAL_CONFIG)
+                  ? config.getDuration(SPAN_FILTER_RULES_RELOAD_INTERVAL_CONFIG)
+                  : DEFAULT_SPAN_FILTER_RULES_RELOAD_INTERVAL,
+              config,
+              CompiledRules::new);
+      this.compiledRules = rulesFile::get;
+    } else {
+      CompiledRules rules = new CompiledRules(config);
+      this.compiledRules = () -> rules;
     }
+  }
+
+  /** The span drop configs compiled into {@link SpanFilterRules}. */
+  private static final class CompiledRules {
+    private SpanFilterRules.RuleSet spanDropCriterion = SpanFilterRules.EMPTY;
+    private SpanFilterRules.RuleSet spanDropFilters = SpanFilterRules.EMPTY;
+    private boolean alwaysDropRootSpan = false;
+    private SpanFilterRules.RuleSet rootSpanDropExclusionCriterion = SpanFilterRules.EMPTY;
+
+    private CompiledRules(Config config) {
+      if (config.hasPath(SPAN_DROP_CRITERION_CONFIG)) {
+        List<String> criterion = config.getStringList(SPAN_DROP_CRITERION_CONFIG);
+        LOG.info("Span drop criterion: {}", criterion);
+        // Parse the config to see if there is any criteria to drop spans.
+        this.spanDropCriterion =
+            compileCriterion(SPAN_DROP_CRITERION_CONFIG, parseStringList(criterion));
+      }
 
-    if (config.hasPath(SPAN_DROP_FILTERS)) {
-      ConfigList spanDropFiltersConfig = config.getList(SPAN_DROP_FILTERS);
-      LOG.info("Span drop filters: {}", spanDropFiltersConfig);
-      this.spanDropFilters =
-          spanDropFiltersConfig.stream()
-              .map(
-                  orFilters -> {
-                    List<HashMap<String, String>> andFilters =
-                        (List<HashMap<String, String>>) orFilters.unwrapped();
-                    return andFilters.stream()
-                        .map(
-                            filter ->
-                                new SpanDropFilter(
-                                    filter.get(TAG_KEY),
-                                    filter.get(OPERATOR),
-                                    filter.get(TAG_VALUE)))
-                        .collect(Collectors.toList());
-                  })
-              .collect(Collectors.toList());
+      if (config.hasPath(SPAN_DROP_FILTERS)) {
+        ConfigList spanDropFiltersConfig = config.getList(SPAN_DROP_FILTERS);
+        LOG.info("Span drop filters: {}", spanDropFiltersConfig);
+        List<SpanFilterRules.Rule> rules = new ArrayList<>();
+        for (int i = 0; i < spanDropFiltersConfig.size(); i++) {
+          List<HashMap<String, String>> andFilters =
+              (List<HashMap<String, String>>) spanDropFiltersConfig.get(i).unwrapped();
+          rules.add(
+              new SpanFilterRules.Rule(
+                  SPAN_DROP_FILTERS,
+                  andFilters.stream()
+                      .map(
+                          filter ->
+                              new SpanDropFilter(
+                                  filter.get(TAG_KEY), filter.get(OPERATOR), filter.get(TAG_VALUE)))
+                      .map(
+                          filter ->
+                              new SpanFilterRules.Predicate(
+                                  filter.getTagKey(),
+                                  filter.getOperator(),
+                                  filter.getTagValue(),
+                                  true))
+                      .collect(Collectors.toList())));
+        }
+        this.spanDropFilters = new SpanFilterRules.RuleSet(rules);
+      }
+
+      if (config.hasPath(ROOT_SPAN_DROP_CRITERION_CONFIG)) {
+        Config rootSpanDropCriterionConfig = config.getConfig(ROOT_SPAN_DROP_CRITERION_CONFIG);
+        LOG.info("Root Span drop criterion: {}", rootSpanDropCriterionConfig);
+        this.alwaysDropRootSpan =
+            rootSpanDropCriterionConfig.hasPath(ROOT_SPAN_ALWAYS_DROP)
+                && rootSpanDropCriterionConfig.getBoolean(ROOT_SPAN_ALWAYS_DROP);
+        List<String> exclusionList =
+            rootSpanDropCriterionConfig.hasPath(ROOT_SPAN_DROP_EXCLUSIONS)
+                ? rootSpanDropCriterionConfig.getStringList(ROOT_SPAN_DROP_EXCLUSIONS)
+                : Collections.emptyList();
+        // Parse the config to see if there is any criteria to drop spans.
+        this.rootSpanDropExclusionCriterion =
+            compileCriterion(ROOT_SPAN_DROP_CRITERION_CONFIG, parseStringList(exclusionList));
+      }
     }
+  }
 
-    if (config.hasPath(ROOT_SPAN_DROP_CRITERION_CONFIG)) {
-      Config rootSpanDropCriterionConfig = config.getConfig(ROOT_SPAN_DROP_CRITERION_CONFIG);
-      LOG.info("Root Span drop criterion: {}", rootSpanDropCriterionConfig);
-      this.alwaysDropRootSpan =
-          rootSpanDropCriterionConfig.hasPath(ROOT_SPAN_ALWAYS_DROP)
-              && rootSpanDropCriterionConfig.getBoolean(ROOT_SPAN_ALWAYS_DROP);
-      List<String> exclusionList =
-          rootSpanDropCriterionConfig.hasPath(ROOT_SPAN_DROP_EXCLUSIONS)
-              ? rootSpanDropCriterionConfig.getStringList(ROOT_SPAN_DROP_EXCLUSIONS)
-              : Collections.emptyList();
-      // Parse the config to see if there is any criteria to drop spans.
-      this.rootSpanDropExclusionCriterion = parseStringList(exclusionList);
+  private static SpanFilterRules.RuleSet compileCriterion(
+      String configKey, List<List<Pair<String, String>>> criterion) {
+    List<SpanFilterRules.Rule> rules = new ArrayList<>();
+    for (List<Pair<String, String>> criteria : criterion) {
+      rules.add(
+          new SpanFilterRules.Rule(
+              configKey,
+              criteria.stream()
+                  .map(
+                      pair ->
+                          new SpanFilterRules.Predicate(
+                              pair.getLeft(), Operator.EQ, pair.getRight(), false))
+                  .collect(Collectors.toList())));
     }
+    return new SpanFilterRules.RuleSet(rules);
   }
 
-  private List<List<Pair<String, String>>> parseStringList(List<String> stringList) {
+  private static List<List<Pair<String, String>>> parseStringList(List<String> stringList) {
     return stringList.stream()
         // Split each criteria based on comma
         .map(s -> s.split(COMMA))
         .map(
             a ->
                 Arrays.stream(a)
-                    .map(this::convertToPair)
+                    .map(SpanFilter::convertToPair)
                     .filter(Objects::nonNull)
                     .collect(Collectors.toList()))
         .collect(Collectors.toList());
@@ -122,30 +184,45 @@ public class SpanFilter {
       JaegerSpanInternalModel.Span span,
       Map<String, JaegerSpanInternalModel.KeyValue> tags,
       Map<String, JaegerSpanInternalModel.KeyValue> processTags) {
-    if (anyCriteriaMatch(tags, spanDropCriterion)) {
+    return shouldDropSpan(LazyJaegerSpan.of(span), tags, processTags);
+  }
+
+  /** Same as above, for a span that may not be fully decoded yet. */
+  public boolean shouldDropSpan(
+      LazyJaegerSpan span,
+      Map<String, JaegerSpanInternalModel.KeyValue> tags,
+      Map<String, JaegerSpanInternalModel.KeyValue> processTags) {
+    CompiledRules rules = compiledRules.get();
+    SpanFilterRules.Rule matchedRule = rules.spanDropCriterion.findMatch(tags, processTags);
+    if (matchedRule != null) {
+      matchedRule.recordHit();
       if (DROPPED_SPANS_RATE_LIMITER.tryAcquire()) {
-        LOG.info("Dropping span: [{}] with drop criterion: [{}]", span, spanDropCriterion);
+        LOG.info("Dropping span: [{}] with drop criterion: [{}]", span, matchedRule);
       }
       return true;
     }
 
-    if (anySpanDropFiltersMatch(spanDropFilters, tags, processTags)) {
+    matchedRule = rules.spanDropFilters.findMatch(tags, processTags);
+    if (matchedRule != null) {
+      matchedRule.recordHit();
       if (LOG.isDebugEnabled() && DROPPED_SPANS_RATE_LIMITER.tryAcquire()) {
-        LOG.debug("Dropping span: [{}] with drop filters: [{}]", span, spanDropFilters.toString());
+        LOG.debug("Dropping span: [{}] with drop filters: [{}]", span, matchedRule);
       }
       return true;
     }
 
     if (isRootExitSpan(span, tags)) {
-      boolean anyCriteriaMatch = anyCriteriaMatch(tags, rootSpanDropExclusionCriterion);
+      boolean anyCriteriaMatch =
+          rules.rootSpanDropExclusionCriterion.findMatch(tags, processTags) != null;
       boolean shouldDropSpan =
-          (alwaysDropRootSpan && !anyCriteriaMatch) || (!alwaysDropRootSpan && anyCriteriaMatch);
+          (rules.alwaysDropRootSpan && !anyCriteriaMatch)
+              || (!rules.alwaysDropRootSpan && anyCriteriaMatch);
       if (shouldDropSpan && DROPPED_SPANS_RATE_LIMITER.tryAcquire()) {
         LOG.info(
-            "Dropping root exit span: [{}] alwaysDropRootSpan: [{}] exclusionCriterion: [{}]",
+            "Dropping root exit span: [{}] alwaysDropRootSpan: [{}] exclusionMatched: [{}]",
             span,
-            alwaysDropRootSpan,
-            rootSpanDropExclusionCriterion);
+            rules.alwaysDropRootSpan,
+            anyCriteriaMatch);
       }
       return shouldDropSpan;
     }
@@ -153,7 +230,7 @@ public class SpanFilter {
   }
 
   @Nullable
-  private Pair<String, String> convertToPair(String s) {
+  private static Pair<String, String> convertToPair(String s) {
     if (s != null && s.contains(COLON)) {
       int colonIndex = s.indexOf(COLON);
       return Pair.of(s.substring(0, colonIndex), s.substring(colonIndex + 1));
@@ -161,23 +238,9 @@ public class SpanFilter {
     return null;
   }
 
-  private boolean anyCriteriaMatch(
-      Map<String, JaegerSpanInternalModel.KeyValue> tags,
-      List<List<Pair<String, String>>> criteriaList) {
-    return criteriaList.stream()
-        .anyMatch(
-            l ->
-                l.stream()
-                    .allMatch(
-                        p ->
-                            tags.containsKey(p.getLeft())
-                                && StringUtils.equals(
-                                    tags.get(p.getLeft()).getVStr(), p.getRight())));
-  }
-
   private boolean isRootExitSpan(
-      JaegerSpanInternalModel.Span span, Map<String, JaegerSpanInternalModel.KeyValue> tags) {
-    if (!span.getReferencesList().isEmpty()) {
+      LazyJaegerSpan span, Map<String, JaegerSpanInternalModel.KeyValue> tags) {
+    if (span.hasReferences()) {
       return false;
     }
     JaegerSpanInternalModel.KeyValue spanKindKeyValue = tags.get(SPAN_KIND_TAG);
@@ -187,37 +250,4 @@ public class SpanFilter {
 
     return SPAN_KIND_CLIENT.equals(spanKindKeyValue.getVStr());
   }
-
-  private boolean anySpanDropFiltersMatch(
-      List<List<SpanDropFilter>> spanDropFilters,
-      Map<String, JaegerSpanInternalModel.KeyValue> tags,
-      Map<String, JaegerSpanInternalModel.KeyValue> processTags) {
-    return spanDropFilters.stream()
-        .anyMatch(
-            andFilters ->
-                andFilters.stream()
-                    .allMatch(
-                        filter ->
-                            matchSpanDropFilter(filter, tags)
-                                || matchSpanDropFilter(filter, processTags)));
-  }
-
-  private boolean matchSpanDropFilter(
-      SpanDropFilter filter, Map<String, JaegerSpanInternalModel.KeyValue> tags) {
-    switch (filter.getOperator()) {
-      case EQ:
-        return tags.containsKey(filter.getTagKey())
-            && StringUtils.equals(tags.get(filter.getTagKey()).getVStr(), filter.getTagValue());
-      case NEQ:
-        return tags.containsKey(filter.getTagKey())
-            && !StringUtils.equals(tags.get(filter.getTagKey()).getVStr(), filter.getTagValue());
-      case CONTAINS:
-        return tags.containsKey(filter.getTagKey())
-            && StringUtils.contains(tags.get(filter.getTagKey()).getVStr(), filter.getTagValue());
-      case EXISTS:
-        return tags.containsKey(filter.getTagKey());
-      default:
-        return false;
-    }
-  }
 }
@@ -0,0 +1,208 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import io.micrometer.core.instrument.Counter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+import org.hypertrace.core.spannormalizer.jaeger.SpanDropFilter.Operator;
+
+/**
+ * Span drop rules compiled once from the {@link SpanFilter} config. A rule is an AND of tag
+ * predicates and a rule set matches if any of its rules matches:
+ *
+ * <ul>
+ *   <li>rules with a single EQ predicate are indexed by tag key and value, so they are matched
+ *       with one lookup per distinct tag key instead of one comparison per rule
+ *   <li>the other rules are evaluated cheapest first, with their cheapest predicates first, so that
+ *       a rule is rejected before any CONTAINS scan where possible
+ * </ul>
+ */
+final class SpanFilterRules {
+
+  private static final String RULE_HITS_COUNTER = "hypertrace.span.filter.rule.hits";
+  private static final ConcurrentMap<String, Counter> ruleHitsCounter = new ConcurrentHashMap<>();
+
+  static final RuleSet EMPTY = new RuleSet(Collections.emptyList());
+
+  private SpanFilterRules() {}
+
+  static final class RuleSet {
+    // rules with a single EQ predicate: tag key -> tag value -> rule
+    private final Map<String, Map<String, Rule>> eqRules = new HashMap<>();
+    private final Map<String, Map<String, Rule>> eqRulesWithProcessTags = new HashMap<>();
+    private final List<Rule> rules = new ArrayList<>();
+
+    RuleSet(List<Rule> compiledRules) {
+      for (Rule rule : compiledRules) {
+        if (rule.predicates.size() == 1 && rule.predicates.get(0).operator == Operator.EQ) {
+          Predicate predicate = rule.predicates.get(0);
+          (predicate.includeProcessTags ? eqRulesWithProcessTags : eqRules)
+              .computeIfAbsent(predicate.tagKey, k -> new HashMap<>())
+              // the first of duplicate rules is reported, as it would have matched first
+              .putIfAbsent(predicate.tagValue, rule);
+        } else {
+          rules.add(rule);
+        }
+      }
+      rules.sort(Comparator.comparingInt(Rule::getCost));
+    }
+
+    boolean isEmpty() {
+      return eqRules.isEmpty() && eqRulesWithProcessTags.isEmpty() && rules.isEmpty();
+    }
+
+    /** Returns the first matching rule, or null if no rule matches. */
+    Rule findMatch(Map<String, KeyValue> tags, Map<String, KeyValue> processTags) {
+      Rule rule = findEqMatch(eqRules, tags);
+      if (rule != null) {
+        return rule;
+      }
+      rule = findEqMatch(eqRulesWithProcessTags, tags);
+      if (rule != null) {
+        return rule;
+      }
+      rule = findEqMatch(eqRulesWithProcessTags, processTags);
+      if (rule != null) {
+        return rule;
+      }
+      for (Rule candidate : rules) {
+        if (candidate.matches(tags, processTags)) {
+          return candidate;
+        }
+      }
+      return null;
+    }
+
+    private static Rule findEqMatch(
+        Map<String, Map<String, Rule>> eqRules, Map<String, KeyValue> tags) {
+      for (Map.Entry<String, Map<String, Rule>> entry : eqRules.entrySet()) {
+        KeyValue tag = tags.get(entry.getKey());
+        if (tag != null) {
+          Rule rule = entry.getValue().get(tag.getVStr());
+          if (rule != null) {
+            return rule;
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * An AND of tag predicates. It is named after its config key and predicates, so that its hit
+   * counter keeps reporting the same series when other rules are added, removed or reordered.
+   */
+  static final class Rule {
+    private final String name;
+    private final List<Predicate> predicates;
+    private final int cost;
+
+    Rule(String configKey, List<Predicate> predicates) {
+      this.name =
+          configKey
+              + ": "
+              + predicates.stream()
+                  .map(Predicate::toString)
+                  .sorted()
+                  .collect(Collectors.joining(" AND "));
+      this.predicates = new ArrayList<>(predicates);
+      this.predicates.sort(Comparator.comparingInt(Predicate::getCost));
+      this.cost = this.predicates.stream().mapToInt(Predicate::getCost).sum();
+    }
+
+    private boolean matches(Map<String, KeyValue> tags, Map<String, KeyValue> processTags) {
+      for (Predicate predicate : predicates) {
+        if (!predicate.matches(tags, processTags)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void recordHit() {
+      ruleHitsCounter
+          .computeIfAbsent(
+              name,
+              k -> PlatformMetricsRegistry.registerCounter(RULE_HITS_COUNTER, Map.of("rule", k)))
+          .increment();
+    }
+
+    String getName() {
+      return name;
+    }
+
+    private int getCost() {
+      return cost;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /**
+   * A predicate on the string value of a tag. Predicates of span drop filters also match on process
+   * tags, those of the span drop criterion only on span tags.
+   */
+  static final class Predicate {
+    private final String tagKey;
+    private final Operator operator;
+    private final String tagValue;
+    private final boolean includeProcessTags;
+
+    Predicate(String tagKey, Operator operator, String tagValue, boolean includeProcessTags) {
+      this.tagKey = tagKey;
+      this.operator = operator;
+      this.tagValue = tagValue;
+      this.includeProcessTags = includeProcessTags;
+    }
+
+    private boolean matches(Map<String, KeyValue> tags, Map<String, KeyValue> processTags) {
+      return matches(tags.get(tagKey)) || (includeProcessTags && matches(processTags.get(tagKey)));
+    }
+
+    private boolean matches(KeyValue tag) {
+      if (tag == null) {
+        return false;
+      }
+      switch (operator) {
+        case EXISTS:
+          return true;
+        case EQ:
+          return tag.getVStr().equals(tagValue);
+        case NEQ:
+          return !tag.getVStr().equals(tagValue);
+        case CONTAINS:
+          return tagValue != null && tag.getVStr().contains(tagValue);
+        default:
+          return false;
+      }
+    }
+
+    private int getCost() {
+      switch (operator) {
+        case EXISTS:
+          return 0;
+        case EQ:
+        case NEQ:
+          return 1;
+        default:
+          return 2;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return tagKey + " " + operator + " " + tagValue;
+    }
+  }
+}
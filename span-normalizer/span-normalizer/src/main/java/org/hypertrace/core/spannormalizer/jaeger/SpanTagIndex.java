@@ -0,0 +1,47 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indexes Jaeger tags by their lowercase key. The {@link JaegerSpanPreProcessor} builds the index
+ * once per span and the {@link PreProcessedSpan} carries it to the later stages, so that tenant
+ * resolution, span filtering and normalization do not lowercase and collect the tags again.
+ */
+public final class SpanTagIndex {
+
+  // tag keys are sent by clients, so only the first keys seen are cached
+  private static final int MAX_CACHED_KEYS = 10_000;
+  private static final ConcurrentMap<String, String> LOWERCASE_KEYS = new ConcurrentHashMap<>();
+
+  private SpanTagIndex() {}
+
+  /** Returns the tags keyed by lowercase key, the last tag wins if keys collide. */
+  public static Map<String, KeyValue> of(List<KeyValue> tags) {
+    Map<String, KeyValue> index = new HashMap<>((int) (tags.size() / 0.75f) + 1);
+    for (KeyValue tag : tags) {
+      index.put(toLowerCase(tag.getKey()), tag);
+    }
+    return Collections.unmodifiableMap(index);
+  }
+
+  /**
+   * Lowercases a tag key. The set of tag names is small in practice, so the lowercase keys are
+   * cached and shared by all spans instead of being created again for every span.
+   */
+  public static String toLowerCase(String key) {
+    String lowerCaseKey = LOWERCASE_KEYS.get(key);
+    if (lowerCaseKey == null) {
+      lowerCaseKey = key.toLowerCase();
+      if (LOWERCASE_KEYS.size() < MAX_CACHED_KEYS) {
+        LOWERCASE_KEYS.putIfAbsent(key, lowerCaseKey);
+      }
+    }
+    return lowerCaseKey;
+  }
+}
@@ -2,14 +2,16 @@ package org.hypertrace.core.spannormalizer.jaeger;
 
 import com.typesafe.config.Config;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
-import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import org.hypertrace.core.spannormalizer.jaeger.tenant.DefaultTenantIdProvider;
 import org.hypertrace.core.spannormalizer.jaeger.tenant.JaegerKeyBasedTenantIdProvider;
 import org.hypertrace.core.spannormalizer.jaeger.tenant.TenantIdProvider;
+import org.hypertrace.core.spannormalizer.jaeger.tenant.TenantPolicy;
+import org.hypertrace.core.spannormalizer.jaeger.tenant.TenantPolicy.Decision;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.hypertrace.tenant.metrics.utils.TenantSlots;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,23 +28,26 @@ public class TenantIdHandler {
    */
   private static final String DEFAULT_TENANT_ID_CONFIG = "processor.defaultTenantId";
 
-  // list of tenant ids to exclude
-  private static final String TENANT_IDS_TO_EXCLUDE_CONFIG = "processor.excludeTenantIds";
+  private static final String SHED_SPANS_COUNTER = "hypertrace.reported.spans.shed";
+
+  private static final Map<Decision, TenantCounter> tenantToSpansShedCount =
+      Map.of(
+          Decision.NOT_ALLOWED,
+          TenantCounter.of(SHED_SPANS_COUNTER, Map.of("reason", "not_allowed")),
+          Decision.EXCLUDED,
+          TenantCounter.of(SHED_SPANS_COUNTER, Map.of("reason", "excluded")));
 
   private final TenantIdProvider tenantIdProvider;
-  private final List<String> tenantIdsToExclude;
+  private final Supplier<TenantPolicy> tenantPolicy;
 
   public TenantIdHandler(Config config) {
-    this.tenantIdProvider = getTenantIdProvider(config);
-
-    this.tenantIdsToExclude =
-        config.hasPath(TENANT_IDS_TO_EXCLUDE_CONFIG)
-            ? config.getStringList(TENANT_IDS_TO_EXCLUDE_CONFIG)
-            : Collections.emptyList();
+    this(config, TenantPolicy.supplier(config));
+  }
 
-    if (!this.tenantIdsToExclude.isEmpty()) {
-      LOG.info("list of tenant ids to exclude : {}", this.tenantIdsToExclude);
-    }
+  // constructor for testing, with a policy that can be changed by the test
+  TenantIdHandler(Config config, Supplier<TenantPolicy> tenantPolicy) {
+    this.tenantIdProvider = getTenantIdProvider(config);
+    this.tenantPolicy = tenantPolicy;
   }
 
   private TenantIdProvider getTenantIdProvider(Config config) {
@@ -85,7 +90,9 @@ public class TenantIdHandler {
   }
 
   Optional<String> getAllowedTenantId(
-      Span jaegerSpan, Map<String, KeyValue> spanTags, Map<String, KeyValue> processTags) {
+      LazyJaegerSpan jaegerSpan,
+      Map<String, KeyValue> spanTags,
+      Map<String, KeyValue> processTags) {
     Optional<String> maybeTenantId = this.tenantIdProvider.getTenantId(spanTags, processTags);
 
     if (maybeTenantId.isEmpty()) {
@@ -95,14 +102,21 @@ public class TenantIdHandler {
 
     String tenantId = maybeTenantId.get();
 
-    if (this.tenantIdsToExclude.contains(tenantId)) {
-      LOG.debug("Dropping span for tenant id : {}", tenantId);
+    Decision decision = tenantPolicy.get().checkSpan(tenantId);
+    if (decision != Decision.ACCEPTED) {
+      LOG.debug("Dropping span for tenant id : {}, decision : {}", tenantId, decision);
+      tenantToSpansShedCount.get(decision).increment(TenantSlots.slotOf(tenantId));
       return Optional.empty();
     }
 
     return Optional.of(tenantId);
   }
 
+  /** The sample rate of the tenant in the current tenant policy. */
+  double getSampleRate(String tenantId) {
+    return tenantPolicy.get().getSampleRate(tenantId);
+  }
+
   TenantIdProvider getTenantIdProvider() {
     return tenantIdProvider;
   }
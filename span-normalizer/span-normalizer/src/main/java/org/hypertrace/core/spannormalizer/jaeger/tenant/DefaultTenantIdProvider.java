@@ -1,10 +1,10 @@
 package org.hypertrace.core.spannormalizer.jaeger.tenant;
 
 import com.google.common.util.concurrent.RateLimiter;
-import io.jaegertracing.api_v2.JaegerSpanInternalModel;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
 import java.util.Map;
 import java.util.Optional;
+import org.hypertrace.core.spannormalizer.jaeger.LazyJaegerSpan;
 import org.slf4j.Logger;
 
 /** Implementation of {@link TenantIdProvider} which returns the given default tenant id always. */
@@ -29,7 +29,7 @@ public class DefaultTenantIdProvider implements TenantIdProvider {
   }
 
   @Override
-  public void logWarning(Logger logger, JaegerSpanInternalModel.Span span) {
+  public void logWarning(Logger logger, LazyJaegerSpan span) {
     if (LOG_LIMITER.tryAcquire()) {
       logger.warn("Dropping span without tenant id. defaultTenantId: {}", defaultTenantId);
     }
@@ -2,9 +2,9 @@ package org.hypertrace.core.spannormalizer.jaeger.tenant;
 
 import com.google.common.util.concurrent.RateLimiter;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
-import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
 import java.util.Map;
 import java.util.Optional;
+import org.hypertrace.core.spannormalizer.jaeger.LazyJaegerSpan;
 import org.slf4j.Logger;
 
 /**
@@ -43,7 +43,7 @@ public class JaegerKeyBasedTenantIdProvider implements TenantIdProvider {
   }
 
   @Override
-  public void logWarning(Logger logger, Span span) {
+  public void logWarning(Logger logger, LazyJaegerSpan span) {
     if (LOG_LIMITER.tryAcquire()) {
       logger.warn(
           "Dropping span without tenant id. tenantIdTagKey: {}, span: {}", tenantIdKey, span);
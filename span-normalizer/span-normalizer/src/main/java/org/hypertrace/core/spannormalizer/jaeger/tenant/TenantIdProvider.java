@@ -1,9 +1,9 @@
 package org.hypertrace.core.spannormalizer.jaeger.tenant;
 
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
-import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
 import java.util.Map;
 import java.util.Optional;
+import org.hypertrace.core.spannormalizer.jaeger.LazyJaegerSpan;
 import org.slf4j.Logger;
 
 public interface TenantIdProvider {
@@ -12,5 +12,5 @@ public interface TenantIdProvider {
 
   Optional<String> getTenantId(Map<String, KeyValue> spanTags, Map<String, KeyValue> processTags);
 
-  void logWarning(Logger logger, Span span);
+  void logWarning(Logger logger, LazyJaegerSpan span);
 }
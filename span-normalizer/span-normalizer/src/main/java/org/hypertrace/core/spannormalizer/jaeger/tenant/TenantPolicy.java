@@ -0,0 +1,159 @@
+package org.hypertrace.core.spannormalizer.jaeger.tenant;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigUtil;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.hypertrace.core.spannormalizer.util.ReloadableConfigFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Which tenants are ingested, at which sample rate, and whether their span logs are kept. A policy
+ * is immutable, use {@link #supplier(Config)} to get the current policy of a job, which is reloaded
+ * from {@link #TENANT_POLICY_FILE_CONFIG} if it is set, so that a noisy tenant can be shed without
+ * a restart.
+ */
+public final class TenantPolicy {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TenantPolicy.class);
+
+  /** The tenants whose spans are ingested, all tenants that aren't excluded if not set. */
+  private static final String TENANT_IDS_TO_ALLOW_CONFIG = "processor.allowTenantIds";
+
+  private static final String TENANT_IDS_TO_EXCLUDE_CONFIG = "processor.excludeTenantIds";
+  private static final String TENANT_IDS_TO_EXCLUDE_LOGS_CONFIG = "processor.excludeLogsTenantIds";
+
+  /**
+   * Map of tenant id to the fraction of its traces that are ingested, between 0 and 1. The traces
+   * are sampled by the {@link org.hypertrace.core.spannormalizer.sampling.TraceSampler}, along with
+   * its own rates.
+   */
+  private static final String TENANT_SAMPLE_RATES_CONFIG = "processor.tenantSampleRates";
+
+  /**
+   * Optional path of a file with the above configs. It is checked for changes every {@link
+   * #TENANT_POLICY_RELOAD_INTERVAL_CONFIG} and takes precedence over the job config.
+   */
+  private static final String TENANT_POLICY_FILE_CONFIG = "processor.tenantPolicyFile";
+
+  private static final String TENANT_POLICY_RELOAD_INTERVAL_CONFIG =
+      "processor.tenantPolicyReloadInterval";
+  private static final Duration DEFAULT_TENANT_POLICY_RELOAD_INTERVAL = Duration.ofSeconds(10);
+
+  private static final double MAX_SAMPLE_RATE = 1.0;
+
+  // one reloader per policy file, shared by the transformers of the job
+  private static final Map<Path, ReloadableConfigFile<TenantPolicy>> POLICY_FILES =
+      new ConcurrentHashMap<>();
+
+  /** The result of {@link #checkSpan}. */
+  public enum Decision {
+    ACCEPTED,
+    NOT_ALLOWED,
+    EXCLUDED
+  }
+
+  // empty if all tenants are allowed
+  private final Set<String> allowedTenantIds;
+  private final Set<String> excludedTenantIds;
+  private final Set<String> logsExcludedTenantIds;
+  private final Map<String, Double> sampleRates;
+
+  public TenantPolicy(Config config) {
+    this.allowedTenantIds = getStringSet(config, TENANT_IDS_TO_ALLOW_CONFIG);
+    this.excludedTenantIds = getStringSet(config, TENANT_IDS_TO_EXCLUDE_CONFIG);
+    this.logsExcludedTenantIds = getStringSet(config, TENANT_IDS_TO_EXCLUDE_LOGS_CONFIG);
+    this.sampleRates = getSampleRates(config);
+
+    if (!allowedTenantIds.isEmpty()) {
+      LOG.info("set of tenant ids to allow : {}", allowedTenantIds);
+    }
+    if (!excludedTenantIds.isEmpty()) {
+      LOG.info("set of tenant ids to exclude : {}", excludedTenantIds);
+    }
+    if (!logsExcludedTenantIds.isEmpty()) {
+      LOG.info("set of tenant ids to exclude logs of : {}", logsExcludedTenantIds);
+    }
+    if (!sampleRates.isEmpty()) {
+      LOG.info("tenant sample rates : {}", sampleRates);
+    }
+  }
+
+  /**
+   * Returns the policy of the job config, which is reloaded from the policy file if one is
+   * configured. The suppliers of the same policy file share a single reloader, created with the
+   * job config of the first supplier.
+   */
+  public static Supplier<TenantPolicy> supplier(Config config) {
+    if (config.hasPath(TENANT_POLICY_FILE_CONFIG)) {
+      ReloadableConfigFile<TenantPolicy> policyFile =
+          POLICY_FILES.computeIfAbsent(
+              Path.of(config.getString(TENANT_POLICY_FILE_CONFIG)),
+              path ->
+                  new ReloadableConfigFile<>(
+                      path,
+                      config.hasPath(TENANT_POLICY_RELOAD_INTERVAL_CONFIG)
+                          ? config.getDuration(TENANT_POLICY_RELOAD_INTERVAL_CONFIG)
+                          : DEFAULT_TENANT_POLICY_RELOAD_INTERVAL,
+                      config,
+                      TenantPolicy::new));
+      return policyFile::get;
+    }
+    TenantPolicy policy = new TenantPolicy(config);
+    return () -> policy;
+  }
+
+  /** Decides whether the spans of the tenant are ingested, before they are sampled. */
+  public Decision checkSpan(String tenantId) {
+    if (!allowedTenantIds.isEmpty() && !allowedTenantIds.contains(tenantId)) {
+      return Decision.NOT_ALLOWED;
+    }
+    if (excludedTenantIds.contains(tenantId)) {
+      return Decision.EXCLUDED;
+    }
+    return Decision.ACCEPTED;
+  }
+
+  /** The fraction of the traces of the tenant that are ingested, 1 if not set. */
+  public double getSampleRate(String tenantId) {
+    return sampleRates.getOrDefault(tenantId, MAX_SAMPLE_RATE);
+  }
+
+  public boolean isLogsEnabled(String tenantId) {
+    return !logsExcludedTenantIds.contains(tenantId);
+  }
+
+  private static Set<String> getStringSet(Config config, String path) {
+    if (!config.hasPath(path)) {
+      return Collections.emptySet();
+    }
+    List<String> values = config.getStringList(path);
+    return values.isEmpty() ? Collections.emptySet() : Set.copyOf(values);
+  }
+
+  private static Map<String, Double> getSampleRates(Config config) {
+    if (!config.hasPath(TENANT_SAMPLE_RATES_CONFIG)) {
+      return Collections.emptyMap();
+    }
+    Config sampleRatesConfig = config.getConfig(TENANT_SAMPLE_RATES_CONFIG);
+    Map<String, Double> sampleRates = new HashMap<>();
+    // the root keys, quoted, so that a tenant id with dots is read as a single key
+    for (String tenantId : sampleRatesConfig.root().keySet()) {
+      double sampleRate = sampleRatesConfig.getDouble(ConfigUtil.joinPath(tenantId));
+      if (sampleRate < 0 || sampleRate > MAX_SAMPLE_RATE) {
+        throw new IllegalArgumentException(
+            "Sample rate of tenant " + tenantId + " must be between 0 and 1: " + sampleRate);
+      }
+      sampleRates.put(tenantId, sampleRate);
+    }
+    return Map.copyOf(sampleRates);
+  }
+}
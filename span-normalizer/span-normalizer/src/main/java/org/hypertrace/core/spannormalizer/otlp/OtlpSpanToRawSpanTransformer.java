@@ -0,0 +1,110 @@
+package org.hypertrace.core.spannormalizer.otlp;
+
+import static org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants.SPAN_NORMALIZER_JOB_CONFIG;
+
+import com.typesafe.config.Config;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.trace.v1.InstrumentationLibrarySpans;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.To;
+import org.hypertrace.core.datamodel.LogEvents;
+import org.hypertrace.core.datamodel.RawSpan;
+import org.hypertrace.core.datamodel.Resource;
+import org.hypertrace.core.spannormalizer.TraceIdentity;
+import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanNormalizer;
+import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanPreProcessor;
+import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanToAvroRawSpanTransformer;
+import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanToLogRecordsTransformer;
+import org.hypertrace.core.spannormalizer.jaeger.LazyJaegerSpan;
+import org.hypertrace.core.spannormalizer.jaeger.PreProcessedSpan;
+import org.hypertrace.core.spannormalizer.jaeger.SpanTagIndex;
+
+/**
+ * Normalizes batches of OTLP spans to the same raw spans and log events as the Jaeger path, without
+ * the spans being converted to Jaeger and re-encoded by the collector first. The resource of a
+ * batch is converted, indexed and normalized once for all of its spans; the spans then go through
+ * the same pre-processing and normalization as Jaeger spans. The records are forwarded to the sink
+ * nodes named {@link #RAW_SPANS_SINK} and {@link #RAW_LOGS_SINK}.
+ */
+public class OtlpSpanToRawSpanTransformer
+    implements Transformer<byte[], ExportTraceServiceRequest, KeyValue<Object, Object>> {
+
+  public static final String RAW_SPANS_SINK = "otlp-raw-spans-sink";
+  public static final String RAW_LOGS_SINK = "otlp-raw-logs-sink";
+
+  private final JaegerSpanPreProcessor preProcessor = new JaegerSpanPreProcessor();
+  private final JaegerSpanToAvroRawSpanTransformer rawSpanTransformer =
+      new JaegerSpanToAvroRawSpanTransformer();
+  private final JaegerSpanToLogRecordsTransformer logRecordsTransformer =
+      new JaegerSpanToLogRecordsTransformer();
+  private final To toRawSpans = To.child(RAW_SPANS_SINK);
+  private final To toRawLogs = To.child(RAW_LOGS_SINK);
+  private JaegerSpanNormalizer normalizer;
+  private ProcessorContext context;
+
+  @Override
+  public void init(ProcessorContext context) {
+    this.context = context;
+    Config jobConfig = (Config) context.appConfigs().get(SPAN_NORMALIZER_JOB_CONFIG);
+    normalizer = JaegerSpanNormalizer.get(jobConfig);
+    preProcessor.init(context);
+    rawSpanTransformer.init(context);
+    logRecordsTransformer.init(context);
+  }
+
+  @Override
+  public KeyValue<Object, Object> transform(byte[] key, ExportTraceServiceRequest value) {
+    for (ResourceSpans resourceSpans : value.getResourceSpansList()) {
+      transform(key, resourceSpans);
+    }
+    return null;
+  }
+
+  private void transform(byte[] key, ResourceSpans resourceSpans) {
+    Process process = OtlpToJaegerSpanConverter.toProcess(resourceSpans.getResource());
+    Map<String, JaegerSpanInternalModel.KeyValue> processTags =
+        SpanTagIndex.of(process.getTagsList());
+    Optional<Resource> resource = normalizer.normalizeResource(process);
+
+    for (InstrumentationLibrarySpans librarySpans :
+        resourceSpans.getInstrumentationLibrarySpansList()) {
+      for (Span span : librarySpans.getSpansList()) {
+        LazyJaegerSpan jaegerSpan =
+            LazyJaegerSpan.of(
+                OtlpToJaegerSpanConverter.toJaegerSpan(
+                    span, librarySpans.getInstrumentationLibrary(), process));
+        PreProcessedSpan preProcessedSpan = preProcessor.preProcess(jaegerSpan, processTags);
+        if (preProcessedSpan == null) {
+          continue;
+        }
+        preProcessedSpan.setResource(resource);
+
+        KeyValue<TraceIdentity, RawSpan> rawSpan =
+            rawSpanTransformer.transform(key, preProcessedSpan);
+        if (rawSpan != null) {
+          context.forward(rawSpan.key, rawSpan.value, toRawSpans);
+        }
+        KeyValue<String, LogEvents> logEvents =
+            logRecordsTransformer.transform(key, preProcessedSpan);
+        if (logEvents != null) {
+          context.forward(logEvents.key, logEvents.value, toRawLogs);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    preProcessor.close();
+    rawSpanTransformer.close();
+    logRecordsTransformer.close();
+  }
+}
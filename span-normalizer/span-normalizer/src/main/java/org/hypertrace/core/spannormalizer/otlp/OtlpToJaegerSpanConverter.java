@@ -0,0 +1,269 @@
+package org.hypertrace.core.spannormalizer.otlp;
+
+import com.google.protobuf.util.Durations;
+import com.google.protobuf.util.Timestamps;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Log;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.SpanRef;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.SpanRefType;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.ValueType;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationLibrary;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Converts OTLP spans to the Jaeger model the same way the OpenTelemetry collector's Jaeger
+ * exporter does, so that a span is normalized alike whether it is ingested as OTLP or converted to
+ * Jaeger by the collector. The conversion is done on the decoded messages, without re-encoding.
+ */
+public class OtlpToJaegerSpanConverter {
+
+  static final String SERVICE_NAME_ATTRIBUTE = "service.name";
+  static final String NO_SERVICE_NAME = "OTLPResourceNoServiceName";
+  static final String SPAN_KIND_TAG = "span.kind";
+  static final String STATUS_CODE_TAG = "otel.status_code";
+  static final String STATUS_DESCRIPTION_TAG = "otel.status_description";
+  static final String ERROR_TAG = "error";
+  static final String TRACE_STATE_TAG = "w3c.tracestate";
+  static final String LIBRARY_NAME_TAG = "otel.library.name";
+  static final String LIBRARY_VERSION_TAG = "otel.library.version";
+  static final String EVENT_NAME_FIELD = "event";
+
+  private OtlpToJaegerSpanConverter() {}
+
+  /** Converts the resource of a batch of spans to the process shared by its spans. */
+  public static Process toProcess(Resource resource) {
+    Process.Builder process = Process.newBuilder();
+    for (KeyValue attribute : resource.getAttributesList()) {
+      if (SERVICE_NAME_ATTRIBUTE.equals(attribute.getKey())
+          && attribute.getValue().getValueCase() == AnyValue.ValueCase.STRING_VALUE) {
+        process.setServiceName(attribute.getValue().getStringValue());
+      } else {
+        process.addTags(toKeyValue(attribute));
+      }
+    }
+    if (process.getServiceName().isEmpty()) {
+      process.setServiceName(NO_SERVICE_NAME);
+    }
+    return process.build();
+  }
+
+  public static JaegerSpanInternalModel.Span toJaegerSpan(
+      Span span, InstrumentationLibrary instrumentationLibrary, Process process) {
+    JaegerSpanInternalModel.Span.Builder jaegerSpan =
+        JaegerSpanInternalModel.Span.newBuilder()
+            .setTraceId(span.getTraceId())
+            .setSpanId(span.getSpanId())
+            .setOperationName(span.getName())
+            .setStartTime(Timestamps.fromNanos(span.getStartTimeUnixNano()))
+            .setDuration(
+                Durations.fromNanos(span.getEndTimeUnixNano() - span.getStartTimeUnixNano()))
+            .setProcess(process);
+
+    if (!span.getParentSpanId().isEmpty()) {
+      jaegerSpan.addReferences(
+          SpanRef.newBuilder()
+              .setTraceId(span.getTraceId())
+              .setSpanId(span.getParentSpanId())
+              .setRefType(SpanRefType.CHILD_OF));
+    }
+    for (Span.Link link : span.getLinksList()) {
+      jaegerSpan.addReferences(
+          SpanRef.newBuilder()
+              .setTraceId(link.getTraceId())
+              .setSpanId(link.getSpanId())
+              .setRefType(SpanRefType.FOLLOWS_FROM));
+    }
+
+    for (KeyValue attribute : span.getAttributesList()) {
+      jaegerSpan.addTags(toKeyValue(attribute));
+    }
+    if (!instrumentationLibrary.getName().isEmpty()) {
+      jaegerSpan.addTags(stringKeyValue(LIBRARY_NAME_TAG, instrumentationLibrary.getName()));
+      if (!instrumentationLibrary.getVersion().isEmpty()) {
+        jaegerSpan.addTags(
+            stringKeyValue(LIBRARY_VERSION_TAG, instrumentationLibrary.getVersion()));
+      }
+    }
+    String spanKind = toSpanKind(span.getKind());
+    if (spanKind != null) {
+      jaegerSpan.addTags(stringKeyValue(SPAN_KIND_TAG, spanKind));
+    }
+    addStatusTags(jaegerSpan, span.getStatus());
+    if (!span.getTraceState().isEmpty()) {
+      jaegerSpan.addTags(stringKeyValue(TRACE_STATE_TAG, span.getTraceState()));
+    }
+
+    for (Span.Event event : span.getEventsList()) {
+      Log.Builder log =
+          Log.newBuilder().setTimestamp(Timestamps.fromNanos(event.getTimeUnixNano()));
+      for (KeyValue attribute : event.getAttributesList()) {
+        log.addFields(toKeyValue(attribute));
+      }
+      if (!event.getName().isEmpty()) {
+        log.addFields(stringKeyValue(EVENT_NAME_FIELD, event.getName()));
+      }
+      jaegerSpan.addLogs(log);
+    }
+    return jaegerSpan.build();
+  }
+
+  private static void addStatusTags(
+      JaegerSpanInternalModel.Span.Builder jaegerSpan, Status status) {
+    switch (status.getCode()) {
+      case STATUS_CODE_ERROR:
+        jaegerSpan.addTags(stringKeyValue(STATUS_CODE_TAG, "ERROR"));
+        jaegerSpan.addTags(
+            JaegerSpanInternalModel.KeyValue.newBuilder()
+                .setKey(ERROR_TAG)
+                .setVType(ValueType.BOOL)
+                .setVBool(true));
+        break;
+      case STATUS_CODE_OK:
+        jaegerSpan.addTags(stringKeyValue(STATUS_CODE_TAG, "OK"));
+        break;
+      default:
+        break;
+    }
+    if (!status.getMessage().isEmpty()) {
+      jaegerSpan.addTags(stringKeyValue(STATUS_DESCRIPTION_TAG, status.getMessage()));
+    }
+  }
+
+  private static String toSpanKind(Span.SpanKind kind) {
+    switch (kind) {
+      case SPAN_KIND_CLIENT:
+        return "client";
+      case SPAN_KIND_SERVER:
+        return "server";
+      case SPAN_KIND_PRODUCER:
+        return "producer";
+      case SPAN_KIND_CONSUMER:
+        return "consumer";
+      case SPAN_KIND_INTERNAL:
+        return "internal";
+      default:
+        return null;
+    }
+  }
+
+  static JaegerSpanInternalModel.KeyValue toKeyValue(KeyValue attribute) {
+    JaegerSpanInternalModel.KeyValue.Builder keyValue =
+        JaegerSpanInternalModel.KeyValue.newBuilder().setKey(attribute.getKey());
+    AnyValue value = attribute.getValue();
+    switch (value.getValueCase()) {
+      case BOOL_VALUE:
+        return keyValue.setVType(ValueType.BOOL).setVBool(value.getBoolValue()).build();
+      case INT_VALUE:
+        return keyValue.setVType(ValueType.INT64).setVInt64(value.getIntValue()).build();
+      case DOUBLE_VALUE:
+        return keyValue.setVType(ValueType.FLOAT64).setVFloat64(value.getDoubleValue()).build();
+      case BYTES_VALUE:
+        return keyValue.setVType(ValueType.BINARY).setVBinary(value.getBytesValue()).build();
+      case STRING_VALUE:
+        return keyValue.setVType(ValueType.STRING).setVStr(value.getStringValue()).build();
+      default:
+        // arrays and maps are flattened to their JSON string
+        return keyValue.setVType(ValueType.STRING).setVStr(toJson(value)).build();
+    }
+  }
+
+  private static JaegerSpanInternalModel.KeyValue stringKeyValue(String key, String value) {
+    return JaegerSpanInternalModel.KeyValue.newBuilder()
+        .setKey(key)
+        .setVType(ValueType.STRING)
+        .setVStr(value)
+        .build();
+  }
+
+  static String toJson(AnyValue value) {
+    StringBuilder json = new StringBuilder();
+    appendJson(json, value);
+    return json.toString();
+  }
+
+  private static void appendJson(StringBuilder json, AnyValue value) {
+    switch (value.getValueCase()) {
+      case STRING_VALUE:
+        appendJsonString(json, value.getStringValue());
+        break;
+      case BOOL_VALUE:
+        json.append(value.getBoolValue());
+        break;
+      case INT_VALUE:
+        json.append(value.getIntValue());
+        break;
+      case DOUBLE_VALUE:
+        json.append(value.getDoubleValue());
+        break;
+      case BYTES_VALUE:
+        appendJsonString(
+            json, Base64.getEncoder().encodeToString(value.getBytesValue().toByteArray()));
+        break;
+      case ARRAY_VALUE:
+        json.append('[');
+        List<AnyValue> values = value.getArrayValue().getValuesList();
+        for (int i = 0; i < values.size(); i++) {
+          if (i > 0) {
+            json.append(',');
+          }
+          appendJson(json, values.get(i));
+        }
+        json.append(']');
+        break;
+      case KVLIST_VALUE:
+        json.append('{');
+        List<KeyValue> keyValues = value.getKvlistValue().getValuesList();
+        for (int i = 0; i < keyValues.size(); i++) {
+          if (i > 0) {
+            json.append(',');
+          }
+          appendJsonString(json, keyValues.get(i).getKey());
+          json.append(':');
+          appendJson(json, keyValues.get(i).getValue());
+        }
+        json.append('}');
+        break;
+      default:
+        json.append("null");
+        break;
+    }
+  }
+
+  private static void appendJsonString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    json.append('"');
+  }
+}
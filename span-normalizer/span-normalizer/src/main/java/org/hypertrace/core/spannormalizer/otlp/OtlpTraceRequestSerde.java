@@ -0,0 +1,48 @@
+package org.hypertrace.core.spannormalizer.otlp;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import java.util.Map;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serializer;
+
+/** Serde of the OTLP trace batches, as produced by the otlp_proto encoding of the collector. */
+public class OtlpTraceRequestSerde implements Serde<ExportTraceServiceRequest> {
+
+  @Override
+  public void configure(Map<String, ?> configs, boolean isKey) {}
+
+  @Override
+  public void close() {}
+
+  @Override
+  public Serializer<ExportTraceServiceRequest> serializer() {
+    return new Ser();
+  }
+
+  @Override
+  public Deserializer<ExportTraceServiceRequest> deserializer() {
+    return new De();
+  }
+
+  public static class Ser implements Serializer<ExportTraceServiceRequest> {
+
+    @Override
+    public byte[] serialize(String topic, ExportTraceServiceRequest data) {
+      return data.toByteArray();
+    }
+  }
+
+  public static class De implements Deserializer<ExportTraceServiceRequest> {
+
+    @Override
+    public ExportTraceServiceRequest deserialize(String topic, byte[] data) {
+      try {
+        return ExportTraceServiceRequest.parseFrom(data);
+      } catch (InvalidProtocolBufferException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,368 @@
+package org.hypertrace.core.spannormalizer.redaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Redacts span attributes matching the configured {@link PIIPCIField}s, compiled once so that an
+ * attribute is only checked against the fields that can apply to it:
+ *
+ * <ul>
+ *   <li>fields restricted to tag keys are indexed by tag key, so they cost a single lookup for
+ *       attributes with other keys
+ *   <li>the regexes of unrestricted fields, which are matched against every attribute value, are
+ *       combined into a single alternation. An attribute is scanned once by the combined pattern
+ *       and only checked against the single fields if any of them matches
+ *   <li>values shorter than the shortest possible match of a regex are not scanned at all
+ * </ul>
+ *
+ * <p>Regexes with back references or named groups are left out of the combined pattern, as their
+ * group numbers and names could clash with those of other fields. If the combined pattern still
+ * does not compile, every field is checked on its own.
+ *
+ * <p>Fields are still applied in config order, so a span is redacted exactly as if every field was
+ * checked against every attribute.
+ */
+public class PIIPCIRedactor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PIIPCIRedactor.class);
+
+  private final List<CompiledField> unrestrictedFields;
+  // the unrestricted fields merged with the fields restricted to the tag key, in config order
+  private final Map<String, List<CompiledField>> fieldsByTagKey = new HashMap<>();
+  @Nullable private final Pattern unrestrictedPattern;
+  private final int unrestrictedMinLength;
+
+  public PIIPCIRedactor(List<PIIPCIField> piiPciFields) {
+    List<CompiledField> compiledFields =
+        piiPciFields.stream().map(CompiledField::new).collect(Collectors.toList());
+    this.unrestrictedFields =
+        compiledFields.stream()
+            .filter(field -> field.field.getTagKeySet().isEmpty())
+            .collect(Collectors.toUnmodifiableList());
+    for (CompiledField compiledField : compiledFields) {
+      for (String tagKey : compiledField.field.getTagKeySet()) {
+        fieldsByTagKey.computeIfAbsent(tagKey, k -> new ArrayList<>());
+      }
+    }
+    fieldsByTagKey.forEach(
+        (tagKey, fields) ->
+            compiledFields.stream()
+                .filter(
+                    field ->
+                        field.field.getTagKeySet().isEmpty()
+                            || field.field.getTagKeySet().contains(tagKey))
+                .forEach(fields::add));
+
+    List<CompiledField> combinedFields =
+        unrestrictedFields.stream()
+            .filter(field -> field.combined)
+            .collect(Collectors.toList());
+    this.unrestrictedPattern = combinedFields.isEmpty() ? null : combine(combinedFields);
+    this.unrestrictedMinLength =
+        combinedFields.stream().mapToInt(field -> field.minLength).min().orElse(0);
+  }
+
+  @Nullable
+  private static Pattern combine(List<CompiledField> fields) {
+    String regex =
+        fields.stream()
+            // the group scopes inline flags to the field's regex
+            .map(field -> "(?:" + field.field.getRegexInfo().get().getRegexString() + ")")
+            .collect(Collectors.joining("|"));
+    try {
+      return Pattern.compile(regex);
+    } catch (PatternSyntaxException e) {
+      LOG.warn("Unable to combine the redaction regexes, checking them one by one: ", e);
+      return null;
+    }
+  }
+
+  public boolean isEmpty() {
+    return unrestrictedFields.isEmpty() && fieldsByTagKey.isEmpty();
+  }
+
+  /**
+   * Replaces the values of the sensitive attributes and adds the number of redacted PII and PCI
+   * attributes, if any.
+   */
+  public void redact(Map<String, AttributeValue> attributeMap) {
+    int piiFieldsCount = 0;
+    int pciFieldsCount = 0;
+    Matcher unrestrictedMatcher = null;
+
+    for (Map.Entry<String, AttributeValue> attribute : attributeMap.entrySet()) {
+      List<CompiledField> fields =
+          fieldsByTagKey.getOrDefault(attribute.getKey(), unrestrictedFields);
+      String value = attribute.getValue().getValue();
+      // whether any of the combined fields matches the value, computed once per value
+      Boolean unrestrictedMatch = null;
+      for (CompiledField compiledField : fields) {
+        boolean containsSensitiveData;
+        if (compiledField.pattern == null) {
+          // this condition implies that match type of PII/PCI field is KEY based.
+          containsSensitiveData = true;
+        } else if (value == null || value.length() < compiledField.minLength) {
+          containsSensitiveData = false;
+        } else if (compiledField.combined && unrestrictedPattern != null) {
+          if (unrestrictedMatch == null) {
+            if (unrestrictedMatcher == null) {
+              unrestrictedMatcher = unrestrictedPattern.matcher(value);
+            }
+            unrestrictedMatch =
+                value.length() >= unrestrictedMinLength
+                    && unrestrictedMatcher.reset(value).find();
+          }
+          containsSensitiveData =
+              unrestrictedMatch && compiledField.pattern.matcher(value).find();
+        } else {
+          containsSensitiveData = compiledField.pattern.matcher(value).find();
+        }
+
+        if (containsSensitiveData) {
+          if (compiledField.field.getPiiPciFieldType() == PIIPCIField.PIIPCIFieldType.PII) {
+            piiFieldsCount += 1;
+          } else {
+            pciFieldsCount += 1;
+          }
+          // later fields are checked against the replacement, as they were before
+          attribute.setValue(compiledField.field.getReplacementValue());
+          value = compiledField.field.getReplacementValue().getValue();
+          unrestrictedMatch = null;
+        }
+      }
+    }
+    // if the trace contains PII field, add a field to indicate this. We can later slice-and-dice
+    // based on this tag
+    if (piiFieldsCount > 0) {
+      attributeMap.put(
+          SpanNormalizerConstants.REDACTED_PII_TAGS_KEY,
+          AttributeValue.newBuilder().setValue(String.valueOf(piiFieldsCount)).build());
+    }
+
+    if (pciFieldsCount > 0) {
+      attributeMap.put(
+          SpanNormalizerConstants.REDACTED_PCI_TAGS_KEY,
+          AttributeValue.newBuilder().setValue(String.valueOf(pciFieldsCount)).build());
+    }
+  }
+
+  private static final class CompiledField {
+    private final PIIPCIField field;
+    @Nullable private final Pattern pattern;
+    private final int minLength;
+    // whether the regex is part of the combined pattern of the unrestricted fields
+    private final boolean combined;
+
+    private CompiledField(PIIPCIField field) {
+      this.field = field;
+      this.pattern = field.getRegexInfo().map(PIIPCIField.RegexInfo::getRegexPattern).orElse(null);
+      this.minLength =
+          field.getRegexInfo().map(regexInfo -> minLength(regexInfo.getRegexString())).orElse(0);
+      // numbered back references would refer to other groups in the combined pattern, and a
+      // group name may only be used once in it
+      this.combined =
+          pattern != null
+              && field.getTagKeySet().isEmpty()
+              && !pattern.pattern().matches("(?s).*\\\\([1-9]|k<).*")
+              && !pattern.pattern().matches("(?s).*\\(\\?<[a-zA-Z].*");
+    }
+  }
+
+  /**
+   * Returns a lower bound of the length of the strings matching the regex. Constructs that are not
+   * understood make the bound 0, so that the bound never skips a value the regex could match.
+   */
+  static int minLength(String regex) {
+    try {
+      MinLengthParser parser = new MinLengthParser(regex);
+      long minLength = parser.alternation();
+      return parser.pos == regex.length() ? (int) Math.min(minLength, Integer.MAX_VALUE) : 0;
+    } catch (RuntimeException e) {
+      return 0;
+    }
+  }
+
+  private static final class MinLengthParser {
+    private final String regex;
+    private int pos;
+
+    private MinLengthParser(String regex) {
+      this.regex = regex;
+    }
+
+    private long alternation() {
+      long minLength = sequence();
+      while (pos < regex.length() && regex.charAt(pos) == '|') {
+        pos++;
+        minLength = Math.min(minLength, sequence());
+      }
+      return minLength;
+    }
+
+    private long sequence() {
+      long minLength = 0;
+      while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+        long atomLength = atom();
+        minLength += quantify(atomLength);
+      }
+      return minLength;
+    }
+
+    private long atom() {
+      char c = regex.charAt(pos++);
+      switch (c) {
+        case '(':
+          return group();
+        case '[':
+          skipCharClass();
+          return 1;
+        case '\\':
+          return escape();
+        case '^':
+        case '$':
+          return 0;
+        case '*':
+        case '+':
+        case '?':
+        case '{':
+          throw new IllegalArgumentException("Dangling quantifier");
+        default:
+          if (Character.isHighSurrogate(c)
+              && pos < regex.length()
+              && Character.isLowSurrogate(regex.charAt(pos))) {
+            pos++;
+            return 2;
+          }
+          return 1;
+      }
+    }
+
+    private long group() {
+      boolean lookaround = false;
+      if (regex.startsWith("?:", pos)) {
+        pos += 2;
+      } else if (regex.startsWith("?=", pos) || regex.startsWith("?!", pos)) {
+        pos += 2;
+        lookaround = true;
+      } else if (regex.startsWith("?<=", pos) || regex.startsWith("?<!", pos)) {
+        pos += 3;
+        lookaround = true;
+      } else if (regex.startsWith("?<", pos)) {
+        pos = regex.indexOf('>', pos) + 1;
+      } else if (regex.startsWith("?", pos)) {
+        // inline flags and atomic groups
+        throw new IllegalArgumentException("Unsupported group");
+      }
+      long minLength = alternation();
+      if (regex.charAt(pos++) != ')') {
+        throw new IllegalArgumentException("Unclosed group");
+      }
+      return lookaround ? 0 : minLength;
+    }
+
+    private void skipCharClass() {
+      int depth = 1;
+      if (regex.startsWith("^", pos)) {
+        pos++;
+      }
+      // a leading ']' is a literal
+      if (regex.startsWith("]", pos)) {
+        pos++;
+      }
+      while (depth > 0) {
+        char c = regex.charAt(pos++);
+        if (c == '\\') {
+          pos++;
+        } else if (c == '[') {
+          depth++;
+        } else if (c == ']') {
+          depth--;
+        }
+      }
+    }
+
+    private long escape() {
+      char c = regex.charAt(pos++);
+      switch (c) {
+        case 'b':
+        case 'B':
+        case 'A':
+        case 'G':
+        case 'z':
+        case 'Z':
+          return 0;
+        case 'Q':
+          // a quantifier after a quoted literal only applies to its last character
+          throw new IllegalArgumentException("Quoted literal");
+        case 'k':
+          throw new IllegalArgumentException("Back reference");
+        case 'p':
+        case 'P':
+        case 'x':
+          if (regex.startsWith("{", pos)) {
+            pos = regex.indexOf('}', pos) + 1;
+          } else {
+            pos += c == 'x' ? 2 : 1;
+          }
+          return 1;
+        case 'u':
+          pos += 4;
+          return 1;
+        case 'c':
+          pos++;
+          return 1;
+        case '0':
+          while (pos < regex.length() && regex.charAt(pos) >= '0' && regex.charAt(pos) <= '7') {
+            pos++;
+          }
+          return 1;
+        default:
+          if (c >= '1' && c <= '9') {
+            throw new IllegalArgumentException("Back reference");
+          }
+          return 1;
+      }
+    }
+
+    private long quantify(long atomLength) {
+      if (pos >= regex.length()) {
+        return atomLength;
+      }
+      long minLength;
+      char c = regex.charAt(pos);
+      if (c == '*' || c == '?') {
+        pos++;
+        minLength = 0;
+      } else if (c == '+') {
+        pos++;
+        minLength = atomLength;
+      } else if (c == '{') {
+        int end = regex.indexOf('}', pos);
+        String bounds = regex.substring(pos + 1, end);
+        int comma = bounds.indexOf(',');
+        long minRepetitions = Long.parseLong(comma < 0 ? bounds : bounds.substring(0, comma));
+        pos = end + 1;
+        minLength = atomLength * minRepetitions;
+      } else {
+        return atomLength;
+      }
+      // lazy and possessive quantifiers
+      if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+        pos++;
+      }
+      return minLength;
+    }
+  }
+}
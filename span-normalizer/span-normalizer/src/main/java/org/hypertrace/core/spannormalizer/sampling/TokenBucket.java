@@ -0,0 +1,42 @@
+package org.hypertrace.core.spannormalizer.sampling;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Allows up to a number of permits per second, with bursts of up to one second of permits. Shared
+ * by the stream threads, so {@link #tryAcquire()} is synchronized.
+ */
+class TokenBucket {
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  private final double capacity;
+  private final double permitsPerNano;
+  private final LongSupplier nanoClock;
+  private double permits;
+  private long lastRefillNanos;
+
+  TokenBucket(double permitsPerSecond) {
+    this(permitsPerSecond, System::nanoTime);
+  }
+
+  // constructor for testing
+  TokenBucket(double permitsPerSecond, LongSupplier nanoClock) {
+    this.capacity = permitsPerSecond;
+    this.permitsPerNano = permitsPerSecond / NANOS_PER_SECOND;
+    this.nanoClock = nanoClock;
+    this.permits = capacity;
+    this.lastRefillNanos = nanoClock.getAsLong();
+  }
+
+  synchronized boolean tryAcquire() {
+    long now = nanoClock.getAsLong();
+    permits = Math.min(capacity, permits + (now - lastRefillNanos) * permitsPerNano);
+    lastRefillNanos = now;
+    if (permits < 1) {
+      return false;
+    }
+    permits--;
+    return true;
+  }
+}
@@ -0,0 +1,192 @@
+package org.hypertrace.core.spannormalizer.sampling;
+
+import com.google.protobuf.ByteString;
+import com.typesafe.config.Config;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.hypertrace.tenant.metrics.utils.TenantCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Head based sampling of spans. Whether a span is kept is decided on a hash of its trace id, so all
+ * the spans of a trace get the same decision, on any partition and any instance of the job. The
+ * rate of a span is the rate of its service if one is configured, else the rate of its tenant, else
+ * the default rate:
+ *
+ * <pre>
+ * processor.sampling {
+ *   defaultRate = 1.0
+ *   tenants = [
+ *     {
+ *       tenantId = "tenant-1"
+ *       rate = 0.5
+ *       maxSpansPerSecond = 1000
+ *       services = [{ name = "frontend", rate = 0.1 }]
+ *     }
+ *   ]
+ * }
+ * </pre>
+ *
+ * <p>A span is also subject to the sample rate of its tenant in the tenant policy, which can be
+ * changed without a restart: it is kept at the lower of the two rates, and weighted accordingly.
+ *
+ * <p>The spans of a tenant that are kept are further capped at {@code maxSpansPerSecond} per
+ * instance of the job. The cap is a safety net: it drops spans irrespective of their trace, so it
+ * should be set above the expected sampled volume of the tenant.
+ */
+public class TraceSampler {
+
+  /** The weight of a span that is sampled out. */
+  public static final double SAMPLED_OUT = 0;
+
+  private static final Logger LOG = LoggerFactory.getLogger(TraceSampler.class);
+
+  private static final String SAMPLING_CONFIG = "processor.sampling";
+  private static final String DEFAULT_RATE_CONFIG = "defaultRate";
+  private static final String TENANTS_CONFIG = "tenants";
+  private static final String TENANT_ID_CONFIG = "tenantId";
+  private static final String RATE_CONFIG = "rate";
+  private static final String MAX_SPANS_PER_SECOND_CONFIG = "maxSpansPerSecond";
+  private static final String SERVICES_CONFIG = "services";
+  private static final String SERVICE_NAME_CONFIG = "name";
+
+  private static final double MAX_RATE = 1.0;
+
+  private static final String SAMPLED_OUT_SPANS_COUNTER = "hypertrace.reported.spans.sampled.out";
+  private static final TenantCounter tenantToSpansSampledOutCount =
+      TenantCounter.of(SAMPLED_OUT_SPANS_COUNTER, Map.of("reason", "rate"));
+  private static final TenantCounter tenantToSpansRateLimitedCount =
+      TenantCounter.of(SAMPLED_OUT_SPANS_COUNTER, Map.of("reason", "max_spans_per_second"));
+
+  private static volatile TraceSampler INSTANCE;
+
+  private final double defaultRate;
+  private final Map<String, TenantSampling> tenantSamplings;
+
+  /** Returns the sampler of the job, shared by the stream threads so they share the span caps. */
+  public static TraceSampler get(Config config) {
+    if (INSTANCE == null) {
+      synchronized (TraceSampler.class) {
+        if (INSTANCE == null) {
+          INSTANCE = new TraceSampler(config);
+        }
+      }
+    }
+    return INSTANCE;
+  }
+
+  public TraceSampler(Config config) {
+    if (!config.hasPath(SAMPLING_CONFIG)) {
+      this.defaultRate = MAX_RATE;
+      this.tenantSamplings = Collections.emptyMap();
+      return;
+    }
+    Config samplingConfig = config.getConfig(SAMPLING_CONFIG);
+    this.defaultRate =
+        samplingConfig.hasPath(DEFAULT_RATE_CONFIG)
+            ? getValidRate(samplingConfig, DEFAULT_RATE_CONFIG)
+            : MAX_RATE;
+    Map<String, TenantSampling> tenantSamplings = new HashMap<>();
+    if (samplingConfig.hasPath(TENANTS_CONFIG)) {
+      for (Config tenantConfig : samplingConfig.getConfigList(TENANTS_CONFIG)) {
+        tenantSamplings.put(
+            tenantConfig.getString(TENANT_ID_CONFIG), new TenantSampling(tenantConfig));
+      }
+    }
+    this.tenantSamplings = Map.copyOf(tenantSamplings);
+    LOG.info("Sampling default rate: {}, tenants: {}", defaultRate, tenantSamplings.keySet());
+  }
+
+  /**
+   * Returns the sampling weight of a span, the number of spans it stands for, or {@link
+   * #SAMPLED_OUT} if it is dropped. Sampled out spans are counted per tenant.
+   *
+   * @param tenantPolicyRate the sample rate of the tenant in the tenant policy
+   */
+  public double sample(
+      int tenantSlot,
+      String tenantId,
+      String serviceName,
+      ByteString traceId,
+      double tenantPolicyRate) {
+    TenantSampling tenantSampling = tenantSamplings.get(tenantId);
+    double rate =
+        Math.min(
+            tenantSampling == null ? defaultRate : tenantSampling.getRate(serviceName),
+            tenantPolicyRate);
+    if (!isSampled(traceId, rate)) {
+      tenantToSpansSampledOutCount.increment(tenantSlot);
+      return SAMPLED_OUT;
+    }
+    if (tenantSampling != null
+        && tenantSampling.maxSpansPerSecond != null
+        && !tenantSampling.maxSpansPerSecond.tryAcquire()) {
+      tenantToSpansRateLimitedCount.increment(tenantSlot);
+      return SAMPLED_OUT;
+    }
+    return MAX_RATE / rate;
+  }
+
+  /**
+   * Whether the trace is in the given fraction of all traces. A trace that is sampled at a rate is
+   * also sampled at any higher rate.
+   */
+  public static boolean isSampled(ByteString traceId, double rate) {
+    if (rate >= MAX_RATE) {
+      return true;
+    }
+    // the top 53 bits of the hash as a uniform double in [0, 1)
+    return (hash(traceId) >>> 11) * 0x1.0p-53 < rate;
+  }
+
+  private static long hash(ByteString traceId) {
+    long hash = 0;
+    for (int i = 0; i < traceId.size(); i++) {
+      hash = 31 * hash + traceId.byteAt(i);
+    }
+    // the splitmix64 finalizer, so that similar trace ids get unrelated hashes
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+    return hash ^ (hash >>> 31);
+  }
+
+  private static double getValidRate(Config config, String path) {
+    double rate = config.getDouble(path);
+    if (rate < 0 || rate > MAX_RATE) {
+      throw new IllegalArgumentException(
+          "Sampling rate " + path + " must be between 0 and 1: " + rate);
+    }
+    return rate;
+  }
+
+  private final class TenantSampling {
+    private final double rate;
+    private final Map<String, Double> serviceRates;
+    @Nullable private final TokenBucket maxSpansPerSecond;
+
+    private TenantSampling(Config tenantConfig) {
+      this.rate =
+          tenantConfig.hasPath(RATE_CONFIG) ? getValidRate(tenantConfig, RATE_CONFIG) : defaultRate;
+      Map<String, Double> serviceRates = new HashMap<>();
+      if (tenantConfig.hasPath(SERVICES_CONFIG)) {
+        for (Config serviceConfig : tenantConfig.getConfigList(SERVICES_CONFIG)) {
+          serviceRates.put(
+              serviceConfig.getString(SERVICE_NAME_CONFIG),
+              getValidRate(serviceConfig, RATE_CONFIG));
+        }
+      }
+      this.serviceRates = Map.copyOf(serviceRates);
+      this.maxSpansPerSecond =
+          tenantConfig.hasPath(MAX_SPANS_PER_SECOND_CONFIG)
+              ? new TokenBucket(tenantConfig.getDouble(MAX_SPANS_PER_SECOND_CONFIG))
+              : null;
+    }
+
+    private double getRate(String serviceName) {
+      return serviceRates.getOrDefault(serviceName, rate);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package org.hypertrace.core.spannormalizer.util;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A value compiled from a config file that is compiled again when the file changes, so that rules
+ * can be updated without restarting the job. The file is checked for changes at most once per
+ * reload interval, from the thread that reads the value, so no extra thread is needed.
+ *
+ * <p>The file config takes precedence over the fallback config. If the file can't be compiled, the
+ * previous value is kept. If the file is deleted, the value is compiled from the fallback config
+ * alone, as if the file had never existed.
+ */
+public class ReloadableConfigFile<T> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReloadableConfigFile.class);
+
+  private final Path path;
+  private final long reloadIntervalNanos;
+  private final Config fallbackConfig;
+  private final Function<Config, T> compiler;
+  private volatile T value;
+  private volatile long nextCheckNanos;
+  private FileTime lastModifiedTime;
+
+  public ReloadableConfigFile(
+      Path path, Duration reloadInterval, Config fallbackConfig, Function<Config, T> compiler) {
+    this.path = path;
+    this.reloadIntervalNanos = reloadInterval.toNanos();
+    this.fallbackConfig = fallbackConfig;
+    this.compiler = compiler;
+    this.value = compiler.apply(fallbackConfig);
+    this.nextCheckNanos = System.nanoTime();
+  }
+
+  public T get() {
+    if (System.nanoTime() - nextCheckNanos >= 0) {
+      reloadIfModified();
+    }
+    return value;
+  }
+
+  private synchronized void reloadIfModified() {
+    long now = System.nanoTime();
+    if (now - nextCheckNanos < 0) {
+      return;
+    }
+    nextCheckNanos = now + reloadIntervalNanos;
+    try {
+      if (!Files.exists(path)) {
+        if (lastModifiedTime != null) {
+          lastModifiedTime = null;
+          value = compiler.apply(fallbackConfig);
+          LOG.warn("Config file: {} was deleted, falling back to the base config", path);
+        }
+        return;
+      }
+      FileTime modifiedTime = Files.getLastModifiedTime(path);
+      if (modifiedTime.equals(lastModifiedTime)) {
+        return;
+      }
+      // a file that fails to compile is not retried until it is modified again
+      lastModifiedTime = modifiedTime;
+      value = compiler.apply(ConfigFactory.parseFile(path.toFile()).withFallback(fallbackConfig));
+      LOG.info("Reloaded config from file: {}", path);
+    } catch (Exception e) {
+      LOG.error("Failed to reload config from file: {}, keeping the previous config", path, e);
+    }
+  }
+}
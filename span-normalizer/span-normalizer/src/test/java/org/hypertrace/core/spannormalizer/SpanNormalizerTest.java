@@ -8,12 +8,22 @@ import com.google.protobuf.ByteString;
 import com.google.protobuf.Timestamp;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Log;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.InstrumentationLibrary;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.InstrumentationLibrarySpans;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.Consumer;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
@@ -28,6 +38,8 @@ import org.hypertrace.core.kafkastreams.framework.serdes.AvroSerde;
 import org.hypertrace.core.serviceframework.config.ConfigClientFactory;
 import org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants;
 import org.hypertrace.core.spannormalizer.jaeger.JaegerSpanSerde;
+import org.hypertrace.core.spannormalizer.otlp.OtlpToJaegerSpanConverter;
+import org.hypertrace.core.spannormalizer.otlp.OtlpTraceRequestSerde;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -203,4 +215,190 @@ class SpanNormalizerTest {
     inputTopic.pipeInput(span4);
     assertTrue(outputTopic.isEmpty());
   }
+
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "span-normalizer")
+  public void whenFusedTopologyIsEnabledExpectSameOutput() {
+    Config config =
+        ConfigFactory.parseURL(
+            getClass().getClassLoader().getResource("configs/span-normalizer/application.conf"));
+    Config fusedConfig =
+        config.withValue(
+            SpanNormalizerConstants.FUSED_TOPOLOGY_ENABLED_CONFIG_KEY,
+            ConfigValueFactory.fromAnyRef(true));
+
+    List<Span> spans = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      Span.Builder span =
+          Span.newBuilder()
+              .setSpanId(ByteString.copyFrom(("span-" + i).getBytes()))
+              .setTraceId(ByteString.copyFrom(("trace-" + i % 3).getBytes()))
+              .addTags(
+                  JaegerSpanInternalModel.KeyValue.newBuilder()
+                      .setKey("jaeger.servicename")
+                      .setVStr(SERVICE_NAME)
+                      .build())
+              .addTags(
+                  JaegerSpanInternalModel.KeyValue.newBuilder()
+                      .setKey("http.url")
+                      // every third span matches the drop filters
+                      .setVStr(i % 3 == 0 ? "http://xyz.com/health" : "http://xyz.com/" + i)
+                      .build())
+              .addTags(
+                  JaegerSpanInternalModel.KeyValue.newBuilder()
+                      .setKey("http.method")
+                      .setVStr("GET")
+                      .build());
+      if (i % 2 == 0) {
+        span.addLogs(
+            Log.newBuilder()
+                .setTimestamp(Timestamp.newBuilder().setSeconds(i).build())
+                .addFields(
+                    JaegerSpanInternalModel.KeyValue.newBuilder()
+                        .setKey("event")
+                        .setVStr("some event detail " + i)
+                        .build()));
+      }
+      spans.add(span.build());
+    }
+
+    List<List<?>> output = runTopology(config, spans);
+    List<List<?>> fusedOutput = runTopology(fusedConfig, spans);
+
+    assertEquals(6, output.get(0).size());
+    assertEquals(3, output.get(1).size());
+    assertEquals(output, fusedOutput);
+  }
+
+  @Test
+  @SetEnvironmentVariable(key = "SERVICE_NAME", value = "span-normalizer")
+  public void whenOtlpSpansAreProcessedExpectSameOutputAsJaegerSpans() {
+    Config config =
+        ConfigFactory.parseURL(
+                getClass().getClassLoader().getResource("configs/span-normalizer/application.conf"))
+            .withValue(
+                SpanNormalizerConstants.OTLP_INPUT_TOPIC_CONFIG_KEY,
+                ConfigValueFactory.fromAnyRef("otlp-spans"));
+
+    ExportTraceServiceRequest.Builder request = ExportTraceServiceRequest.newBuilder();
+    List<Span> jaegerSpans = new ArrayList<>();
+    for (int r = 0; r < 2; r++) {
+      Resource resource =
+          Resource.newBuilder()
+              .addAttributes(otlpAttribute("service.name", SERVICE_NAME + r))
+              .addAttributes(otlpAttribute("host.name", "host-" + r))
+              .build();
+      InstrumentationLibrarySpans.Builder librarySpans =
+          InstrumentationLibrarySpans.newBuilder()
+              .setInstrumentationLibrary(
+                  InstrumentationLibrary.newBuilder().setName("library").setVersion("1.0"));
+      for (int i = 0; i < 5; i++) {
+        io.opentelemetry.proto.trace.v1.Span.Builder span =
+            io.opentelemetry.proto.trace.v1.Span.newBuilder()
+                .setTraceId(ByteString.copyFrom(("trace-" + i % 2).getBytes()))
+                .setSpanId(ByteString.copyFrom(("span-" + r + "-" + i).getBytes()))
+                .setName("GET /" + i)
+                .setKind(io.opentelemetry.proto.trace.v1.Span.SpanKind.SPAN_KIND_SERVER)
+                .setStartTimeUnixNano(1_000_000_000L * i)
+                .setEndTimeUnixNano(1_000_000_000L * i + 5_000_000L)
+                // every third span matches the drop filters
+                .addAttributes(
+                    otlpAttribute(
+                        "http.url", i % 3 == 0 ? "http://xyz.com/health" : "http://xyz.com/" + i))
+                .addAttributes(otlpAttribute("http.method", "GET"));
+        if (i % 2 == 0) {
+          span.setParentSpanId(ByteString.copyFrom(("span-" + r + "-" + (i + 1)).getBytes()))
+              .addEvents(
+                  io.opentelemetry.proto.trace.v1.Span.Event.newBuilder()
+                      .setTimeUnixNano(1_000_000_000L * i)
+                      .setName("some event " + i));
+        }
+        librarySpans.addSpans(span);
+        jaegerSpans.add(
+            OtlpToJaegerSpanConverter.toJaegerSpan(
+                span.build(),
+                librarySpans.getInstrumentationLibrary(),
+                OtlpToJaegerSpanConverter.toProcess(resource)));
+      }
+      request.addResourceSpans(
+          ResourceSpans.newBuilder()
+              .setResource(resource)
+              .addInstrumentationLibrarySpans(librarySpans));
+    }
+
+    List<List<?>> otlpOutput =
+        runTopology(
+            config,
+            td ->
+                td.createInputTopic(
+                        "otlp-spans",
+                        Serdes.ByteArray().serializer(),
+                        new OtlpTraceRequestSerde().serializer())
+                    .pipeInput(request.build()));
+    List<List<?>> jaegerOutput = runTopology(config, jaegerSpans);
+
+    assertEquals(6, otlpOutput.get(0).size());
+    assertEquals(4, otlpOutput.get(1).size());
+    assertEquals(jaegerOutput, otlpOutput);
+  }
+
+  private static io.opentelemetry.proto.common.v1.KeyValue otlpAttribute(String key, String value) {
+    return io.opentelemetry.proto.common.v1.KeyValue.newBuilder()
+        .setKey(key)
+        .setValue(AnyValue.newBuilder().setStringValue(value))
+        .build();
+  }
+
+  /** Returns the raw spans and the log events output for the spans. */
+  private List<List<?>> runTopology(Config config, List<Span> spans) {
+    return runTopology(
+        config,
+        td ->
+            spans.forEach(
+                td.createInputTopic(
+                        config.getString(SpanNormalizerConstants.INPUT_TOPIC_CONFIG_KEY),
+                        Serdes.ByteArray().serializer(),
+                        new JaegerSpanSerde().serializer())
+                    ::pipeInput));
+  }
+
+  /** Returns the raw spans and the log events output for the input piped by pipeInput. */
+  private List<List<?>> runTopology(Config config, Consumer<TopologyTestDriver> pipeInput) {
+    Map<String, Object> mergedProps = new HashMap<>();
+    underTest.getBaseStreamsConfig().forEach(mergedProps::put);
+    underTest.getStreamsConfig(config).forEach(mergedProps::put);
+    mergedProps.put(SpanNormalizerConstants.SPAN_NORMALIZER_JOB_CONFIG, config);
+
+    StreamsBuilder streamsBuilder =
+        underTest.buildTopology(mergedProps, new StreamsBuilder(), new HashMap<>());
+
+    Properties props = new Properties();
+    mergedProps.forEach(props::put);
+
+    try (TopologyTestDriver td = new TopologyTestDriver(streamsBuilder.build(), props)) {
+      Serde<TraceIdentity> traceIdentitySerde = new AvroSerde<>();
+      traceIdentitySerde.configure(Map.of(), true);
+      Serde<RawSpan> rawSpanSerde = new AvroSerde<>();
+      rawSpanSerde.configure(Map.of(), false);
+      Serde<LogEvents> logEventsSerde = new AvroSerde<>();
+      logEventsSerde.configure(Map.of(), false);
+      TestOutputTopic<TraceIdentity, RawSpan> outputTopic =
+          td.createOutputTopic(
+              config.getString(SpanNormalizerConstants.OUTPUT_TOPIC_CONFIG_KEY),
+              traceIdentitySerde.deserializer(),
+              rawSpanSerde.deserializer());
+      TestOutputTopic<TraceIdentity, LogEvents> rawLogOutputTopic =
+          td.createOutputTopic(
+              config.getString(SpanNormalizerConstants.OUTPUT_TOPIC_RAW_LOGS_CONFIG_KEY),
+              traceIdentitySerde.deserializer(),
+              logEventsSerde.deserializer());
+
+      pipeInput.accept(td);
+
+      List<KeyValue<TraceIdentity, RawSpan>> rawSpans = outputTopic.readKeyValuesToList();
+      // the received time is the only field that depends on when the span is normalized
+      rawSpans.forEach(kv -> kv.value.setReceivedTimeMillis(0L));
+      return List.of(rawSpans, rawLogOutputTopic.readKeyValuesToList());
+    }
+  }
 }
@@ -1,6 +1,7 @@
 package org.hypertrace.core.spannormalizer.jaeger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
@@ -84,6 +85,32 @@ class JaegerResourceNormalizerTest {
     assertEquals("bar", createdResource.getAttributes().getAttributeMap().get("foo").getValue());
   }
 
+  @Test
+  void sharesResourceOfSameProcessTags() {
+    List<Entry<String, String>> resourceAttributes =
+        List.of(Map.entry("foo", "bar"), Map.entry("tenant-key", "tenant-id"));
+    Resource createdResource =
+        normalizer
+            .normalize(buildInputSpanWithResourceAttributes(resourceAttributes), Optional.empty())
+            .orElseThrow();
+
+    assertSame(
+        createdResource,
+        normalizer
+            .normalize(buildInputSpanWithResourceAttributes(resourceAttributes), Optional.empty())
+            .orElseThrow());
+    // the tenant id key is part of the cache key
+    assertEquals(
+        1,
+        normalizer
+            .normalize(
+                buildInputSpanWithResourceAttributes(resourceAttributes), Optional.of("tenant-key"))
+            .orElseThrow()
+            .getAttributes()
+            .getAttributeMap()
+            .size());
+  }
+
   // Take a list of pairs instead of a map so we can test dupe behavior
   Span buildInputSpanWithResourceAttributes(List<Entry<String, String>> resourceAttributes) {
     List<KeyValue> keyValues =
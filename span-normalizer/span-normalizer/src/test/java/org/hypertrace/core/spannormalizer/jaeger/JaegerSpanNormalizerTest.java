@@ -227,6 +227,35 @@ public class JaegerSpanNormalizerTest {
     Assertions.assertEquals(1, timer.count());
   }
 
+  @Test
+  public void testSamplingWeightAddedToEvent() throws Exception {
+    String tenantId = "tenant-" + random.nextLong();
+    Map<String, Object> configs = new HashMap<>(getCommonConfig());
+    configs.putAll(Map.of("processor", Map.of("defaultTenantId", tenantId)));
+    JaegerSpanNormalizer normalizer = JaegerSpanNormalizer.get(ConfigFactory.parseMap(configs));
+    Span span = Span.newBuilder().setProcess(Process.newBuilder().build()).build();
+
+    PreProcessedSpan preProcessedSpan = new PreProcessedSpan(tenantId, span);
+    RawSpan rawSpan = normalizer.convert(preProcessedSpan);
+    Assertions.assertNull(
+        rawSpan
+            .getEvent()
+            .getAttributes()
+            .getAttributeMap()
+            .get(SpanNormalizerConstants.SAMPLING_WEIGHT_ATTRIBUTE));
+
+    preProcessedSpan.setSamplingWeight(4);
+    rawSpan = normalizer.convert(preProcessedSpan);
+    Assertions.assertEquals(
+        "4.0",
+        rawSpan
+            .getEvent()
+            .getAttributes()
+            .getAttributeMap()
+            .get(SpanNormalizerConstants.SAMPLING_WEIGHT_ATTRIBUTE)
+            .getValue());
+  }
+
   @Test
   public void testConvertToJsonString() throws IOException {
     AttributeValue attributeValue = AttributeValue.newBuilder().setValue("test-val").build();
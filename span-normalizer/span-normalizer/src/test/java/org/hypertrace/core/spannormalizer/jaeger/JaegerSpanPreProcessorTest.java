@@ -2,6 +2,7 @@ package org.hypertrace.core.spannormalizer.jaeger;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import com.google.protobuf.ByteString;
 import com.typesafe.config.ConfigFactory;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
 import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
@@ -735,6 +736,99 @@ class JaegerSpanPreProcessorTest {
         });
   }
 
+  @Test
+  void testPreProcessSpan_sampling() {
+    Map<String, Object> configs = new HashMap<>(getCommonConfig());
+    configs.putAll(
+        Map.of(
+            "processor",
+            Map.of(
+                "tenantIdTagKey",
+                "tenant-key",
+                "sampling",
+                Map.of(
+                    "tenants",
+                    List.of(
+                        Map.of(
+                            "tenantId",
+                            "tenant-1",
+                            "rate",
+                            0.5,
+                            "services",
+                            List.of(Map.of("name", "droppedService", "rate", 0))))))));
+    JaegerSpanPreProcessor jaegerSpanPreProcessor =
+        new JaegerSpanPreProcessor(ConfigFactory.parseMap(configs));
+
+    KeyValue tenantTag = KeyValue.newBuilder().setKey("tenant-key").setVStr("tenant-1").build();
+    Span droppedServiceSpan =
+        Span.newBuilder()
+            .setProcess(Process.newBuilder().setServiceName("droppedService"))
+            .addTags(tenantTag)
+            .build();
+    Assertions.assertNull(jaegerSpanPreProcessor.preProcessSpan(droppedServiceSpan));
+
+    // spans of other tenants aren't sampled
+    Span otherTenantSpan =
+        Span.newBuilder()
+            .setProcess(Process.newBuilder().setServiceName("droppedService"))
+            .addTags(KeyValue.newBuilder().setKey("tenant-key").setVStr("tenant-2"))
+            .build();
+    Assertions.assertEquals(
+        1, jaegerSpanPreProcessor.preProcessSpan(otherTenantSpan).getSamplingWeight());
+
+    // a kept span of the tenant stands for two spans
+    int keptSpans = 0;
+    for (int i = 0; i < 100; i++) {
+      Span span =
+          Span.newBuilder()
+              .setTraceId(ByteString.copyFromUtf8("trace-" + i))
+              .setProcess(Process.newBuilder().setServiceName("testService"))
+              .addTags(tenantTag)
+              .build();
+      PreProcessedSpan preProcessedSpan = jaegerSpanPreProcessor.preProcessSpan(span);
+      if (preProcessedSpan != null) {
+        Assertions.assertEquals(2, preProcessedSpan.getSamplingWeight());
+        keptSpans++;
+      }
+    }
+    Assertions.assertTrue(keptSpans > 0 && keptSpans < 100);
+  }
+
+  @Test
+  void testPreProcessSpan_tenantPolicySampleRate() {
+    Map<String, Object> configs = new HashMap<>(getCommonConfig());
+    configs.putAll(
+        Map.of(
+            "processor",
+            Map.of(
+                "tenantIdTagKey",
+                "tenant-key",
+                "tenantSampleRates",
+                Map.of("tenant-1", 0.25),
+                "sampling",
+                Map.of("tenants", List.of(Map.of("tenantId", "tenant-1", "rate", 0.5))))));
+    JaegerSpanPreProcessor jaegerSpanPreProcessor =
+        new JaegerSpanPreProcessor(ConfigFactory.parseMap(configs));
+
+    // the lower of the two rates applies, and the kept spans are weighted by it
+    KeyValue tenantTag = KeyValue.newBuilder().setKey("tenant-key").setVStr("tenant-1").build();
+    int keptSpans = 0;
+    for (int i = 0; i < 100; i++) {
+      Span span =
+          Span.newBuilder()
+              .setTraceId(ByteString.copyFromUtf8("trace-" + i))
+              .setProcess(Process.newBuilder().setServiceName("testService"))
+              .addTags(tenantTag)
+              .build();
+      PreProcessedSpan preProcessedSpan = jaegerSpanPreProcessor.preProcessSpan(span);
+      if (preProcessedSpan != null) {
+        Assertions.assertEquals(4, preProcessedSpan.getSamplingWeight());
+        keptSpans++;
+      }
+    }
+    Assertions.assertTrue(keptSpans > 0 && keptSpans < 50);
+  }
+
   private Map<String, Object> getCommonConfig() {
     return Map.of(
         "span.type",
@@ -0,0 +1,100 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Log;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.SpanRef;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LazyJaegerSpanTest {
+
+  @Test
+  void testSpanIsDecodedLikeFullParse() throws Exception {
+    Span span =
+        Span.newBuilder()
+            .setTraceId(ByteString.copyFromUtf8("trace-1"))
+            .setSpanId(ByteString.copyFromUtf8("span-1"))
+            .setOperationName("GET /api")
+            .addReferences(
+                SpanRef.newBuilder()
+                    .setTraceId(ByteString.copyFromUtf8("trace-1"))
+                    .setSpanId(ByteString.copyFromUtf8("span-0")))
+            .setStartTime(Timestamp.newBuilder().setSeconds(10))
+            .addTags(KeyValue.newBuilder().setKey("span.kind").setVStr("client"))
+            .addLogs(
+                Log.newBuilder()
+                    .setTimestamp(Timestamp.newBuilder().setSeconds(11))
+                    .addFields(KeyValue.newBuilder().setKey("event").setVStr("error")))
+            .addTags(KeyValue.newBuilder().setKey("http.method").setVStr("GET"))
+            .setProcess(
+                Process.newBuilder()
+                    .setServiceName("service")
+                    .addTags(KeyValue.newBuilder().setKey("tenant-id").setVStr("tenant-1")))
+            .addWarnings("warning")
+            .build();
+
+    LazyJaegerSpan lazyJaegerSpan = LazyJaegerSpan.parseFrom(span.toByteArray());
+
+    assertEquals(span.getTraceId(), lazyJaegerSpan.getTraceId());
+    assertEquals(span.getTagsList(), lazyJaegerSpan.getTagsList());
+    assertEquals(span.getProcess(), lazyJaegerSpan.getProcess());
+    assertTrue(lazyJaegerSpan.hasReferences());
+    assertEquals(span, lazyJaegerSpan.getSpan());
+  }
+
+  @Test
+  void testRepeatedFieldsAreMergedLikeFullParse() throws Exception {
+    Span first =
+        Span.newBuilder()
+            .setOperationName("first")
+            .addTags(KeyValue.newBuilder().setKey("k1").setVStr("v1"))
+            .setProcess(Process.newBuilder().setServiceName("service"))
+            .build();
+    Span second =
+        Span.newBuilder()
+            .addTags(KeyValue.newBuilder().setKey("k2").setVStr("v2"))
+            .setProcess(
+                Process.newBuilder().addTags(KeyValue.newBuilder().setKey("k3").setVStr("v3")))
+            .addWarnings("warning")
+            .build();
+    byte[] data = concat(first.toByteArray(), second.toByteArray());
+
+    LazyJaegerSpan lazyJaegerSpan = LazyJaegerSpan.parseFrom(data);
+
+    assertEquals(Span.parseFrom(data), lazyJaegerSpan.getSpan());
+    assertEquals(
+        List.of("k1", "k2"),
+        List.of(
+            lazyJaegerSpan.getTagsList().get(0).getKey(),
+            lazyJaegerSpan.getTagsList().get(1).getKey()));
+  }
+
+  @Test
+  void testSpanWithoutProcessAndReferences() throws Exception {
+    Span span = Span.newBuilder().setOperationName("op").build();
+
+    LazyJaegerSpan lazyJaegerSpan = LazyJaegerSpan.parseFrom(span.toByteArray());
+
+    assertFalse(lazyJaegerSpan.hasReferences());
+    assertEquals(Process.getDefaultInstance(), lazyJaegerSpan.getProcess());
+    assertFalse(lazyJaegerSpan.getSpan().hasProcess());
+    assertEquals(span, lazyJaegerSpan.getSpan());
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(first);
+    out.write(second);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,115 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.typesafe.config.ConfigFactory;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpanFilterTest {
+
+  @Test
+  void testSpanDropCriterionMatchesOnlySpanTags() {
+    SpanFilter spanFilter =
+        new SpanFilter(
+            ConfigFactory.parseMap(
+                Map.of("processor.spanDropCriterion", List.of("foo:bar", "k1:v1,k2:v2"))));
+
+    assertTrue(shouldDrop(spanFilter, Map.of("foo", "bar"), Map.of()));
+    assertTrue(shouldDrop(spanFilter, Map.of("k1", "v1", "k2", "v2"), Map.of()));
+    assertFalse(shouldDrop(spanFilter, Map.of("k1", "v1"), Map.of()));
+    assertFalse(shouldDrop(spanFilter, Map.of(), Map.of("foo", "bar")));
+  }
+
+  @Test
+  void testSpanDropFiltersMatchSpanAndProcessTags() {
+    SpanFilter spanFilter =
+        new SpanFilter(
+            ConfigFactory.parseMap(
+                Map.of(
+                    "processor.spanDropFilters",
+                    List.of(
+                        List.of(
+                            Map.of(
+                                "tagKey", "http.url", "operator", "CONTAINS", "tagValue", "health"),
+                            Map.of("tagKey", "env", "operator", "NEQ", "tagValue", "prod")),
+                        List.of(Map.of("tagKey", "debug", "operator", "EXISTS"))))));
+
+    assertTrue(
+        shouldDrop(spanFilter, Map.of("http.url", "http://a/health"), Map.of("env", "dev")));
+    assertFalse(
+        shouldDrop(spanFilter, Map.of("http.url", "http://a/health"), Map.of("env", "prod")));
+    // NEQ does not match a missing tag
+    assertFalse(shouldDrop(spanFilter, Map.of("http.url", "http://a/health"), Map.of()));
+    assertTrue(shouldDrop(spanFilter, Map.of(), Map.of("debug", "")));
+  }
+
+  @Test
+  void testRulesAreReloadedWhenFileChanges(@TempDir Path dir) throws IOException {
+    Path rulesFile = dir.resolve("span-filter-rules.conf");
+    SpanFilter spanFilter =
+        new SpanFilter(
+            ConfigFactory.parseMap(
+                Map.of(
+                    "processor.spanDropCriterion", List.of("foo:bar"),
+                    "processor.spanFilterRulesFile", rulesFile.toString(),
+                    "processor.spanFilterRulesReloadInterval", "0ms")));
+
+    // the job config applies until the file exists
+    assertTrue(shouldDrop(spanFilter, Map.of("foo", "bar"), Map.of()));
+
+    Files.writeString(rulesFile, "processor.spanDropCriterion = [\"foo:baz\"]");
+    assertFalse(shouldDrop(spanFilter, Map.of("foo", "bar"), Map.of()));
+    assertTrue(shouldDrop(spanFilter, Map.of("foo", "baz"), Map.of()));
+
+    // a file that can't be parsed keeps the previous rules
+    Files.writeString(rulesFile, "processor.spanDropCriterion = [");
+    Files.setLastModifiedTime(
+        rulesFile, FileTime.fromMillis(Files.getLastModifiedTime(rulesFile).toMillis() + 1000));
+    assertTrue(shouldDrop(spanFilter, Map.of("foo", "baz"), Map.of()));
+
+    // the job config applies again once the file is deleted
+    Files.delete(rulesFile);
+    assertTrue(shouldDrop(spanFilter, Map.of("foo", "bar"), Map.of()));
+    assertFalse(shouldDrop(spanFilter, Map.of("foo", "baz"), Map.of()));
+  }
+
+  @Test
+  void testRuleNameDoesNotDependOnPositionOrPredicateOrder() {
+    SpanFilterRules.Predicate url =
+        new SpanFilterRules.Predicate("http.url", SpanDropFilter.Operator.CONTAINS, "health", true);
+    SpanFilterRules.Predicate env =
+        new SpanFilterRules.Predicate("env", SpanDropFilter.Operator.EQ, "dev", true);
+
+    assertEquals(
+        "processor.spanDropFilters: env EQ dev AND http.url CONTAINS health",
+        new SpanFilterRules.Rule("processor.spanDropFilters", List.of(url, env)).getName());
+    assertEquals(
+        new SpanFilterRules.Rule("processor.spanDropFilters", List.of(url, env)).getName(),
+        new SpanFilterRules.Rule("processor.spanDropFilters", List.of(env, url)).getName());
+  }
+
+  private static boolean shouldDrop(
+      SpanFilter spanFilter, Map<String, String> tags, Map<String, String> processTags) {
+    return spanFilter.shouldDropSpan(
+        Span.newBuilder().build(), toKeyValues(tags), toKeyValues(processTags));
+  }
+
+  private static Map<String, KeyValue> toKeyValues(Map<String, String> tags) {
+    return SpanTagIndex.of(
+        tags.entrySet().stream()
+            .map(e -> KeyValue.newBuilder().setKey(e.getKey()).setVStr(e.getValue()).build())
+            .collect(Collectors.toList()));
+  }
+}
@@ -0,0 +1,33 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SpanTagIndexTest {
+
+  @Test
+  void testTagsAreIndexedByLowerCaseKey() {
+    KeyValue first = KeyValue.newBuilder().setKey("HTTP.Method").setVStr("GET").build();
+    KeyValue second = KeyValue.newBuilder().setKey("http.method").setVStr("POST").build();
+    KeyValue other = KeyValue.newBuilder().setKey("Tenant-Key").setVStr("tenant-1").build();
+
+    Map<String, KeyValue> index = SpanTagIndex.of(List.of(first, other, second));
+
+    assertEquals(2, index.size());
+    // the last tag wins if keys collide
+    assertSame(second, index.get("http.method"));
+    assertSame(other, index.get("tenant-key"));
+  }
+
+  @Test
+  void testLowerCaseKeysAreShared() {
+    assertSame(
+        SpanTagIndex.toLowerCase(new String("Http.Status_Code")),
+        SpanTagIndex.toLowerCase(new String("Http.Status_Code")));
+  }
+}
@@ -0,0 +1,43 @@
+package org.hypertrace.core.spannormalizer.jaeger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.KeyValue;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Span;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hypertrace.core.spannormalizer.jaeger.tenant.TenantPolicy;
+import org.junit.jupiter.api.Test;
+
+class TenantIdHandlerTest {
+
+  private static final Config CONFIG =
+      ConfigFactory.parseMap(Map.of("processor", Map.of("tenantIdTagKey", "tenant-key")));
+
+  @Test
+  void appliesChangedPolicyToNextSpan() {
+    AtomicReference<TenantPolicy> tenantPolicy =
+        new AtomicReference<>(new TenantPolicy(ConfigFactory.empty()));
+    TenantIdHandler tenantIdHandler = new TenantIdHandler(CONFIG, tenantPolicy::get);
+
+    assertEquals(Optional.of("tenant-1"), getAllowedTenantId(tenantIdHandler, "tenant-1"));
+
+    tenantPolicy.set(
+        new TenantPolicy(
+            ConfigFactory.parseMap(
+                Map.of("processor", Map.of("excludeTenantIds", List.of("tenant-1"))))));
+    assertEquals(Optional.empty(), getAllowedTenantId(tenantIdHandler, "tenant-1"));
+    assertEquals(Optional.of("tenant-2"), getAllowedTenantId(tenantIdHandler, "tenant-2"));
+  }
+
+  private static Optional<String> getAllowedTenantId(
+      TenantIdHandler tenantIdHandler, String tenantId) {
+    KeyValue tenantTag = KeyValue.newBuilder().setKey("tenant-key").setVStr(tenantId).build();
+    LazyJaegerSpan span = LazyJaegerSpan.of(Span.newBuilder().addTags(tenantTag).build());
+    return tenantIdHandler.getAllowedTenantId(span, SpanTagIndex.of(List.of(tenantTag)), Map.of());
+  }
+}
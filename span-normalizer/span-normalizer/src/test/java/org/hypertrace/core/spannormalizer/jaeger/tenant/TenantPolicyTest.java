@@ -0,0 +1,100 @@
+package org.hypertrace.core.spannormalizer.jaeger.tenant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.hypertrace.core.spannormalizer.jaeger.tenant.TenantPolicy.Decision;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TenantPolicyTest {
+
+  @Test
+  void acceptsAllTenantsByDefault() {
+    TenantPolicy policy = new TenantPolicy(ConfigFactory.empty());
+
+    assertEquals(Decision.ACCEPTED, policy.checkSpan("tenant-1"));
+    assertTrue(policy.isLogsEnabled("tenant-1"));
+  }
+
+  @Test
+  void shedsTenantsThatAreNotAllowedOrExcluded() {
+    TenantPolicy policy =
+        new TenantPolicy(
+            ConfigFactory.parseMap(
+                Map.of(
+                    "processor",
+                    Map.of(
+                        "allowTenantIds", List.of("tenant-1", "tenant-2"),
+                        "excludeTenantIds", List.of("tenant-2"),
+                        "excludeLogsTenantIds", List.of("tenant-1")))));
+
+    assertEquals(Decision.ACCEPTED, policy.checkSpan("tenant-1"));
+    assertEquals(Decision.EXCLUDED, policy.checkSpan("tenant-2"));
+    assertEquals(Decision.NOT_ALLOWED, policy.checkSpan("tenant-3"));
+    assertFalse(policy.isLogsEnabled("tenant-1"));
+    assertTrue(policy.isLogsEnabled("tenant-2"));
+  }
+
+  @Test
+  void readsSampleRatesOfTenants() {
+    TenantPolicy policy =
+        new TenantPolicy(
+            ConfigFactory.parseString(
+                "processor.tenantSampleRates { \"tenant.1\" = 0.25, tenant-2 = 0 }"));
+
+    assertEquals(0.25, policy.getSampleRate("tenant.1"));
+    assertEquals(0, policy.getSampleRate("tenant-2"));
+    assertEquals(1, policy.getSampleRate("tenant-3"));
+    // sampled spans are still ingested as far as the policy is concerned
+    assertEquals(Decision.ACCEPTED, policy.checkSpan("tenant-2"));
+  }
+
+  @Test
+  void readsQuotedSampleRate() {
+    TenantPolicy policy =
+        new TenantPolicy(ConfigFactory.parseString("processor.tenantSampleRates.t = \"0\""));
+
+    assertEquals(0, policy.getSampleRate("t"));
+  }
+
+  @Test
+  void rejectsInvalidSampleRate() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new TenantPolicy(ConfigFactory.parseString("processor.tenantSampleRates.t = 2")));
+  }
+
+  @Test
+  void reloadsPolicyFromFile(@TempDir Path tempDir) throws Exception {
+    Path policyFile = tempDir.resolve("tenant-policy.conf");
+    Config config =
+        ConfigFactory.parseMap(
+            Map.of(
+                "processor",
+                Map.of(
+                    "excludeTenantIds", List.of("tenant-1"),
+                    "tenantPolicyFile", policyFile.toString(),
+                    "tenantPolicyReloadInterval", "0ms")));
+    Supplier<TenantPolicy> policy = TenantPolicy.supplier(config);
+
+    // the job config applies until the file exists
+    assertEquals(Decision.EXCLUDED, policy.get().checkSpan("tenant-1"));
+
+    Files.writeString(policyFile, "processor.excludeTenantIds = [\"tenant-2\"]");
+    assertEquals(Decision.ACCEPTED, policy.get().checkSpan("tenant-1"));
+    assertEquals(Decision.EXCLUDED, policy.get().checkSpan("tenant-2"));
+    // the suppliers of the file share its reloader
+    assertSame(policy.get(), TenantPolicy.supplier(config).get());
+  }
+}
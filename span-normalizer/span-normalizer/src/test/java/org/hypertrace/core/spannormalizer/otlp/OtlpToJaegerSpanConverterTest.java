@@ -0,0 +1,141 @@
+package org.hypertrace.core.spannormalizer.otlp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.protobuf.ByteString;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.Process;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.SpanRefType;
+import io.jaegertracing.api_v2.JaegerSpanInternalModel.ValueType;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.InstrumentationLibrary;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.common.v1.KeyValueList;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class OtlpToJaegerSpanConverterTest {
+
+  @Test
+  void testResourceIsConvertedToProcess() {
+    Process process =
+        OtlpToJaegerSpanConverter.toProcess(
+            Resource.newBuilder()
+                .addAttributes(attribute("service.name", stringValue("service")))
+                .addAttributes(attribute("host.name", stringValue("host")))
+                .build());
+
+    assertEquals("service", process.getServiceName());
+    assertEquals(1, process.getTagsCount());
+    assertEquals("host", process.getTags(0).getVStr());
+    assertEquals(
+        OtlpToJaegerSpanConverter.NO_SERVICE_NAME,
+        OtlpToJaegerSpanConverter.toProcess(Resource.getDefaultInstance()).getServiceName());
+  }
+
+  @Test
+  void testSpanIsConvertedLikeTheCollector() {
+    ByteString traceId = ByteString.copyFromUtf8("0123456789abcdef");
+    Span span =
+        Span.newBuilder()
+            .setTraceId(traceId)
+            .setSpanId(ByteString.copyFromUtf8("span-id1"))
+            .setParentSpanId(ByteString.copyFromUtf8("parent-1"))
+            .setName("GET /users")
+            .setKind(Span.SpanKind.SPAN_KIND_CLIENT)
+            .setStartTimeUnixNano(1_500_000_000L)
+            .setEndTimeUnixNano(2_000_000_000L)
+            .setTraceState("k=v")
+            .addAttributes(attribute("http.status_code", AnyValue.newBuilder().setIntValue(500)))
+            .addAttributes(attribute("retry", AnyValue.newBuilder().setBoolValue(true)))
+            .addEvents(
+                Span.Event.newBuilder()
+                    .setTimeUnixNano(1_600_000_000L)
+                    .setName("exception")
+                    .addAttributes(attribute("exception.message", stringValue("failed"))))
+            .addLinks(
+                Span.Link.newBuilder()
+                    .setTraceId(traceId)
+                    .setSpanId(ByteString.copyFromUtf8("linked-1")))
+            .setStatus(
+                Status.newBuilder()
+                    .setCode(Status.StatusCode.STATUS_CODE_ERROR)
+                    .setMessage("server error"))
+            .build();
+
+    JaegerSpanInternalModel.Span jaegerSpan =
+        OtlpToJaegerSpanConverter.toJaegerSpan(
+            span,
+            InstrumentationLibrary.newBuilder().setName("okhttp").setVersion("1.2").build(),
+            Process.newBuilder().setServiceName("service").build());
+
+    assertEquals(traceId, jaegerSpan.getTraceId());
+    assertEquals("GET /users", jaegerSpan.getOperationName());
+    assertEquals(1, jaegerSpan.getStartTime().getSeconds());
+    assertEquals(500_000_000, jaegerSpan.getStartTime().getNanos());
+    assertEquals(500_000_000, jaegerSpan.getDuration().getNanos());
+    assertEquals("service", jaegerSpan.getProcess().getServiceName());
+
+    assertEquals(2, jaegerSpan.getReferencesCount());
+    assertEquals(SpanRefType.CHILD_OF, jaegerSpan.getReferences(0).getRefType());
+    assertEquals(ByteString.copyFromUtf8("parent-1"), jaegerSpan.getReferences(0).getSpanId());
+    assertEquals(SpanRefType.FOLLOWS_FROM, jaegerSpan.getReferences(1).getRefType());
+
+    Map<String, JaegerSpanInternalModel.KeyValue> tags =
+        jaegerSpan.getTagsList().stream()
+            .collect(
+                Collectors.toMap(JaegerSpanInternalModel.KeyValue::getKey, keyValue -> keyValue));
+    assertEquals(500, tags.get("http.status_code").getVInt64());
+    assertEquals(ValueType.BOOL, tags.get("retry").getVType());
+    assertEquals("client", tags.get("span.kind").getVStr());
+    assertEquals("ERROR", tags.get("otel.status_code").getVStr());
+    assertEquals(true, tags.get("error").getVBool());
+    assertEquals("server error", tags.get("otel.status_description").getVStr());
+    assertEquals("k=v", tags.get("w3c.tracestate").getVStr());
+    assertEquals("okhttp", tags.get("otel.library.name").getVStr());
+    assertEquals("1.2", tags.get("otel.library.version").getVStr());
+
+    assertEquals(1, jaegerSpan.getLogsCount());
+    assertEquals(2, jaegerSpan.getLogs(0).getFieldsCount());
+    assertEquals("failed", jaegerSpan.getLogs(0).getFields(0).getVStr());
+    assertEquals("event", jaegerSpan.getLogs(0).getFields(1).getKey());
+    assertEquals("exception", jaegerSpan.getLogs(0).getFields(1).getVStr());
+  }
+
+  @Test
+  void testArraysAndMapsAreConvertedToJson() {
+    AnyValue value =
+        AnyValue.newBuilder()
+            .setKvlistValue(
+                KeyValueList.newBuilder()
+                    .addValues(attribute("name", stringValue("a \"quoted\" value")))
+                    .addValues(
+                        attribute(
+                            "values",
+                            AnyValue.newBuilder()
+                                .setArrayValue(
+                                    ArrayValue.newBuilder()
+                                        .addValues(AnyValue.newBuilder().setIntValue(1))
+                                        .addValues(AnyValue.newBuilder().setDoubleValue(1.5))))))
+            .build();
+
+    JaegerSpanInternalModel.KeyValue keyValue =
+        OtlpToJaegerSpanConverter.toKeyValue(attribute("map", value));
+
+    assertEquals(ValueType.STRING, keyValue.getVType());
+    assertEquals("{\"name\":\"a \\\"quoted\\\" value\",\"values\":[1,1.5]}", keyValue.getVStr());
+  }
+
+  private static KeyValue attribute(String key, AnyValue.Builder value) {
+    return KeyValue.newBuilder().setKey(key).setValue(value).build();
+  }
+
+  private static AnyValue.Builder stringValue(String value) {
+    return AnyValue.newBuilder().setStringValue(value);
+  }
+}
@@ -0,0 +1,150 @@
+package org.hypertrace.core.spannormalizer.redaction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.stream.Collectors;
+import org.hypertrace.core.datamodel.AttributeValue;
+import org.hypertrace.core.spannormalizer.constants.SpanNormalizerConstants;
+import org.junit.jupiter.api.Test;
+
+class PIIPCIRedactorTest {
+
+  @Test
+  void testMinLength() {
+    assertEquals(9, PIIPCIRedactor.minLength("[0-9]{9,18}"));
+    assertEquals(
+        10,
+        PIIPCIRedactor.minLength(
+            "[A-Z a-z]{3}[ABCGHLJPTF abcghljptf]{1}[A-Z a-z]{1}[0-9]{4}[A-Z a-z]{1}"));
+    assertEquals(13, PIIPCIRedactor.minLength("([0-9]{9,18}@[a-zA-Z]{3,})"));
+    assertEquals(
+        10, PIIPCIRedactor.minLength("^(?:(?:\\+|0{0,2})91(\\s*[\\-]\\s*)?|[0]?)?[789]\\d{9}$"));
+    assertEquals(1, PIIPCIRedactor.minLength("ab|c"));
+    assertEquals(3, PIIPCIRedactor.minLength("a+?\\d*[\\]x]b(?=cd)"));
+    // constructs that are not understood don't bound the length
+    assertEquals(0, PIIPCIRedactor.minLength("(?i)abc"));
+    assertEquals(0, PIIPCIRedactor.minLength("(a)\\1"));
+  }
+
+  @Test
+  void testRedactionMatchesFieldByFieldRedaction() {
+    List<PIIPCIField> piiPciFields =
+        ConfigFactory.parseResources("configs/common/application.conf")
+            .resolve()
+            .getConfigList(SpanNormalizerConstants.PII_PCI_CONFIG_KEY)
+            .stream()
+            .map(
+                conf ->
+                    new PIIPCIField(
+                        conf.getString("name"),
+                        conf.getString("regexString"),
+                        conf.getStringList("keys"),
+                        conf.getString("type")))
+            .collect(Collectors.toList());
+    PIIPCIRedactor redactor = new PIIPCIRedactor(piiPciFields);
+
+    Map<String, String> tags =
+        Map.of(
+            "cvv", "123",
+            "cardnum", "4111111111111111",
+            "account_number", "12345",
+            "aadhar_no", "234567890123",
+            "http.url", "/pay?pan=ABCPE1234F",
+            "user.vpa", "987654321012@okbank",
+            "http.method", "GET",
+            "short", "ABCP",
+            "number", "ABCPE1234F 4111111111111111");
+
+    Map<String, AttributeValue> attributes = toAttributes(tags);
+    redactor.redact(attributes);
+    Map<String, AttributeValue> expected = toAttributes(tags);
+    redactFieldByField(piiPciFields, expected);
+
+    assertEquals(expected, attributes);
+    assertEquals("redacted-pan", attributes.get("http.url").getValue());
+    assertEquals("GET", attributes.get("http.method").getValue());
+  }
+
+  @Test
+  void testRedactionWithDuplicateGroupNames() {
+    List<PIIPCIField> piiPciFields =
+        List.of(
+            new PIIPCIField("phone", "(?<digits>[0-9]{10})", List.of(), "PII"),
+            new PIIPCIField("pin", "pin=(?<digits>[0-9]{4})", List.of(), "PCI"),
+            new PIIPCIField("pan", "[A-Z]{5}[0-9]{4}[A-Z]", List.of(), "PII"),
+            new PIIPCIField("repeat", "(x)\\1", List.of(), "PII"));
+    PIIPCIRedactor redactor = new PIIPCIRedactor(piiPciFields);
+
+    Map<String, String> tags =
+        Map.of(
+            "phone", "9876543210",
+            "http.url", "/login?pin=1234",
+            "pan", "ABCPE1234F",
+            "repeat", "xx",
+            "http.method", "GET");
+
+    Map<String, AttributeValue> attributes = toAttributes(tags);
+    redactor.redact(attributes);
+    Map<String, AttributeValue> expected = toAttributes(tags);
+    redactFieldByField(piiPciFields, expected);
+
+    assertEquals(expected, attributes);
+    assertEquals("redacted-pin", attributes.get("http.url").getValue());
+    assertEquals("GET", attributes.get("http.method").getValue());
+  }
+
+  private static Map<String, AttributeValue> toAttributes(Map<String, String> tags) {
+    Map<String, AttributeValue> attributes = new HashMap<>();
+    tags.forEach(
+        (key, value) -> attributes.put(key, AttributeValue.newBuilder().setValue(value).build()));
+    return attributes;
+  }
+
+  /** Checks every field against every attribute, as the span normalizer used to. */
+  private static void redactFieldByField(
+      List<PIIPCIField> piiPciFields, Map<String, AttributeValue> attributeMap) {
+    int piiFieldsCount = 0;
+    int pciFieldsCount = 0;
+    for (PIIPCIField piiPciField : piiPciFields) {
+      for (String tagKey : attributeMap.keySet()) {
+        if (!piiPciField.getTagKeySet().isEmpty()
+            && !piiPciField.getTagKeySet().contains(tagKey)) {
+          continue;
+        }
+        boolean containsSensitiveData = true;
+        if (piiPciField.getRegexInfo().isPresent()) {
+          Matcher matcher =
+              piiPciField
+                  .getRegexInfo()
+                  .get()
+                  .getRegexPattern()
+                  .matcher(attributeMap.get(tagKey).getValue());
+          containsSensitiveData = matcher.find();
+        }
+        if (containsSensitiveData) {
+          if (piiPciField.getPiiPciFieldType() == PIIPCIField.PIIPCIFieldType.PII) {
+            piiFieldsCount += 1;
+          } else {
+            pciFieldsCount += 1;
+          }
+          attributeMap.put(tagKey, piiPciField.getReplacementValue());
+        }
+      }
+    }
+    if (piiFieldsCount > 0) {
+      attributeMap.put(
+          SpanNormalizerConstants.REDACTED_PII_TAGS_KEY,
+          AttributeValue.newBuilder().setValue(String.valueOf(piiFieldsCount)).build());
+    }
+    if (pciFieldsCount > 0) {
+      attributeMap.put(
+          SpanNormalizerConstants.REDACTED_PCI_TAGS_KEY,
+          AttributeValue.newBuilder().setValue(String.valueOf(pciFieldsCount)).build());
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.hypertrace.core.spannormalizer.sampling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ByteString;
+import com.typesafe.config.ConfigFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class TraceSamplerTest {
+
+  private static final String SAMPLING_CONFIG =
+      "processor.sampling {\n"
+          + "  defaultRate = 0.5\n"
+          + "  tenants = [\n"
+          + "    { tenantId = tenant-1, rate = 0.1, services = [{ name = all, rate = 1 }] }\n"
+          + "    { tenantId = tenant-2, maxSpansPerSecond = 1000000 }\n"
+          + "  ]\n"
+          + "}";
+
+  @Test
+  void keepsAllSpansByDefault() {
+    TraceSampler traceSampler = new TraceSampler(ConfigFactory.empty());
+
+    assertEquals(1, traceSampler.sample(0, "tenant-1", "service", traceId(1), 1));
+  }
+
+  @Test
+  void samplesAtRateOfServiceElseTenantElseDefault() {
+    TraceSampler traceSampler = new TraceSampler(ConfigFactory.parseString(SAMPLING_CONFIG));
+
+    assertEquals(0.1, keptFraction(traceSampler, "tenant-1", "service", 10), 0.02);
+    assertEquals(0.5, keptFraction(traceSampler, "tenant-2", "service", 2), 0.02);
+    assertEquals(0.5, keptFraction(traceSampler, "tenant-3", "service", 2), 0.02);
+    assertEquals(1, keptFraction(traceSampler, "tenant-1", "all", 1));
+  }
+
+  @Test
+  void samplesAtLowerOfOwnAndTenantPolicyRate() {
+    TraceSampler traceSampler = new TraceSampler(ConfigFactory.parseString(SAMPLING_CONFIG));
+
+    assertEquals(0.25, keptFraction(traceSampler, "tenant-1", "all", 0.25, 4), 0.02);
+    assertEquals(0.1, keptFraction(traceSampler, "tenant-1", "service", 0.25, 10), 0.02);
+    assertEquals(0.25, keptFraction(traceSampler, "tenant-3", "service", 0.25, 4), 0.02);
+  }
+
+  @Test
+  void samplesAllSpansOfTraceAlike() {
+    TraceSampler traceSampler = new TraceSampler(ConfigFactory.parseString(SAMPLING_CONFIG));
+
+    for (long i = 0; i < 1000; i++) {
+      assertEquals(
+          traceSampler.sample(0, "tenant-3", "service-a", traceId(i), 1),
+          traceSampler.sample(0, "tenant-3", "service-b", traceId(i), 1));
+    }
+  }
+
+  @Test
+  void traceSampledAtRateIsSampledAtHigherRates() {
+    for (long i = 0; i < 1000; i++) {
+      if (TraceSampler.isSampled(traceId(i), 0.1)) {
+        assertTrue(TraceSampler.isSampled(traceId(i), 0.5));
+      }
+    }
+    assertFalse(TraceSampler.isSampled(traceId(1), 0));
+  }
+
+  @Test
+  void rejectsInvalidRate() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new TraceSampler(ConfigFactory.parseString("processor.sampling.defaultRate = -1")));
+  }
+
+  @Test
+  void tokenBucketCapsPermitsPerSecond() {
+    AtomicLong nanos = new AtomicLong();
+    TokenBucket tokenBucket = new TokenBucket(2, nanos::get);
+
+    assertTrue(tokenBucket.tryAcquire());
+    assertTrue(tokenBucket.tryAcquire());
+    assertFalse(tokenBucket.tryAcquire());
+
+    nanos.addAndGet(500_000_000);
+    assertTrue(tokenBucket.tryAcquire());
+    assertFalse(tokenBucket.tryAcquire());
+
+    // no more than one second of permits is saved up
+    nanos.addAndGet(10_000_000_000L);
+    assertTrue(tokenBucket.tryAcquire());
+    assertTrue(tokenBucket.tryAcquire());
+    assertFalse(tokenBucket.tryAcquire());
+  }
+
+  private static double keptFraction(
+      TraceSampler traceSampler, String tenantId, String serviceName, double weight) {
+    return keptFraction(traceSampler, tenantId, serviceName, 1, weight);
+  }
+
+  /** The fraction of 10k traces that is kept, asserting the weight of the kept spans. */
+  private static double keptFraction(
+      TraceSampler traceSampler,
+      String tenantId,
+      String serviceName,
+      double tenantPolicyRate,
+      double weight) {
+    int kept = 0;
+    for (long i = 0; i < 10_000; i++) {
+      double sampleWeight =
+          traceSampler.sample(0, tenantId, serviceName, traceId(i), tenantPolicyRate);
+      if (sampleWeight != TraceSampler.SAMPLED_OUT) {
+        assertEquals(weight, sampleWeight, 1e-9);
+        kept++;
+      }
+    }
+    return kept / 10_000d;
+  }
+
+  private static ByteString traceId(long i) {
+    return ByteString.copyFrom(ByteBuffer.allocate(16).putLong(8, i).array());
+  }
+}
@@ -0,0 +1,15 @@
+plugins {
+    `java-library`
+    id("org.hypertrace.publish-plugin")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+dependencies {
+    api("org.hypertrace.core.serviceframework:platform-metrics:0.1.33")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.7.1")
+    testImplementation("org.mockito:mockito-core:3.8.0")
+}
@@ -0,0 +1,40 @@
+package org.hypertrace.tenant.metrics.utils;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * A lazily filled array of values indexed by tenant slot. Reads are a plain array access, the array
+ * is copied on every write, which only happens once per slot.
+ */
+final class SlotArray<T> {
+
+  private final IntFunction<T> factory;
+  private volatile Object[] values = new Object[0];
+
+  SlotArray(IntFunction<T> factory) {
+    this.factory = factory;
+  }
+
+  @SuppressWarnings("unchecked")
+  T get(int slot) {
+    Object[] current = values;
+    if (slot < current.length && current[slot] != null) {
+      return (T) current[slot];
+    }
+    return create(slot);
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized T create(int slot) {
+    Object[] current = values;
+    if (slot < current.length && current[slot] != null) {
+      return (T) current[slot];
+    }
+    Object[] updated = Arrays.copyOf(current, Math.max(slot + 1, current.length));
+    T value = factory.apply(slot);
+    updated[slot] = value;
+    values = updated;
+    return value;
+  }
+}
@@ -0,0 +1,72 @@
+package org.hypertrace.tenant.metrics.utils;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Tags;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+
+/**
+ * A counter with a tenantId tag, updated by tenant slot. Each tenant's count is kept in a {@link
+ * LongAdder} that is published as a {@link FunctionCounter}, so an increment neither looks up a
+ * meter nor touches Micrometer; the count is only read when the metrics are scraped.
+ *
+ * <p>Instances are shared per name and tags, since Micrometer only reports the first meter
+ * registered with a given id.
+ */
+public final class TenantCounter {
+
+  private static final String TENANT_ID_TAG = "tenantId";
+  private static final ConcurrentMap<List<Object>, TenantCounter> COUNTERS =
+      new ConcurrentHashMap<>();
+
+  private final String name;
+  private final Tags tags;
+  private final SlotArray<LongAdder> adders = new SlotArray<>(this::register);
+
+  private TenantCounter(String name, Map<String, String> tags) {
+    this.name = name;
+    this.tags = toTags(tags);
+  }
+
+  public static TenantCounter of(String name) {
+    return of(name, Map.of());
+  }
+
+  public static TenantCounter of(String name, Map<String, String> tags) {
+    return COUNTERS.computeIfAbsent(List.of(name, tags), k -> new TenantCounter(name, tags));
+  }
+
+  public void increment(int tenantSlot) {
+    adders.get(tenantSlot).increment();
+  }
+
+  public void increment(int tenantSlot, long amount) {
+    adders.get(tenantSlot).add(amount);
+  }
+
+  public long count(int tenantSlot) {
+    return adders.get(tenantSlot).sum();
+  }
+
+  private static Tags toTags(Map<String, String> tags) {
+    Tags result = Tags.empty();
+    for (Map.Entry<String, String> tag : tags.entrySet()) {
+      result = result.and(tag.getKey(), tag.getValue());
+    }
+    return result;
+  }
+
+  private LongAdder register(int tenantSlot) {
+    LongAdder adder = new LongAdder();
+    FunctionCounter.builder(name, adder, LongAdder::sum)
+        .tags(tags)
+        .tag(TENANT_ID_TAG, TenantSlots.tenantIdOf(tenantSlot))
+        .register(PlatformMetricsRegistry.getMeterRegistry());
+    // the meter only holds the adder weakly, the slot array keeps it reachable
+    return adder;
+  }
+}
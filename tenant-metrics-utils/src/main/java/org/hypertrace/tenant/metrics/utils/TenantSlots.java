@@ -0,0 +1,39 @@
+package org.hypertrace.tenant.metrics.utils;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Assigns every tenant a dense slot, so that the per-tenant meters of {@link TenantCounter} and
+ * {@link TenantTimer} can be looked up by array index. A record resolves its tenant once and passes
+ * the slot to every meter it updates. Slots are never reused, as the set of tenants is small.
+ */
+public final class TenantSlots {
+
+  private static final ConcurrentMap<String, Integer> SLOTS = new ConcurrentHashMap<>();
+  // the tenant id of every slot, indexed by slot
+  private static final List<String> TENANT_IDS = new CopyOnWriteArrayList<>();
+
+  private TenantSlots() {}
+
+  public static int slotOf(String tenantId) {
+    Integer slot = SLOTS.get(tenantId);
+    return slot != null ? slot : register(tenantId);
+  }
+
+  public static String tenantIdOf(int slot) {
+    return TENANT_IDS.get(slot);
+  }
+
+  private static synchronized int register(String tenantId) {
+    Integer slot = SLOTS.get(tenantId);
+    if (slot == null) {
+      slot = TENANT_IDS.size();
+      TENANT_IDS.add(tenantId);
+      SLOTS.put(tenantId, slot);
+    }
+    return slot;
+  }
+}
@@ -0,0 +1,46 @@
+package org.hypertrace.tenant.metrics.utils;
+
+import io.micrometer.core.instrument.Timer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.hypertrace.core.serviceframework.metrics.PlatformMetricsRegistry;
+
+/**
+ * A timer with a tenantId tag, looked up by tenant slot instead of by a tenant keyed map. The
+ * timers themselves are registered with {@link PlatformMetricsRegistry} on first use.
+ */
+public final class TenantTimer {
+
+  private static final String TENANT_ID_TAG = "tenantId";
+  private static final ConcurrentMap<List<Object>, TenantTimer> TIMERS = new ConcurrentHashMap<>();
+
+  private final String name;
+  private final Map<String, String> tags;
+  private final SlotArray<Timer> timers = new SlotArray<>(this::register);
+
+  private TenantTimer(String name, Map<String, String> tags) {
+    this.name = name;
+    this.tags = tags;
+  }
+
+  public static TenantTimer of(String name) {
+    return of(name, Map.of());
+  }
+
+  public static TenantTimer of(String name, Map<String, String> tags) {
+    return TIMERS.computeIfAbsent(List.of(name, tags), k -> new TenantTimer(name, tags));
+  }
+
+  public Timer get(int tenantSlot) {
+    return timers.get(tenantSlot);
+  }
+
+  private Timer register(int tenantSlot) {
+    Map<String, String> timerTags = new HashMap<>(tags);
+    timerTags.put(TENANT_ID_TAG, TenantSlots.tenantIdOf(tenantSlot));
+    return PlatformMetricsRegistry.registerTimer(name, timerTags);
+  }
+}
@@ -0,0 +1,46 @@
+package org.hypertrace.tenant.metrics.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class TenantCounterTest {
+
+  @Test
+  void testTenantsGetDistinctStableSlots() {
+    int slot1 = TenantSlots.slotOf("tenant-slots-1");
+    int slot2 = TenantSlots.slotOf("tenant-slots-2");
+
+    assertNotEquals(slot1, slot2);
+    assertEquals(slot1, TenantSlots.slotOf("tenant-slots-1"));
+    assertEquals("tenant-slots-1", TenantSlots.tenantIdOf(slot1));
+    assertEquals("tenant-slots-2", TenantSlots.tenantIdOf(slot2));
+  }
+
+  @Test
+  void testCountsAreKeptPerTenant() {
+    TenantCounter counter = TenantCounter.of("test.tenant.counter", Map.of("result", "ok"));
+    int slot1 = TenantSlots.slotOf("tenant-counter-1");
+    int slot2 = TenantSlots.slotOf("tenant-counter-2");
+
+    counter.increment(slot1);
+    counter.increment(slot1, 2);
+    counter.increment(slot2);
+
+    assertEquals(3, counter.count(slot1));
+    assertEquals(1, counter.count(slot2));
+    assertSame(counter, TenantCounter.of("test.tenant.counter", Map.of("result", "ok")));
+  }
+
+  @Test
+  void testTimersAreSharedPerTenant() {
+    int slot = TenantSlots.slotOf("tenant-timer-1");
+
+    assertSame(
+        TenantTimer.of("test.tenant.timer").get(slot),
+        TenantTimer.of("test.tenant.timer").get(slot));
+  }
+}